@@ -1,39 +1,69 @@
 package hr.fer.zemris.local;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Implements methods for adding and removing listeners. Also has a method that informs all listeners about change.
- * 
+ * <p>
+ * Listeners are only weakly referenced, so a listener of a component that is gone doesn't keep it reachable, and
+ * whoever adds a listener has to keep a reference to it as long as it should be informed. Changes are reported on the
+ * Event Dispatch Thread, and all changes made before the listeners are informed are reported to them only once.
+ *
  * @author Filip Hrenić
  * @version 1.0
  */
 public abstract class AbstractLocalizationProvider implements ILocalizationProvider {
 
-    /** List of listeners */
-    final private List<ILocalizationListener> listeners = new ArrayList<>();
+    /** Set of listeners */
+    final private Set<ILocalizationListener> listeners = Collections.newSetFromMap(new WeakHashMap<>());
+    /** <code>true</code> while listeners are about to be informed */
+    final private AtomicBoolean pending = new AtomicBoolean();
 
     @Override
     public abstract String getString(final String key);
 
     @Override
     public void addLocalizationListener(final ILocalizationListener listener) {
-        if (!listeners.contains(listener)) {
+        synchronized (listeners) {
             listeners.add(listener);
         }
     }
 
     @Override
     public void removeLocalizationListener(final ILocalizationListener listener) {
-        listeners.remove(listener);
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
     }
 
     /**
-     * Informs all listeners that listen to this provider.
+     * Informs all listeners that listen to this provider on the Event Dispatch Thread, unless they are already about
+     * to be informed.
      */
     void fire() {
-        listeners.forEach(ILocalizationListener::localizationChanged);
+        if (pending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::inform);
+        }
+    }
+
+    /**
+     * Informs the listeners about all changes since they were last informed. It is called on the Event Dispatch
+     * Thread.
+     */
+    void inform() {
+        pending.set(false);
+        final ILocalizationListener[] informed;
+        synchronized (listeners) {
+            informed = listeners.toArray(new ILocalizationListener[listeners.size()]);
+        }
+        for (final ILocalizationListener listener : informed) {
+            listener.localizationChanged();
+        }
     }
 
 }
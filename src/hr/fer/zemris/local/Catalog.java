@@ -0,0 +1,119 @@
+package hr.fer.zemris.local;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Translations of one language, read and decoded once. Every key gets an id when the first catalog that contains it
+ * is read, the same in all catalogs, and a catalog keeps its translations in an array indexed by those ids. Looking
+ * up a translation is one hash lookup of the id and one array access, nothing is decoded again.
+ * <p>
+ * Catalogs are read from the UTF-8 <code>lang_&lt;language&gt;.properties</code> files of this package and cached,
+ * so every language is read only once. Catalogs don't change after they are read, so they can be shared between
+ * threads.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class Catalog {
+
+    /** Ids of all keys */
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    /** Catalogs that were read, by their languages */
+    private static final Map<String, Catalog> CATALOGS = new ConcurrentHashMap<>();
+
+    /** Language of the translations */
+    private final String language;
+    /** Translations indexed by the ids of their keys, <code>null</code> for keys this language doesn't have */
+    private final String[] translations;
+
+    private Catalog(final String language, final String[] translations) {
+        this.language = language;
+        this.translations = translations;
+    }
+
+    /**
+     * Returns the catalog of a language, reading it the first time. A thread that asks for a catalog that is being
+     * read waits for it.
+     *
+     * @param language language tag
+     * @return the catalog, <code>null</code> if there is none for the language
+     */
+    static Catalog of(final String language) {
+        return CATALOGS.computeIfAbsent(language.toLowerCase(), Catalog::read);
+    }
+
+    /**
+     * @return language of the translations
+     */
+    String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Returns the translation of a key.
+     *
+     * @param key the key
+     * @return translation, <code>null</code> if this language doesn't have the key
+     */
+    String get(final String key) {
+        final Integer id = IDS.get(key);
+        if (id == null || id >= translations.length) {
+            return null; // read in a later catalog
+        }
+        return translations[id];
+    }
+
+    /**
+     * Reads the catalog of a language.
+     *
+     * @return the catalog, <code>null</code> if there is none
+     */
+    private static Catalog read(final String language) {
+        final InputStream in = Catalog.class.getResourceAsStream("lang_" + language + ".properties");
+        if (in == null) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            return null;
+        }
+        final int[] ids = new int[properties.size()];
+        final String[] values = new String[properties.size()];
+        int max = -1;
+        int i = 0;
+        for (final String key : properties.stringPropertyNames()) {
+            ids[i] = idOf(key);
+            values[i] = properties.getProperty(key);
+            max = Math.max(max, ids[i++]);
+        }
+        final String[] translations = new String[max + 1];
+        for (int j = 0; j < i; j++) {
+            translations[ids[j]] = values[j];
+        }
+        return new Catalog(language, translations);
+    }
+
+    /**
+     * Returns the id of a key, giving it the next free id if it has none.
+     */
+    private static int idOf(final String key) {
+        synchronized (IDS) {
+            Integer id = IDS.get(key);
+            if (id == null) {
+                id = IDS.size();
+                IDS.put(key.intern(), id);
+            }
+            return id;
+        }
+    }
+
+}
@@ -1,12 +1,8 @@
 package hr.fer.zemris.local;
 
-import java.io.UnsupportedEncodingException;
-import java.util.Locale;
-import java.util.MissingResourceException;
-import java.util.ResourceBundle;
-
 /**
- * Used to provide localized text. It is a singleton class.
+ * Used to provide localized text. It is a singleton class. Translations come from the {@link Catalog} of the current
+ * language, which is replaced as a whole when the language changes.
  * 
  * @author Filip Hrenić
  * @version 1.0
@@ -15,17 +11,10 @@ public final class LocalizationProvider extends AbstractLocalizationProvider {
 
     /** Default langauge is set to 'en' -> english */
     private static final String DEFAULT_LANGUAGE = "en";
-    /** Needed for the bundle */
-    private static final String PACKAGE = LocalizationProvider.class.getPackage().getName();
-    /** Appended to the package name to get the correct bundle */
-    private static final String LANG = ".lang";
-
-    /** Used as a baseName to get the wanted bundle */
-    private static final String BASE_NAME = PACKAGE + LANG;
 
     private final static LocalizationProvider instance = new LocalizationProvider();
-    private String language;
-    private ResourceBundle bundle;
+    /** Translations of the current language */
+    private volatile Catalog catalog;
 
     /**
      * Used to create a new instance of the {@link LocalizationProvider}, only done once. Sets the language to the
@@ -43,37 +32,45 @@ public final class LocalizationProvider extends AbstractLocalizationProvider {
      */
     @Override
     public String getString(String key) {
-        String text;
-        try {
-            try {
-                text = new String(bundle.getString(key).getBytes("ISO-8859-1"), "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                text = "unknown encoding";
-            }
-        } catch (NullPointerException | MissingResourceException | ClassCastException e) {
-            text = "?" + key + "?";
-        }
-        return text;
-
+        final String text = catalog.get(key);
+        return text == null ? "?" + key + "?" : text;
     }
 
     /**
-     * Sets the wanted language.
+     * Sets the wanted language. A language without translations falls back to the default one.
      * 
      * @param language language to set
      */
     public void setLanguage(final String language) {
-        if (language.equalsIgnoreCase(this.language)) {
+        final Catalog current = catalog;
+        if (current != null && language.equalsIgnoreCase(current.getLanguage())) {
             return; // language doesn't need to change
         }
 
-        this.language = language;
-        final Locale locale = Locale.forLanguageTag(language);
-        bundle = ResourceBundle.getBundle(BASE_NAME, locale);
+        Catalog next = Catalog.of(language);
+        if (next == null) {
+            next = Catalog.of(DEFAULT_LANGUAGE);
+        }
+        if (next == current) {
+            return;
+        }
+        catalog = next;
 
         fire(); // notify all listeners
     }
 
+    /**
+     * Reads the translations of the given languages, so that switching to them later doesn't read anything. It is
+     * meant to be called on a background thread.
+     * 
+     * @param languages languages to read
+     */
+    public void preload(final String... languages) {
+        for (final String language : languages) {
+            Catalog.of(language);
+        }
+    }
+
     /**
      * Returns an instance of this class.
      * 
@@ -9,8 +9,8 @@ package hr.fer.zemris.local;
 class LocalizationProviderBridge extends AbstractLocalizationProvider {
 
     private final ILocalizationProvider parent;
-    private final ILocalizationListener listener = // notify all listeners
-            this::fire;
+    private final ILocalizationListener listener = // notify all listeners, the parent already coalesced changes
+            this::inform;
 
     /** Indicates if the bridge connects something. */
     private boolean connected;
@@ -21,11 +21,12 @@ public class LJFileChooser extends JFileChooser {
      * @param provider localization provider
      */
     public LJFileChooser(final String key, final ILocalizationProvider provider) {
-        new LocalizedComponent(key, provider) {
+        // kept by the chooser, the provider references the translator only weakly
+        putClientProperty(LocalizedComponent.KEY, new LocalizedComponent(key, provider) {
             @Override
             public void change(final String arg) {
                 setDialogTitle(arg);
             }
-        };
+        });
     }
 }
@@ -0,0 +1,33 @@
+package hr.fer.zemris.local.swing;
+
+import hr.fer.zemris.local.ILocalizationProvider;
+
+import javax.swing.JLabel;
+
+/**
+ * This class has a property that it's text changes every time localization changes.
+ * 
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public class LJLabel extends JLabel {
+
+    private static final long serialVersionUID = -4160982717734471207L;
+
+    /**
+     * Creates a new {@link LJLabel} which changes it's text every time provider fires localization change.
+     * 
+     * @param key key to translate
+     * @param provider localization provider
+     */
+    public LJLabel(final String key, final ILocalizationProvider provider) {
+        // kept by the label, the provider references the translator only weakly
+        putClientProperty(LocalizedComponent.KEY, new LocalizedComponent(key, provider) {
+            @Override
+            public void change(final String arg) {
+                setText(arg);
+            }
+        });
+    }
+
+}
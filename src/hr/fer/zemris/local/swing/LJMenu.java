@@ -21,12 +21,13 @@ public class LJMenu extends JMenu {
      * @param provider localization provider
      */
     public LJMenu(final String key, final ILocalizationProvider provider) {
-        new LocalizedComponent(key, provider) {
+        // kept by the menu, the provider references the translator only weakly
+        putClientProperty(LocalizedComponent.KEY, new LocalizedComponent(key, provider) {
             @Override
             public void change(final String arg) {
                 setText(arg);
             }
-        };
+        });
     }
 
 }
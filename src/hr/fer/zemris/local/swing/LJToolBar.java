@@ -21,12 +21,13 @@ public class LJToolBar extends JToolBar {
      * @param provider localization provider
      */
     public LJToolBar(final String key, final ILocalizationProvider provider) {
-        new LocalizedComponent(key, provider) {
+        // kept by the toolbar, the provider references the translator only weakly
+        putClientProperty(LocalizedComponent.KEY, new LocalizedComponent(key, provider) {
             @Override
             public void change(final String arg) {
                 setName(arg);
             }
-        };
+        });
     }
 
 }
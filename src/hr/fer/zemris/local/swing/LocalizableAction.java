@@ -22,12 +22,13 @@ public abstract class LocalizableAction extends AbstractAction {
      * @param provider provider used
      */
     public LocalizableAction(final String key, final ILocalizationProvider provider) {
-        new LocalizedComponent(key, provider) {
+        // kept by the action, the provider references the translator only weakly
+        putValue(LocalizedComponent.KEY, new LocalizedComponent(key, provider) {
             @Override
             public void change(String arg) {
                 putValue(NAME, arg);
             }
-        };
+        });
     }
 
 }
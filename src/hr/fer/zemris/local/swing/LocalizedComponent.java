@@ -1,16 +1,30 @@
 package hr.fer.zemris.local.swing;
 
+import hr.fer.zemris.local.ILocalizationListener;
 import hr.fer.zemris.local.ILocalizationProvider;
 
 /**
  * This class provides one constructor and one method. When it is constructed and every time
  * localization provider fires a localization change, the method is invoked.
+ * <p>
+ * The provider references its listener only weakly, so the component that is localized keeps this object as its
+ * {@link #KEY} client property, or as a value if it is an action, and neither of them is kept reachable by the
+ * provider. The method isn't invoked again if the translation stays the same, so switching back and forth doesn't
+ * make the component lay itself out.
  * 
  * @author Filip Hrenić
  * @version 1.0
  */
 abstract class LocalizedComponent {
 
+    /** Key under which the localized component keeps this object */
+    static final String KEY = "localizedComponent";
+
+    /** Listener added to the provider, referenced from here so that it lives as long as this */
+    private final ILocalizationListener listener;
+    /** Last translation */
+    private String text;
+
     /**
      * Creates a new {@link LocalizedComponent} that does something every time provider fire's localization change.
      * 
@@ -18,9 +32,17 @@ abstract class LocalizedComponent {
      * @param provider localization provider
      */
     public LocalizedComponent(final String key, final ILocalizationProvider provider) {
-        change(provider.getString(key));
+        text = provider.getString(key);
+        change(text);
 
-        provider.addLocalizationListener(() -> change(provider.getString(key)));
+        listener = () -> {
+            final String translation = provider.getString(key);
+            if (!translation.equals(text)) {
+                text = translation;
+                change(translation);
+            }
+        };
+        provider.addLocalizationListener(listener);
     }
 
     /**
@@ -0,0 +1,488 @@
+package hr.fer.zemris.notepad;
+
+import hr.fer.zemris.local.ILocalizationListener;
+import hr.fer.zemris.local.ILocalizationProvider;
+import hr.fer.zemris.local.swing.LocalizableAction;
+import hr.fer.zemris.notepad.diff.DiffAlgorithm;
+import hr.fer.zemris.notepad.diff.EditScript;
+import hr.fer.zemris.notepad.diff.LineHashes;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.event.ActionEvent;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import javax.swing.AbstractListModel;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+
+/**
+ * Shows the differences between two documents side by side. The documents are compared as they were when the panel
+ * was created: the lines of both snapshots are hashed and diffed on a background thread, and the diff can be
+ * cancelled or run again with another {@link DiffAlgorithm}.
+ * <p>
+ * Rows of both sides are aligned, a side that has fewer lines in a change is padded with empty rows. Nothing is
+ * built for the rows up front: a row is found from the hunks of the diff when the list paints it, so only the visible
+ * lines are ever read from the snapshots. Both lists share their vertical scroll bar and their selection, so they
+ * always show the same rows.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+class ComparePanel extends JPanel {
+
+    private static final long serialVersionUID = 5287330174410628953L;
+
+    // keys used by the localization provider
+
+    private static final String DIFFERENCES = "differencesKey";
+    private static final String COMPARING = "comparingKey";
+    private static final String CANCELLED = "searchCancelledKey";
+    private static final String PREVIOUS = "previousDifferenceKey";
+    private static final String NEXT = "nextDifferenceKey";
+    private static final String CANCEL = "cancelLoadingKey";
+    private static final String CLOSE = "closeResultsKey";
+
+    /** Characters of a line that are shown, the rest is cut off */
+    private static final int MAX_LINE = 1000;
+    /** Background of lines that are only on the left */
+    private static final Color REMOVED = new Color(255, 220, 220);
+    /** Background of lines that are only on the right */
+    private static final Color INSERTED = new Color(220, 255, 220);
+    /** Background of rows that pad the shorter side of a change */
+    private static final Color PADDING = new Color(235, 235, 235);
+
+    private final ILocalizationProvider provider;
+    /** Titles of the compared documents */
+    private final String leftTitle;
+    private final String rightTitle;
+    /** Compared texts */
+    private final TextSnapshot left;
+    private final TextSnapshot right;
+    /** Lines of the compared texts, <code>null</code> until they are hashed */
+    private volatile LineHashes leftLines;
+    private volatile LineHashes rightLines;
+    /** Rows of both sides, empty until the texts are compared */
+    private Rows rows = new Rows(null, null, new EditScript());
+    private final SideModel leftModel = new SideModel(true);
+    private final SideModel rightModel = new SideModel(false);
+    private final JList<Line> leftList = new JList<>(leftModel);
+    private final JList<Line> rightList = new JList<>(rightModel);
+    private final JComboBox<DiffAlgorithm> algorithm = new JComboBox<>(DiffAlgorithm.values());
+    private final JLabel status = new JLabel(" ");
+    private final Action cancelAction;
+    /** Translates the status when the language changes, lives as long as the panel */
+    private final ILocalizationListener statusTranslator = this::updateStatus;
+    /** Compares the texts, <code>null</code> if they aren't being compared */
+    private SwingWorker<EditScript, Void> worker;
+    /** <code>true</code> if the last comparison was cancelled */
+    private boolean cancelled;
+
+    /**
+     * Creates a new panel and starts comparing the documents.
+     *
+     * @param provider localization provider
+     * @param left document shown on the left
+     * @param right document shown on the right
+     * @param onClose removes the panel when it is closed
+     */
+    @SuppressWarnings("serial")
+    ComparePanel(final ILocalizationProvider provider, final JNotepadFile left, final JNotepadFile right,
+            final Consumer<ComparePanel> onClose) {
+        super(new BorderLayout());
+        this.provider = provider;
+        leftTitle = left.getTitle();
+        rightTitle = right.getTitle();
+        this.left = left.getDocument().snapshot();
+        this.right = right.getDocument().snapshot();
+
+        setUpList(leftList);
+        setUpList(rightList);
+        rightList.setSelectionModel(leftList.getSelectionModel());
+        final JScrollPane leftScroll = new JScrollPane(leftList);
+        final JScrollPane rightScroll = new JScrollPane(rightList);
+        rightScroll.getVerticalScrollBar().setModel(leftScroll.getVerticalScrollBar().getModel());
+        final JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, leftScroll, rightScroll);
+        split.setResizeWeight(0.5);
+
+        algorithm.addActionListener(e -> compare());
+        cancelAction = new LocalizableAction(CANCEL, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                cancel();
+            }
+        };
+        final JPanel buttons = new JPanel(new FlowLayout(FlowLayout.TRAILING, 5, 0));
+        buttons.add(algorithm);
+        buttons.add(new JButton(new LocalizableAction(PREVIOUS, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                goToDifference(false);
+            }
+        }));
+        buttons.add(new JButton(new LocalizableAction(NEXT, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                goToDifference(true);
+            }
+        }));
+        buttons.add(new JButton(cancelAction));
+        buttons.add(new JButton(new LocalizableAction(CLOSE, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                cancel();
+                onClose.accept(ComparePanel.this);
+            }
+        }));
+
+        final JPanel top = new JPanel(new BorderLayout());
+        top.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 0));
+        top.add(status, BorderLayout.CENTER);
+        top.add(buttons, BorderLayout.LINE_END);
+        add(top, BorderLayout.PAGE_START);
+        add(split, BorderLayout.CENTER);
+
+        provider.addLocalizationListener(statusTranslator);
+        compare();
+    }
+
+    /**
+     * @return title of the panel's tab
+     */
+    String getTitle() {
+        return leftTitle + " ↔ " + rightTitle;
+    }
+
+    /**
+     * Stops comparing, the rows that were shown stay.
+     */
+    void cancel() {
+        if (worker != null) {
+            worker.cancel(false);
+        }
+    }
+
+    /**
+     * Starts comparing the texts with the selected algorithm, cancelling the comparison that is running. The lines
+     * are hashed only the first time.
+     */
+    private void compare() {
+        cancel();
+        final DiffAlgorithm chosen = (DiffAlgorithm) algorithm.getSelectedItem();
+        worker = new SwingWorker<EditScript, Void>() {
+            @Override
+            protected EditScript doInBackground() {
+                LineHashes a = leftLines;
+                LineHashes b = rightLines;
+                if (a == null || b == null) {
+                    a = LineHashes.of(left, this::isCancelled);
+                    b = LineHashes.of(right, this::isCancelled);
+                    leftLines = a;
+                    rightLines = b;
+                }
+                return chosen.diff(a, b, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                if (worker != this) {
+                    return; // replaced by a comparison with another algorithm
+                }
+                worker = null;
+                try {
+                    show(get());
+                } catch (InterruptedException | ExecutionException | CancellationException e) {
+                    cancelled = true; // while hashing or comparing
+                }
+                cancelAction.setEnabled(false);
+                updateStatus();
+            }
+        };
+        cancelled = false;
+        cancelAction.setEnabled(true);
+        updateStatus();
+        worker.execute();
+    }
+
+    /**
+     * Shows the rows of a new diff.
+     */
+    private void show(final EditScript script) {
+        rows = new Rows(leftLines, rightLines, script);
+        leftList.clearSelection();
+        leftModel.changed();
+        rightModel.changed();
+        setCellWidth(leftList, longestLine(leftLines));
+        setCellWidth(rightList, longestLine(rightLines));
+    }
+
+    /**
+     * Selects the first row of the next or the previous change, counting from the selected or the first visible row.
+     *
+     * @param next <code>true</code> for the next change
+     */
+    private void goToDifference(final boolean next) {
+        final int current = leftList.isSelectionEmpty() ? leftList.getFirstVisibleIndex() : leftList
+                .getSelectedIndex();
+        final int row = next ? rows.nextChange(current) : rows.previousChange(current);
+        if (row != -1) {
+            leftList.setSelectedIndex(row);
+            leftList.ensureIndexIsVisible(row);
+        }
+    }
+
+    private void updateStatus() {
+        final StringBuilder text = new StringBuilder();
+        text.append(leftTitle).append(" ↔ ").append(rightTitle).append("  |  ");
+        text.append(provider.getString(DIFFERENCES)).append(' ').append(rows.script.size());
+        if (worker != null) {
+            text.append("  |  ").append(provider.getString(COMPARING));
+        } else if (cancelled) {
+            text.append("  |  ").append(provider.getString(CANCELLED));
+        }
+        status.setText(text.toString());
+    }
+
+    private void setUpList(final JList<Line> list) {
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, list.getFont().getSize()));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new LineRenderer());
+        final FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight()); // the list doesn't have to measure every line
+        list.setFixedCellWidth(1);
+    }
+
+    /**
+     * Makes the rows of a list wide enough for a line of the given length.
+     */
+    private static void setCellWidth(final JList<Line> list, final int length) {
+        final FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellWidth(metrics.charWidth('m') * (Math.min(length, MAX_LINE) + 9) + 10);
+    }
+
+    /**
+     * @return number of characters of the longest line, with its newline
+     */
+    private static int longestLine(final LineHashes lines) {
+        int longest = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            longest = Math.max(longest, lines.start(i + 1) - lines.start(i));
+        }
+        return longest;
+    }
+
+    /**
+     * Reads the text of a line, without its line separator and with tabs expanded.
+     */
+    private static String text(final TextSnapshot snapshot, final LineHashes lines, final int line) {
+        final int start = lines.start(line);
+        int end = Math.min(lines.start(line + 1), start + MAX_LINE);
+        final char[] chars = new char[end - start];
+        snapshot.copyChars(start, chars.length, chars, 0);
+        while (end > start && (chars[end - start - 1] == '\n' || chars[end - start - 1] == '\r')) {
+            end--;
+        }
+        return new String(chars, 0, end - start).replace("\t", "    ");
+    }
+
+    /**
+     * Rows of both sides, found from the hunks of a diff. Rows before a hunk show common lines, and a hunk takes as
+     * many rows as the longer of its sides.
+     */
+    private static final class Rows {
+
+        /** Lines of both texts, <code>null</code> if nothing was compared */
+        private final LineHashes leftLines;
+        private final LineHashes rightLines;
+        private final EditScript script;
+        /** First row of every hunk */
+        private final int[] hunkRows;
+        /** Number of rows */
+        private final int size;
+
+        private Rows(final LineHashes leftLines, final LineHashes rightLines, final EditScript script) {
+            this.leftLines = leftLines;
+            this.rightLines = rightLines;
+            this.script = script;
+            hunkRows = new int[script.size()];
+            int extra = 0; // rows that pad the left side
+            for (int i = 0; i < script.size(); i++) {
+                hunkRows[i] = script.aStart(i) + extra;
+                extra += Math.max(0, script.bEnd(i) - script.bStart(i) - (script.aEnd(i) - script.aStart(i)));
+            }
+            size = leftLines == null ? 0 : leftLines.size() + extra;
+        }
+
+        /**
+         * Returns the line shown on one side of a row.
+         *
+         * @param row the row
+         * @param leftSide <code>true</code> for the left side
+         * @return the line, or -1 if the row pads that side
+         */
+        private int lineAt(final int row, final boolean leftSide) {
+            final int hunk = hunkAt(row);
+            if (hunk == -1) {
+                return row;
+            }
+            final int start = leftSide ? script.aStart(hunk) : script.bStart(hunk);
+            final int end = leftSide ? script.aEnd(hunk) : script.bEnd(hunk);
+            final int offset = row - hunkRows[hunk];
+            if (offset < rowsOf(hunk)) {
+                return offset < end - start ? start + offset : -1;
+            }
+            return end + offset - rowsOf(hunk);
+        }
+
+        /**
+         * @return <code>true</code> if the row is a part of a change
+         */
+        private boolean isChanged(final int row) {
+            final int hunk = hunkAt(row);
+            return hunk != -1 && row - hunkRows[hunk] < rowsOf(hunk);
+        }
+
+        /**
+         * @return first row of the first change after the given row, -1 if there is none
+         */
+        private int nextChange(final int row) {
+            final int hunk = hunkAt(row) + 1;
+            return hunk < hunkRows.length ? hunkRows[hunk] : -1;
+        }
+
+        /**
+         * @return first row of the last change before the given row, -1 if there is none
+         */
+        private int previousChange(final int row) {
+            int hunk = hunkAt(row);
+            if (hunk != -1 && hunkRows[hunk] >= row) {
+                hunk--;
+            }
+            return hunk == -1 ? -1 : hunkRows[hunk];
+        }
+
+        /**
+         * @return last hunk that starts at or before the row, -1 if there is none
+         */
+        private int hunkAt(final int row) {
+            int low = 0;
+            int high = hunkRows.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (hunkRows[mid] <= row) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        /**
+         * @return number of rows of a hunk
+         */
+        private int rowsOf(final int hunk) {
+            return Math.max(script.aEnd(hunk) - script.aStart(hunk), script.bEnd(hunk) - script.bStart(hunk));
+        }
+
+    }
+
+    /**
+     * A line shown in a row of one side.
+     */
+    private static final class Line {
+
+        /** Index of the line, -1 for a row that pads the side */
+        private final int number;
+        private final String text;
+        /** <code>true</code> if the line is a part of a change */
+        private final boolean changed;
+        private final boolean leftSide;
+
+        private Line(final int number, final String text, final boolean changed, final boolean leftSide) {
+            this.number = number;
+            this.text = text;
+            this.changed = changed;
+            this.leftSide = leftSide;
+        }
+
+    }
+
+    /**
+     * Lines of one side, read from the snapshot when a row is painted.
+     */
+    private final class SideModel extends AbstractListModel<Line> {
+
+        private static final long serialVersionUID = -3829571039485720615L;
+
+        private final boolean leftSide;
+
+        private SideModel(final boolean leftSide) {
+            this.leftSide = leftSide;
+        }
+
+        private void changed() {
+            fireContentsChanged(this, 0, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int getSize() {
+            return rows.size;
+        }
+
+        @Override
+        public Line getElementAt(final int index) {
+            final int line = rows.lineAt(index, leftSide);
+            if (line == -1) {
+                return new Line(-1, "", true, leftSide);
+            }
+            final String text = leftSide ? text(left, rows.leftLines, line) : text(right, rows.rightLines, line);
+            return new Line(line, text, rows.isChanged(index), leftSide);
+        }
+
+    }
+
+    /**
+     * Shows a line with its number, and colors the rows of changes.
+     */
+    private static final class LineRenderer extends DefaultListCellRenderer {
+
+        private static final long serialVersionUID = 2176043569103281944L;
+
+        @Override
+        public Component getListCellRendererComponent(final JList<?> list, final Object value, final int index,
+                final boolean isSelected, final boolean cellHasFocus) {
+            final Line line = (Line) value;
+            final String number = line.number == -1 ? "" : Integer.toString(line.number + 1);
+            final StringBuilder text = new StringBuilder(number.length() + line.text.length() + 8);
+            for (int i = number.length(); i < 7; i++) {
+                text.append(' ');
+            }
+            text.append(number).append("  ").append(line.text);
+            super.getListCellRendererComponent(list, text.toString(), index, isSelected, cellHasFocus);
+            if (!isSelected && line.changed) {
+                setBackground(line.number == -1 ? PADDING : line.leftSide ? REMOVED : INSERTED);
+            }
+            return this;
+        }
+
+    }
+
+}
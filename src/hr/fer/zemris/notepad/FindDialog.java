@@ -0,0 +1,408 @@
+package hr.fer.zemris.notepad;
+
+import hr.fer.zemris.local.ILocalizationListener;
+import hr.fer.zemris.local.ILocalizationProvider;
+import hr.fer.zemris.local.swing.LJFileChooser;
+import hr.fer.zemris.local.swing.LJLabel;
+import hr.fer.zemris.local.swing.LocalizableAction;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.ReplaceBatch;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+import hr.fer.zemris.notepad.search.MatchListener;
+import hr.fer.zemris.notepad.search.SearchEngine;
+import hr.fer.zemris.notepad.search.SearchQuery;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.WindowConstants;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Dialog that finds and replaces text in the current document. Searching runs on a background thread over a snapshot
+ * of the document, so the document is never copied and stays editable, and replace all changes the document in a
+ * single edit that is undone in one step. Find in files searches a whole directory, and its results are shown by a
+ * {@link SearchResultsPanel}.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+class FindDialog extends JDialog {
+
+    private static final long serialVersionUID = 2071938408533418337L;
+
+    // keys used by the localization provider
+
+    private static final String TITLE = "findActionKey";
+    private static final String FIND_LABEL = "findLabelKey";
+    private static final String REPLACE_LABEL = "replaceLabelKey";
+    private static final String REGEX = "regexKey";
+    private static final String MATCH_CASE = "matchCaseKey";
+    private static final String FIND_NEXT = "findNextKey";
+    private static final String REPLACE = "replaceKey";
+    private static final String REPLACE_ALL = "replaceAllKey";
+    private static final String FIND_IN_FILES = "findInFilesKey";
+    private static final String CHOOSE_DIRECTORY = "chooseDirectoryKey";
+    private static final String NOT_FOUND = "notFoundKey";
+    private static final String REPLACED = "replacedKey";
+    private static final String INVALID_PATTERN = "invalidPatternKey";
+    private static final String SEARCH_FAILED = "searchFailedKey";
+
+    /** How many matches are found between two progress updates of replace all */
+    private static final int PROGRESS_STEP = 1 << 16;
+
+    private final ILocalizationProvider provider;
+    /** Gives the document that is searched */
+    private final Supplier<JNotepadFile> currentFile;
+    /** Searches the files of a directory */
+    private final BiConsumer<Path, SearchQuery> findInFiles;
+
+    private final JTextField findField = new JTextField(24);
+    private final JTextField replaceField = new JTextField(24);
+    private final JCheckBox regexBox;
+    private final JCheckBox matchCaseBox;
+    private final JLabel status = new JLabel(" ");
+
+    /** Search that is running, <code>null</code> if there is none */
+    private SwingWorker<?, ?> worker;
+    /** Translates the title, the provider only references it weakly */
+    private final ILocalizationListener titleTranslator;
+    /** Chooser of the directory for find in files, created when it is first needed */
+    private JFileChooser directoryChooser;
+
+    /**
+     * Creates a new hidden dialog.
+     *
+     * @param owner frame that owns the dialog
+     * @param provider localization provider
+     * @param currentFile gives the document that is searched, or <code>null</code> if there is none
+     * @param findInFiles searches the files of the chosen directory
+     */
+    public FindDialog(final JFrame owner, final ILocalizationProvider provider,
+            final Supplier<JNotepadFile> currentFile, final BiConsumer<Path, SearchQuery> findInFiles) {
+        super(owner, false);
+        this.provider = provider;
+        this.currentFile = currentFile;
+        this.findInFiles = findInFiles;
+        regexBox = new JCheckBox(optionAction(REGEX));
+        matchCaseBox = new JCheckBox(optionAction(MATCH_CASE));
+
+        setTitle(provider.getString(TITLE));
+        titleTranslator = () -> setTitle(provider.getString(TITLE));
+        provider.addLocalizationListener(titleTranslator);
+        setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
+        initGUI();
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    @SuppressWarnings("serial")
+    private void initGUI() {
+        final JPanel fields = new JPanel(new GridLayout(2, 2, 5, 5));
+        fields.add(new LJLabel(FIND_LABEL, provider));
+        fields.add(findField);
+        fields.add(new LJLabel(REPLACE_LABEL, provider));
+        fields.add(replaceField);
+
+        final JPanel options = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        options.add(regexBox);
+        options.add(matchCaseBox);
+
+        final JPanel buttons = new JPanel(new GridLayout(4, 1, 5, 5));
+        final JButton findButton = new JButton(new LocalizableAction(FIND_NEXT, provider) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findNext();
+            }
+        });
+        buttons.add(findButton);
+        buttons.add(new JButton(new LocalizableAction(REPLACE, provider) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                replace();
+            }
+        }));
+        buttons.add(new JButton(new LocalizableAction(REPLACE_ALL, provider) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                replaceAll();
+            }
+        }));
+        buttons.add(new JButton(new LocalizableAction(FIND_IN_FILES, provider) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findInFiles();
+            }
+        }));
+        getRootPane().setDefaultButton(findButton);
+
+        final JPanel center = new JPanel(new BorderLayout());
+        center.add(fields, BorderLayout.PAGE_START);
+        center.add(options, BorderLayout.CENTER);
+
+        final JPanel panel = new JPanel(new BorderLayout(10, 5));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(center, BorderLayout.CENTER);
+        panel.add(buttons, BorderLayout.LINE_END);
+        panel.add(status, BorderLayout.PAGE_END);
+        getContentPane().add(panel);
+    }
+
+    /**
+     * Shows the dialog with the selection of the current document as the searched text, if it is a single line.
+     */
+    public void open() {
+        final JNotepadFile file = currentFile.get();
+        if (file != null) {
+            final String selected = file.getTextArea().getSelectedText();
+            if (selected != null && selected.indexOf('\n') == -1) {
+                findField.setText(selected);
+            }
+        }
+        status.setText(" ");
+        setVisible(true);
+        findField.requestFocusInWindow();
+        findField.selectAll();
+    }
+
+    /**
+     * Creates an action of a check box, which only has a localized name.
+     */
+    @SuppressWarnings("serial")
+    private Action optionAction(final String key) {
+        return new LocalizableAction(key, provider) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // the check box keeps its state
+            }
+        };
+    }
+
+    /**
+     * Creates the query from the fields, or shows why it can't be created.
+     *
+     * @return query, or <code>null</code> if there is nothing to search for
+     */
+    private SearchQuery query() {
+        if (findField.getText().isEmpty()) {
+            return null;
+        }
+        try {
+            return new SearchQuery(findField.getText(), regexBox.isSelected(), matchCaseBox.isSelected());
+        } catch (IllegalArgumentException e) {
+            status.setText(provider.getString(INVALID_PATTERN));
+            return null;
+        }
+    }
+
+    /**
+     * @return current document, or <code>null</code> if it can't be searched now
+     */
+    private JNotepadFile searchedFile() {
+        final JNotepadFile file = currentFile.get();
+        return file == null || file.isLoading() ? null : file;
+    }
+
+    /**
+     * Stops the running search and remembers the new one.
+     */
+    private void start(final SwingWorker<?, ?> newWorker) {
+        if (worker != null) {
+            worker.cancel(false);
+        }
+        worker = newWorker;
+        status.setText(" ");
+        newWorker.execute();
+    }
+
+    /**
+     * Replaces the selection if it is a match and selects the next match. Nothing is replaced in a read-only document.
+     */
+    private void replace() {
+        final JNotepadFile file = searchedFile();
+        final SearchQuery query = query();
+        if (file == null || query == null) {
+            return;
+        }
+        final JTextArea textArea = file.getTextArea();
+        if (!textArea.isEditable()) {
+            return;
+        }
+        final int start = textArea.getSelectionStart();
+        final int end = textArea.getSelectionEnd();
+        try {
+            final String replacement = SearchEngine.replacement(file.getDocument().snapshot(), query, start, end,
+                    replaceField.getText());
+            if (replacement != null) {
+                file.getDocument().replace(start, end - start, replacement, null);
+            }
+        } catch (IllegalArgumentException e) {
+            status.setText(provider.getString(INVALID_PATTERN));
+            return;
+        } catch (BadLocationException e) {
+            status.setText(provider.getString(SEARCH_FAILED));
+            return;
+        }
+        findNext();
+    }
+
+    /**
+     * Selects the first match after the selection, continuing from the start of the document if there is none.
+     */
+    private void findNext() {
+        final JNotepadFile file = searchedFile();
+        final SearchQuery query = query();
+        if (file == null || query == null) {
+            return;
+        }
+        final PieceDocument document = file.getDocument();
+        final TextSnapshot snapshot = document.snapshot();
+        final int from = file.getTextArea().getSelectionEnd();
+
+        start(new SwingWorker<int[], Void>() {
+            @Override
+            protected int[] doInBackground() {
+                final int[] match = { -1, -1 };
+                final MatchListener first = (start, end) -> {
+                    if (start == from && end == from) {
+                        return true; // an empty match at the caret would be found forever
+                    }
+                    match[0] = start;
+                    match[1] = end;
+                    return false;
+                };
+                if (SearchEngine.find(snapshot, query, from, snapshot.length(), first)) {
+                    SearchEngine.find(snapshot, query, 0, snapshot.length(), first);
+                }
+                return match[0] == -1 ? null : match;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                final int[] match = result(this);
+                if (match == null) {
+                    status.setText(provider.getString(NOT_FOUND));
+                } else if (match[1] <= document.getLength()) {
+                    final JTextArea textArea = file.getTextArea();
+                    textArea.select(match[0], match[1]);
+                    textArea.getCaret().setSelectionVisible(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces all matches in the current document. Nothing is replaced in a read-only document.
+     */
+    private void replaceAll() {
+        final JNotepadFile file = searchedFile();
+        final SearchQuery query = query();
+        if (file == null || query == null || !file.getTextArea().isEditable()) {
+            return;
+        }
+        final PieceDocument document = file.getDocument();
+        final TextSnapshot snapshot = document.snapshot();
+        final String replacement = replaceField.getText();
+
+        start(new SwingWorker<ReplaceBatch, Integer>() {
+            private int found;
+
+            @Override
+            protected ReplaceBatch doInBackground() {
+                return SearchEngine.replaceAll(snapshot, query, replacement, (start, end) -> {
+                    if (++found % PROGRESS_STEP == 0) {
+                        publish(found);
+                    }
+                    return !isCancelled();
+                });
+            }
+
+            @Override
+            protected void process(final List<Integer> chunks) {
+                status.setText(provider.getString(REPLACED) + " " + chunks.get(chunks.size() - 1) + "...");
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                final ReplaceBatch batch = result(this);
+                if (batch == null || !file.getTextArea().isEditable()) {
+                    return; // the document became read-only during the search
+                }
+                if (!document.replace(batch)) {
+                    replaceAll(); // the document was edited during the search
+                    return;
+                }
+                status.setText(provider.getString(REPLACED) + " " + batch.size());
+            }
+        });
+    }
+
+    /**
+     * Asks for a directory and searches its files, starting in the directory of the current document.
+     */
+    private void findInFiles() {
+        final SearchQuery query = query();
+        if (query == null) {
+            return;
+        }
+        if (directoryChooser == null) {
+            directoryChooser = new LJFileChooser(CHOOSE_DIRECTORY, provider);
+            directoryChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        }
+        final JFileChooser fc = directoryChooser;
+        final JNotepadFile file = currentFile.get();
+        if (file != null && file.getFilePath() != null && file.getFilePath().getParent() != null) {
+            fc.setCurrentDirectory(file.getFilePath().getParent().toFile());
+        }
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        status.setText(" ");
+        findInFiles.accept(fc.getSelectedFile().toPath(), query);
+    }
+
+    /**
+     * Returns the result of a finished search, or shows why it failed.
+     */
+    private <T> T result(final SwingWorker<T, ?> finished) {
+        try {
+            return finished.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                status.setText(provider.getString(INVALID_PATTERN)); // replacement refers to a missing group
+            } else {
+                status.setText(provider.getString(SEARCH_FAILED));
+            }
+        } catch (InterruptedException | CancellationException e) {
+            // nothing was found
+        }
+        return null;
+    }
+
+}
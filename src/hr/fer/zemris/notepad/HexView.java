@@ -0,0 +1,501 @@
+package hr.fer.zemris.notepad;
+
+import hr.fer.zemris.local.ILocalizationListener;
+import hr.fer.zemris.local.ILocalizationProvider;
+import hr.fer.zemris.local.swing.LJLabel;
+import hr.fer.zemris.local.swing.LocalizableAction;
+import hr.fer.zemris.notepad.io.MappedBytes;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+
+/**
+ * Shows the bytes of a file as rows of {@value #BYTES_PER_ROW} bytes: the offset of the row, the bytes in hex and the
+ * bytes as ASCII characters. The file is {@link MappedBytes memory-mapped}, and only the rows that are painted are
+ * read and formatted, so a file of any size opens at once and takes the same heap.
+ * <p>
+ * The rows aren't laid out in a scroll pane, whose pixel coordinates are <code>int</code>s and run out at a few
+ * hundred megabytes. The view paints the rows from its top row on, and a scroll bar moves the top row. If there are
+ * more rows than a scroll bar can count, one step of the scroll bar moves several rows.
+ * <p>
+ * The view can jump to an offset, given in decimal or in hex with a <code>0x</code> prefix, and find a byte pattern,
+ * given as hex pairs or as text that is searched for in UTF-8. Patterns are searched for on a background thread, a
+ * page of the file at a time, from the selected byte on and then from the start of the file.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+class HexView extends JPanel {
+
+    private static final long serialVersionUID = -3526119573209648741L;
+
+    // keys used by the localization provider
+
+    private static final String OFFSET_LABEL = "hexOffsetKey";
+    private static final String FIND_LABEL = "hexFindKey";
+    private static final String SIZE = "hexSizeKey";
+    private static final String INVALID_OFFSET = "invalidOffsetKey";
+    private static final String FIND_NEXT = "findNextKey";
+    private static final String NOT_FOUND = "notFoundKey";
+    private static final String SEARCHING = "searchingKey";
+    private static final String CANCELLED = "searchCancelledKey";
+    private static final String CANCEL = "cancelLoadingKey";
+
+    /** Bytes shown in one row */
+    private static final int BYTES_PER_ROW = 16;
+    /** Largest maximum of the scroll bar */
+    private static final long MAX_SCROLL = 1L << 30;
+    /** Rows moved by one notch of the mouse wheel */
+    private static final int WHEEL_ROWS = 3;
+    /** Hex digits */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /** A pattern given as hex pairs, which may be separated by spaces */
+    private static final Pattern HEX_PAIRS = Pattern.compile("(\\s*[0-9A-Fa-f]{2})+\\s*");
+    /** Background of selected bytes */
+    private static final Color SELECTION = new Color(184, 207, 229);
+
+    private final ILocalizationProvider provider;
+    private final Path path;
+    /** Bytes of the file */
+    private MappedBytes bytes;
+    /** Number of rows */
+    private long rows;
+    /** Rows moved by one step of the scroll bar */
+    private long scale;
+    /** Hex digits of an offset */
+    private int digits;
+    /** First row that is shown */
+    private long top;
+    /** Selected bytes, <code>[selectionStart, selectionEnd)</code>, both -1 if none are selected */
+    private long selectionStart = -1;
+    private long selectionEnd = -1;
+    /** Key of the message shown in the status, <code>null</code> for none */
+    private String message;
+    /** <code>true</code> while the scroll bar is moved to the top row, so it doesn't move the top row back */
+    private boolean adjusting;
+
+    private final RowPainter painter = new RowPainter();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JTextField offsetField = new JTextField(14);
+    private final JTextField patternField = new JTextField(24);
+    private final JLabel status = new JLabel(" ");
+    private final Action cancelAction;
+    /** Translates the status when the language changes, lives as long as the view */
+    private final ILocalizationListener statusTranslator = this::updateStatus;
+    /** Searches for a pattern, <code>null</code> if none is searched for */
+    private SwingWorker<Long, Void> search;
+
+    /**
+     * Maps a file and creates a view of its bytes.
+     *
+     * @param provider localization provider
+     * @param path shown file
+     * @throws IOException if the file can't be mapped
+     */
+    @SuppressWarnings("serial")
+    HexView(final ILocalizationProvider provider, final Path path) throws IOException {
+        super(new BorderLayout());
+        this.provider = provider;
+        this.path = path;
+        map();
+
+        offsetField.addActionListener(e -> goToOffset());
+        patternField.addActionListener(e -> findNext());
+        cancelAction = new LocalizableAction(CANCEL, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                if (search != null) {
+                    search.cancel(false);
+                }
+            }
+        };
+        cancelAction.setEnabled(false);
+        final JPanel fields = new JPanel(new FlowLayout(FlowLayout.TRAILING, 5, 0));
+        fields.add(new LJLabel(OFFSET_LABEL, provider));
+        fields.add(offsetField);
+        fields.add(new LJLabel(FIND_LABEL, provider));
+        fields.add(patternField);
+        fields.add(new JButton(new LocalizableAction(FIND_NEXT, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                findNext();
+            }
+        }));
+        fields.add(new JButton(cancelAction));
+
+        final JPanel header = new JPanel(new BorderLayout());
+        header.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 0));
+        header.add(status, BorderLayout.CENTER);
+        header.add(fields, BorderLayout.LINE_END);
+        add(header, BorderLayout.PAGE_START);
+        add(painter, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.LINE_END);
+
+        scrollBar.addAdjustmentListener(e -> {
+            if (!adjusting) {
+                setTop(scrollBar.getValue() * scale);
+            }
+        });
+        painter.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(final ComponentEvent e) {
+                setTop(top);
+            }
+        });
+        bindKey(KeyEvent.VK_UP, 0, "rowUp", () -> setTop(top - 1));
+        bindKey(KeyEvent.VK_DOWN, 0, "rowDown", () -> setTop(top + 1));
+        bindKey(KeyEvent.VK_PAGE_UP, 0, "pageUp", () -> setTop(top - visibleRows()));
+        bindKey(KeyEvent.VK_PAGE_DOWN, 0, "pageDown", () -> setTop(top + visibleRows()));
+        bindKey(KeyEvent.VK_HOME, KeyEvent.CTRL_DOWN_MASK, "start", () -> setTop(0));
+        bindKey(KeyEvent.VK_END, KeyEvent.CTRL_DOWN_MASK, "end", () -> setTop(rows));
+
+        provider.addLocalizationListener(statusTranslator);
+        setTop(0);
+        updateStatus();
+    }
+
+    /**
+     * Maps the file again after it was changed, the top row and the selection stay where they were if they are still
+     * in the file.
+     *
+     * @throws IOException if the file can't be mapped, the old mapping stays
+     */
+    void reload() throws IOException {
+        cancelSearch();
+        map();
+        if (selectionEnd > bytes.size()) {
+            selectionStart = -1;
+            selectionEnd = -1;
+        }
+        setTop(top);
+        updateStatus();
+        painter.repaint();
+    }
+
+    /**
+     * Stops the search that is running.
+     */
+    void cancelSearch() {
+        if (search != null) {
+            search.cancel(false);
+        }
+    }
+
+    private void map() throws IOException {
+        bytes = MappedBytes.map(path);
+        rows = (bytes.size() + BYTES_PER_ROW - 1) / BYTES_PER_ROW;
+        scale = Math.max(1, (rows + MAX_SCROLL - 1) / MAX_SCROLL);
+        digits = Math.max(8, (67 - Long.numberOfLeadingZeros(Math.max(1, bytes.size() - 1))) / 4);
+    }
+
+    @SuppressWarnings("serial")
+    private void bindKey(final int key, final int modifiers, final String name, final Runnable action) {
+        painter.getInputMap().put(KeyStroke.getKeyStroke(key, modifiers), name);
+        painter.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * @return number of rows that fit into the view, at least one
+     */
+    private int visibleRows() {
+        return Math.max(1, painter.getHeight() / painter.rowHeight());
+    }
+
+    /**
+     * Shows the rows from the given one on, as far as the last row can still be shown at the bottom.
+     */
+    private void setTop(final long row) {
+        top = Math.max(0, Math.min(row, rows - visibleRows()));
+        adjusting = true;
+        final int extent = (int) Math.max(1, visibleRows() / scale);
+        scrollBar.setValues((int) (top / scale), extent, 0, (int) Math.max(extent, (rows + scale - 1) / scale));
+        scrollBar.setBlockIncrement(extent);
+        adjusting = false;
+        painter.repaint();
+    }
+
+    /**
+     * Scrolls to the row of the offset unless it is shown already, and then shows it in the middle.
+     */
+    private void reveal(final long offset) {
+        final long row = offset / BYTES_PER_ROW;
+        if (row < top || row >= top + visibleRows()) {
+            setTop(row - visibleRows() / 2);
+        }
+    }
+
+    private void select(final long start, final long end) {
+        selectionStart = start;
+        selectionEnd = end;
+        message = null;
+        updateStatus();
+        painter.repaint();
+    }
+
+    /**
+     * Selects the byte at the offset in the offset field and scrolls to it.
+     */
+    private void goToOffset() {
+        final long offset = parseOffset(offsetField.getText().trim());
+        if (offset < 0 || offset >= bytes.size()) {
+            message = INVALID_OFFSET;
+            updateStatus();
+            return;
+        }
+        select(offset, offset + 1);
+        reveal(offset);
+        painter.requestFocusInWindow();
+    }
+
+    /**
+     * @return offset given in decimal or in hex with a <code>0x</code> prefix, -1 if the text isn't an offset
+     */
+    private static long parseOffset(final String text) {
+        try {
+            if (text.startsWith("0x") || text.startsWith("0X")) {
+                return Long.parseLong(text.substring(2), 16);
+            }
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return bytes of a pattern given as hex pairs, or of text in UTF-8
+     */
+    private static byte[] parsePattern(final String text) {
+        if (!HEX_PAIRS.matcher(text).matches()) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        final String hex = text.replaceAll("\\s", "");
+        final byte[] pattern = new byte[hex.length() / 2];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return pattern;
+    }
+
+    /**
+     * Starts searching for the pattern in the pattern field after the selected byte, or from the top row if nothing
+     * is selected. The search wraps around to the start of the file.
+     */
+    private void findNext() {
+        final byte[] pattern = parsePattern(patternField.getText());
+        if (pattern.length == 0 || search != null) {
+            return;
+        }
+        final MappedBytes searched = bytes;
+        final long from = selectionStart == -1 ? top * BYTES_PER_ROW : selectionStart + 1;
+        search = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() {
+                final long found = searched.indexOf(pattern, from, searched.size(), this::isCancelled);
+                return found != -1 ? found : searched.indexOf(pattern, 0, from, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                search = null;
+                cancelAction.setEnabled(false);
+                if (searched != bytes) {
+                    message = null; // the file was mapped again
+                    updateStatus();
+                    return;
+                }
+                try {
+                    final long found = get();
+                    if (found == -1) {
+                        message = NOT_FOUND;
+                        updateStatus();
+                    } else {
+                        select(found, found + pattern.length);
+                        reveal(found);
+                    }
+                } catch (InterruptedException | ExecutionException | CancellationException e) {
+                    message = CANCELLED;
+                    updateStatus();
+                }
+            }
+        };
+        message = SEARCHING;
+        cancelAction.setEnabled(true);
+        updateStatus();
+        search.execute();
+    }
+
+    private void updateStatus() {
+        final StringBuilder text = new StringBuilder();
+        text.append(path.getFileName()).append("  |  ");
+        text.append(provider.getString(SIZE)).append(' ').append(bytes.size());
+        if (selectionStart != -1) {
+            text.append("  |  0x").append(Long.toHexString(selectionStart).toUpperCase());
+            text.append(" (").append(selectionStart).append(')');
+            if (selectionEnd - selectionStart > 1) {
+                text.append(" + ").append(selectionEnd - selectionStart);
+            }
+        }
+        if (message != null) {
+            text.append("  |  ").append(provider.getString(message));
+        }
+        status.setText(text.toString());
+    }
+
+    /**
+     * Paints the rows from the top row on. A row is read from the mapped file and formatted into a reused array only
+     * when it is painted.
+     */
+    private final class RowPainter extends JComponent {
+
+        private static final long serialVersionUID = 2405632284960155157L;
+
+        /** Bytes of the painted row */
+        private final byte[] row = new byte[BYTES_PER_ROW];
+        /** Characters of the painted row */
+        private char[] line = new char[0];
+
+        private RowPainter() {
+            setFont(new Font(Font.MONOSPACED, Font.PLAIN, getFont() == null ? 12 : getFont().getSize()));
+            setOpaque(true);
+            setBackground(Color.WHITE);
+            setFocusable(true);
+            setPreferredSize(new Dimension(600, 400));
+            final MouseAdapter mouse = new MouseAdapter() {
+                @Override
+                public void mousePressed(final MouseEvent e) {
+                    requestFocusInWindow();
+                    final long offset = offsetAt(e.getX(), e.getY());
+                    if (offset != -1) {
+                        select(offset, offset + 1);
+                    }
+                }
+
+                @Override
+                public void mouseWheelMoved(final MouseWheelEvent e) {
+                    setTop(top + e.getWheelRotation() * WHEEL_ROWS);
+                }
+            };
+            addMouseListener(mouse);
+            addMouseWheelListener(mouse);
+        }
+
+        private int rowHeight() {
+            return Math.max(1, getFontMetrics(getFont()).getHeight());
+        }
+
+        /** @return column of the hex digits of a byte of the row */
+        private int hexColumn(final int index) {
+            return digits + 2 + 3 * index + (index >= BYTES_PER_ROW / 2 ? 1 : 0);
+        }
+
+        /** @return column of the character of a byte of the row */
+        private int textColumn(final int index) {
+            return hexColumn(BYTES_PER_ROW) + 1 + index;
+        }
+
+        /**
+         * @return offset of the byte shown at the point, -1 if there is none
+         */
+        private long offsetAt(final int x, final int y) {
+            final int column = (x - 4) / getFontMetrics(getFont()).charWidth('0');
+            int index = -1;
+            for (int i = 0; i < BYTES_PER_ROW; i++) {
+                if (column >= hexColumn(i) && column < hexColumn(i) + 2 || column == textColumn(i)) {
+                    index = i;
+                }
+            }
+            final long offset = (top + y / rowHeight()) * BYTES_PER_ROW + index;
+            return index == -1 || offset >= bytes.size() ? -1 : offset;
+        }
+
+        @Override
+        protected void paintComponent(final Graphics g) {
+            g.setColor(getBackground());
+            final Rectangle clip = g.getClipBounds();
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            final FontMetrics metrics = g.getFontMetrics(getFont());
+            final int height = rowHeight();
+            final int width = metrics.charWidth('0');
+            final int length = textColumn(BYTES_PER_ROW) + 1;
+            if (line.length != length) {
+                line = new char[length];
+            }
+            g.setFont(getFont());
+            for (int r = clip.y / height; r <= (clip.y + clip.height - 1) / height; r++) {
+                final long offset = (top + r) * BYTES_PER_ROW;
+                if (top + r >= rows) {
+                    break;
+                }
+                final int count = bytes.get(offset, row, 0, BYTES_PER_ROW);
+                format(offset, count);
+                final int y = r * height;
+                g.setColor(SELECTION);
+                for (int i = 0; i < count; i++) {
+                    if (offset + i >= selectionStart && offset + i < selectionEnd) {
+                        g.fillRect(4 + hexColumn(i) * width, y, 2 * width, height);
+                        g.fillRect(4 + textColumn(i) * width, y, width, height);
+                    }
+                }
+                g.setColor(getForeground());
+                g.drawChars(line, 0, length, 4, y + metrics.getAscent());
+            }
+        }
+
+        /**
+         * Formats the row of the given offset, with its bytes in {@link #row}, into {@link #line}.
+         */
+        private void format(final long offset, final int count) {
+            Arrays.fill(line, ' ');
+            for (int i = digits - 1, shift = 0; i >= 0; i--, shift += 4) {
+                line[i] = HEX[(int) (offset >>> shift) & 0xF];
+            }
+            line[textColumn(0) - 1] = '|';
+            for (int i = 0; i < count; i++) {
+                final int b = row[i] & 0xFF;
+                line[hexColumn(i)] = HEX[b >>> 4];
+                line[hexColumn(i) + 1] = HEX[b & 0xF];
+                line[textColumn(i)] = b >= 0x20 && b < 0x7F ? (char) b : '.';
+            }
+            line[textColumn(count)] = '|';
+        }
+
+    }
+
+}
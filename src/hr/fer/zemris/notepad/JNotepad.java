@@ -1,20 +1,37 @@
 package hr.fer.zemris.notepad;
 
 import hr.fer.zemris.local.FormLocalizationProvider;
+import hr.fer.zemris.local.ILocalizationListener;
 import hr.fer.zemris.local.ILocalizationProvider;
 import hr.fer.zemris.local.LocalizationProvider;
 import hr.fer.zemris.local.swing.LJFileChooser;
 import hr.fer.zemris.local.swing.LJMenu;
 import hr.fer.zemris.local.swing.LJToolBar;
 import hr.fer.zemris.local.swing.LocalizableAction;
+import hr.fer.zemris.notepad.batch.BatchCommand;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.journal.JournalRecovery;
+import hr.fer.zemris.notepad.journal.RecoveredDocument;
+import hr.fer.zemris.notepad.memory.MemoryBudget;
+import hr.fer.zemris.notepad.search.FileMatch;
+import hr.fer.zemris.notepad.search.SearchQuery;
+import hr.fer.zemris.notepad.transform.CaseMode;
+import hr.fer.zemris.notepad.transform.CaseTransform;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Action;
 import javax.swing.JButton;
@@ -24,12 +41,14 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
-import javax.swing.JScrollPane;
+import javax.swing.JPanel;
+import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.JToolBar;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.WindowConstants;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultEditorKit;
@@ -48,12 +67,34 @@ public class JNotepad extends JFrame {
     /** Title */
     private static final String TITLE = "Notepad++ v1.0";
 
-    /** List of opened files */
+    /** List of opened files, <code>null</code> for tabs of the session that weren't selected yet */
     private List<JNotepadFile> files;
+    /** Tabs of the session that weren't selected yet, by their placeholder components */
+    private final Map<Component, Session.Tab> placeholders = new HashMap<>();
+    /** <code>true</code> while the tabs of the session are added, so that the first one isn't loaded at once */
+    private boolean restoring;
+    /** <code>true</code> from the moment exit was chosen until it was cancelled */
+    private boolean exiting;
     /** Current opened fiel */
     private JNotepadFile currentFile;
     /** Tabs used in notepad */
     private JTabbedPane tabs;
+    /** Tabs with the results of find in files, hidden while there are none */
+    private JTabbedPane results;
+    /** Find and replace dialog, created when it is first needed */
+    private FindDialog findDialog;
+    /** Translates the titles of untitled tabs, kept here because the provider doesn't keep its listeners alive */
+    private final ILocalizationListener titleTranslator = () -> {
+        for (int i = 0, limit = tabs.getComponentCount(); i < limit; i++) {
+            if (files.get(i) != null) {
+                tabs.setTitleAt(i, files.get(i).getTitle());
+            }
+        }
+    };
+    /** File choosers by the keys of their titles, reused so they are created only once */
+    private final Map<String, JFileChooser> choosers = new HashMap<>();
+    /** Hibernates documents of tabs that weren't selected for a while when they take up too much memory */
+    private final MemoryBudget memory = new MemoryBudget(MemoryBudget.DEFAULT_BUDGET);
 
     /** Provides localization for this program. */
     private final ILocalizationProvider provider = new FormLocalizationProvider(LocalizationProvider.getInstance(), this);
@@ -63,11 +104,25 @@ public class JNotepad extends JFrame {
      */
     private JNotepad() {
         setTitle(TITLE);
-        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE); // the exit action disposes it
         setLocation(100, 100);
         setSize(600, 600);
 
         addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                StartupTimer.mark("first frame");
+                SwingUtilities.invokeLater(() -> {
+                    // everything queued while the window was opening is done
+                    StartupTimer.mark("interactive");
+                    StartupTimer.report();
+                });
+                Prewarm.start(SUPPORTED_LANGS, () -> {
+                    chooser(CHOOSE_FILE_OPEN);
+                    chooser(CHOOSE_FILE_SAVE);
+                });
+            }
+
             @Override
             public void windowClosing(WindowEvent e) {
                 exitAction.actionPerformed(null);
@@ -89,7 +144,167 @@ public class JNotepad extends JFrame {
         createMenus();
         createToolbar();
         createTabs();
-        newFileAction.actionPerformed(null); // create an empty tab
+        StartupTimer.mark("gui");
+        if (!restoreSession()) {
+            newFileAction.actionPerformed(null); // create an empty tab
+        }
+        recoverDocuments();
+        StartupTimer.mark("documents");
+    }
+
+    /**
+     * Returns the file chooser with the given title, creating it the first time. A chooser keeps its directory
+     * between uses.
+     * 
+     * @param key key of the title
+     * @return the file chooser
+     */
+    private JFileChooser chooser(final String key) {
+        JFileChooser fc = choosers.get(key);
+        if (fc == null) {
+            fc = new LJFileChooser(key, provider);
+            choosers.put(key, fc);
+        }
+        fc.setSelectedFile(null);
+        return fc;
+    }
+
+    /**
+     * Opens the tabs of the last session. Only the selected tab is loaded, the others get a placeholder and are
+     * loaded when they are first selected. Files that are already open are skipped.
+     * 
+     * @return <code>true</code> if any tab was opened
+     */
+    private boolean restoreSession() {
+        final Session session = Session.read();
+        final int first = files.size();
+        int selected = -1;
+        restoring = true;
+        for (int i = 0, limit = session.getTabs().size(); i < limit; i++) {
+            final Session.Tab tab = session.getTabs().get(i);
+            if (indexOf(tab.getPath()) != -1) {
+                continue;
+            }
+            if (i == session.getSelected()) {
+                selected = files.size();
+            }
+            final JPanel placeholder = new JPanel();
+            placeholders.put(placeholder, tab);
+            files.add(null);
+            tabs.addTab(tab.getPath().getFileName().toString(), placeholder);
+        }
+        restoring = false;
+        if (files.size() == first) {
+            return false;
+        }
+        final int index = selected == -1 ? first : selected;
+        if (tabs.getSelectedIndex() == index) {
+            tabSelected(); // selected when it was added
+        } else {
+            tabs.setSelectedIndex(index);
+        }
+        return true;
+    }
+
+    /**
+     * Makes the file of the selected tab current. A tab of the session is loaded, and a hibernated file restored.
+     */
+    private void tabSelected() {
+        final int selected = tabs.getSelectedIndex();
+        currentFile = (selected == -1 ? null : files.get(selected));
+        if (currentFile == null && selected != -1 && !restoring) {
+            currentFile = materialize(selected);
+        }
+        if (currentFile != null) {
+            memory.use(currentFile); // restores it if it was hibernated
+        }
+    }
+
+    /**
+     * Creates the file of a tab of the session and starts loading it, and replaces the placeholder with its
+     * component.
+     * 
+     * @param index index of the tab
+     * @return file of the tab
+     */
+    private JNotepadFile materialize(final int index) {
+        final Session.Tab tab = placeholders.remove(tabs.getComponentAt(index));
+        final JNotepadFile file = new JNotepadFile(provider, tab.getPath());
+        files.set(index, file);
+        tabs.setComponentAt(index, file.getComponent());
+        file.load(() -> closeTab(file));
+        file.setViewState(tab.getView()); // applied when loading ends
+        return file;
+    }
+
+    /**
+     * Writes the tabs of files into the session that is restored the next time the notepad starts.
+     */
+    private void saveSession() {
+        final List<Session.Tab> saved = new ArrayList<>();
+        int selected = 0;
+        for (int i = 0, limit = files.size(); i < limit; i++) {
+            final JNotepadFile file = files.get(i);
+            if (file == null) {
+                saved.add(placeholders.get(tabs.getComponentAt(i)));
+            } else if (file.getFilePath() != null) {
+                saved.add(new Session.Tab(file.getFilePath(), file.getViewState()));
+            } else {
+                continue;
+            }
+            if (i <= tabs.getSelectedIndex()) {
+                selected = saved.size() - 1;
+            }
+        }
+        try {
+            new Session(saved, selected).write();
+        } catch (IOException e) {
+            // the next start opens an empty tab
+        }
+    }
+
+    /**
+     * Rebuilds documents from the journals of a session that didn't end normally on a background thread, since that
+     * reads their files, and opens them once they are rebuilt. A recovered document replaces the tab of the session
+     * with the same file, unless that tab was edited meanwhile, and the empty tab opened when there was no session.
+     */
+    private void recoverDocuments() {
+        new SwingWorker<List<RecoveredDocument>, Void>() {
+            @Override
+            protected List<RecoveredDocument> doInBackground() {
+                return JournalRecovery.recoverAll();
+            }
+
+            @Override
+            protected void done() {
+                final List<RecoveredDocument> recovered;
+                try {
+                    recovered = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    return;
+                }
+                if (recovered.isEmpty() || !isDisplayable()) {
+                    return; // journals of a notepad that already exited are recovered the next time
+                }
+                final JNotepadFile empty = files.size() == 1 ? files.get(0) : null;
+                for (RecoveredDocument document : recovered) {
+                    if (document.getFilePath() != null) {
+                        final int index = indexOf(document.getFilePath());
+                        if (index != -1 && (files.get(index) == null || !files.get(index).isChanged())) {
+                            closeTab(index);
+                        }
+                    }
+                    final JNotepadFile file = new JNotepadFile(provider, document);
+                    files.add(file);
+                    openNewTab(file);
+                }
+                if (empty != null && empty.getFilePath() == null && !empty.isChanged()) {
+                    closeTab(empty);
+                }
+                JOptionPane.showMessageDialog(JNotepad.this, provider.getString(RECOVERED_MESSAGE), provider
+                        .getString(RECOVERED_TITLE), JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
     }
 
     /**
@@ -114,18 +329,29 @@ public class JNotepad extends JFrame {
         fileMenu.add(new JMenuItem(openFileAction));
         fileMenu.add(new JMenuItem(saveFileAction));
         fileMenu.add(new JMenuItem(saveAsFileAction));
+        fileMenu.add(new JMenuItem(followAction));
+        fileMenu.add(new JMenuItem(hexViewAction));
         fileMenu.addSeparator();
         fileMenu.add(new JMenuItem(closeFileAction));
         fileMenu.add(new JMenuItem(exitAction));
         menuBar.add(fileMenu);
 
         JMenu editMenu = new LJMenu(EDIT_MENU, provider);
+        editMenu.add(new JMenuItem(undoAction));
+        editMenu.add(new JMenuItem(redoAction));
+        editMenu.addSeparator();
         editMenu.add(new JMenuItem(copySelectedPartAction));
         editMenu.add(new JMenuItem(cutSelectedPartAction));
         editMenu.add(new JMenuItem(pasteSelectedPartAction));
         editMenu.add(new JMenuItem(deleteSelectedPartAction));
         editMenu.addSeparator();
         editMenu.add(new JMenuItem(toggleCaseAction));
+        editMenu.add(new JMenuItem(upperCaseAction));
+        editMenu.add(new JMenuItem(lowerCaseAction));
+        editMenu.add(new JMenuItem(titleCaseAction));
+        editMenu.addSeparator();
+        editMenu.add(new JMenuItem(findAction));
+        editMenu.add(new JMenuItem(compareAction));
         menuBar.add(editMenu);
 
         JMenu helpMenu = new LJMenu(HELP_MENU, provider);
@@ -155,20 +381,18 @@ public class JNotepad extends JFrame {
     }
 
     /**
-     * Creates localized tabs.
+     * Creates localized tabs, and below them the tabs with results of find in files.
      */
     private void createTabs() {
         tabs = new JTabbedPane();
-        tabs.addChangeListener(e -> {
-            final int selected = tabs.getSelectedIndex();
-            currentFile = (selected == -1 ? null : files.get(selected));
-        });
-        provider.addLocalizationListener(() -> {
-            for (int i = 0, limit = tabs.getComponentCount(); i < limit; i++) {
-                tabs.setTitleAt(i, files.get(i).getTitle());
-            }
-        });
-        getContentPane().add(tabs, BorderLayout.CENTER);
+        tabs.addChangeListener(e -> tabSelected());
+        provider.addLocalizationListener(titleTranslator);
+
+        results = new JTabbedPane();
+        results.setVisible(false);
+        final JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, tabs, results);
+        split.setResizeWeight(0.7);
+        getContentPane().add(split, BorderLayout.CENTER);
     }
 
     /**
@@ -194,6 +418,14 @@ public class JNotepad extends JFrame {
         closeFileAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_C);
         closeFileAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(CLOSE_FILE_ACTION_DESC));
 
+        followAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control T"));
+        followAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_F);
+        followAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(FOLLOW_ACTION_DESC));
+
+        hexViewAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control B"));
+        hexViewAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_B);
+        hexViewAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(HEX_VIEW_ACTION_DESC));
+
         exitAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("F3"));
         exitAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_T);
         exitAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(EXIT_ACTION_DESC));
@@ -203,6 +435,14 @@ public class JNotepad extends JFrame {
      * Creates actions availible in the Edit menu.
      */
     private void createEditActions() {
+        undoAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control Z"));
+        undoAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_N);
+        undoAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(UNDO_ACTION_DESC));
+
+        redoAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control Y"));
+        redoAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_R);
+        redoAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(REDO_ACTION_DESC));
+
         copySelectedPartAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control C"));
         copySelectedPartAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_C);
         copySelectedPartAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(COPY_ACTION_DESC));
@@ -217,6 +457,23 @@ public class JNotepad extends JFrame {
 
         deleteSelectedPartAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_D);
         deleteSelectedPartAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(DELETE_ACTION_DESC));
+
+        upperCaseAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_U);
+        upperCaseAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(UPPER_CASE_ACTION_DESC));
+
+        lowerCaseAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_L);
+        lowerCaseAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(LOWER_CASE_ACTION_DESC));
+
+        titleCaseAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_I);
+        titleCaseAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(TITLE_CASE_ACTION_DESC));
+
+        findAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control F"));
+        findAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_F);
+        findAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(FIND_ACTION_DESC));
+
+        compareAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control D"));
+        compareAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_M);
+        compareAction.putValue(Action.SHORT_DESCRIPTION, provider.getString(COMPARE_ACTION_DESC));
     }
 
     /**
@@ -267,19 +524,11 @@ public class JNotepad extends JFrame {
     private final Action openFileAction = new LocalizableAction(OPEN_FILE_ACTION, provider) {
         @Override
         public void actionPerformed(ActionEvent e) {
-            JFileChooser fc = new LJFileChooser(CHOOSE_FILE_OPEN, provider);
+            JFileChooser fc = chooser(CHOOSE_FILE_OPEN);
             if (fc.showOpenDialog(JNotepad.this) != JFileChooser.APPROVE_OPTION) {
                 return;
             }
-
-            JNotepadFile file = new JNotepadFile(provider, fc.getSelectedFile().toPath());
-            int index = files.indexOf(file);
-            if (index == -1) {
-                files.add(file);
-                openNewTab(file);
-            } else {
-                tabs.setSelectedIndex(index);
-            }
+            openFile(fc.getSelectedFile().toPath());
         }
     };
 
@@ -288,13 +537,14 @@ public class JNotepad extends JFrame {
         @Override
         public void actionPerformed(ActionEvent e) {
             if (currentFile.getFilePath() == null) {
-                JFileChooser fc = new LJFileChooser(CHOOSE_FILE_SAVE, provider);
+                JFileChooser fc = chooser(CHOOSE_FILE_SAVE);
                 if (fc.showSaveDialog(JNotepad.this) != JFileChooser.APPROVE_OPTION) {
                     JOptionPane.showMessageDialog(JNotepad.this, provider.getString(NOTHING_SAVED_TEXT), provider
                             .getString(NOTHING_SAVED_TITLE), JOptionPane.WARNING_MESSAGE);
                     return;
                 }
                 currentFile.setFilePath(fc.getSelectedFile().toPath());
+                tabs.setTitleAt(tabs.getSelectedIndex(), currentFile.getTitle());
             }
             currentFile.save();
         }
@@ -304,20 +554,43 @@ public class JNotepad extends JFrame {
     private final Action saveAsFileAction = new LocalizableAction(SAVEAS_FILE_ACTION, provider) {
         @Override
         public void actionPerformed(ActionEvent e) {
-            JFileChooser fc = new LJFileChooser(CHOOSE_FILE_SAVEAS, provider);
+            JFileChooser fc = chooser(CHOOSE_FILE_SAVEAS);
             if (fc.showSaveDialog(JNotepad.this) != JFileChooser.APPROVE_OPTION) {
                 JOptionPane.showMessageDialog(JNotepad.this, provider.getString(NOTHING_SAVED_TEXT), provider
                         .getString(NOTHING_SAVED_TITLE), JOptionPane.WARNING_MESSAGE);
                 return;
             }
 
-            JNotepadFile newFile = new JNotepadFile(provider, fc.getSelectedFile().toPath(), currentFile.getTextArea()
-                    .getText()); // it is the same as the active document, but with different path
+            currentFile.saveAs(fc.getSelectedFile().toPath()); // same document, but with different path
+            tabs.setTitleAt(tabs.getSelectedIndex(), currentFile.getTitle());
+        }
+    };
 
-            files.set(files.indexOf(currentFile), newFile);
-            currentFile = newFile;
-            newFile.save();
+    @SuppressWarnings("serial")
+    private final Action followAction = new LocalizableAction(FOLLOW_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (currentFile == null) {
+                return;
+            }
+            if (!currentFile.setFollowing(!currentFile.isFollowing())) {
+                JOptionPane.showMessageDialog(JNotepad.this, provider.getString(FOLLOW_UNAVAILABLE), provider
+                        .getString(FOLLOW_ACTION), JOptionPane.INFORMATION_MESSAGE);
+            }
+        }
+    };
 
+    @SuppressWarnings("serial")
+    private final Action hexViewAction = new LocalizableAction(HEX_VIEW_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (currentFile == null) {
+                return;
+            }
+            if (!currentFile.setShowingBytes(!currentFile.isShowingBytes())) {
+                JOptionPane.showMessageDialog(JNotepad.this, provider.getString(HEX_VIEW_UNAVAILABLE), provider
+                        .getString(HEX_VIEW_ACTION), JOptionPane.INFORMATION_MESSAGE);
+            }
         }
     };
 
@@ -332,8 +605,8 @@ public class JNotepad extends JFrame {
 
                 switch (answer) {
                     case JOptionPane.YES_OPTION:
-                        saveAsFileAction.actionPerformed(e);
-                        break;
+                        saveAndClose(currentFile);
+                        return;
                     case JOptionPane.NO_OPTION:
                         break;
                     default:
@@ -341,12 +614,7 @@ public class JNotepad extends JFrame {
                 }
             }
 
-            final int oldIndex = files.indexOf(currentFile);
-            final int newIndex = ((oldIndex + 1) % files.size());
-            currentFile = files.get(newIndex);
-            files.remove(oldIndex);
-            tabs.setSelectedIndex(newIndex);
-            tabs.remove(oldIndex);
+            closeTab(tabs.getSelectedIndex());
         }
     };
 
@@ -354,26 +622,10 @@ public class JNotepad extends JFrame {
     private final Action exitAction = new LocalizableAction(EXIT_ACTION, provider) {
         @Override
         public void actionPerformed(ActionEvent e) {
-
-            for (int i = 0, limit = files.size(); i < limit; i++) {
-                if (files.get(i).isChanged()) {
-                    tabs.setSelectedIndex(i);
-                    final int answer = JOptionPane.showConfirmDialog(JNotepad.this, provider
-                            .getString(SAVE_ON_CLOSE_TEXT), provider.getString(SAVE_ON_CLOSE_TITLE),
-                            JOptionPane.YES_NO_CANCEL_OPTION);
-
-                    switch (answer) {
-                        case JOptionPane.YES_OPTION:
-                            saveAsFileAction.actionPerformed(e);
-                        case JOptionPane.NO_OPTION:
-                            continue;
-                        default:
-                            return; // cancel was pressed
-                    }
-                }
+            if (!exiting) {
+                exiting = true;
+                exit(0);
             }
-
-            JNotepad.this.dispose(); // everything went well
         }
     };
 
@@ -381,6 +633,22 @@ public class JNotepad extends JFrame {
     // ....................................Edit Actions............................................
     // --------------------------------------------------------------------------------------------
 
+    @SuppressWarnings("serial")
+    private final Action undoAction = new LocalizableAction(UNDO_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            currentFile.undo();
+        }
+    };
+
+    @SuppressWarnings("serial")
+    private final Action redoAction = new LocalizableAction(REDO_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            currentFile.redo();
+        }
+    };
+
     @SuppressWarnings("serial")
     private final Action copySelectedPartAction = new LocalizableAction(COPY_ACTION, provider) {
         private final Action action = new DefaultEditorKit.CopyAction();
@@ -416,6 +684,7 @@ public class JNotepad extends JFrame {
         @Override
         public void actionPerformed(ActionEvent e) {
             final JTextArea editor = currentFile.getTextArea();
+            if (!editor.isEditable()) return; // still loading
             Document doc = editor.getDocument();
             int len = Math.abs(editor.getCaret().getDot() - editor.getCaret().getMark());
             if (len == 0) return;
@@ -428,6 +697,80 @@ public class JNotepad extends JFrame {
         }
     };
 
+    @SuppressWarnings("serial")
+    private final Action upperCaseAction = new LocalizableAction(UPPER_CASE_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            changeCase(CaseMode.UPPER);
+        }
+    };
+
+    @SuppressWarnings("serial")
+    private final Action lowerCaseAction = new LocalizableAction(LOWER_CASE_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            changeCase(CaseMode.LOWER);
+        }
+    };
+
+    @SuppressWarnings("serial")
+    private final Action titleCaseAction = new LocalizableAction(TITLE_CASE_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            changeCase(CaseMode.TITLE);
+        }
+    };
+
+    @SuppressWarnings("serial")
+    private final Action findAction = new LocalizableAction(FIND_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (findDialog == null) {
+                findDialog = new FindDialog(JNotepad.this, provider, () -> currentFile, JNotepad.this::findInFiles);
+            }
+            findDialog.open();
+        }
+    };
+
+    @SuppressWarnings("serial")
+    private final Action compareAction = new LocalizableAction(COMPARE_ACTION, provider) {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (currentFile == null) {
+                return;
+            }
+            final List<JNotepadFile> others = new ArrayList<>();
+            final List<String> titles = new ArrayList<>();
+            for (int i = 0, limit = files.size(); i < limit; i++) {
+                final JNotepadFile file = files.get(i);
+                if (file != null && file != currentFile) {
+                    others.add(file);
+                    titles.add((i + 1) + ": " + (file.getFilePath() == null ? file.getTitle() : file.getFilePath()));
+                }
+            }
+            if (others.isEmpty()) {
+                JOptionPane.showMessageDialog(JNotepad.this, provider.getString(NOTHING_TO_COMPARE), provider
+                        .getString(COMPARE_ACTION), JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            final Object chosen = JOptionPane.showInputDialog(JNotepad.this, provider.getString(COMPARE_WITH),
+                    provider.getString(COMPARE_ACTION), JOptionPane.QUESTION_MESSAGE, null, titles.toArray(),
+                    titles.get(0));
+            if (chosen == null) {
+                return;
+            }
+            final JNotepadFile other = others.get(titles.indexOf(chosen));
+            memory.use(other); // restores it if it was hibernated
+            if (currentFile.isLoading() || other.isLoading()) {
+                JOptionPane.showMessageDialog(JNotepad.this, provider.getString(COMPARE_LOADING), provider
+                        .getString(COMPARE_ACTION), JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            final ComparePanel panel = new ComparePanel(provider, currentFile, other, JNotepad.this::closeResults);
+            showResults(panel.getTitle(), panel, 0.3);
+        }
+    };
+
     // --------------------------------------------------------------------------------------------
     // ....................................Help Actions............................................
     // --------------------------------------------------------------------------------------------
@@ -474,36 +817,7 @@ public class JNotepad extends JFrame {
     private final Action toggleCaseAction = new LocalizableAction(TOGGLE_CASE_ACTION, provider) {
         @Override
         public void actionPerformed(ActionEvent e) {
-            final JTextArea editor = currentFile.getTextArea();
-            Document doc = editor.getDocument();
-            int len = Math.abs(editor.getCaret().getDot() - editor.getCaret().getMark());
-            int offset = 0;
-            if (len != 0) {
-                offset = Math.min(editor.getCaret().getDot(), editor.getCaret().getMark());
-            } else {
-                len = doc.getLength();
-            }
-            try {
-                String text = doc.getText(offset, len);
-                text = toggleCase(text);
-                doc.remove(offset, len);
-                doc.insertString(offset, text, null);
-            } catch (BadLocationException ex) {
-                ex.printStackTrace();
-            }
-        }
-
-        private String toggleCase(String text) {
-            char[] znakovi = text.toCharArray();
-            for (int i = 0; i < znakovi.length; i++) {
-                char c = znakovi[i];
-                if (Character.isLowerCase(c)) {
-                    znakovi[i] = Character.toUpperCase(c);
-                } else if (Character.isUpperCase(c)) {
-                    znakovi[i] = Character.toLowerCase(c);
-                }
-            }
-            return new String(znakovi);
+            changeCase(CaseMode.TOGGLE);
         }
     };
 
@@ -518,17 +832,248 @@ public class JNotepad extends JFrame {
      */
     private void openNewTab(JNotepadFile file) {
         currentFile = file;
-        tabs.addTab(currentFile.getTitle(), new JScrollPane(currentFile.getTextArea()));
+        tabs.addTab(currentFile.getTitle(), currentFile.getComponent());
         tabs.setSelectedComponent(tabs.getComponentAt(tabs.getTabCount() - 1));
     }
 
+    /**
+     * Changes the case of the selected text, or of the whole document if nothing is selected. Only the characters
+     * whose case changes are replaced, in a single edit that is undone in one step.
+     * 
+     * @param mode how the case is changed
+     */
+    private void changeCase(final CaseMode mode) {
+        final JTextArea editor = currentFile.getTextArea();
+        if (!editor.isEditable()) return; // still loading
+        final PieceDocument document = currentFile.getDocument();
+        final boolean selected = editor.getSelectionStart() != editor.getSelectionEnd();
+        final int start = selected ? editor.getSelectionStart() : 0;
+        final int end = selected ? editor.getSelectionEnd() : document.getLength();
+        final int length = document.getLength();
+        document.replace(CaseTransform.transform(document.snapshot(), start, end, mode));
+        if (selected) {
+            editor.select(start, end + document.getLength() - length); // some letters change their length
+        }
+    }
+
+    /**
+     * Opens the file in a new tab, or selects its tab if it is already open.
+     * 
+     * @param path path of the file
+     * @return opened file
+     */
+    private JNotepadFile openFile(final Path path) {
+        final int index = indexOf(path);
+        if (index != -1) {
+            tabs.setSelectedIndex(index); // loads it if it is a tab of the session
+            return files.get(index);
+        }
+        final JNotepadFile file = new JNotepadFile(provider, path);
+        files.add(file);
+        openNewTab(file);
+        file.load(() -> closeTab(file)); // the tab is shown while the file is being read
+        return file;
+    }
+
+    /**
+     * Searches the files of a directory and shows the results in a new tab below the documents.
+     * 
+     * @param root searched directory
+     * @param query what is searched for
+     */
+    private void findInFiles(final Path root, final SearchQuery query) {
+        final SearchResultsPanel panel = new SearchResultsPanel(provider, root, query, this::openMatch,
+                this::closeResults);
+        showResults(panel.getTitle(), panel, 0.7);
+    }
+
+    /**
+     * Adds a tab below the documents and selects it, showing the tabs below the documents if they were hidden.
+     * 
+     * @param title title of the tab
+     * @param panel content of the tab
+     * @param divider part of the height taken by the documents, if the tabs were hidden
+     */
+    private void showResults(final String title, final Component panel, final double divider) {
+        results.addTab(title, panel);
+        results.setSelectedComponent(panel);
+        if (!results.isVisible()) {
+            results.setVisible(true);
+            ((JSplitPane) results.getParent()).setDividerLocation(divider);
+        }
+    }
+
+    /**
+     * Opens the file of a find in files match and selects the matching line.
+     * 
+     * @param match chosen match
+     */
+    private void openMatch(final FileMatch match) {
+        openFile(match.getFile()).goToLine(match.getLine());
+    }
+
+    /**
+     * Removes a tab below the documents, and hides the tabs if it was the last one.
+     * 
+     * @param panel content of the tab
+     */
+    private void closeResults(final Component panel) {
+        results.remove(panel);
+        if (results.getTabCount() == 0) {
+            results.setVisible(false);
+            results.getParent().revalidate();
+        }
+    }
+
+    /**
+     * Closes the tab of the given file without asking anything.
+     * 
+     * @param file file whose tab is closed
+     */
+    private void closeTab(JNotepadFile file) {
+        final int index = files.indexOf(file);
+        if (index != -1) {
+            closeTab(index);
+        }
+    }
+
+    /**
+     * Asks where to save the given file and closes its tab once it was written. The tab stays open, with its text and
+     * its journal, if the user cancels, the file can't be written or it was edited while it was being written.
+     * 
+     * @param file file to save and close
+     */
+    private void saveAndClose(final JNotepadFile file) {
+        final JFileChooser fc = chooser(CHOOSE_FILE_SAVEAS);
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            JOptionPane.showMessageDialog(this, provider.getString(NOTHING_SAVED_TEXT), provider
+                    .getString(NOTHING_SAVED_TITLE), JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        file.saveAs(fc.getSelectedFile().toPath(), saved -> {
+            final int index = files.indexOf(file);
+            if (index == -1) {
+                return;
+            }
+            tabs.setTitleAt(index, file.getTitle());
+            if (saved && !file.isChanged()) {
+                closeTab(index);
+            }
+        });
+        tabs.setTitleAt(tabs.getSelectedIndex(), file.getTitle());
+    }
+
+    /**
+     * Asks whether to save every changed tab from the given index on, and exits once all of them are handled. A tab
+     * is written on a background thread, and the tabs after it are asked about only when it was written. If the user
+     * cancels, or a tab can't be written, nothing is closed, so every tab keeps its text and its journal.
+     * 
+     * @param from index of the first tab to ask about
+     */
+    private void exit(final int from) {
+        for (int i = from; i < files.size(); i++) {
+            final JNotepadFile file = files.get(i);
+            if (file == null || !file.isChanged()) {
+                continue;
+            }
+            tabs.setSelectedIndex(i);
+            final int answer = JOptionPane.showConfirmDialog(this, provider.getString(SAVE_ON_CLOSE_TEXT),
+                    provider.getString(SAVE_ON_CLOSE_TITLE), JOptionPane.YES_NO_CANCEL_OPTION);
+            if (answer == JOptionPane.NO_OPTION) {
+                continue;
+            }
+            if (answer != JOptionPane.YES_OPTION) {
+                exiting = false; // cancel was pressed
+                return;
+            }
+            final JFileChooser fc = chooser(CHOOSE_FILE_SAVEAS);
+            if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                JOptionPane.showMessageDialog(this, provider.getString(NOTHING_SAVED_TEXT), provider
+                        .getString(NOTHING_SAVED_TITLE), JOptionPane.WARNING_MESSAGE);
+                exiting = false;
+                return;
+            }
+            file.saveAs(fc.getSelectedFile().toPath(), saved -> {
+                final int index = files.indexOf(file);
+                if (index != -1) {
+                    tabs.setTitleAt(index, file.getTitle());
+                }
+                if (saved) {
+                    exit(Math.max(index, 0)); // asks again if the tab was edited while it was written
+                } else {
+                    exiting = false;
+                }
+            });
+            tabs.setTitleAt(i, file.getTitle());
+            return;
+        }
+
+        saveSession();
+        memory.stop();
+        for (JNotepadFile file : files) {
+            if (file != null) {
+                file.close(); // their journals are not needed any more
+            }
+        }
+        for (int i = 0, limit = results.getTabCount(); i < limit; i++) {
+            final Component panel = results.getComponentAt(i);
+            if (panel instanceof SearchResultsPanel) {
+                ((SearchResultsPanel) panel).cancel();
+            } else if (panel instanceof ComparePanel) {
+                ((ComparePanel) panel).cancel();
+            }
+        }
+        dispose(); // everything went well
+    }
+
+    /**
+     * Closes the tab at the given index without asking anything. If it is selected, the next tab is selected.
+     * 
+     * @param index index of the tab
+     */
+    private void closeTab(final int index) {
+        if (index == tabs.getSelectedIndex() && files.size() > 1) {
+            tabs.setSelectedIndex((index + 1) % files.size());
+        }
+        final JNotepadFile file = files.remove(index);
+        placeholders.remove(tabs.getComponentAt(index));
+        tabs.remove(index);
+        if (file != null) {
+            memory.remove(file);
+            file.close();
+        }
+    }
+
+    /**
+     * Finds the tab of a file, which may be a tab of the session that wasn't selected yet.
+     * 
+     * @param path path of the file
+     * @return index of the tab, <code>-1</code> if the file isn't open
+     */
+    private int indexOf(final Path path) {
+        for (int i = 0, limit = files.size(); i < limit; i++) {
+            final JNotepadFile file = files.get(i);
+            final Path filePath = file == null ? placeholders.get(tabs.getComponentAt(i)).getPath() : file
+                    .getFilePath();
+            if (path.equals(filePath)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Main method that is run when this class is started. Creates a new {@link JNotepad} and sets it's visibility to
-     * <code>true</code>.
+     * <code>true</code>. If the first argument is {@value BatchCommand#FLAG}, no window is shown, the other arguments
+     * are run as a {@link BatchCommand} and the program exits with its status.
      * 
-     * @param args don't mather
+     * @param args {@value BatchCommand#FLAG} and its arguments for the batch mode, otherwise they don't mather
      */
     public static void main(String[] args) {
+        if (args.length > 0 && BatchCommand.FLAG.equals(args[0])) {
+            System.exit(BatchCommand.run(Arrays.copyOfRange(args, 1, args.length), System.out, System.err));
+        }
+        StartupTimer.mark("main");
         SwingUtilities.invokeLater(() -> new JNotepad().setVisible(true));
     }
 
@@ -543,12 +1088,21 @@ public class JNotepad extends JFrame {
     private static final String SAVE_FILE_ACTION = "saveFileActionKey";
     private static final String SAVEAS_FILE_ACTION = "saveAsFileActionKey";
     private static final String CLOSE_FILE_ACTION = "closeFileActionKey";
+    private static final String FOLLOW_ACTION = "followActionKey";
+    private static final String HEX_VIEW_ACTION = "hexViewActionKey";
     private static final String EXIT_ACTION = "exitActionKey";
 
+    private static final String UNDO_ACTION = "undoActionKey";
+    private static final String REDO_ACTION = "redoActionKey";
     private static final String COPY_ACTION = "copyActionKey";
     private static final String CUT_ACTION = "cutActionKey";
     private static final String PASTE_ACTION = "pasteActionKey";
     private static final String DELETE_ACTION = "deleteActionKey";
+    private static final String UPPER_CASE_ACTION = "upperCaseActionKey";
+    private static final String LOWER_CASE_ACTION = "lowerCaseActionKey";
+    private static final String TITLE_CASE_ACTION = "titleCaseActionKey";
+    private static final String FIND_ACTION = "findActionKey";
+    private static final String COMPARE_ACTION = "compareActionKey";
 
     private static final String HR_LANG_ACTION = "hrLangActionKey";
     private static final String EN_LANG_ACTION = "enLangActionKey";
@@ -562,12 +1116,21 @@ public class JNotepad extends JFrame {
     private static final String SAVE_FILE_ACTION_DESC = "saveFileActionDescKey";
     private static final String SAVEAS_FILE_ACTION_DESC = "saveAsFileActionDescKey";
     private static final String CLOSE_FILE_ACTION_DESC = "closeFileActionDescKey";
+    private static final String FOLLOW_ACTION_DESC = "followActionDescKey";
+    private static final String HEX_VIEW_ACTION_DESC = "hexViewActionDescKey";
     private static final String EXIT_ACTION_DESC = "exitActionKey";
 
+    private static final String UNDO_ACTION_DESC = "undoActionDescKey";
+    private static final String REDO_ACTION_DESC = "redoActionDescKey";
     private static final String COPY_ACTION_DESC = "copyActionDescKey";
     private static final String CUT_ACTION_DESC = "cutActionDescKey";
     private static final String PASTE_ACTION_DESC = "pasteActionDescKey";
     private static final String DELETE_ACTION_DESC = "deleteActionDescKey";
+    private static final String UPPER_CASE_ACTION_DESC = "upperCaseActionDescKey";
+    private static final String LOWER_CASE_ACTION_DESC = "lowerCaseActionDescKey";
+    private static final String TITLE_CASE_ACTION_DESC = "titleCaseActionDescKey";
+    private static final String FIND_ACTION_DESC = "findActionDescKey";
+    private static final String COMPARE_ACTION_DESC = "compareActionDescKey";
 
     private static final String HR_LANG_ACTION_DESC = "hrLangActionDescKey";
     private static final String EN_LANG_ACTION_DESC = "enLangActionDescKey";
@@ -587,6 +1150,13 @@ public class JNotepad extends JFrame {
     private static final String SAVE_ON_CLOSE_TITLE = "saveOnCloseTitleKey";
     private static final String ABOUT_TEXT = "aboutTextKey";
     private static final String ABOUT_TITLE = "aboutTitleKey";
+    private static final String RECOVERED_MESSAGE = "recoveredMessageKey";
+    private static final String RECOVERED_TITLE = "recoveredTitleKey";
+    private static final String COMPARE_WITH = "compareWithKey";
+    private static final String NOTHING_TO_COMPARE = "nothingToCompareKey";
+    private static final String COMPARE_LOADING = "compareLoadingKey";
+    private static final String FOLLOW_UNAVAILABLE = "followUnavailableKey";
+    private static final String HEX_VIEW_UNAVAILABLE = "hexViewUnavailableKey";
 
     private static final String FILE_MENU = "fileMenuKey";
     private static final String EDIT_MENU = "editMenuKey";
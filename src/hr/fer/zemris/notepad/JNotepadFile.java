@@ -1,29 +1,87 @@
 package hr.fer.zemris.notepad;
 
 import hr.fer.zemris.local.ILocalizationProvider;
+import hr.fer.zemris.local.swing.LocalizableAction;
+import hr.fer.zemris.notepad.diff.EditScript;
+import hr.fer.zemris.notepad.diff.LineHashes;
+import hr.fer.zemris.notepad.diff.Patch;
+import hr.fer.zemris.notepad.document.CharArrayBuffer;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.PieceTableContent;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+import hr.fer.zemris.notepad.io.CharsetDetector;
+import hr.fer.zemris.notepad.io.DiskState;
+import hr.fer.zemris.notepad.io.FileFollower;
+import hr.fer.zemris.notepad.io.FileLoader;
+import hr.fer.zemris.notepad.io.FileSaver;
+import hr.fer.zemris.notepad.io.FileWatcher;
+import hr.fer.zemris.notepad.io.SaveStrategy;
+import hr.fer.zemris.notepad.journal.EditJournal;
+import hr.fer.zemris.notepad.journal.RecoveredDocument;
+import hr.fer.zemris.notepad.memory.CompressedText;
+import hr.fer.zemris.notepad.memory.Hibernatable;
+import hr.fer.zemris.notepad.syntax.Lexer;
+import hr.fer.zemris.notepad.syntax.Lexers;
+import hr.fer.zemris.notepad.syntax.SyntaxHighlighter;
+import hr.fer.zemris.notepad.view.LineTextAreaUI;
 
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
+import java.awt.BorderLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 
 /**
  * This class represents a single notepad document, which has it's own text area and a path to some file that it
  * represents.
+ * <p>
+ * A document whose tab isn't selected can be hibernated to free memory. An unchanged document is dropped and read
+ * from its file again, a changed one is compressed into a {@link CompressedText}. While it hibernates the text area
+ * shows an empty read-only document, and the caret and scroll position are restored with the text.
+ * <p>
+ * The file is watched, and a change made by another program is brought into the document by replacing only the lines
+ * that differ, so the caret, the scroll position and the undo history stay where they were. If the document has
+ * unsaved changes the user decides whether the changes on disk are merged into it, replace it, or are ignored.
+ * <p>
+ * A file that grows, like a log, can be followed instead. The text appended to the file is appended to the document,
+ * which can't be edited meanwhile, and only the last {@link #FOLLOW_LIMIT} characters are kept. The whole file is
+ * loaded again when following stops.
+ * <p>
+ * A binary file, and any saved file on request, is shown as bytes in a {@link HexView} instead of the text area. The
+ * view maps the file rather than reading it, so the document stays empty and the file can't be saved from it.
  * 
  * @author Filip Hrenić
  * @version 1.0
  */
-class JNotepadFile {
+class JNotepadFile implements Hibernatable {
 
-    /** Default charset is set to UTF-8 */
+    /** Charset of new documents, files are read in the charset that the loader detects */
     private static final Charset DEF_CHARSET = StandardCharsets.UTF_8;
+    /** Characters of a followed file that are kept, set in MB by <code>jnotepad.follow.limit</code>, 0 keeps all */
+    static final int FOLLOW_LIMIT = (int) Math.min(Integer.MAX_VALUE - 8, Long.getLong("jnotepad.follow.limit",
+            64) << 20);
 
     // keys used by the localization provider
 
@@ -38,10 +96,90 @@ class JNotepadFile {
     private static final String WRITE_ERROR_TITLE = "errorWhileWritingFileTitleKey";
     private static final String READ_ERROR_MESSAGE = "errorWhileReadingFileMessageKey";
     private static final String READ_ERROR_TITLE = "errorWhileReadingFileTitleKey";
+    private static final String CANCEL_LOADING = "cancelLoadingKey";
+    private static final String EXTERNAL_CHANGE_MESSAGE = "externalChangeMessageKey";
+    private static final String EXTERNAL_CHANGE_TITLE = "externalChangeTitleKey";
+    private static final String MERGE = "mergeChangesKey";
+    private static final String RELOAD = "reloadFileKey";
+    private static final String KEEP_MINE = "keepMineKey";
+    private static final String CONFLICTS = "mergeConflictsKey";
 
     private Path filePath;
+    /** Charset the file was read in and is written in */
+    private Charset charset = DEF_CHARSET;
     private final JTextArea textArea;
+    /** Scroll pane of the text area */
+    private final JScrollPane textPane;
+    /** Component shown in this document's tab */
+    private final JPanel component;
+    /** Loader that is currently loading the file, <code>null</code> if nothing is being loaded */
+    private FileLoader loader;
+    /** What the file contains, updated by the saver thread */
+    private final AtomicReference<DiskState> diskState = new AtomicReference<>();
+    /** How the document is saved, in place only if the <code>jnotepad.incrementalSave</code> property is set */
+    private SaveStrategy saveStrategy = Boolean.getBoolean("jnotepad.incrementalSave") ? SaveStrategy.INCREMENTAL
+            : SaveStrategy.ATOMIC;
+    /** Journal of unsaved edits, <code>null</code> while the file is being loaded */
+    private EditJournal journal;
     private boolean changed;
+    /** Line that is selected when loading ends, -1 if there is none */
+    private int pendingLine = -1;
+    /** Length of the text when it was last loaded or saved */
+    private int savedLength;
+    /** Hash of the text when it was last loaded or saved */
+    private long savedHash;
+    /** Highlighter of the document, <code>null</code> if its file type has no lexer */
+    private SyntaxHighlighter syntax;
+    /** Invoked if the user cancels loading */
+    private Runnable onCancel = () -> {
+    };
+    /** Caret and scroll position that are restored when loading ends, <code>null</code> if there are none */
+    private ViewState pendingView;
+    /** <code>true</code> while the document is hibernated */
+    private boolean hibernated;
+    /** Text of the hibernated document, <code>null</code> if it is read from the file when restored */
+    private CompressedText hibernatedText;
+    /** Caret and scroll position of the hibernated document */
+    private ViewState hibernatedView;
+    /** Text that is being compressed for hibernation, <code>null</code> if none is */
+    private TextSnapshot compressing;
+    /** Watches the file for changes made by other programs, <code>null</code> if there is no file */
+    private FileWatcher.Registration watch;
+    /** Number of saves that didn't end yet, the file changes while they write it */
+    private int saving;
+    /** Reads the file after another program changed it, <code>null</code> while it isn't read */
+    private FileLoader reader;
+    /** Compares the document with the changed file, <code>null</code> while they aren't compared */
+    private SwingWorker<Patch, Void> differ;
+    /** Follows the file while it grows, <code>null</code> if it isn't followed */
+    private FileFollower follower;
+    /** View of the file's bytes, <code>null</code> unless the file is shown as bytes */
+    private HexView hexView;
+    /** <code>true</code> if the file is read as text even if it looks binary */
+    private boolean readAsText;
+    /** Keeps {@link #changed} up to date with the document */
+    private final DocumentListener changeListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            final TextSnapshot snapshot = updateChanged();
+            if (journal != null) {
+                journal.inserted(e.getOffset(), e.getLength(), snapshot);
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            final TextSnapshot snapshot = updateChanged();
+            if (journal != null) {
+                journal.removed(e.getOffset(), e.getLength(), snapshot);
+            }
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            // attributes don't matter
+        }
+    };
     private final ILocalizationProvider provider;
 
     /**
@@ -50,36 +188,50 @@ class JNotepadFile {
      * @param provider localization provider
      */
     public JNotepadFile(ILocalizationProvider provider) {
-        this(provider, null);
+        this(provider, (Path) null);
     }
 
     /**
-     * Opens a new {@link JNotepadFile} with given location provider and path to read the contents from.
+     * Creates a new {@link JNotepadFile} with given location provider and path to read the contents from. The contents
+     * are not read until {@link #load(Runnable)} is called.
      * 
      * @param provider localization provider
      * @param filePath path to some file you want to represent with this {@link JNotepadFile}
      */
     public JNotepadFile(ILocalizationProvider provider, Path filePath) {
-        this.provider = provider;
-        this.filePath = filePath;
-        textArea = createTextArea();
-        changed = false;
-        readFromFile();
+        this(provider, filePath, new PieceDocument());
+        if (filePath == null) {
+            journal = EditJournal.start(null, charset, null, getDocument().snapshot());
+        }
     }
 
     /**
-     * Creates a new {@link JNotepadFile} with given path and predifined content given through <code>content</code>
+     * Creates a new {@link JNotepadFile} with a document recovered from a journal. The document is changed unless it
+     * is the same as its file, and its edits go on into the same journal.
      * 
      * @param provider localization provider
-     * @param filePath path to file
-     * @param content content that will be in the file
+     * @param recovered recovered document
      */
-    public JNotepadFile(ILocalizationProvider provider, Path filePath, String content) {
+    public JNotepadFile(ILocalizationProvider provider, RecoveredDocument recovered) {
+        this(provider, recovered.getFilePath(), recovered.getDocument());
+        charset = recovered.getCharset();
+        if (recovered.getBase() != null) {
+            markSaved(recovered.getBase());
+        } else {
+            savedLength = -1; // there is nothing to compare with
+            updateChanged();
+        }
+        journal = recovered.getJournal();
+    }
+
+    private JNotepadFile(ILocalizationProvider provider, Path filePath, PieceDocument document) {
         this.provider = provider;
         this.filePath = filePath;
         textArea = createTextArea();
-        textArea.setText(content);
-        changed = false;
+        textPane = new JScrollPane(textArea);
+        component = createComponent();
+        installDocument(document);
+        watchFile();
     }
 
     /**
@@ -96,6 +248,18 @@ class JNotepadFile {
      */
     public void setFilePath(final Path filePath) {
         this.filePath = filePath;
+        updateSyntax();
+        watchFile();
+    }
+
+    /**
+     * Sets the way this document is saved, {@link SaveStrategy#ATOMIC} by default. {@link SaveStrategy#INCREMENTAL}
+     * writes into the file in place, so a crash while saving can leave it partly written.
+     * 
+     * @param saveStrategy save strategy
+     */
+    public void setSaveStrategy(final SaveStrategy saveStrategy) {
+        this.saveStrategy = saveStrategy;
     }
 
     /**
@@ -106,6 +270,100 @@ class JNotepadFile {
     }
 
     /**
+     * @return the document shown in the text area
+     */
+    PieceDocument getDocument() {
+        return (PieceDocument) textArea.getDocument();
+    }
+
+    /**
+     * @return number of lines in the document
+     */
+    public int getLineCount() {
+        return getDocument().getLineIndex().getLineCount();
+    }
+
+    /**
+     * Returns the line that contains the given offset, in <code>O(log n)</code>.
+     *
+     * @param offset offset in the document, up to its length
+     * @return index of the line, starting from 0
+     */
+    public int getLineOfOffset(final int offset) {
+        return getDocument().getLineIndex().getLineOfOffset(offset);
+    }
+
+    /**
+     * Returns the offset where the given line starts, in <code>O(log n)</code>.
+     *
+     * @param line index of the line, starting from 0
+     * @return offset of the first character of the line
+     */
+    public int getLineStartOffset(final int line) {
+        return getDocument().getLineIndex().getLineStartOffset(line);
+    }
+
+    /**
+     * Undoes the last edit and moves the caret to it.
+     */
+    public void undo() {
+        if (!isLoading()) {
+            final int caret = getDocument().getHistory().undo();
+            if (caret != -1) {
+                textArea.setCaretPosition(caret);
+            }
+        }
+    }
+
+    /**
+     * Redoes the edit that was undone last and moves the caret after it.
+     */
+    public void redo() {
+        if (!isLoading()) {
+            final int caret = getDocument().getHistory().redo();
+            if (caret != -1) {
+                textArea.setCaretPosition(caret);
+            }
+        }
+    }
+
+    /**
+     * Selects the given line and scrolls to it. If the file is still being loaded, the line is selected when loading
+     * ends.
+     *
+     * @param line index of the line, starting from 0
+     */
+    public void goToLine(final int line) {
+        if (isLoading()) {
+            pendingLine = line;
+            return;
+        }
+        final int index = Math.min(line, getLineCount() - 1);
+        final int start = getLineStartOffset(index);
+        final int end = Math.min(getDocument().getLineIndex().getLineEndOffset(index) - 1, getDocument().getLength());
+        textArea.select(start, end);
+        textArea.getCaret().setSelectionVisible(true);
+        textArea.requestFocusInWindow();
+    }
+
+    /**
+     * @return component that should be shown in this document's tab
+     */
+    public JComponent getComponent() {
+        return component;
+    }
+
+    /**
+     * @return <code>true</code> if the file is still being loaded
+     */
+    public boolean isLoading() {
+        return loader != null;
+    }
+
+    /**
+     * Checks if the text differs from the text that was last loaded or saved. Edits that bring the text back to that
+     * state, like undoing all of them, make the document unchanged again.
+     * 
      * @return the changed
      */
     public boolean isChanged() {
@@ -126,62 +384,791 @@ class JNotepadFile {
     }
 
     /**
-     * Used to save a document onto his path.
+     * Used to save a document onto his path. The text is written on a background thread, see {@link FileSaver}.
+     * Nothing is written if the file already contains the same text, if the file is shown as bytes or followed, or if
+     * the document couldn't be restored from hibernation.
      */
     public void save() {
-        if (!changed) {
+        restore();
+        if (hibernated || hexView != null || follower != null || !changed && Files.exists(filePath) || isLoading()) {
             return;
         }
+        saveSnapshot(saved -> {
+        });
+    }
 
-        byte[] textFromArea = textArea.getText().getBytes(DEF_CHARSET);
-        try {
-            Files.write(filePath, textFromArea);
-            changed = false; // it is saved now
+    /**
+     * Saves this document onto a new path, even if it wasn't changed. A file shown as bytes isn't saved.
+     * 
+     * @param filePath new path of this document
+     */
+    public void saveAs(final Path filePath) {
+        saveAs(filePath, saved -> {
+        });
+    }
+
+    /**
+     * Saves this document onto a new path, even if it wasn't changed, and tells when the text is written.
+     * 
+     * @param filePath new path of this document
+     * @param completion called on the event dispatch thread with <code>true</code> once the text is written, or with
+     *            <code>false</code> if writing failed or nothing was saved
+     */
+    public void saveAs(final Path filePath, final Consumer<Boolean> completion) {
+        restore();
+        if (hibernated || hexView != null) {
+            completion.accept(false);
+            return;
+        }
+        this.filePath = filePath;
+        updateSyntax();
+        watchFile();
+        if (isLoading()) {
+            completion.accept(false);
+            return;
+        }
+        saveSnapshot(completion);
+    }
+
+    /**
+     * Takes a snapshot of the text and hands it to the {@link FileSaver}. The document stays changed if it was edited
+     * while it was being saved.
+     * 
+     * @param completion called with <code>true</code> once the text is written, <code>false</code> if it failed
+     */
+    private void saveSnapshot(final Consumer<Boolean> completion) {
+        final PieceDocument document = getDocument();
+        final TextSnapshot snapshot = document.snapshot();
+        saving++;
+        FileSaver.save(snapshot, filePath, charset, saveStrategy, diskState, error -> {
+            saving--;
+            if (error != null) {
+                JOptionPane.showMessageDialog(textArea, provider.getString(WRITE_ERROR_MESSAGE), provider
+                        .getString(WRITE_ERROR_TITLE), JOptionPane.ERROR_MESSAGE);
+                completion.accept(false);
+                return;
+            }
+            if (document == textArea.getDocument()) {
+                markSaved(snapshot);
+                if (journal != null) {
+                    final DiskState state = diskState.get();
+                    journal.rebase(filePath, state == null ? null : state.getSnapshot(), document.snapshot());
+                }
+            }
             JOptionPane.showMessageDialog(textArea, provider.getString(SAVED_MESSAGE), provider.getString(SAVED_TITLE),
                     JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(textArea, provider.getString(WRITE_ERROR_MESSAGE), provider
-                    .getString(WRITE_ERROR_TITLE), JOptionPane.ERROR_MESSAGE);
+            completion.accept(true);
+        });
+    }
+
+    /**
+     * Remembers the given text as the one on disk and compares the document with it.
+     * 
+     * @param snapshot text that was loaded or saved
+     */
+    private void markSaved(final TextSnapshot snapshot) {
+        savedLength = snapshot.length();
+        savedHash = snapshot.hash();
+        updateChanged();
+    }
+
+    /**
+     * Compares the document with the text on disk by their lengths and hashes, which the document keeps up to date
+     * as it changes, so this doesn't depend on the size of the text.
+     * 
+     * @return snapshot of the document
+     */
+    private TextSnapshot updateChanged() {
+        final TextSnapshot snapshot = getDocument().snapshot();
+        changed = snapshot.length() != savedLength || snapshot.hash() != savedHash;
+        return snapshot;
+    }
+
+    /**
+     * Shows the given document in the text area, the document is considered to be saved.
+     * 
+     * @param document new document
+     */
+    private void installDocument(final PieceDocument document) {
+        replaceDocument(document);
+        markSaved(document.snapshot());
+    }
+
+    /**
+     * Shows the given document in the text area instead of the one shown before, whose history is discarded.
+     * 
+     * @param document new document
+     */
+    private void replaceDocument(final PieceDocument document) {
+        textArea.getDocument().removeDocumentListener(changeListener);
+        if (textArea.getDocument() instanceof PieceDocument) {
+            ((PieceDocument) textArea.getDocument()).getHistory().discard();
+        }
+        textArea.setDocument(document);
+        document.addDocumentListener(changeListener);
+        updateSyntax();
+    }
+
+    /**
+     * Highlights the document with the lexer of its file type, the type given by the extension of the file.
+     */
+    private void updateSyntax() {
+        if (syntax != null) {
+            syntax.uninstall();
+            syntax = null;
+        }
+        final Lexer lexer = filePath == null ? null : Lexers.forFile(filePath);
+        if (lexer != null) {
+            syntax = SyntaxHighlighter.install(textArea, lexer);
         }
     }
 
     /**
-     * Creates a new {@link JTextArea} that has the power to registring when a key was released.
+     * Creates a new {@link JTextArea} backed by a {@link PieceDocument}.
      * 
      * @return new {@link JTextArea}
      */
+    @SuppressWarnings("serial")
     private JTextArea createTextArea() {
-        JTextArea textArea = new JTextArea();
-        textArea.addKeyListener(new KeyAdapter() {
+        return new JTextArea() {
             @Override
-            public void keyReleased(KeyEvent e) {
-                changed = true;
+            public void updateUI() {
+                setUI(new LineTextAreaUI());
             }
-        });
-        return textArea;
+        };
+    }
+
+    /**
+     * Creates the component shown in the tab, the text area inside a scroll pane.
+     * 
+     * @return new component
+     */
+    private JPanel createComponent() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(textPane, BorderLayout.CENTER);
+        return panel;
     }
 
     /**
-     * Used to read text from file and set it as text in text area.
+     * Starts reading text from file on a background thread. The text area is filled while the file is being read,
+     * and a progress bar with a cancel button is shown above it until reading is done. A binary file is shown as
+     * bytes instead.
+     * 
+     * @param onCancel invoked on the EDT if the user cancels loading
      */
-    private void readFromFile() {
+    public void load(final Runnable onCancel) {
         if (filePath == null) {
             return;
         }
+        this.onCancel = onCancel;
 
         if (!Files.isReadable(filePath)) {
             JOptionPane.showMessageDialog(textArea, provider.getString(NOT_READABLE_MESSAGE), provider
                     .getString(NOT_READABLE_TITLE), JOptionPane.ERROR_MESSAGE);
             return;
         }
+        try {
+            if (!readAsText && CharsetDetector.isBinary(filePath) && showBytes()) {
+                return;
+            }
+        } catch (IOException e) {
+            // loading the text reports the error
+        }
+
+        final JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        final JPanel progressPanel = new JPanel(new BorderLayout());
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+
+        final PieceDocument document = new PieceDocument();
+        discardJournal();
+        installDocument(document);
+        textArea.setEditable(false);
+
+        diskState.set(null);
+        loader = new FileLoader(filePath, null, document, error -> {
+            if (loader.getCharset() != null) {
+                charset = loader.getCharset();
+            }
+            if (error == null) {
+                markSaved(document.snapshot());
+                rememberDiskState(document.snapshot(), loader.isExact());
+            }
+            if (!(error instanceof CancellationException)) {
+                final DiskState state = diskState.get();
+                journal = EditJournal.start(filePath, charset, state == null ? null : state.getSnapshot(),
+                        document.snapshot());
+            }
+            loader = null;
+            textArea.setEditable(true);
+            component.remove(progressPanel);
+            component.revalidate();
+            if (error instanceof CancellationException) {
+                onCancel.run();
+            } else if (error != null) {
+                JOptionPane.showMessageDialog(textArea, provider.getString(READ_ERROR_MESSAGE), provider
+                        .getString(READ_ERROR_TITLE), JOptionPane.ERROR_MESSAGE);
+            } else if (pendingLine != -1) {
+                goToLine(pendingLine);
+            } else if (pendingView != null) {
+                setViewState(pendingView);
+            }
+            pendingLine = -1;
+            pendingView = null;
+        });
+        loader.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                progressBar.setValue((Integer) e.getNewValue());
+            }
+        });
+
+        @SuppressWarnings("serial")
+        final JButton cancel = new JButton(new LocalizableAction(CANCEL_LOADING, provider) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (loader != null) {
+                    loader.cancel(false);
+                }
+            }
+        });
+        progressPanel.add(cancel, BorderLayout.LINE_END);
+        component.add(progressPanel, BorderLayout.PAGE_START);
+        component.revalidate();
+
+        loader.execute();
+    }
 
-        byte[] textFromFile;
+    /**
+     * Closes this document: stops loading it, deletes the journal of its unsaved edits and forgets its history.
+     */
+    public void close() {
+        if (loader != null) {
+            loader.cancel(false);
+        }
+        if (follower != null) {
+            follower.stop();
+            follower = null;
+        }
+        if (reader != null) {
+            reader.cancel(false);
+        }
+        if (differ != null) {
+            differ.cancel(false);
+        }
+        if (watch != null) {
+            watch.cancel();
+            watch = null;
+        }
+        if (hexView != null) {
+            hexView.cancelSearch();
+        }
+        discardJournal();
+        getDocument().getHistory().discard();
+        if (syntax != null) {
+            syntax.uninstall();
+            syntax = null;
+        }
+        compressing = null;
+        if (hibernatedText != null) {
+            hibernatedText.free();
+            hibernatedText = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file is shown as bytes
+     */
+    public boolean isShowingBytes() {
+        return hexView != null;
+    }
+
+    /**
+     * Shows the file as bytes, or reads it as text again, even if it looks binary. Only a saved file without unsaved
+     * changes can be shown as bytes, its undo history and journal are discarded.
+     * 
+     * @param showing <code>true</code> to show the bytes of the file
+     * @return <code>false</code> if the file can't be shown as bytes
+     */
+    public boolean setShowingBytes(final boolean showing) {
+        if (showing == (hexView != null)) {
+            return true;
+        }
+        if (!showing) {
+            hexView.cancelSearch();
+            component.remove(hexView);
+            component.add(textPane, BorderLayout.CENTER);
+            hexView = null;
+            component.revalidate();
+            component.repaint();
+            textArea.setEditable(true);
+            readAsText = true;
+            load(onCancel);
+            return true;
+        }
+        restore();
+        if (filePath == null || changed || isLoading() || follower != null || reader != null || differ != null) {
+            return false;
+        }
+        readAsText = false;
+        return showBytes();
+    }
+
+    /**
+     * Maps the file into a {@link HexView} that takes the place of the text area, which is left with an empty
+     * read-only document.
+     * 
+     * @return <code>false</code> if the file can't be mapped
+     */
+    private boolean showBytes() {
+        final HexView view;
+        try {
+            view = new HexView(provider, filePath);
+        } catch (IOException e) {
+            return false;
+        }
+        discardJournal();
+        installDocument(new PieceDocument());
+        diskState.set(null);
+        textArea.setEditable(false);
+        hexView = view;
+        component.remove(textPane);
+        component.add(hexView, BorderLayout.CENTER);
+        component.revalidate();
+        component.repaint();
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the file is followed
+     */
+    public boolean isFollowing() {
+        return follower != null;
+    }
+
+    /**
+     * Starts or stops following the file. Following starts after the text that was loaded, or at the end of the file
+     * if it isn't known how much of it was loaded. Only a document that was loaded and not changed can be followed,
+     * its undo history and journal are discarded. The followed document may hold only the end of the file, so when
+     * following stops the file is loaded again before it can be edited.
+     * 
+     * @param following <code>true</code> to follow the file
+     * @return <code>false</code> if the file can't be followed
+     */
+    public boolean setFollowing(final boolean following) {
+        if (following == (follower != null)) {
+            return true;
+        }
+        if (!following) {
+            follower.stop();
+            follower = null;
+            final ViewState view = getViewState();
+            load(onCancel);
+            setViewState(view);
+            return true;
+        }
+        restore();
+        if (filePath == null || changed || isLoading() || reader != null || differ != null || hexView != null) {
+            return false;
+        }
+        final DiskState state = diskState.get();
+        final long start;
+        try {
+            start = state != null && state.isExact() ? state.getSize() : Files.size(filePath);
+        } catch (IOException e) {
+            return false;
+        }
+        discardJournal();
+        getDocument().getHistory().clear();
+        diskState.set(null); // the document won't match the file
+        textArea.setEditable(false);
+        follower = FileFollower.start(filePath, charset, start, FOLLOW_LIMIT, new FileFollower.Listener() {
+            @Override
+            public void restarted() {
+                getDocument().trimStart(getDocument().getLength());
+                changed = false;
+            }
+
+            @Override
+            public void appended(final char[] text, final int length) {
+                followed(text, length);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Appends the text that was appended to the followed file, and drops whole lines from the start of the document
+     * if it gets longer than {@link #FOLLOW_LIMIT}. A caret at the end of the document stays at the end, which keeps
+     * the last line in view.
+     */
+    private void followed(final char[] text, final int length) {
+        final PieceDocument document = getDocument();
+        final boolean atEnd = textArea.getCaretPosition() == document.getLength();
+        document.append(new CharArrayBuffer(text, length), 0, length);
+        if (FOLLOW_LIMIT > 0 && document.getLength() > FOLLOW_LIMIT) {
+            final int cut = document.getLength() - FOLLOW_LIMIT;
+            final int line = getLineOfOffset(cut);
+            final int lineStart = getLineStartOffset(line);
+            document.trimStart(lineStart == cut || line + 1 == getLineCount() ? cut : getLineStartOffset(line + 1));
+        }
+        changed = false; // nothing was edited, and the file is loaded again before the document can be saved
+        if (atEnd) {
+            textArea.setCaretPosition(document.getLength());
+        }
+    }
+
+    /**
+     * @return caret, selection and scroll position of the text area
+     */
+    ViewState getViewState() {
+        if (hibernated) {
+            return hibernatedView;
+        }
+        if (pendingView != null) {
+            return pendingView; // still loading
+        }
+        if (hexView != null) {
+            return new ViewState(0, 0, 0, 0);
+        }
+        final Point position = ((JViewport) textArea.getParent()).getViewPosition();
+        return new ViewState(textArea.getCaret().getDot(), textArea.getCaret().getMark(), position.x, position.y);
+    }
+
+    /**
+     * Moves the caret and scrolls the text area. If the file is still being loaded, this is done when loading ends.
+     * 
+     * @param state caret, selection and scroll position
+     */
+    void setViewState(final ViewState state) {
+        if (isLoading()) {
+            pendingView = state;
+            return;
+        }
+        final int length = getDocument().getLength();
+        textArea.getCaret().setDot(Math.min(state.getMark(), length));
+        textArea.getCaret().moveDot(Math.min(state.getDot(), length));
+        SwingUtilities.invokeLater(() -> {
+            // after the text area was laid out for the new text
+            final JViewport viewport = (JViewport) textArea.getParent();
+            final int x = Math.max(0, Math.min(state.getScrollX(), textArea.getWidth() - viewport.getWidth()));
+            final int y = Math.max(0, Math.min(state.getScrollY(), textArea.getHeight() - viewport.getHeight()));
+            viewport.setViewPosition(new Point(x, y));
+        });
+    }
+
+    /**
+     * Estimates the heap taken up by the document as two bytes per character and its undo history. Characters of a
+     * mapped file are counted too, reading them again is cheap anyway.
+     */
+    @Override
+    public long getFootprint() {
+        if (hibernated) {
+            return 0;
+        }
+        return 2L * getDocument().getLength() + getDocument().getHistory().getUsage();
+    }
+
+    @Override
+    public boolean isHibernated() {
+        return hibernated;
+    }
+
+    /**
+     * Hibernates the document. An unchanged document whose file is still the same is dropped at once, the text of a
+     * changed one is compressed on a background thread first. Compression is abandoned if the document is edited
+     * or restored in the meantime. The undo history is discarded.
+     */
+    @Override
+    public boolean hibernate() {
+        if (hibernated || compressing != null || isLoading() || follower != null || hexView != null) {
+            return false;
+        }
+        if (!changed && isOnDisk()) {
+            sleep(null);
+            return true;
+        }
+        final PieceDocument document = getDocument();
+        final TextSnapshot snapshot = document.snapshot();
+        compressing = snapshot;
+        CompressedText.compress(snapshot, document.getLength(), text -> {
+            if (compressing != snapshot || !document.isCurrent(snapshot) || text == null) {
+                if (text != null) {
+                    text.free();
+                }
+                if (compressing == snapshot) {
+                    compressing = null;
+                }
+                return;
+            }
+            compressing = null;
+            sleep(text);
+        });
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the file contains the text the document was loaded with
+     */
+    private boolean isOnDisk() {
+        final DiskState state = diskState.get();
         try {
-            textFromFile = Files.readAllBytes(filePath);
-            textArea.setText(new String(textFromFile, DEF_CHARSET));
+            return filePath != null && state != null && state.matches(filePath, charset);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the document with an empty one. Everything that holds the text is let go of: the disk state, so the
+     * next save writes the whole file, and the journal, which is suspended if it holds unsaved edits and discarded
+     * otherwise.
+     * 
+     * @param text compressed text, <code>null</code> if the document is read from its file when restored
+     */
+    private void sleep(final CompressedText text) {
+        hibernatedView = getViewState();
+        hibernatedText = text;
+        hibernated = true;
+        if (text == null) {
+            discardJournal();
+        } else if (journal != null) {
+            journal.suspend();
+        }
+        diskState.set(null);
+        replaceDocument(new PieceDocument());
+        textArea.setEditable(false);
+    }
+
+    /**
+     * Restores the hibernated document, or cancels hibernation that is in progress. A compressed text is inflated at
+     * once, while a dropped document is loaded from its file again. If a compressed text can't be inflated, the
+     * document stays hibernated and read-only, keeping the compressed text and its suspended journal.
+     */
+    @Override
+    public void restore() {
+        compressing = null;
+        if (!hibernated) {
+            return;
+        }
+        final CompressedText text = hibernatedText;
+        if (text == null) {
+            hibernated = false;
+            textArea.setEditable(true);
+            load(onCancel);
+            setViewState(hibernatedView);
+            return;
+        }
+        final PieceDocument document;
+        try {
+            document = new PieceDocument(new PieceTableContent(text.decompress()));
         } catch (IOException e) {
             JOptionPane.showMessageDialog(textArea, provider.getString(READ_ERROR_MESSAGE), provider
                     .getString(READ_ERROR_TITLE), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        hibernated = false;
+        hibernatedText = null;
+        text.free();
+        textArea.setEditable(true);
+        replaceDocument(document);
+        updateChanged();
+        if (journal != null) {
+            journal.resume(document.snapshot());
+        }
+        setViewState(hibernatedView);
+    }
+
+    private void discardJournal() {
+        if (journal != null) {
+            journal.discard();
+            journal = null;
+        }
+    }
+
+    /**
+     * Remembers what the file contains after it was loaded, so that the next save can rewrite only what changed.
+     * 
+     * @param snapshot loaded text
+     * @param exact <code>true</code> if the text encodes back into the bytes of the file
+     */
+    private void rememberDiskState(final TextSnapshot snapshot, final boolean exact) {
+        try {
+            diskState.set(DiskState.of(filePath, snapshot, charset, exact));
+        } catch (IOException e) {
+            diskState.set(null); // the next save rewrites the whole file
+        }
+    }
+
+    /**
+     * Watches the current file for changes made by other programs, instead of the file that was watched before.
+     */
+    private void watchFile() {
+        if (watch != null) {
+            watch.cancel();
+            watch = null;
+        }
+        if (filePath != null) {
+            watch = FileWatcher.watch(filePath, this::diskChanged);
+        }
+    }
+
+    /**
+     * Reads the file on a background thread after another program changed it. Nothing is read if the file still has
+     * the size and modification time it had when the document was last loaded or saved, or if it is being saved. A
+     * file shown as bytes is mapped again.
+     */
+    private void diskChanged() {
+        if (hexView != null) {
+            try {
+                hexView.reload();
+            } catch (IOException e) {
+                // the file is being replaced, the next change maps it again
+            }
+            return;
+        }
+        if (filePath == null || hibernated || isLoading() || follower != null || reader != null || differ != null
+                || saving > 0 || isOnDisk() || !Files.isReadable(filePath)) {
+            return;
+        }
+        final PieceDocument disk = new PieceDocument();
+        reader = new FileLoader(filePath, charset, disk, error -> {
+            if (error == null && !hibernated && !isLoading() && saving == 0) {
+                diskRead(disk.snapshot(), reader.isExact());
+            }
+            reader = null;
+        });
+        reader.execute();
+    }
+
+    /**
+     * Brings the text that another program wrote into the document. A document without unsaved changes is patched
+     * with the lines that differ, otherwise the user chooses whether the changes are merged into the document,
+     * replace it or are ignored. The lines are compared on a background thread.
+     * 
+     * @param theirs text of the file
+     * @param exact <code>true</code> if the text encodes back into the bytes of the file
+     */
+    private void diskRead(final TextSnapshot theirs, final boolean exact) {
+        final PieceDocument document = getDocument();
+        final TextSnapshot ours = document.snapshot();
+        if (ours.length() == theirs.length() && ours.hash() == theirs.hash()) {
+            adopt(theirs, exact);
+            return;
+        }
+        final DiskState state = diskState.get();
+        final TextSnapshot base = state == null ? null : state.getSnapshot();
+        boolean merge = false;
+        if (changed) {
+            final Object[] options = base == null ? new Object[] { provider.getString(RELOAD), provider.getString(
+                    KEEP_MINE) } : new Object[] { provider.getString(MERGE), provider.getString(RELOAD), provider
+                            .getString(KEEP_MINE) };
+            final int answer = JOptionPane.showOptionDialog(textArea, provider.getString(EXTERNAL_CHANGE_MESSAGE),
+                    provider.getString(EXTERNAL_CHANGE_TITLE), JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+            if (answer < 0 || answer == options.length - 1) {
+                adopt(theirs, exact); // the document stays as it is, changed
+                return;
+            }
+            merge = base != null && answer == 0;
+        }
+
+        final boolean merging = merge;
+        differ = new SwingWorker<Patch, Void>() {
+            @Override
+            protected Patch doInBackground() {
+                final LineHashes ourLines = LineHashes.of(ours, this::isCancelled);
+                final LineHashes theirLines = LineHashes.of(theirs, this::isCancelled);
+                if (merging) {
+                    return Patch.merge(LineHashes.of(base, this::isCancelled), ours, ourLines, theirs, theirLines,
+                            this::isCancelled);
+                }
+                return Patch.between(ours, ourLines, theirs, theirLines, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                differ = null;
+                if (isCancelled() || document != textArea.getDocument()) {
+                    return;
+                }
+                try {
+                    apply(get(), theirs, exact);
+                } catch (InterruptedException | ExecutionException e) {
+                    JOptionPane.showMessageDialog(textArea, provider.getString(READ_ERROR_MESSAGE), provider
+                            .getString(READ_ERROR_TITLE), JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        differ.execute();
+    }
+
+    /**
+     * Applies the patch as a single edit, which can be undone. The caret, the selection and the first visible line
+     * stay on the same lines, which are found through the lines of the patch. If the document was edited while it
+     * was compared, it is compared again.
+     * 
+     * @param patch patch of the document
+     * @param theirs text of the file
+     * @param exact <code>true</code> if the text encodes back into the bytes of the file
+     */
+    private void apply(final Patch patch, final TextSnapshot theirs, final boolean exact) {
+        final PieceDocument document = getDocument();
+        if (!document.isCurrent(patch.getBatch().getSnapshot())) {
+            diskChanged();
+            return;
+        }
+        final ViewState view = getViewState();
+        final int dotLine = getLineOfOffset(view.getDot());
+        final int dotColumn = view.getDot() - getLineStartOffset(dotLine);
+        final int markLine = getLineOfOffset(view.getMark());
+        final int markColumn = view.getMark() - getLineStartOffset(markLine);
+        final int topLine = getLineOfOffset(textArea.viewToModel(new Point(0, view.getScrollY())));
+        final int topOffset = view.getScrollY() - lineY(topLine);
+
+        document.replace(patch.getBatch());
+        final EditScript script = patch.getScript();
+        setViewState(new ViewState(offsetOf(script.map(dotLine), dotColumn), offsetOf(script.map(markLine),
+                markColumn), view.getScrollX(), lineY(script.map(topLine)) + topOffset));
+        adopt(theirs, exact);
+        if (patch.getConflicts() > 0) {
+            JOptionPane.showMessageDialog(textArea, provider.getString(CONFLICTS) + " " + patch.getConflicts(),
+                    provider.getString(EXTERNAL_CHANGE_TITLE), JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    /**
+     * Remembers the given text as the one in the file, which the document is compared with from now on.
+     * 
+     * @param theirs text of the file
+     * @param exact <code>true</code> if the text encodes back into the bytes of the file
+     */
+    private void adopt(final TextSnapshot theirs, final boolean exact) {
+        markSaved(theirs);
+        rememberDiskState(theirs, exact);
+        if (journal != null) {
+            final DiskState state = diskState.get();
+            journal.rebase(filePath, state == null ? null : state.getSnapshot(), getDocument().snapshot());
+        }
+    }
+
+    /**
+     * @return offset of the given column of a line, or of the end of the line if it is shorter
+     */
+    private int offsetOf(final int line, final int column) {
+        final int index = Math.min(line, getLineCount() - 1);
+        final int end = index + 1 < getLineCount() ? getLineStartOffset(index + 1) - 1 : getDocument().getLength();
+        return Math.min(getLineStartOffset(index) + column, end);
+    }
+
+    /**
+     * @return y coordinate of the top of a line in the text area, 0 if it isn't laid out
+     */
+    private int lineY(final int line) {
+        try {
+            final Rectangle bounds = textArea.modelToView(getLineStartOffset(Math.min(line, getLineCount() - 1)));
+            return bounds == null ? 0 : bounds.y;
+        } catch (BadLocationException e) {
+            return 0;
         }
     }
 
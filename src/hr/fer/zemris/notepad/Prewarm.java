@@ -0,0 +1,73 @@
+package hr.fer.zemris.notepad;
+
+import hr.fer.zemris.local.LocalizationProvider;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.io.File;
+
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.filechooser.FileSystemView;
+
+/**
+ * Does the slow work that some components do the first time they are used, on a background thread after the window
+ * is shown, so that the user doesn't wait for it later. The first file chooser lists the file system and loads its
+ * icons, the first painted text loads the glyphs of its font, and the first switch to a language reads its
+ * translations. All of that is cached, so it doesn't have to be done on the EDT again. Swing components themselves
+ * are only created on the EDT, when warming is done.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class Prewarm {
+
+    private Prewarm() {
+    }
+
+    /**
+     * Starts warming on a background thread.
+     *
+     * @param languages languages whose translations are read
+     * @param done invoked on the EDT when warming is done
+     */
+    static void start(final String[] languages, final Runnable done) {
+        final Thread thread = new Thread(() -> {
+            LocalizationProvider.getInstance().preload(languages);
+            warmFont(UIManager.getFont("TextArea.font"));
+            warmFileSystem();
+            SwingUtilities.invokeLater(done);
+        }, "prewarm");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Lays out the printable ASCII characters in the font, which loads the font file and its glyphs.
+     */
+    private static void warmFont(final Font font) {
+        if (font == null) {
+            return;
+        }
+        final StringBuilder text = new StringBuilder();
+        for (char c = ' '; c < 127; c++) {
+            text.append(c);
+        }
+        font.getStringBounds(text.toString(), new FontRenderContext(null, true, true));
+    }
+
+    /**
+     * Lists the home directory and loads the icons of its files, like the first file chooser does.
+     */
+    private static void warmFileSystem() {
+        final FileSystemView view = FileSystemView.getFileSystemView();
+        view.getRoots();
+        final File home = view.getDefaultDirectory();
+        for (final File file : view.getFiles(home, true)) {
+            view.getSystemIcon(file);
+            view.getSystemDisplayName(file);
+        }
+    }
+
+}
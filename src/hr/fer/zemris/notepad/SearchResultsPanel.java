@@ -0,0 +1,246 @@
+package hr.fer.zemris.notepad;
+
+import hr.fer.zemris.local.ILocalizationListener;
+import hr.fer.zemris.local.ILocalizationProvider;
+import hr.fer.zemris.local.swing.LocalizableAction;
+import hr.fer.zemris.notepad.search.FileMatch;
+import hr.fer.zemris.notepad.search.FileSearch;
+import hr.fer.zemris.notepad.search.SearchQuery;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.FontMetrics;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import javax.swing.AbstractAction;
+import javax.swing.AbstractListModel;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+
+/**
+ * Shows the results of a {@link FileSearch} while it runs. Matches arrive on the search threads and are queued, and a
+ * timer moves them into the list a batch at a time, so a search that finds millions of lines doesn't flood the EDT.
+ * A match is opened by double clicking it or pressing enter.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+class SearchResultsPanel extends JPanel {
+
+    private static final long serialVersionUID = -2938465912340057117L;
+
+    // keys used by the localization provider
+
+    private static final String MATCHES = "matchesKey";
+    private static final String FILES_SEARCHED = "filesSearchedKey";
+    private static final String SEARCHING = "searchingKey";
+    private static final String CANCELLED = "searchCancelledKey";
+    private static final String CANCEL = "cancelLoadingKey";
+    private static final String CLOSE = "closeResultsKey";
+
+    /** Milliseconds between two updates of the list */
+    private static final int REFRESH_DELAY = 100;
+
+    private final ILocalizationProvider provider;
+    private final FileSearch search;
+    /** Matches that were found but are not in the list yet */
+    private final ConcurrentLinkedQueue<FileMatch> arrived = new ConcurrentLinkedQueue<>();
+    private final ResultsModel model = new ResultsModel();
+    private final JList<FileMatch> list = new JList<>(model);
+    private final JLabel status = new JLabel(" ");
+    private final Timer timer = new Timer(REFRESH_DELAY, e -> update());
+    private final Action cancelAction;
+    /** Translates the status when the language changes, lives as long as the panel */
+    private final ILocalizationListener statusTranslator = this::updateStatus;
+    /** Set by a search thread when the search ends */
+    private volatile boolean finished;
+
+    /**
+     * Creates a new panel and starts searching the files.
+     *
+     * @param provider localization provider
+     * @param root directory whose files are searched
+     * @param query what is searched for
+     * @param opener opens a match that was chosen
+     * @param onClose removes the panel when it is closed
+     */
+    @SuppressWarnings("serial")
+    SearchResultsPanel(final ILocalizationProvider provider, final Path root, final SearchQuery query,
+            final Consumer<FileMatch> opener, final Consumer<SearchResultsPanel> onClose) {
+        super(new BorderLayout());
+        this.provider = provider;
+        search = new FileSearch(root, query, arrived::add, () -> finished = true);
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new MatchRenderer());
+        final FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight() + 2); // the list doesn't have to measure every match
+        list.setFixedCellWidth(1);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(final MouseEvent e) {
+                if (e.getClickCount() == 2 && list.getSelectedValue() != null) {
+                    opener.accept(list.getSelectedValue());
+                }
+            }
+        });
+        list.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "openMatch");
+        list.getActionMap().put("openMatch", new AbstractAction() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                if (list.getSelectedValue() != null) {
+                    opener.accept(list.getSelectedValue());
+                }
+            }
+        });
+
+        cancelAction = new LocalizableAction(CANCEL, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                search.cancel();
+                setEnabled(false);
+            }
+        };
+        final JPanel buttons = new JPanel(new FlowLayout(FlowLayout.TRAILING, 5, 0));
+        buttons.add(new JButton(cancelAction));
+        buttons.add(new JButton(new LocalizableAction(CLOSE, provider) {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                search.cancel();
+                timer.stop();
+                onClose.accept(SearchResultsPanel.this);
+            }
+        }));
+
+        final JPanel top = new JPanel(new BorderLayout());
+        top.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 0));
+        top.add(status, BorderLayout.CENTER);
+        top.add(buttons, BorderLayout.LINE_END);
+        add(top, BorderLayout.PAGE_START);
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        provider.addLocalizationListener(statusTranslator);
+        timer.start();
+        search.start();
+    }
+
+    /**
+     * @return title of the panel's tab
+     */
+    String getTitle() {
+        return search.getQuery().getText();
+    }
+
+    /**
+     * Stops the search, which is needed when the program exits.
+     */
+    void cancel() {
+        search.cancel();
+        timer.stop();
+    }
+
+    /**
+     * Moves the queued matches into the list.
+     */
+    private void update() {
+        final boolean done = finished; // read before the queue, so no match that came before the end is left in it
+        final List<FileMatch> batch = new ArrayList<>();
+        final FontMetrics metrics = list.getFontMetrics(list.getFont());
+        int width = list.getFixedCellWidth();
+        for (FileMatch match; (match = arrived.poll()) != null;) {
+            batch.add(match);
+            width = Math.max(width, metrics.stringWidth(label(match)) + 10);
+        }
+        list.setFixedCellWidth(width);
+        model.addAll(batch);
+        if (done) {
+            timer.stop();
+            cancelAction.setEnabled(false);
+        }
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        final StringBuilder text = new StringBuilder();
+        text.append(search.getRoot()).append("  |  ");
+        text.append(provider.getString(MATCHES)).append(' ').append(model.getSize()).append(", ");
+        text.append(provider.getString(FILES_SEARCHED)).append(' ').append(search.getScannedFiles());
+        if (search.isCancelled()) {
+            text.append("  |  ").append(provider.getString(CANCELLED));
+        } else if (timer.isRunning()) {
+            text.append("  |  ").append(provider.getString(SEARCHING));
+        }
+        status.setText(text.toString());
+    }
+
+    /**
+     * Text of a match in the list, its path is relative to the searched directory.
+     */
+    private String label(final FileMatch match) {
+        return search.getRoot().relativize(match.getFile()) + ":" + (match.getLine() + 1) + ": " + match.getText();
+    }
+
+    /**
+     * List of matches that only grows.
+     */
+    private static final class ResultsModel extends AbstractListModel<FileMatch> {
+
+        private static final long serialVersionUID = 7093261755096409832L;
+
+        private final List<FileMatch> matches = new ArrayList<>();
+
+        void addAll(final List<FileMatch> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            final int first = matches.size();
+            matches.addAll(batch);
+            fireIntervalAdded(this, first, matches.size() - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return matches.size();
+        }
+
+        @Override
+        public FileMatch getElementAt(final int index) {
+            return matches.get(index);
+        }
+
+    }
+
+    /**
+     * Shows a match by its {@link #label(FileMatch)}.
+     */
+    private final class MatchRenderer extends DefaultListCellRenderer {
+
+        private static final long serialVersionUID = -6114795381620378812L;
+
+        @Override
+        public Component getListCellRendererComponent(final JList<?> list, final Object value, final int index,
+                final boolean isSelected, final boolean cellHasFocus) {
+            return super.getListCellRendererComponent(list, label((FileMatch) value), index, isSelected, cellHasFocus);
+        }
+
+    }
+
+}
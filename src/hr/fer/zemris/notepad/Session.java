@@ -0,0 +1,188 @@
+package hr.fer.zemris.notepad;
+
+import hr.fer.zemris.notepad.io.FileSaver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tabs that were open when the notepad was closed, so that they can be opened again the next time it starts. Only
+ * tabs of files are kept, with the caret, selection and scroll position of each.
+ * <p>
+ * The session file starts with a magic number, the number of tabs and the index of the selected tab. Each tab is the
+ * path of its file followed by its {@link ViewState}. The file is written next to itself and moved over the old one,
+ * so a crash never leaves half of it behind.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class Session {
+
+    /** First value of the session file */
+    private static final int MAGIC = 0x4A4E5331;
+    /** Bytes before the first tab: the magic number, the number of tabs and the selected tab */
+    private static final int HEADER_BYTES = 12;
+    /** Bytes of a tab with an empty path: the length of the path and its view state */
+    private static final int MIN_TAB_BYTES = 18;
+
+    /** Tabs in the order they were shown in */
+    private final List<Tab> tabs;
+    /** Index of the selected tab */
+    private final int selected;
+
+    /**
+     * Creates a new session.
+     *
+     * @param tabs tabs in the order they are shown in
+     * @param selected index of the selected tab
+     */
+    Session(final List<Tab> tabs, final int selected) {
+        this.tabs = tabs;
+        this.selected = selected;
+    }
+
+    /**
+     * @return tabs in the order they were shown in
+     */
+    List<Tab> getTabs() {
+        return tabs;
+    }
+
+    /**
+     * @return index of the selected tab
+     */
+    int getSelected() {
+        return selected;
+    }
+
+    /**
+     * Returns the session file. It can be changed with the <code>jnotepad.session</code> system property.
+     *
+     * @return path of the session file
+     */
+    static Path file() {
+        final String file = System.getProperty("jnotepad.session");
+        if (file != null) {
+            return Paths.get(file);
+        }
+        return Paths.get(System.getProperty("user.home"), ".jnotepad", "session");
+    }
+
+    /**
+     * Reads the session of the last run. Tabs of files that don't exist any more are left out.
+     *
+     * @return the session, with no tabs if there is none or it can't be read, which includes a corrupted session file
+     */
+    static Session read() {
+        final Path file = file();
+        if (!Files.isRegularFile(file)) {
+            return new Session(Collections.emptyList(), 0);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return new Session(Collections.emptyList(), 0);
+            }
+            final int count = in.readInt();
+            int selected = in.readInt();
+            if (count < 0 || count > (Files.size(file) - HEADER_BYTES) / MIN_TAB_BYTES) {
+                return new Session(Collections.emptyList(), 0); // more tabs than the file can hold
+            }
+            final List<Tab> tabs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final ViewState view = new ViewState(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                Path filePath = null;
+                try {
+                    filePath = Paths.get(path);
+                } catch (InvalidPathException e) {
+                    // written on another system, left out
+                }
+                if (filePath != null && Files.isRegularFile(filePath)) {
+                    tabs.add(new Tab(filePath, view));
+                } else if (i < selected) {
+                    selected--;
+                }
+            }
+            return new Session(tabs, Math.max(0, Math.min(selected, tabs.size() - 1)));
+        } catch (IOException | RuntimeException e) {
+            return new Session(Collections.emptyList(), 0); // the notepad starts with an empty tab
+        }
+    }
+
+    /**
+     * Writes the session, replacing the one of the last run.
+     *
+     * @throws IOException if writing fails
+     */
+    void write() throws IOException {
+        final Path file = file();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(tabs.size());
+            out.writeInt(selected);
+            for (final Tab tab : tabs) {
+                out.writeUTF(tab.getPath().toString());
+                out.writeInt(tab.getView().getDot());
+                out.writeInt(tab.getView().getMark());
+                out.writeInt(tab.getView().getScrollX());
+                out.writeInt(tab.getView().getScrollY());
+            }
+        }
+        FileSaver.moveOver(temp, file);
+    }
+
+    /**
+     * A tab of the session: the path of its file and where it was scrolled to.
+     *
+     * @author Filip Hrenić
+     * @version 1.0
+     */
+    static final class Tab {
+
+        /** Path of the file */
+        private final Path path;
+        /** Caret, selection and scroll position */
+        private final ViewState view;
+
+        /**
+         * Creates a new tab.
+         *
+         * @param path path of the file
+         * @param view caret, selection and scroll position
+         */
+        Tab(final Path path, final ViewState view) {
+            this.path = path;
+            this.view = view;
+        }
+
+        /**
+         * @return path of the file
+         */
+        Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return caret, selection and scroll position
+         */
+        ViewState getView() {
+            return view;
+        }
+
+    }
+
+}
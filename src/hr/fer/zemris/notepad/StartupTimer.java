@@ -0,0 +1,67 @@
+package hr.fer.zemris.notepad;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how long the notepad takes to start. Phases of the startup are marked as they end, and the time of each,
+ * counted from the start of the JVM, is reported on the standard error once the notepad is interactive. Timing is
+ * turned on with the <code>jnotepad.startup.report</code> system property, otherwise marks do nothing.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class StartupTimer {
+
+    /** <code>true</code> if startup is timed */
+    private static final boolean ENABLED = Boolean.getBoolean("jnotepad.startup.report");
+
+    /** Nanoseconds of the first mark */
+    private static long start;
+    /** Milliseconds from the start of the JVM to the first mark */
+    private static long uptime;
+    /** Names of the marked phases */
+    private static final List<String> phases = new ArrayList<>();
+    /** Nanoseconds at which the phases ended */
+    private static final List<Long> times = new ArrayList<>();
+
+    private StartupTimer() {
+    }
+
+    /**
+     * Marks the end of a startup phase.
+     *
+     * @param phase name of the phase
+     */
+    static synchronized void mark(final String phase) {
+        if (!ENABLED) {
+            return;
+        }
+        final long now = System.nanoTime();
+        if (phases.isEmpty()) {
+            start = now;
+            uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        }
+        phases.add(phase);
+        times.add(now);
+    }
+
+    /**
+     * Reports the marked phases and forgets them, so that the report is made only once.
+     */
+    static synchronized void report() {
+        if (!ENABLED || phases.isEmpty()) {
+            return;
+        }
+        final StringBuilder report = new StringBuilder("Startup (ms since the JVM started):");
+        for (int i = 0; i < phases.size(); i++) {
+            report.append(i == 0 ? " " : ", ").append(phases.get(i)).append(' ')
+                    .append(uptime + (times.get(i) - start) / 1_000_000);
+        }
+        System.err.println(report);
+        phases.clear();
+        times.clear();
+    }
+
+}
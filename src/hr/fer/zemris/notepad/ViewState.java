@@ -0,0 +1,51 @@
+package hr.fer.zemris.notepad;
+
+/**
+ * Caret, selection and scroll position of a document's text area, kept while the document isn't shown.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class ViewState {
+
+    /** Offset of the caret */
+    private final int dot;
+    /** Offset of the other end of the selection, the same as the caret if nothing is selected */
+    private final int mark;
+    /** X of the visible part of the text area */
+    private final int scrollX;
+    /** Y of the visible part of the text area */
+    private final int scrollY;
+
+    /**
+     * Creates a new state.
+     *
+     * @param dot offset of the caret
+     * @param mark offset of the other end of the selection
+     * @param scrollX x of the visible part of the text area
+     * @param scrollY y of the visible part of the text area
+     */
+    ViewState(final int dot, final int mark, final int scrollX, final int scrollY) {
+        this.dot = dot;
+        this.mark = mark;
+        this.scrollX = scrollX;
+        this.scrollY = scrollY;
+    }
+
+    int getDot() {
+        return dot;
+    }
+
+    int getMark() {
+        return mark;
+    }
+
+    int getScrollX() {
+        return scrollX;
+    }
+
+    int getScrollY() {
+        return scrollY;
+    }
+
+}
@@ -0,0 +1,143 @@
+package hr.fer.zemris.notepad.batch;
+
+import hr.fer.zemris.notepad.search.SearchQuery;
+import hr.fer.zemris.notepad.transform.CaseMode;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless batch mode, run as <code>JNotepad --batch [options] paths...</code>. It reads the options into a
+ * {@link BatchJob}, transforms the given files and directory trees with a {@link BatchProcessor}, reports every file
+ * that failed on the error stream and prints what the batch did, with its throughput, at the end.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class BatchCommand {
+
+    /** Argument that starts the batch mode */
+    public static final String FLAG = "--batch";
+
+    /** Exit status when every file was transformed or left alone */
+    private static final int OK = 0;
+    /** Exit status when some files failed */
+    private static final int FAILED = 1;
+    /** Exit status when the arguments are not valid */
+    private static final int USAGE = 2;
+
+    private static final String HELP = "Usage: JNotepad " + FLAG + " [options] <file or directory>...%n"
+            + "  --case upper|lower|title|toggle  changes the case of the text%n"
+            + "  --find <text> --replace <text>   replaces every match of the text%n"
+            + "  --regex                          the text to find is a regular expression%n"
+            + "  --ignore-case                    case doesn't matter when finding%n"
+            + "  --charset <name>                 writes the files in this charset%n"
+            + "  --line-endings lf|crlf|cr        normalizes the line separators%n"
+            + "  --threads <n>                    number of files transformed at once%n";
+
+    private BatchCommand() {
+    }
+
+    /**
+     * Runs the batch mode.
+     *
+     * @param args arguments after {@link #FLAG}
+     * @param out where the summary goes
+     * @param err where the usage and the failed files go
+     * @return exit status of the program
+     */
+    public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        CaseMode caseMode = null;
+        String find = null;
+        String replace = null;
+        boolean regex = false;
+        boolean matchCase = true;
+        Charset charset = null;
+        LineSeparator separator = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        final List<Path> paths = new ArrayList<>();
+        final SearchQuery query;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--case":
+                        caseMode = CaseMode.valueOf(value(args, ++i).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--find":
+                        find = value(args, ++i);
+                        break;
+                    case "--replace":
+                        replace = value(args, ++i);
+                        break;
+                    case "--regex":
+                        regex = true;
+                        break;
+                    case "--ignore-case":
+                        matchCase = false;
+                        break;
+                    case "--charset":
+                        charset = Charset.forName(value(args, ++i));
+                        break;
+                    case "--line-endings":
+                        separator = LineSeparator.valueOf(value(args, ++i).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i));
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("At least one thread is needed");
+                        }
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        paths.add(Paths.get(args[i]));
+                }
+            }
+            if ((find == null) != (replace == null)) {
+                throw new IllegalArgumentException("--find and --replace go together");
+            }
+            if (paths.isEmpty()) {
+                throw new IllegalArgumentException("No files given");
+            }
+            if (caseMode == null && find == null && charset == null && separator == null) {
+                throw new IllegalArgumentException("Nothing to do");
+            }
+            query = find == null ? null : new SearchQuery(find, regex, matchCase);
+        } catch (IllegalArgumentException e) {
+            // also thrown for unknown enum constants, numbers and charsets, and invalid regular expressions
+            err.println(e.getMessage());
+            err.printf(HELP);
+            return USAGE;
+        }
+
+        final BatchJob job = new BatchJob(caseMode, query, replace, charset, separator);
+        final BatchProcessor processor = new BatchProcessor(job, threads, (file, e) -> err.println(file + ": " + e));
+        final BatchStats stats;
+        try {
+            stats = processor.run(paths);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+        out.println(stats);
+        return stats.getFailedFiles() == 0 ? OK : FAILED;
+    }
+
+    /**
+     * @return value of the option at the index
+     * @throws IllegalArgumentException if the option has no value
+     */
+    private static String value(final String[] args, final int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+}
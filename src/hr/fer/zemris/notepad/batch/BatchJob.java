@@ -0,0 +1,94 @@
+package hr.fer.zemris.notepad.batch;
+
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.ReplaceBatch;
+import hr.fer.zemris.notepad.search.SearchEngine;
+import hr.fer.zemris.notepad.search.SearchQuery;
+import hr.fer.zemris.notepad.transform.CaseMode;
+import hr.fer.zemris.notepad.transform.CaseTransform;
+
+import java.nio.charset.Charset;
+
+/**
+ * Transformations that a batch applies to every file, with the same engine the editor uses: the case is changed by a
+ * {@link CaseTransform} and text is replaced by the {@link SearchEngine}, in that order, each as a
+ * {@link ReplaceBatch} on the document of a part of the file. Line separators are normalized after that, while the
+ * text is encoded, since a replacement for every line would only slow them down. Any of them may be left out.
+ * <p>
+ * A job doesn't change, so it is shared by all threads of a batch.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class BatchJob {
+
+    /** New case of the text, <code>null</code> to keep it */
+    private final CaseMode caseMode;
+    /** Replaced text, <code>null</code> to replace nothing */
+    private final SearchQuery query;
+    /** Replacement of every match of the query */
+    private final String replacement;
+    /** Charset the files are written in, <code>null</code> to keep the charset of every file */
+    private final Charset charset;
+    /** Line separator of the written files, <code>null</code> to keep the separators */
+    private final LineSeparator separator;
+
+    /**
+     * Creates a new job.
+     *
+     * @param caseMode new case of the text, <code>null</code> to keep it
+     * @param query replaced text, <code>null</code> to replace nothing
+     * @param replacement replacement of every match of the query, a template for a regular expression like in the
+     *            find dialog
+     * @param charset charset the files are written in, <code>null</code> to keep the charset of every file
+     * @param separator line separator of the written files, <code>null</code> to keep the separators
+     */
+    public BatchJob(final CaseMode caseMode, final SearchQuery query, final String replacement,
+            final Charset charset, final LineSeparator separator) {
+        this.caseMode = caseMode;
+        this.query = query;
+        this.replacement = replacement;
+        this.charset = charset;
+        this.separator = separator;
+    }
+
+    /**
+     * @return line separator of the written files, <code>null</code> to keep the separators
+     */
+    public LineSeparator getSeparator() {
+        return separator;
+    }
+
+    /**
+     * @return charset the files are written in, <code>null</code> to keep the charset of every file
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Applies the transformations of the text, all but the line separators, to a document.
+     *
+     * @param document transformed text, the history of its edits is of no use afterwards
+     * @return <code>true</code> if the text changed
+     * @throws IllegalArgumentException if the replacement is not valid
+     */
+    boolean apply(final PieceDocument document) {
+        boolean changed = false;
+        if (caseMode != null) {
+            changed |= replace(document, CaseTransform.transform(document.snapshot(), 0, document.getLength(),
+                    caseMode));
+        }
+        if (query != null) {
+            changed |= replace(document, SearchEngine.replaceAll(document.snapshot(), query, replacement, (s,
+                    e) -> true));
+        }
+        return changed;
+    }
+
+    private static boolean replace(final PieceDocument document, final ReplaceBatch batch) {
+        document.replace(batch);
+        return batch.size() > 0;
+    }
+
+}
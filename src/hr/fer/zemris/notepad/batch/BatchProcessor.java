@@ -0,0 +1,178 @@
+package hr.fer.zemris.notepad.batch;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Applies a {@link BatchJob} to files and to all files in directory trees. The calling thread walks the trees and
+ * hands the files to a work-stealing pool of a fixed number of threads, which transform them with a
+ * {@link FileTransformer} each. The walk waits while {@value #MAX_QUEUED} files are waiting, so a batch over a huge
+ * tree takes a bounded amount of memory: the paths of one directory, the queued paths and the buffers of one
+ * transformer per thread.
+ * <p>
+ * The files of a directory are listed before any of them is handed over. A transformer writes its temporary file
+ * next to the file it transforms, so the walk never sees the temporary files of the batch.
+ * <p>
+ * A file that fails is reported and left as it was, the batch goes on with the other files.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class BatchProcessor {
+
+    /** Maximum number of files that wait to be transformed */
+    private static final int MAX_QUEUED = 1024;
+
+    private final BatchJob job;
+    private final BatchStats stats = new BatchStats();
+    /** Receives every file that failed with its exception, on the pool threads */
+    private final BiConsumer<Path, Exception> failures;
+    private final ForkJoinPool pool;
+    /** Transformer of every pool thread */
+    private final ThreadLocal<FileTransformer> transformers;
+    /** Limits the number of files that wait to be transformed */
+    private final Semaphore queued = new Semaphore(MAX_QUEUED);
+
+    /**
+     * Creates a new processor.
+     *
+     * @param job applied transformations
+     * @param threads number of threads that transform files
+     * @param failures receives every file that failed with its exception, on the threads that transform files
+     */
+    public BatchProcessor(final BatchJob job, final int threads, final BiConsumer<Path, Exception> failures) {
+        this.job = job;
+        this.failures = failures;
+        pool = new ForkJoinPool(threads, p -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("batch-" + thread.getPoolIndex());
+            return thread;
+        }, null, true);
+        transformers = ThreadLocal.withInitial(() -> new FileTransformer(job, stats));
+    }
+
+    /**
+     * Transforms the given files, and all regular files in the given directories and their subdirectories, and
+     * waits until all of them are done. A processor runs only once.
+     *
+     * @param paths files and directories
+     * @return what the batch did
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public BatchStats run(final List<Path> paths) throws InterruptedException {
+        try {
+            for (final Path path : paths) {
+                walk(path);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        stats.finished();
+        return stats;
+    }
+
+    /**
+     * @return what the batch did so far
+     */
+    public BatchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return applied transformations
+     */
+    public BatchJob getJob() {
+        return job;
+    }
+
+    private void walk(final Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    final List<Path> files = new ArrayList<>();
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                        for (final Path entry : entries) {
+                            if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                                files.add(entry);
+                            }
+                        }
+                    } catch (IOException | DirectoryIteratorException e) {
+                        stats.fileFailed();
+                        failures.accept(dir, e);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    for (final Path file : files) {
+                        submit(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && file.equals(root)) {
+                        submit(file); // files in directories were submitted when their directory was listed
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    stats.fileFailed();
+                    failures.accept(file, exc);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            stats.fileFailed();
+            failures.accept(root, e);
+        }
+    }
+
+    private void submit(final Path file) {
+        queued.acquireUninterruptibly();
+        pool.execute(() -> {
+            try {
+                transform(file);
+            } finally {
+                queued.release();
+            }
+        });
+    }
+
+    private void transform(final Path file) {
+        try {
+            switch (transformers.get().transform(file)) {
+                case CHANGED:
+                    stats.fileChanged();
+                    break;
+                case UNCHANGED:
+                    stats.fileUnchanged();
+                    break;
+                default:
+                    stats.fileSkipped();
+                    break;
+            }
+        } catch (IOException | RuntimeException e) {
+            // a file that changes while it is read may also fail with an unchecked exception
+            stats.fileFailed();
+            failures.accept(file, e);
+        }
+    }
+
+}
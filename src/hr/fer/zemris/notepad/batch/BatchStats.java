@@ -0,0 +1,132 @@
+package hr.fer.zemris.notepad.batch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a batch did. The counters are updated by all threads of the batch at once, and read when it ends.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class BatchStats {
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder changedFiles = new LongAdder();
+    private final LongAdder skippedFiles = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    /** Time when the batch started, from {@link System#nanoTime()} */
+    private final long start = System.nanoTime();
+    /** Nanoseconds the batch took, -1 until it ends */
+    private volatile long elapsed = -1;
+
+    void fileChanged() {
+        files.increment();
+        changedFiles.increment();
+    }
+
+    void fileUnchanged() {
+        files.increment();
+    }
+
+    void fileSkipped() {
+        files.increment();
+        skippedFiles.increment();
+    }
+
+    void fileFailed() {
+        files.increment();
+        failedFiles.increment();
+    }
+
+    void read(final long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void decoded(final long chars) {
+        characters.add(chars);
+    }
+
+    void written(final long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    void finished() {
+        elapsed = System.nanoTime() - start;
+    }
+
+    /**
+     * @return number of files that were processed, whatever became of them
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return number of files that were rewritten
+     */
+    public long getChangedFiles() {
+        return changedFiles.sum();
+    }
+
+    /**
+     * @return number of binary files, which were left alone
+     */
+    public long getSkippedFiles() {
+        return skippedFiles.sum();
+    }
+
+    /**
+     * @return number of files that couldn't be read, decoded, encoded or written, they were left as they were
+     */
+    public long getFailedFiles() {
+        return failedFiles.sum();
+    }
+
+    /**
+     * @return number of bytes read from files
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return number of bytes written into files that were rewritten
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return number of characters decoded from files
+     */
+    public long getCharacters() {
+        return characters.sum();
+    }
+
+    /**
+     * @return nanoseconds the batch took, or has taken so far
+     */
+    public long getElapsedNanos() {
+        return elapsed == -1 ? System.nanoTime() - start : elapsed;
+    }
+
+    /**
+     * @return a few lines that summarize the batch, with its throughput
+     */
+    @Override
+    public String toString() {
+        final double seconds = Math.max(1, getElapsedNanos()) / (double) TimeUnit.SECONDS.toNanos(1);
+        final double megabytes = getBytesRead() / (1024.0 * 1024.0);
+        return String.format("files: %d (changed %d, unchanged %d, skipped %d, failed %d)%n"
+                + "read: %.1f MB, %d characters; written: %.1f MB%n"
+                + "time: %.3f s, %.1f files/s, %.1f MB/s", getFiles(), getChangedFiles(), getFiles()
+                        - getChangedFiles() - getSkippedFiles() - getFailedFiles(), getSkippedFiles(),
+                getFailedFiles(), megabytes, getCharacters(), getBytesWritten() / (1024.0 * 1024.0), seconds,
+                getFiles() / seconds, megabytes / seconds);
+    }
+
+}
@@ -0,0 +1,300 @@
+package hr.fer.zemris.notepad.batch;
+
+import hr.fer.zemris.notepad.document.CharArrayBuffer;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+import hr.fer.zemris.notepad.io.CharsetDetector;
+import hr.fer.zemris.notepad.io.FileSaver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Applies a {@link BatchJob} to one file at a time. The file is streamed: it is decoded into a reused array of
+ * {@value #CHUNK} characters, every chunk ends after its last line break and becomes a {@link PieceDocument} that the
+ * job transforms, and the result is encoded into a temporary file next to the original. Only if something changed is
+ * the temporary file moved over the original, so an unchanged file keeps its time stamps, and a file that fails
+ * halfway is left as it was.
+ * <p>
+ * Since chunks end at line breaks, a match of a query that spans a line break is found only inside a chunk. Files are
+ * decoded and encoded strictly: a file with bytes its charset doesn't decode, or text that the new charset can't
+ * encode, fails rather than losing characters. A byte order mark is dropped when the file is written in another
+ * charset.
+ * <p>
+ * A transformer reuses its buffers, so it must be used by one thread at a time.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class FileTransformer {
+
+    /** Characters decoded and transformed at once */
+    private static final int CHUNK = 1 << 20;
+    /** Bytes read or written at once */
+    private static final int IO_SIZE = 64 * 1024;
+    /** Character that a byte order mark decodes into */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /** What happened to a file */
+    enum Outcome {
+        /** The file was rewritten */
+        CHANGED,
+        /** The transformations didn't change the file */
+        UNCHANGED,
+        /** The file is binary and was left alone */
+        SKIPPED
+    }
+
+    private final BatchJob job;
+    private final BatchStats stats;
+    private final ByteBuffer in = ByteBuffer.allocate(IO_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocate(IO_SIZE);
+    /** Decoded characters, a chunk and the start of the next one */
+    private final char[] chunk = new char[CHUNK];
+    /** Transformed text of a chunk */
+    private char[] text = new char[CHUNK];
+    /** Transformed text of a chunk with normalized line separators */
+    private char[] separated = new char[0];
+
+    /** File that is being read */
+    private FileChannel input;
+    private CharsetDecoder decoder;
+    /** <code>true</code> once the whole file was read */
+    private boolean endOfInput;
+    /** <code>true</code> once the decoder is being flushed */
+    private boolean flushing;
+    /** <code>true</code> once everything was decoded */
+    private boolean decoded;
+    /** Temporary file that is being written */
+    private FileChannel output;
+    private CharsetEncoder encoder;
+    /** Position in the temporary file where the next byte goes */
+    private long written;
+
+    /**
+     * Creates a new transformer.
+     *
+     * @param job applied transformations
+     * @param stats counts the bytes and characters
+     */
+    FileTransformer(final BatchJob job, final BatchStats stats) {
+        this.job = job;
+        this.stats = stats;
+    }
+
+    /**
+     * Transforms a file.
+     *
+     * @param file transformed file
+     * @return what happened to the file
+     * @throws IOException if the file can't be read, decoded, encoded or replaced
+     * @throws IllegalArgumentException if the replacement of the job is not valid
+     */
+    Outcome transform(final Path file) throws IOException {
+        if (CharsetDetector.isBinary(file)) {
+            return Outcome.SKIPPED;
+        }
+        final Charset source = CharsetDetector.detect(file);
+        final Charset target = job.getCharset() == null ? source : job.getCharset();
+        decoder = source.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(
+                CodingErrorAction.REPORT);
+        encoder = target.newEncoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(
+                CodingErrorAction.REPORT);
+        endOfInput = false;
+        flushing = false;
+        decoded = false;
+        written = 0;
+        in.clear();
+        out.clear();
+        final boolean converted = !target.equals(source);
+        boolean changed = converted;
+        final Path temp = FileSaver.createTempFile(file);
+        try {
+            try (FileChannel reading = FileChannel.open(file, StandardOpenOption.READ);
+                    FileChannel writing = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                input = reading;
+                output = writing;
+                int length = 0;
+                boolean first = true;
+                while (true) {
+                    length = fill(length);
+                    final int cut = decoded ? length : cut(length);
+                    final int start = first && converted && cut > 0 && chunk[0] == BYTE_ORDER_MARK ? 1 : 0;
+                    changed |= write(start, cut);
+                    first = false;
+                    System.arraycopy(chunk, cut, chunk, 0, length - cut);
+                    length -= cut;
+                    if (decoded && length == 0) {
+                        break;
+                    }
+                }
+                flush();
+                stats.read(reading.size());
+                if (changed) {
+                    writing.force(true);
+                }
+            } finally {
+                input = null;
+                output = null;
+            }
+            if (!changed) {
+                return Outcome.UNCHANGED;
+            }
+            FileSaver.moveOver(temp, file);
+            stats.written(written);
+            return Outcome.CHANGED;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Decodes the file after the first <code>length</code> characters of the chunk until the chunk is full or the
+     * whole file is decoded.
+     *
+     * @return number of characters in the chunk
+     */
+    private int fill(final int length) throws IOException {
+        final CharBuffer chars = CharBuffer.wrap(chunk, length, chunk.length - length);
+        while (chars.hasRemaining() && !decoded) {
+            if (flushing) {
+                if (decoder.flush(chars).isOverflow()) {
+                    break;
+                }
+                decoded = true;
+                break;
+            }
+            if (!endOfInput && input.read(in) == -1) {
+                endOfInput = true;
+            }
+            in.flip();
+            final CoderResult result = decoder.decode(in, chars, endOfInput);
+            in.compact();
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow()) {
+                break;
+            }
+            flushing = endOfInput;
+        }
+        return chars.position();
+    }
+
+    /**
+     * Finds where a chunk that isn't the last one ends: after its last line break, or, for a line longer than the
+     * chunk, before a carriage return or a surrogate pair that would be split.
+     *
+     * @return number of characters of the chunk that are transformed now
+     */
+    private int cut(final int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (chunk[i] == '\n') {
+                return i + 1;
+            }
+        }
+        int cut = length;
+        if (cut > 1 && (chunk[cut - 1] == '\r' || Character.isHighSurrogate(chunk[cut - 1]))) {
+            cut--;
+        }
+        return cut;
+    }
+
+    /**
+     * Transforms characters <code>[start, end)</code> of the chunk and encodes them into the temporary file. The
+     * document is dropped before the chunk is filled again, so it can share the chunk's array.
+     *
+     * @return <code>true</code> if the job changed the characters
+     */
+    private boolean write(final int start, final int end) throws IOException {
+        stats.decoded(end - start);
+        if (end == start) {
+            return false;
+        }
+        final PieceDocument document = new PieceDocument();
+        document.append(new CharArrayBuffer(chunk, end), start, end - start);
+        boolean changed = job.apply(document);
+        final TextSnapshot snapshot = document.snapshot();
+        if (text.length < snapshot.length()) {
+            text = Arrays.copyOf(text, Math.max(snapshot.length(), 2 * text.length));
+        }
+        snapshot.copyChars(0, snapshot.length(), text, 0);
+        final CharBuffer chars = separate(snapshot.length());
+        changed |= chars.array() != text;
+        while (true) {
+            final CoderResult result = encoder.encode(chars, out, false);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            drain();
+        }
+        return changed;
+    }
+
+    /**
+     * Normalizes the line separators of the transformed text, if the job does.
+     *
+     * @return the text with normalized separators, or the transformed text if it didn't change
+     */
+    private CharBuffer separate(final int length) {
+        final LineSeparator separator = job.getSeparator();
+        if (separator == null) {
+            return CharBuffer.wrap(text, 0, length);
+        }
+        if (separated.length < 2 * length) {
+            separated = new char[Math.max(2 * length, 2 * CHUNK)];
+        }
+        final int normalized = separator.normalize(text, length, separated);
+        if (normalized == length) {
+            int i = 0;
+            while (i < length && text[i] == separated[i]) {
+                i++;
+            }
+            if (i == length) {
+                return CharBuffer.wrap(text, 0, length);
+            }
+        }
+        return CharBuffer.wrap(separated, 0, normalized);
+    }
+
+    /**
+     * Finishes encoding and writes what is left in the output buffer.
+     */
+    private void flush() throws IOException {
+        final CharBuffer none = CharBuffer.allocate(0);
+        CoderResult result;
+        while ((result = encoder.encode(none, out, true)).isOverflow()) {
+            drain();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (encoder.flush(out).isOverflow()) {
+            drain();
+        }
+        drain();
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            written += output.write(out, written);
+        }
+        out.clear();
+    }
+
+}
@@ -0,0 +1,53 @@
+package hr.fer.zemris.notepad.batch;
+
+/**
+ * Line separators that a batch can normalize files to. A line break is a carriage return followed by a line feed, or
+ * either of them alone.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public enum LineSeparator {
+
+    /** Unix line feed */
+    LF("\n"),
+    /** Windows carriage return and line feed */
+    CRLF("\r\n"),
+    /** Classic Mac OS carriage return */
+    CR("\r");
+
+    /** Characters of the separator */
+    private final char[] text;
+
+    LineSeparator(final String text) {
+        this.text = text.toCharArray();
+    }
+
+    /**
+     * Copies text and replaces every line break in it with this separator. Text that doesn't end the file must not
+     * end with a carriage return, whose line feed may be in the text that follows.
+     *
+     * @param src text
+     * @param length number of characters of the text
+     * @param dst array the text is copied into, at least twice as long as the text
+     * @return number of characters in <code>dst</code>
+     */
+    int normalize(final char[] src, final int length, final char[] dst) {
+        int j = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = src[i];
+            if (c == '\r' || c == '\n') {
+                if (c == '\r' && i + 1 < length && src[i + 1] == '\n') {
+                    i++;
+                }
+                for (final char s : text) {
+                    dst[j++] = s;
+                }
+            } else {
+                dst[j++] = c;
+            }
+        }
+        return j;
+    }
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the headless batch mode, which applies the editor's transformations to many files from the
+ * command line, in parallel and without reading any file whole.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.batch;
@@ -0,0 +1,59 @@
+package hr.fer.zemris.notepad.diff;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Algorithms that compare the lines of two texts.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public enum DiffAlgorithm {
+
+    /** Myers' algorithm in linear space, see {@link MyersDiff} */
+    MYERS("Myers") {
+        @Override
+        EditScript diff(final long[] a, final long[] b, final BooleanSupplier cancelled) {
+            return MyersDiff.diff(a, b, cancelled);
+        }
+    },
+    /** Patience diff, see {@link PatienceDiff} */
+    PATIENCE("Patience") {
+        @Override
+        EditScript diff(final long[] a, final long[] b, final BooleanSupplier cancelled) {
+            return PatienceDiff.diff(a, b, cancelled);
+        }
+    };
+
+    /** Name of the algorithm */
+    private final String name;
+
+    private DiffAlgorithm(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Computes the differences between the lines of two texts.
+     *
+     * @param a lines of the old text
+     * @param b lines of the new text
+     * @param cancelled checked now and then, the diff stops if it returns <code>true</code>
+     * @return hunks that turn <code>a</code> into <code>b</code>
+     * @throws CancellationException if the diff was cancelled
+     */
+    public EditScript diff(final LineHashes a, final LineHashes b, final BooleanSupplier cancelled) {
+        return diff(a.hashes(), b.hashes(), cancelled);
+    }
+
+    /**
+     * Computes the differences between two sequences of line hashes.
+     */
+    abstract EditScript diff(long[] a, long[] b, BooleanSupplier cancelled);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
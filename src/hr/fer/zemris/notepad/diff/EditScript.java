@@ -0,0 +1,112 @@
+package hr.fer.zemris.notepad.diff;
+
+import java.util.Arrays;
+
+/**
+ * Differences between two sequences of lines, <code>a</code> and <code>b</code>, as a list of hunks in increasing
+ * order. A hunk replaces lines <code>[aStart, aEnd)</code> of <code>a</code> with lines <code>[bStart, bEnd)</code>
+ * of <code>b</code>, and the lines between two hunks are the same in both sequences.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class EditScript {
+
+    /** Hunks, four elements each: aStart, aEnd, bStart, bEnd */
+    private int[] hunks = new int[32];
+    /** Number of used elements of {@link #hunks} */
+    private int count;
+
+    /**
+     * Adds a hunk after the hunks that were already added. A hunk that touches the last one is joined with it.
+     *
+     * @param aStart first replaced line of <code>a</code>
+     * @param aEnd line after the last replaced line of <code>a</code>
+     * @param bStart first line of <code>b</code> that replaces them
+     * @param bEnd line after the last line of <code>b</code> that replaces them
+     */
+    public void add(final int aStart, final int aEnd, final int bStart, final int bEnd) {
+        if (aStart == aEnd && bStart == bEnd) {
+            return;
+        }
+        if (count > 0 && hunks[count - 3] == aStart && hunks[count - 1] == bStart) {
+            hunks[count - 3] = aEnd;
+            hunks[count - 1] = bEnd;
+            return;
+        }
+        if (count == hunks.length) {
+            hunks = Arrays.copyOf(hunks, count * 2);
+        }
+        hunks[count++] = aStart;
+        hunks[count++] = aEnd;
+        hunks[count++] = bStart;
+        hunks[count++] = bEnd;
+    }
+
+    /**
+     * @return number of hunks
+     */
+    public int size() {
+        return count / 4;
+    }
+
+    /**
+     * @param hunk index of the hunk
+     * @return first replaced line of <code>a</code>
+     */
+    public int aStart(final int hunk) {
+        return hunks[4 * hunk];
+    }
+
+    /**
+     * @param hunk index of the hunk
+     * @return line after the last replaced line of <code>a</code>
+     */
+    public int aEnd(final int hunk) {
+        return hunks[4 * hunk + 1];
+    }
+
+    /**
+     * @param hunk index of the hunk
+     * @return first line of <code>b</code> in the hunk
+     */
+    public int bStart(final int hunk) {
+        return hunks[4 * hunk + 2];
+    }
+
+    /**
+     * @param hunk index of the hunk
+     * @return line after the last line of <code>b</code> in the hunk
+     */
+    public int bEnd(final int hunk) {
+        return hunks[4 * hunk + 3];
+    }
+
+    /**
+     * Finds the line of <code>b</code> that a line of <code>a</code> became. A line that was replaced becomes the
+     * first line of its replacement.
+     *
+     * @param line line of <code>a</code>
+     * @return line of <code>b</code>
+     */
+    public int map(final int line) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) { // last hunk that starts at or before the line
+            final int mid = (low + high) >>> 1;
+            if (aStart(mid) <= line) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high == -1) {
+            return line;
+        }
+        if (line < aEnd(high)) {
+            return bStart(high);
+        }
+        return line - aEnd(high) + bEnd(high);
+    }
+
+}
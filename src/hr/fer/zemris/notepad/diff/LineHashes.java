@@ -0,0 +1,161 @@
+package hr.fer.zemris.notepad.diff;
+
+import hr.fer.zemris.notepad.document.TextHash;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.text.Segment;
+
+/**
+ * Lines of a {@link TextSnapshot}, each reduced to its {@link TextHash} and its start offset. A line includes the
+ * newline that ends it, so a last line without one differs from the same line with it. A text that ends with a newline
+ * has an empty last line. Lines are compared by their hashes, two lines with the same hash are equal with overwhelming
+ * probability.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class LineHashes {
+
+    /** Number of characters hashed between two checks for cancellation */
+    private static final int CHECK_INTERVAL = 1 << 20;
+
+    /** Hashes of the lines */
+    private final long[] hashes;
+    /** Start offsets of the lines, followed by the length of the text */
+    private final int[] starts;
+
+    private LineHashes(final long[] hashes, final int[] starts) {
+        this.hashes = hashes;
+        this.starts = starts;
+    }
+
+    /**
+     * Hashes the lines of a snapshot.
+     *
+     * @param snapshot hashed text
+     * @param cancelled checked now and then, hashing stops if it returns <code>true</code>
+     * @return hashes of the lines
+     * @throws CancellationException if hashing was cancelled
+     */
+    public static LineHashes of(final TextSnapshot snapshot, final BooleanSupplier cancelled) {
+        final Hasher hasher = new Hasher(Math.max(16, snapshot.length() / 32));
+        final Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        for (int from = 0, length = snapshot.length(); from < length; from += CHECK_INTERVAL) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            snapshot.visit(from, Math.min(length, from + CHECK_INTERVAL), (buffer, start, count) -> {
+                for (int offset = start, end = start + count; offset < end; offset += segment.count) {
+                    buffer.getChars(offset, end - offset, segment);
+                    hasher.add(segment.array, segment.offset, segment.count);
+                }
+                return true;
+            });
+        }
+        return hasher.finish();
+    }
+
+    /**
+     * @return number of lines
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * @param line index of the line
+     * @return hash of the line
+     */
+    public long hash(final int line) {
+        return hashes[line];
+    }
+
+    /**
+     * Returns the offset where a line starts.
+     *
+     * @param line index of the line, or the number of lines for the end of the text
+     * @return offset of the line
+     */
+    public int start(final int line) {
+        return starts[line];
+    }
+
+    /**
+     * @return hashes of all lines, must not be changed
+     */
+    long[] hashes() {
+        return hashes;
+    }
+
+    /**
+     * Finds the line that contains an offset.
+     *
+     * @param offset offset in the text
+     * @return index of the line
+     */
+    public int lineOf(final int offset) {
+        final int index = Arrays.binarySearch(starts, 0, hashes.length, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Splits characters into lines and hashes them.
+     */
+    private static final class Hasher {
+
+        /** Hashes of the finished lines */
+        private long[] hashes;
+        /** Start offsets of the lines */
+        private int[] starts;
+        /** Number of finished lines */
+        private int count;
+        /** Hash of the current line */
+        private long hash;
+        /** Offset of the next character */
+        private int offset;
+
+        Hasher(final int capacity) {
+            hashes = new long[capacity];
+            starts = new int[capacity + 1];
+        }
+
+        void add(final char[] chars, final int from, final int length) {
+            int lineStart = from;
+            for (int i = from, end = from + length; i < end; i++) {
+                if (chars[i] == '\n') {
+                    hash = TextHash.append(hash, chars, lineStart, i + 1 - lineStart);
+                    endLine(offset + i + 1 - from);
+                    lineStart = i + 1;
+                }
+            }
+            hash = TextHash.append(hash, chars, lineStart, from + length - lineStart);
+            offset += length;
+        }
+
+        /**
+         * Ends the current line, the next one starts at the given offset.
+         */
+        private void endLine(final int next) {
+            if (count + 1 == hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                starts = Arrays.copyOf(starts, hashes.length + 1);
+            }
+            hashes[count++] = hash;
+            starts[count] = next;
+            hash = 0;
+        }
+
+        LineHashes finish() {
+            hashes[count++] = hash; // the last line, empty if the text ends with a newline
+            starts[count] = offset;
+            return new LineHashes(Arrays.copyOf(hashes, count), Arrays.copyOf(starts, count + 1));
+        }
+
+    }
+
+}
@@ -0,0 +1,393 @@
+package hr.fer.zemris.notepad.diff;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Myers' <code>O(ND)</code> difference algorithm in linear space. The middle snake of the shortest edit path is found
+ * by searching from both ends at once, and the two halves around it are compared the same way, so only the two
+ * frontiers of diagonals are kept in memory, besides a flag for every line that is not common.
+ * <p>
+ * Lines that appear in only one of the texts can't be common, so they are marked before the comparison and left out of
+ * it. The search for a middle snake gives up after {@value #MAX_COST} edit steps and splits at the point furthest
+ * along either frontier instead. That keeps very different texts from taking quadratic time, at the price of a
+ * script that isn't always the shortest one.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class MyersDiff {
+
+    /** Edit steps after which the search for a middle snake gives up */
+    private static final int MAX_COST = 1024;
+    /** Marks an empty slot of a hash table of line hashes, which are never negative */
+    static final long EMPTY = -1;
+    /** Edit steps between two checks for cancellation */
+    private static final int CHECK_INTERVAL = 64;
+
+    private final long[] a;
+    private final long[] b;
+    /** Lines of <code>a</code> that are not common */
+    private final boolean[] removed;
+    /** Lines of <code>b</code> that are not common */
+    private final boolean[] inserted;
+    /** Forward frontier, furthest x on every diagonal, indexed by the diagonal plus {@link #offset} */
+    private final int[] forward;
+    /** Backward frontier */
+    private final int[] backward;
+    /** Added to a diagonal, which may be negative, to get its index in the frontiers */
+    private final int offset;
+    /** Checked now and then, the diff stops if it returns <code>true</code> */
+    private final BooleanSupplier cancelled;
+
+    /**
+     * Creates a new diff of two sequences of line hashes.
+     *
+     * @param a hashes of the old lines
+     * @param b hashes of the new lines
+     * @param cancelled checked now and then, the diff stops if it returns <code>true</code>
+     */
+    MyersDiff(final long[] a, final long[] b, final BooleanSupplier cancelled) {
+        this.a = a;
+        this.b = b;
+        this.cancelled = cancelled;
+        removed = new boolean[a.length];
+        inserted = new boolean[b.length];
+        forward = new int[a.length + b.length + 3];
+        backward = new int[a.length + b.length + 3];
+        offset = b.length + 1;
+    }
+
+    /**
+     * Computes the differences between the lines of two texts.
+     *
+     * @param a lines of the old text
+     * @param b lines of the new text
+     * @param cancelled checked now and then, the diff stops if it returns <code>true</code>
+     * @return hunks that turn <code>a</code> into <code>b</code>
+     * @throws CancellationException if the diff was cancelled
+     */
+    public static EditScript diff(final LineHashes a, final LineHashes b, final BooleanSupplier cancelled) {
+        return diff(a.hashes(), b.hashes(), cancelled);
+    }
+
+    /**
+     * Computes the differences between two sequences of line hashes.
+     *
+     * @param a hashes of the old lines
+     * @param b hashes of the new lines
+     * @param cancelled checked now and then, the diff stops if it returns <code>true</code>
+     * @return hunks that turn <code>a</code> into <code>b</code>
+     */
+    static EditScript diff(final long[] a, final long[] b, final BooleanSupplier cancelled) {
+        final boolean[] removed = new boolean[a.length];
+        final boolean[] inserted = new boolean[b.length];
+        mark(a, 0, a.length, b, 0, b.length, removed, inserted, cancelled);
+        return script(removed, inserted);
+    }
+
+    /**
+     * Marks the lines of <code>a[aStart, aEnd)</code> and <code>b[bStart, bEnd)</code> that are not common. Lines
+     * outside of the ranges are not touched, so the ranges between lines that are known to be common can be compared
+     * one by one.
+     *
+     * @param a hashes of the old lines
+     * @param aStart first compared line of <code>a</code>
+     * @param aEnd line after the last compared line of <code>a</code>
+     * @param b hashes of the new lines
+     * @param bStart first compared line of <code>b</code>
+     * @param bEnd line after the last compared line of <code>b</code>
+     * @param removed receives the lines of <code>a</code> that are not common
+     * @param inserted receives the lines of <code>b</code> that are not common
+     * @param cancelled checked now and then, the diff stops if it returns <code>true</code>
+     */
+    static void mark(final long[] a, final int aStart, final int aEnd, final long[] b, final int bStart,
+            final int bEnd, final boolean[] removed, final boolean[] inserted, final BooleanSupplier cancelled) {
+        if (aStart == aEnd || bStart == bEnd) {
+            Arrays.fill(removed, aStart, aEnd, true);
+            Arrays.fill(inserted, bStart, bEnd, true);
+            return;
+        }
+        final int[] aLines = shared(a, aStart, aEnd, b, bStart, bEnd, removed);
+        final int[] bLines = shared(b, bStart, bEnd, a, aStart, aEnd, inserted);
+        final MyersDiff diff = new MyersDiff(select(a, aLines), select(b, bLines), cancelled);
+        diff.compare(0, aLines.length, 0, bLines.length);
+        for (int i = 0; i < aLines.length; i++) {
+            removed[aLines[i]] = diff.removed[i];
+        }
+        for (int i = 0; i < bLines.length; i++) {
+            inserted[bLines[i]] = diff.inserted[i];
+        }
+    }
+
+    /**
+     * Finds the lines of a range of one text that also appear in a range of the other, and marks the rest.
+     *
+     * @param lines hashes of the lines of the text
+     * @param from first line of the range
+     * @param to line after the last line of the range
+     * @param other hashes of the lines of the other text
+     * @param otherFrom first line of the other range
+     * @param otherTo line after the last line of the other range
+     * @param unique receives the lines that don't appear in the other range
+     * @return indexes of the lines that do
+     */
+    static int[] shared(final long[] lines, final int from, final int to, final long[] other, final int otherFrom,
+            final int otherTo, final boolean[] unique) {
+        final long[] table = new long[Integer.highestOneBit(Math.max(1, otherTo - otherFrom) * 2) * 2];
+        Arrays.fill(table, EMPTY);
+        final int mask = table.length - 1;
+        for (int i = otherFrom; i < otherTo; i++) {
+            final long hash = other[i];
+            int slot = slot(hash, mask);
+            while (table[slot] != EMPTY && table[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = hash;
+        }
+        final int[] shared = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int slot = slot(lines[i], mask);
+            while (table[slot] != EMPTY && table[slot] != lines[i]) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == EMPTY) {
+                unique[i] = true;
+            } else {
+                shared[count++] = i;
+            }
+        }
+        return Arrays.copyOf(shared, count);
+    }
+
+    /**
+     * @return hashes of the given lines
+     */
+    static long[] select(final long[] hashes, final int[] lines) {
+        final long[] selected = new long[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            selected[i] = hashes[lines[i]];
+        }
+        return selected;
+    }
+
+    /**
+     * @return slot of a hash in a table of the given size minus one
+     */
+    static int slot(final long hash, final int mask) {
+        return (int) (hash ^ hash >>> 29) * 0x9E3779B9 & mask;
+    }
+
+    /**
+     * Finds the lines of <code>a[xStart, xEnd)</code> and <code>b[yStart, yEnd)</code> that are not common. Lines
+     * outside of the ranges are not touched, so ranges between known common lines can be compared one by one.
+     *
+     * @param xStart first line of <code>a</code>
+     * @param xEnd line after the last line of <code>a</code>
+     * @param yStart first line of <code>b</code>
+     * @param yEnd line after the last line of <code>b</code>
+     */
+    void compare(final int xStart, final int xEnd, final int yStart, final int yEnd) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = xStart;
+        stack[top++] = xEnd;
+        stack[top++] = yStart;
+        stack[top++] = yEnd;
+        final int[] split = new int[2];
+        while (top > 0) {
+            int ylim = stack[--top];
+            int yoff = stack[--top];
+            int xlim = stack[--top];
+            int xoff = stack[--top];
+            while (xoff < xlim && yoff < ylim && a[xoff] == b[yoff]) {
+                xoff++;
+                yoff++;
+            }
+            while (xlim > xoff && ylim > yoff && a[xlim - 1] == b[ylim - 1]) {
+                xlim--;
+                ylim--;
+            }
+            if (xoff == xlim) {
+                Arrays.fill(inserted, yoff, ylim, true);
+            } else if (yoff == ylim) {
+                Arrays.fill(removed, xoff, xlim, true);
+            } else {
+                split(xoff, xlim, yoff, ylim, split);
+                if (top + 8 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = split[0];
+                stack[top++] = xlim;
+                stack[top++] = split[1];
+                stack[top++] = ylim;
+                stack[top++] = xoff;
+                stack[top++] = split[0];
+                stack[top++] = yoff;
+                stack[top++] = split[1];
+            }
+        }
+    }
+
+    /**
+     * Builds the script from the lines that are not common. The common lines of both texts have to be the same, in the
+     * same order.
+     *
+     * @param removed lines of <code>a</code> that are not common
+     * @param inserted lines of <code>b</code> that are not common
+     * @return hunks that turn <code>a</code> into <code>b</code>
+     */
+    static EditScript script(final boolean[] removed, final boolean[] inserted) {
+        final EditScript script = new EditScript();
+        int x = 0;
+        int y = 0;
+        while (x < removed.length || y < inserted.length) {
+            if (x < removed.length && removed[x] || y < inserted.length && inserted[y]) {
+                final int xStart = x;
+                final int yStart = y;
+                while (x < removed.length && removed[x]) {
+                    x++;
+                }
+                while (y < inserted.length && inserted[y]) {
+                    y++;
+                }
+                script.add(xStart, x, yStart, y);
+            } else {
+                x++;
+                y++;
+            }
+        }
+        return script;
+    }
+
+    /**
+     * Finds the middle snake of the shortest edit path between <code>a[xoff, xlim)</code> and
+     * <code>b[yoff, ylim)</code>, whose first and last lines differ, or a point close to it if that takes too long.
+     *
+     * @param split receives the x and y of the point where the comparison is split
+     */
+    private void split(final int xoff, final int xlim, final int yoff, final int ylim, final int[] split) {
+        final int dmin = xoff - ylim;
+        final int dmax = xlim - yoff;
+        final int fmid = xoff - yoff;
+        final int bmid = xlim - ylim;
+        final boolean odd = ((fmid - bmid) & 1) != 0;
+        int fmin = fmid;
+        int fmax = fmid;
+        int bmin = bmid;
+        int bmax = bmid;
+        forward[offset + fmid] = xoff;
+        backward[offset + bmid] = xlim;
+
+        for (int cost = 1;; cost++) {
+            if (cost % CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            // extend the forward frontier by one edit
+            if (fmin > dmin) {
+                forward[offset + --fmin - 1] = -1;
+            } else {
+                ++fmin;
+            }
+            if (fmax < dmax) {
+                forward[offset + ++fmax + 1] = -1;
+            } else {
+                --fmax;
+            }
+            for (int d = fmax; d >= fmin; d -= 2) {
+                final int low = forward[offset + d - 1];
+                final int high = forward[offset + d + 1];
+                int x = low >= high ? low + 1 : high;
+                int y = x - d;
+                while (x < xlim && y < ylim && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + d] = x;
+                if (odd && bmin <= d && d <= bmax && backward[offset + d] <= x) {
+                    split[0] = x;
+                    split[1] = y;
+                    return;
+                }
+            }
+
+            // extend the backward frontier by one edit
+            if (bmin > dmin) {
+                backward[offset + --bmin - 1] = Integer.MAX_VALUE;
+            } else {
+                ++bmin;
+            }
+            if (bmax < dmax) {
+                backward[offset + ++bmax + 1] = Integer.MAX_VALUE;
+            } else {
+                --bmax;
+            }
+            for (int d = bmax; d >= bmin; d -= 2) {
+                final int low = backward[offset + d - 1];
+                final int high = backward[offset + d + 1];
+                int x = low < high ? low : high - 1;
+                int y = x - d;
+                while (x > xoff && y > yoff && a[x - 1] == b[y - 1]) {
+                    x--;
+                    y--;
+                }
+                backward[offset + d] = x;
+                if (!odd && fmin <= d && d <= fmax && x <= forward[offset + d]) {
+                    split[0] = x;
+                    split[1] = y;
+                    return;
+                }
+            }
+
+            if (cost >= MAX_COST) {
+                approximate(xoff, xlim, yoff, ylim, fmin, fmax, bmin, bmax, split);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Splits at the point that got furthest from its end of the comparison, on either frontier.
+     */
+    private void approximate(final int xoff, final int xlim, final int yoff, final int ylim, final int fmin,
+            final int fmax, final int bmin, final int bmax, final int[] split) {
+        int forwardBest = -1;
+        int forwardX = xoff;
+        for (int d = fmax; d >= fmin; d -= 2) {
+            int x = Math.min(forward[offset + d], xlim);
+            int y = x - d;
+            if (ylim < y) {
+                x = ylim + d;
+                y = ylim;
+            }
+            if (forwardBest < x + y) {
+                forwardBest = x + y;
+                forwardX = x;
+            }
+        }
+        int backwardBest = Integer.MAX_VALUE;
+        int backwardX = xlim;
+        for (int d = bmax; d >= bmin; d -= 2) {
+            int x = Math.max(xoff, backward[offset + d]);
+            int y = x - d;
+            if (y < yoff) {
+                x = yoff + d;
+                y = yoff;
+            }
+            if (x + y < backwardBest) {
+                backwardBest = x + y;
+                backwardX = x;
+            }
+        }
+        if (xlim + ylim - backwardBest < forwardBest - (xoff + yoff)) {
+            split[0] = forwardX;
+            split[1] = forwardBest - forwardX;
+        } else {
+            split[0] = backwardX;
+            split[1] = backwardBest - backwardX;
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package hr.fer.zemris.notepad.diff;
+
+import hr.fer.zemris.notepad.document.ReplaceBatch;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Replacements of whole lines that change a text, found with a line diff. Only lines that differ are replaced, so
+ * applying the batch with {@link hr.fer.zemris.notepad.document.PieceDocument#replace(ReplaceBatch)} keeps the pieces
+ * of everything else. The script of the patch maps lines of the old text to lines of the new one, which is what keeps
+ * the caret and the scroll position on the same lines.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class Patch {
+
+    /** Replacements in the old text */
+    private final ReplaceBatch batch;
+    /** Lines of the old text that are replaced, with their lines in the new text */
+    private final EditScript script;
+    /** Number of changes that were left out because they conflicted */
+    private final int conflicts;
+
+    private Patch(final ReplaceBatch batch, final EditScript script, final int conflicts) {
+        this.batch = batch;
+        this.script = script;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * Finds the patch that turns one text into another.
+     *
+     * @param ours text that is changed
+     * @param ourLines lines of that text
+     * @param theirs text it becomes
+     * @param theirLines lines of that text
+     * @param cancelled checked now and then, it stops if it returns <code>true</code>
+     * @return the patch
+     * @throws CancellationException if it was cancelled
+     */
+    public static Patch between(final TextSnapshot ours, final LineHashes ourLines, final TextSnapshot theirs,
+            final LineHashes theirLines, final BooleanSupplier cancelled) {
+        final EditScript script = MyersDiff.diff(ourLines, theirLines, cancelled);
+        final ReplaceBatch batch = new ReplaceBatch(ours);
+        for (int i = 0; i < script.size(); i++) {
+            replace(batch, ourLines, script.aStart(i), script.aEnd(i), theirs, theirLines, script.bStart(i), script
+                    .bEnd(i));
+        }
+        return new Patch(batch, script, 0);
+    }
+
+    /**
+     * Finds the patch that brings the changes made to a base text by someone else into our text, which was changed
+     * too. A change of theirs is left out if it touches lines that we changed, unless we made the same change.
+     *
+     * @param base lines of the text both changes started from
+     * @param ours our text, that is changed
+     * @param ourLines lines of our text
+     * @param theirs their text
+     * @param theirLines lines of their text
+     * @param cancelled checked now and then, it stops if it returns <code>true</code>
+     * @return the patch
+     * @throws CancellationException if it was cancelled
+     */
+    public static Patch merge(final LineHashes base, final TextSnapshot ours, final LineHashes ourLines,
+            final TextSnapshot theirs, final LineHashes theirLines, final BooleanSupplier cancelled) {
+        final EditScript mine = MyersDiff.diff(base, ourLines, cancelled);
+        final EditScript their = MyersDiff.diff(base, theirLines, cancelled);
+        final ReplaceBatch batch = new ReplaceBatch(ours);
+        final EditScript script = new EditScript();
+        int conflicts = 0;
+        int shift = 0; // lines added to our text by the applied changes
+        int m = 0;
+        for (int t = 0; t < their.size(); t++) {
+            final int start = their.aStart(t);
+            final int end = their.aEnd(t);
+            while (m < mine.size() && mine.aEnd(m) < start) {
+                m++;
+            }
+            if (m < mine.size() && mine.aStart(m) <= end) {
+                if (!same(mine, m, ourLines, their, t, theirLines)) {
+                    conflicts++;
+                }
+                continue;
+            }
+            final int ourStart = mine.map(start);
+            final int ourEnd = ourStart + end - start;
+            replace(batch, ourLines, ourStart, ourEnd, theirs, theirLines, their.bStart(t), their.bEnd(t));
+            script.add(ourStart, ourEnd, ourStart + shift, ourStart + shift + their.bEnd(t) - their.bStart(t));
+            shift += their.bEnd(t) - their.bStart(t) - (end - start);
+        }
+        return new Patch(batch, script, conflicts);
+    }
+
+    /**
+     * @return replacements in the old text
+     */
+    public ReplaceBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * @return lines of the old text that are replaced, with their lines in the new text
+     */
+    public EditScript getScript() {
+        return script;
+    }
+
+    /**
+     * @return number of changes that were left out because they conflicted with ours
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Checks if two hunks replace the same lines of the base with the same lines.
+     */
+    private static boolean same(final EditScript mine, final int m, final LineHashes ourLines,
+            final EditScript their, final int t, final LineHashes theirLines) {
+        if (mine.aStart(m) != their.aStart(t) || mine.aEnd(m) != their.aEnd(t)
+                || mine.bEnd(m) - mine.bStart(m) != their.bEnd(t) - their.bStart(t)) {
+            return false;
+        }
+        for (int i = 0, n = mine.bEnd(m) - mine.bStart(m); i < n; i++) {
+            if (ourLines.hash(mine.bStart(m) + i) != theirLines.hash(their.bStart(t) + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the replacement of lines <code>[start, end)</code> of our text with lines <code>[from, to)</code> of
+     * theirs.
+     */
+    private static void replace(final ReplaceBatch batch, final LineHashes ourLines, final int start, final int end,
+            final TextSnapshot theirs, final LineHashes theirLines, final int from, final int to) {
+        final int offset = theirLines.start(from);
+        final char[] text = new char[theirLines.start(to) - offset];
+        theirs.copyChars(offset, text.length, text, 0);
+        batch.add(ourLines.start(start), ourLines.start(end), CharBuffer.wrap(text));
+    }
+
+}
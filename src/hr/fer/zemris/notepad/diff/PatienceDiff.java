@@ -0,0 +1,126 @@
+package hr.fer.zemris.notepad.diff;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Patience diff. Lines that appear exactly once in each text are matched, and the longest sequence of them that is in
+ * the same order in both texts is taken as common, like cards are sorted in patience. The ranges between those lines
+ * are compared with {@link MyersDiff}. The script isn't always the shortest one, but moved blocks and lines that
+ * repeat a lot, like braces and empty lines, don't get matched with each other across unrelated changes, so it is
+ * usually easier to read.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class PatienceDiff {
+
+    /** Ranges between two checks for cancellation */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private PatienceDiff() {
+    }
+
+    /**
+     * Computes the differences between two sequences of line hashes.
+     *
+     * @param a hashes of the old lines
+     * @param b hashes of the new lines
+     * @param cancelled checked now and then, the diff stops if it returns <code>true</code>
+     * @return hunks that turn <code>a</code> into <code>b</code>
+     * @throws CancellationException if the diff was cancelled
+     */
+    static EditScript diff(final long[] a, final long[] b, final BooleanSupplier cancelled) {
+        final boolean[] removed = new boolean[a.length];
+        final boolean[] inserted = new boolean[b.length];
+        final int[] anchors = anchors(a, b);
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < anchors.length; i += 2) {
+            if (i % CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            MyersDiff.mark(a, x, anchors[i], b, y, anchors[i + 1], removed, inserted, cancelled);
+            x = anchors[i] + 1;
+            y = anchors[i + 1] + 1;
+        }
+        MyersDiff.mark(a, x, a.length, b, y, b.length, removed, inserted, cancelled);
+        return MyersDiff.script(removed, inserted);
+    }
+
+    /**
+     * Finds the lines that appear once in each text, and the longest sequence of them in the same order in both.
+     *
+     * @return lines of the sequence, the line of <code>a</code> followed by the line of <code>b</code>
+     */
+    static int[] anchors(final long[] a, final long[] b) {
+        final long[] keys = new long[Integer.highestOneBit(Math.max(1, a.length + b.length) * 2) * 2];
+        final int[] counts = new int[keys.length]; // in a in the lower, in b in the upper half, both at most 2
+        final int[] positions = new int[keys.length]; // of the line in b
+        Arrays.fill(keys, MyersDiff.EMPTY);
+        final int mask = keys.length - 1;
+        for (final long hash : a) {
+            final int slot = find(keys, hash, mask);
+            keys[slot] = hash;
+            counts[slot] = Math.min(2, counts[slot] + 1);
+        }
+        for (int i = 0; i < b.length; i++) {
+            final int slot = find(keys, b[i], mask);
+            if (keys[slot] != MyersDiff.EMPTY && counts[slot] < 0x20000) {
+                counts[slot] += 0x10000;
+                positions[slot] = i;
+            }
+        }
+
+        // lines of b of the unique lines, in the order of a, and their longest increasing subsequence
+        final int[] xs = new int[Math.min(a.length, b.length)];
+        final int[] ys = new int[xs.length];
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            final int slot = find(keys, a[i], mask);
+            if (counts[slot] == 0x10001) {
+                xs[count] = i;
+                ys[count++] = positions[slot];
+            }
+        }
+        final int[] tails = new int[count]; // index of the smallest last y of a subsequence of every length
+        final int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (ys[tails[mid]] < ys[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low == 0 ? -1 : tails[low - 1];
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        final int[] anchors = new int[2 * length];
+        for (int i = length == 0 ? -1 : tails[length - 1], j = anchors.length - 2; i != -1; i = previous[i], j -= 2) {
+            anchors[j] = xs[i];
+            anchors[j + 1] = ys[i];
+        }
+        return anchors;
+    }
+
+    /**
+     * @return slot of the hash in the table, or the empty slot where it belongs
+     */
+    private static int find(final long[] keys, final long hash, final int mask) {
+        int slot = MyersDiff.slot(hash, mask);
+        while (keys[slot] != MyersDiff.EMPTY && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the line diff of two texts, computed on arrays of line hashes, and the edits that turn one
+ * text into the other or merge the changes made to a common base text.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.diff;
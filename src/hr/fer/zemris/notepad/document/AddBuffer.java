@@ -0,0 +1,64 @@
+package hr.fer.zemris.notepad.document;
+
+/**
+ * Append-only storage for text typed or pasted into a document. Text is stored in fixed-size chunks which are never
+ * reallocated, so pieces pointing into older chunks stay valid while new text keeps coming in.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class AddBuffer {
+
+    /** Size of a regular chunk */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Chunk that text is currently appended to */
+    private CharArrayBuffer current = new CharArrayBuffer(CHUNK_SIZE);
+
+    /**
+     * Appends the given text and returns the pieces that point to it, linked into a single tree.
+     *
+     * @param text text to append
+     * @return tree of pieces containing the text, in order
+     */
+    PieceNode append(final String text) {
+        PieceNode result = null;
+        int from = 0;
+        final int to = text.length();
+        while (from < to) {
+            if (current.remaining() == 0) {
+                current = new CharArrayBuffer(Math.max(CHUNK_SIZE, Math.min(to - from, Integer.MAX_VALUE - 8)));
+            }
+            final int n = Math.min(to - from, current.remaining());
+            final int start = current.length();
+            current.append(text, from, from + n);
+            result = PieceTree.merge(result, new PieceNode(current, start, n));
+            from += n;
+        }
+        return result;
+    }
+
+    /**
+     * Appends the given text to the current chunk. Used only when {@link #continues(PieceNode, int)} said that the
+     * text fits there.
+     *
+     * @param text text to append
+     */
+    void extend(final String text) {
+        current.append(text, 0, text.length());
+    }
+
+    /**
+     * Checks if the given piece ends exactly where the next appended character will go, which means that the piece
+     * can simply be extended after an append.
+     *
+     * @param piece tested piece
+     * @param n number of characters that will be appended
+     * @return <code>true</code> if appending <code>n</code> characters would continue the given piece
+     */
+    boolean continues(final PieceNode piece, final int n) {
+        return piece != null && piece.buffer == current && piece.start + piece.length == current.length()
+                && current.remaining() >= n;
+    }
+
+}
@@ -0,0 +1,137 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.Arrays;
+
+import javax.swing.text.Segment;
+
+/**
+ * {@link TextBuffer} backed by a single <code>char</code> array. The array is never copied or reallocated, so segments
+ * handed out by this buffer stay valid forever. Characters can be appended until the array is full.
+ * <p>
+ * Hashes of ranges are computed from hashes of prefixes, which are remembered for every {@value #HASH_STEP}th
+ * character as they are needed.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class CharArrayBuffer implements TextBuffer {
+
+    /** Distance between two remembered prefix hashes */
+    private static final int HASH_STEP = 64;
+
+    /** Characters of this buffer */
+    private final char[] array;
+    /** Number of used characters */
+    private volatile int length;
+    /** Hash of the first <code>i * HASH_STEP</code> characters at index <code>i</code>, guarded by this buffer */
+    private long[] prefixes = new long[1];
+    /** Number of remembered prefix hashes */
+    private int prefixCount = 1;
+
+    /**
+     * Creates a new empty buffer with the given capacity.
+     *
+     * @param capacity maximum number of characters
+     */
+    public CharArrayBuffer(final int capacity) {
+        this(new char[capacity], 0);
+    }
+
+    /**
+     * Creates a new buffer that uses the first <code>length</code> characters of the given array. The array is not
+     * copied and must not be modified by the caller afterwards.
+     *
+     * @param array backing array
+     * @param length number of used characters
+     */
+    public CharArrayBuffer(final char[] array, final int length) {
+        if (length < 0 || length > array.length) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+        this.array = array;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return number of characters that can still be appended
+     */
+    public int remaining() {
+        return array.length - length;
+    }
+
+    /**
+     * Appends characters <code>[from, to)</code> of the given text to this buffer.
+     *
+     * @param text source text
+     * @param from index of the first character to append
+     * @param to index after the last character to append
+     */
+    public void append(final String text, final int from, final int to) {
+        final int n = to - from;
+        if (n > remaining()) {
+            throw new IllegalStateException("Buffer is full.");
+        }
+        text.getChars(from, to, array, length);
+        length += n;
+    }
+
+    /**
+     * Appends characters from the given array to this buffer.
+     *
+     * @param src source array
+     * @param from index of the first character to append
+     * @param len number of characters to append
+     */
+    public void append(final char[] src, final int from, final int len) {
+        if (len > remaining()) {
+            throw new IllegalStateException("Buffer is full.");
+        }
+        System.arraycopy(src, from, array, length, len);
+        length += len;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return array[index];
+    }
+
+    @Override
+    public void getChars(final int start, final int len, final Segment segment) {
+        segment.array = array;
+        segment.offset = start;
+        segment.count = len;
+    }
+
+    @Override
+    public void copyChars(final int start, final int len, final char[] dst, final int dstPos) {
+        System.arraycopy(array, start, dst, dstPos, len);
+    }
+
+    @Override
+    public long hash(final int start, final int len) {
+        return TextHash.suffix(prefix(start + len), prefix(start), TextHash.pow(len));
+    }
+
+    /**
+     * Returns the hash of the first <code>n</code> characters.
+     */
+    private synchronized long prefix(final int n) {
+        final int index = n / HASH_STEP;
+        while (prefixCount <= index) {
+            if (prefixCount == prefixes.length) {
+                prefixes = Arrays.copyOf(prefixes, Math.min(prefixes.length * 2, array.length / HASH_STEP
+                        + 1));
+            }
+            prefixes[prefixCount] = TextHash.append(prefixes[prefixCount - 1], array, (prefixCount - 1) * HASH_STEP,
+                    HASH_STEP);
+            prefixCount++;
+        }
+        return TextHash.append(prefixes[index], array, index * HASH_STEP, n - index * HASH_STEP);
+    }
+
+}
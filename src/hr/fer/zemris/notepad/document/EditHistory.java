@@ -0,0 +1,475 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Undo and redo history of a {@link PieceDocument}. Every edit is kept as a delta of a few numbers: the offset, the
+ * length and a reference to the removed pieces, so removed text is never copied into strings, and inserted text is
+ * not stored at all until the insert is undone. Deltas are kept in parallel arrays used as a ring, which makes an
+ * edit cost a few dozen bytes and no objects, and undoing or redoing it costs <code>O(log pieces)</code> plus the
+ * size of the edit, no matter how long the history is.
+ * <p>
+ * Characters typed one after another are merged into a single delta, as are consecutive backspaces or deletes, until
+ * a line break, a pause of {@value #MERGE_DELAY} ms or an edit somewhere else. Edits made by one document operation,
+ * like replacing the selection or replacing all matches, are undone in one step.
+ * <p>
+ * The memory used by the history of a document and by all histories together is limited. A delta is charged for its
+ * own fields, for the pieces it refers to and for the characters of those pieces, except for the characters of the
+ * loaded file, which the document keeps anyway. When a limit is exceeded, the oldest edits are forgotten first. The
+ * limits can be changed at runtime, and their initial values can be given by the system properties
+ * <code>jnotepad.undo.limit</code> and <code>jnotepad.undo.globalLimit</code>, in bytes.
+ * <p>
+ * A history is used on the thread that edits its document, which is normally the Event Dispatch Thread.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class EditHistory {
+
+    /** Default limit of a single history, in bytes */
+    public static final long DEFAULT_LIMIT = Long.getLong("jnotepad.undo.limit", 32L << 20);
+    /** Default limit of all histories together, in bytes */
+    public static final long DEFAULT_GLOBAL_LIMIT = Long.getLong("jnotepad.undo.globalLimit", 128L << 20);
+
+    /** Longest pause, in milliseconds, between two typed characters that are still merged */
+    private static final long MERGE_DELAY = 1000;
+    /** Estimated size of the fields of a delta, in bytes */
+    private static final long DELTA_BYTES = 40;
+    /** Estimated size of a piece, in bytes */
+    private static final long PIECE_BYTES = 64;
+
+    /** Flag of a delta that removed text */
+    private static final byte REMOVE = 1;
+    /** Flag of a delta that is undone together with the delta before it */
+    private static final byte JOINED = 2;
+
+    /** All histories that weren't discarded */
+    private static final Set<EditHistory> HISTORIES = Collections.newSetFromMap(new WeakHashMap<>());
+    /** Limit of all histories together */
+    private static long globalLimit = DEFAULT_GLOBAL_LIMIT;
+    /** Memory used by all histories */
+    private static long globalUsage;
+    /** Number of the next delta of any history, it tells which deltas are older */
+    private static long nextSequence;
+
+    /** Document whose edits are kept */
+    private final PieceDocument document;
+    /** Limit of this history */
+    private long limit = DEFAULT_LIMIT;
+    /** Memory used by this history */
+    private long usage;
+
+    // deltas, the oldest one is at head and the ones that follow it wrap around the end of the arrays
+
+    /** Offset of every edit */
+    private int[] offsets = new int[16];
+    /** Number of inserted or removed characters */
+    private int[] lengths = new int[16];
+    private byte[] flags = new byte[16];
+    /** Removed pieces, or inserted pieces once the insert is undone */
+    private PieceNode[] pieces = new PieceNode[16];
+    /** Memory charged for every delta */
+    private long[] costs = new long[16];
+    /** Sequence number of every delta */
+    private long[] sequences = new long[16];
+    /** Index of the oldest delta */
+    private int head;
+    /** Number of deltas */
+    private int size;
+    /** Number of deltas that are applied, the ones after them can be redone */
+    private int current;
+
+    /** If the last delta can be continued by typing */
+    private boolean mergeable;
+    /** When the last delta was recorded or continued */
+    private long lastTime;
+    /** Depth of nested groups */
+    private int groupDepth;
+    /** If the current group already has a delta */
+    private boolean groupStarted;
+    /** Set while the history changes the document */
+    private boolean replaying;
+
+    /**
+     * Creates a new empty history.
+     *
+     * @param document document whose edits are kept
+     */
+    EditHistory(final PieceDocument document) {
+        this.document = document;
+        synchronized (EditHistory.class) {
+            HISTORIES.add(this);
+        }
+    }
+
+    /**
+     * Sets the limit of all histories together and forgets the oldest edits that exceed it.
+     *
+     * @param bytes limit in bytes
+     */
+    public static synchronized void setGlobalLimit(final long bytes) {
+        globalLimit = bytes;
+        enforceGlobalLimit();
+    }
+
+    /**
+     * @return memory used by all histories, in bytes
+     */
+    public static synchronized long getGlobalUsage() {
+        return globalUsage;
+    }
+
+    /**
+     * Sets the limit of this history and forgets the oldest edits that exceed it.
+     *
+     * @param bytes limit in bytes
+     */
+    public void setLimit(final long bytes) {
+        limit = bytes;
+        enforceLimits();
+    }
+
+    /**
+     * @return memory used by this history, in bytes
+     */
+    public long getUsage() {
+        return usage;
+    }
+
+    /**
+     * @return <code>true</code> if there is an edit that can be undone
+     */
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    /**
+     * @return <code>true</code> if there is an edit that can be redone
+     */
+    public boolean canRedo() {
+        return current < size;
+    }
+
+    /**
+     * Undoes the last edit, or the last group of edits that were made together.
+     *
+     * @return offset where the undone edit was, or -1 if there was nothing to undo
+     */
+    public int undo() {
+        if (current == 0) {
+            return -1;
+        }
+        mergeable = false;
+        replaying = true;
+        int caret;
+        try {
+            int i;
+            do {
+                i = index(--current);
+                caret = offsets[i];
+                if ((flags[i] & REMOVE) != 0) {
+                    document.insert(offsets[i], pieces[i]);
+                    caret += lengths[i];
+                } else {
+                    pieces[i] = document.remove(offsets[i], lengths[i], true);
+                    recharge(i);
+                }
+            } while ((flags[i] & JOINED) != 0 && current > 0);
+        } finally {
+            replaying = false;
+        }
+        enforceLimits();
+        return caret;
+    }
+
+    /**
+     * Redoes the edit, or the group of edits, that was undone last.
+     *
+     * @return offset after the redone edit, or -1 if there was nothing to redo
+     */
+    public int redo() {
+        if (current == size) {
+            return -1;
+        }
+        mergeable = false;
+        replaying = true;
+        int caret;
+        try {
+            do {
+                final int i = index(current++);
+                caret = offsets[i];
+                if ((flags[i] & REMOVE) != 0) {
+                    document.remove(offsets[i], lengths[i], false);
+                } else {
+                    document.insert(offsets[i], pieces[i]);
+                    caret += lengths[i];
+                    pieces[i] = null;
+                    recharge(i);
+                }
+            } while (current < size && (flags[index(current)] & JOINED) != 0);
+        } finally {
+            replaying = false;
+        }
+        return caret;
+    }
+
+    /**
+     * Forgets all edits.
+     */
+    public void clear() {
+        truncate(0);
+        while (size > 0) {
+            dropOldest();
+        }
+        mergeable = false;
+    }
+
+    /**
+     * Forgets all edits and stops counting this history in the global limit. The history records no edits after this.
+     */
+    public void discard() {
+        clear();
+        synchronized (EditHistory.class) {
+            HISTORIES.remove(this);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // ......................................Recording.............................................
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Starts a group of edits that are undone together. Groups may be nested.
+     */
+    void beginGroup() {
+        if (groupDepth++ == 0) {
+            groupStarted = false;
+            mergeable = false;
+        }
+    }
+
+    /**
+     * Ends a group started by {@link #beginGroup()}.
+     */
+    void endGroup() {
+        if (--groupDepth == 0) {
+            mergeable = false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if edits of the document are recorded now
+     */
+    boolean isRecording() {
+        return !replaying;
+    }
+
+    /**
+     * Records an insert that was made.
+     *
+     * @param offset offset of the insert
+     * @param length number of inserted characters
+     * @param typed <code>true</code> if a single character other than a line break was inserted
+     */
+    void inserted(final int offset, final int length, final boolean typed) {
+        if (canMerge(typed)) {
+            final int i = index(current - 1);
+            if ((flags[i] & REMOVE) == 0 && offsets[i] + lengths[i] == offset) {
+                lengths[i] += length;
+                lastTime = System.currentTimeMillis();
+                return;
+            }
+        }
+        record(offset, length, (byte) 0, null);
+        mergeable = typed;
+    }
+
+    /**
+     * Records a remove that is about to be made.
+     *
+     * @param offset offset of the first removed character
+     * @param removed pieces that are removed
+     * @param typed <code>true</code> if a single character was removed, like with backspace or delete
+     */
+    void removed(final int offset, final PieceNode removed, final boolean typed) {
+        if (canMerge(typed)) {
+            final int i = index(current - 1);
+            if ((flags[i] & REMOVE) != 0 && (offset == offsets[i] || offset + removed.size == offsets[i])) {
+                if (offset == offsets[i]) {
+                    pieces[i] = PieceTree.merge(pieces[i], removed); // delete
+                } else {
+                    pieces[i] = PieceTree.merge(removed, pieces[i]); // backspace
+                    offsets[i] = offset;
+                }
+                lengths[i] += removed.size;
+                lastTime = System.currentTimeMillis();
+                recharge(i);
+                enforceLimits();
+                return;
+            }
+        }
+        record(offset, removed.size, REMOVE, removed);
+        mergeable = typed;
+    }
+
+    private boolean canMerge(final boolean typed) {
+        return typed && mergeable && groupDepth == 0 && current == size && current > 0
+                && System.currentTimeMillis() - lastTime <= MERGE_DELAY;
+    }
+
+    /**
+     * Adds a new delta after the applied ones, forgetting the edits that could be redone.
+     */
+    private void record(final int offset, final int length, byte flag, final PieceNode removed) {
+        truncate(current);
+        if (groupDepth > 0) {
+            if (groupStarted) {
+                flag |= JOINED;
+            }
+            groupStarted = true;
+        }
+        if (size == offsets.length) {
+            grow();
+        }
+        final int i = index(size++);
+        current = size;
+        offsets[i] = offset;
+        lengths[i] = length;
+        flags[i] = flag;
+        pieces[i] = removed;
+        costs[i] = 0;
+        synchronized (EditHistory.class) {
+            sequences[i] = nextSequence++;
+        }
+        lastTime = System.currentTimeMillis();
+        recharge(i);
+        enforceLimits();
+    }
+
+    /**
+     * Computes the memory used by a delta again, after its pieces changed.
+     */
+    private void recharge(final int i) {
+        final long[] cost = { DELTA_BYTES };
+        if (pieces[i] != null) {
+            PieceTree.visit(pieces[i], 0, pieces[i].size, (buffer, start, length) -> {
+                cost[0] += PIECE_BYTES + (document.isLoaded(buffer) ? 0 : 2L * length);
+                return true;
+            });
+        }
+        charge(cost[0] - costs[i]);
+        costs[i] = cost[0];
+    }
+
+    private void charge(final long bytes) {
+        usage += bytes;
+        synchronized (EditHistory.class) {
+            globalUsage += bytes;
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // ........................................Limits..............................................
+    // --------------------------------------------------------------------------------------------
+
+    private void enforceLimits() {
+        while (usage > limit && size > 0) {
+            dropOldest();
+        }
+        synchronized (EditHistory.class) {
+            enforceGlobalLimit();
+        }
+    }
+
+    /**
+     * Forgets the oldest edits of all histories until they fit into the global limit.
+     */
+    private static void enforceGlobalLimit() {
+        while (globalUsage > globalLimit) {
+            EditHistory oldest = null;
+            for (EditHistory history : HISTORIES) {
+                if (history.size > 0 && (oldest == null || history.oldestSequence() < oldest.oldestSequence())) {
+                    oldest = history;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            oldest.dropOldest();
+        }
+    }
+
+    private long oldestSequence() {
+        return sequences[head];
+    }
+
+    /**
+     * Forgets the oldest group of edits that can be undone, or if everything is undone, the newest group that can be
+     * redone, since redoing always starts with the oldest one.
+     */
+    private void dropOldest() {
+        if (current == 0) {
+            int end = size;
+            do {
+                end--;
+            } while (end > 0 && (flags[index(end)] & JOINED) != 0);
+            truncate(end);
+            return;
+        }
+        do {
+            release(head);
+            head = (head + 1) & (offsets.length - 1);
+            size--;
+            current--;
+        } while (current > 0 && (flags[head] & JOINED) != 0);
+        mergeable &= current > 0;
+    }
+
+    /**
+     * Forgets the deltas from the given one to the newest one.
+     */
+    private void truncate(final int from) {
+        for (int k = from; k < size; k++) {
+            release(index(k));
+        }
+        size = from;
+        current = Math.min(current, size);
+    }
+
+    private void release(final int i) {
+        charge(-costs[i]);
+        costs[i] = 0;
+        pieces[i] = null;
+    }
+
+    private int index(final int k) {
+        return (head + k) & (offsets.length - 1);
+    }
+
+    /**
+     * Doubles the arrays and moves the deltas to their start.
+     */
+    private void grow() {
+        final int capacity = offsets.length * 2;
+        final int first = Math.min(size, offsets.length - head);
+        offsets = unwrap(offsets, new int[capacity], first);
+        lengths = unwrap(lengths, new int[capacity], first);
+        flags = unwrap(flags, new byte[capacity], first);
+        pieces = unwrap(pieces, new PieceNode[capacity], first);
+        costs = unwrap(costs, new long[capacity], first);
+        sequences = unwrap(sequences, new long[capacity], first);
+        head = 0;
+    }
+
+    /**
+     * Copies the deltas into a new array, the first <code>first</code> of them are at the end of the old one.
+     */
+    private <T> T unwrap(final T from, final T to, final int first) {
+        System.arraycopy(from, head, to, 0, first);
+        System.arraycopy(from, 0, to, first, size - first);
+        return to;
+    }
+
+}
@@ -0,0 +1,429 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.Arrays;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * Index of the lines of a {@link PieceDocument}. The index keeps the length of every line, including its line break,
+ * in blocks of at most {@value #MAX_BLOCK} <code>int</code>s, and two Fenwick trees over the blocks sum their
+ * characters and lines. Finding the line of an offset or the offset of a line walks a Fenwick tree and then a single
+ * block, and an edit changes only the lengths of the lines it touches, so both take time proportional to the edit and
+ * not to the document. An index of ten million lines takes about forty megabytes.
+ * <p>
+ * Every block also knows its longest line, so the longest line of the document, which views use to estimate their
+ * width, is found without looking at every line. After an edit shortens the longest line of a block, the block is
+ * searched again only when the longest line is asked for.
+ * <p>
+ * The content of a document always ends with a newline, so every line, the last one included, ends with a line
+ * break. The index is updated by the document while it holds its write lock, it should be read on the Event Dispatch
+ * Thread or under the document's read lock.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class LineIndex {
+
+    /** Maximum number of lines in a block */
+    private static final int MAX_BLOCK = 1024;
+    /** Number of lines in a block created by splitting */
+    private static final int HALF_BLOCK = MAX_BLOCK / 2;
+
+    /** Lengths of lines, block by block */
+    private int[][] blocks;
+    /** Number of lines in every block */
+    private int[] blockLines;
+    /** Number of characters in every block */
+    private int[] blockChars;
+    /** Length of the longest line in every block, -1 if it has to be found again */
+    private int[] blockMax;
+    /** Length of the longest line, -1 if it has to be found again */
+    private int maxLength = -1;
+    /** Number of blocks */
+    private int blockCount;
+
+    /** Fenwick tree of {@link #blockLines}, indexed from 1 */
+    private int[] lineTree;
+    /** Fenwick tree of {@link #blockChars}, indexed from 1 */
+    private int[] charTree;
+
+    /**
+     * Creates an index of an empty document, which is a single line with just the final newline.
+     */
+    LineIndex() {
+        this(new int[] { 1 }, 1);
+    }
+
+    /**
+     * Creates an index of lines with the given lengths.
+     *
+     * @param lengths lengths of lines, including their line breaks
+     * @param count number of lines
+     */
+    LineIndex(final int[] lengths, final int count) {
+        blockCount = (count + HALF_BLOCK - 1) / HALF_BLOCK;
+        final int capacity = Math.max(16, blockCount);
+        blocks = new int[capacity][];
+        blockLines = new int[capacity];
+        blockChars = new int[capacity];
+        blockMax = new int[capacity];
+        for (int i = 0; i < blockCount; i++) {
+            final int from = i * HALF_BLOCK;
+            fill(i, Arrays.copyOfRange(lengths, from, Math.min(count, from + HALF_BLOCK)));
+        }
+        rebuildTrees();
+    }
+
+    /**
+     * @return number of lines
+     */
+    public int getLineCount() {
+        return sum(lineTree, blockCount);
+    }
+
+    /**
+     * Returns the length of the longest line, including its line break.
+     *
+     * @return length of the longest line
+     */
+    public int getMaxLineLength() {
+        if (maxLength < 0) {
+            int max = 0;
+            for (int i = 0; i < blockCount; i++) {
+                if (blockMax[i] < 0) {
+                    blockMax[i] = max(blocks[i], blockLines[i]);
+                }
+                max = Math.max(max, blockMax[i]);
+            }
+            maxLength = max;
+        }
+        return maxLength;
+    }
+
+    /**
+     * Returns the line that contains the given offset.
+     *
+     * @param offset offset in the document
+     * @return index of the line, starting from 0
+     */
+    public int getLineOfOffset(final int offset) {
+        final int total = sum(charTree, blockCount);
+        if (offset < 0 || offset >= total) {
+            throw new IndexOutOfBoundsException("Offset: " + offset);
+        }
+        final int block = find(charTree, offset);
+        final int[] lengths = blocks[block];
+        int remaining = offset - sum(charTree, block);
+        int line = 0;
+        while (remaining >= lengths[line]) {
+            remaining -= lengths[line];
+            line++;
+        }
+        return sum(lineTree, block) + line;
+    }
+
+    /**
+     * Returns the offset of the first character of the given line.
+     *
+     * @param line index of the line, starting from 0
+     * @return offset of the start of the line
+     */
+    public int getLineStartOffset(final int line) {
+        checkLine(line);
+        final int block = find(lineTree, line);
+        final int[] lengths = blocks[block];
+        int offset = sum(charTree, block);
+        for (int i = 0, limit = line - sum(lineTree, block); i < limit; i++) {
+            offset += lengths[i];
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset after the line break that ends the given line.
+     *
+     * @param line index of the line, starting from 0
+     * @return offset of the end of the line
+     */
+    public int getLineEndOffset(final int line) {
+        checkLine(line);
+        final int block = find(lineTree, line);
+        return getLineStartOffset(line) + blocks[block][line - sum(lineTree, block)];
+    }
+
+    /**
+     * Returns the length of the given line, including its line break.
+     *
+     * @param line index of the line, starting from 0
+     * @return length of the line
+     */
+    public int getLineLength(final int line) {
+        checkLine(line);
+        final int block = find(lineTree, line);
+        return blocks[block][line - sum(lineTree, block)];
+    }
+
+    /**
+     * Updates the index after characters were inserted into the content.
+     *
+     * @param offset offset of the insert
+     * @param length number of inserted characters
+     * @param content content that already contains them
+     */
+    void inserted(final int offset, final int length, final AbstractDocument.Content content) {
+        if (length == 0) {
+            return;
+        }
+        // lengths of the inserted text split at line breaks, the last one without its line break
+        int[] parts = new int[8];
+        int count = 0;
+        int partStart = offset;
+        final Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        try {
+            for (int position = offset, end = offset + length; position < end; position += segment.count) {
+                content.getChars(position, end - position, segment);
+                for (int i = 0; i < segment.count; i++) {
+                    if (segment.array[segment.offset + i] == '\n') {
+                        if (count == parts.length) {
+                            parts = Arrays.copyOf(parts, count * 2);
+                        }
+                        final int lineEnd = position + i + 1;
+                        parts[count++] = lineEnd - partStart;
+                        partStart = lineEnd;
+                    }
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final int line = getLineOfOffset(offset);
+        if (count == 0) {
+            add(line, length);
+            return;
+        }
+        final int before = offset - getLineStartOffset(line);
+        final int after = getLineLength(line) - before;
+        final int[] lengths = Arrays.copyOf(parts, count + 1);
+        lengths[0] += before;
+        lengths[count] = offset + length - partStart + after;
+        replace(line, 1, lengths);
+    }
+
+    /**
+     * Updates the index before characters are removed from the content.
+     *
+     * @param offset offset of the first removed character
+     * @param length number of removed characters
+     */
+    void removed(final int offset, final int length) {
+        if (length == 0) {
+            return;
+        }
+        final int first = getLineOfOffset(offset);
+        final int last = getLineOfOffset(offset + length);
+        if (first == last) {
+            add(first, -length);
+            return;
+        }
+        final int joined = offset - getLineStartOffset(first) + getLineEndOffset(last) - offset - length;
+        replace(first, last - first + 1, new int[] { joined });
+    }
+
+    /**
+     * Changes the length of a single line.
+     */
+    private void add(final int line, final int delta) {
+        final int block = find(lineTree, line);
+        final int index = line - sum(lineTree, block);
+        final int length = blocks[block][index];
+        blocks[block][index] += delta;
+        blockChars[block] += delta;
+        if (delta < 0) {
+            updateMax(block, length, 0);
+        } else {
+            updateMax(block, 0, length + delta);
+        }
+        update(charTree, block, delta);
+    }
+
+    /**
+     * Replaces <code>count</code> lines, starting from <code>first</code>, with lines of the given lengths. If the
+     * lines fit into their block, the block is changed in place, otherwise the touched blocks are split again.
+     */
+    private void replace(final int first, final int count, final int[] lengths) {
+        final int firstBlock = find(lineTree, first);
+        final int lastBlock = find(lineTree, first + count - 1);
+        final int head = first - sum(lineTree, firstBlock);
+        final int tail = sum(lineTree, lastBlock + 1) - first - count;
+
+        int removedChars = 0;
+        int removedMax = 0;
+        for (int line = first; line < first + count; line++) {
+            final int length = getLineLength(line);
+            removedChars += length;
+            removedMax = Math.max(removedMax, length);
+        }
+        int addedChars = 0;
+        int addedMax = 0;
+        for (final int length : lengths) {
+            addedChars += length;
+            addedMax = Math.max(addedMax, length);
+        }
+
+        final int lines = head + lengths.length + tail;
+        if (firstBlock == lastBlock && lines <= MAX_BLOCK) {
+            int[] block = blocks[firstBlock];
+            if (block.length < lines) {
+                block = Arrays.copyOf(block, Math.min(MAX_BLOCK, Math.max(lines, block.length * 2)));
+                blocks[firstBlock] = block;
+            }
+            System.arraycopy(block, head + count, block, head + lengths.length, tail);
+            System.arraycopy(lengths, 0, block, head, lengths.length);
+            blockLines[firstBlock] = lines;
+            blockChars[firstBlock] += addedChars - removedChars;
+            updateMax(firstBlock, removedMax, addedMax);
+            update(lineTree, firstBlock, lengths.length - count);
+            update(charTree, firstBlock, addedChars - removedChars);
+            return;
+        }
+
+        final int[] merged = new int[lines];
+        System.arraycopy(blocks[firstBlock], 0, merged, 0, head);
+        System.arraycopy(lengths, 0, merged, head, lengths.length);
+        System.arraycopy(blocks[lastBlock], blockLines[lastBlock] - tail, merged, head + lengths.length, tail);
+
+        final int chunks = (lines + HALF_BLOCK - 1) / HALF_BLOCK;
+        final int removedBlocks = lastBlock - firstBlock + 1;
+        final int newCount = blockCount - removedBlocks + chunks;
+        if (newCount > blocks.length) {
+            final int capacity = Math.max(newCount, blocks.length * 2);
+            blocks = Arrays.copyOf(blocks, capacity);
+            blockLines = Arrays.copyOf(blockLines, capacity);
+            blockChars = Arrays.copyOf(blockChars, capacity);
+            blockMax = Arrays.copyOf(blockMax, capacity);
+        }
+        final int moved = blockCount - lastBlock - 1;
+        System.arraycopy(blocks, lastBlock + 1, blocks, firstBlock + chunks, moved);
+        System.arraycopy(blockLines, lastBlock + 1, blockLines, firstBlock + chunks, moved);
+        System.arraycopy(blockChars, lastBlock + 1, blockChars, firstBlock + chunks, moved);
+        System.arraycopy(blockMax, lastBlock + 1, blockMax, firstBlock + chunks, moved);
+        for (int i = newCount; i < blockCount; i++) {
+            blocks[i] = null;
+        }
+
+        for (int i = 0; i < chunks; i++) {
+            final int from = (int) ((long) lines * i / chunks);
+            final int to = (int) ((long) lines * (i + 1) / chunks);
+            fill(firstBlock + i, Arrays.copyOfRange(merged, from, to));
+        }
+        blockCount = newCount;
+        rebuildTrees();
+        maxLength = replacedMax(maxLength, removedMax, addedMax);
+    }
+
+    /**
+     * Updates the longest line of the block and of the document after lines of at most <code>removedMax</code>
+     * characters were replaced with lines of at most <code>addedMax</code> characters.
+     */
+    private void updateMax(final int block, final int removedMax, final int addedMax) {
+        blockMax[block] = replacedMax(blockMax[block], removedMax, addedMax);
+        maxLength = replacedMax(maxLength, removedMax, addedMax);
+    }
+
+    /**
+     * Returns the new length of the longest of some lines after a part of them was replaced, or -1 if the longest line
+     * could have been removed and the lines have to be searched again.
+     */
+    private static int replacedMax(final int max, final int removedMax, final int addedMax) {
+        return max >= 0 && (removedMax < max || addedMax >= removedMax) ? Math.max(max, addedMax) : -1;
+    }
+
+    /**
+     * Puts the given lines into the given block.
+     */
+    private void fill(final int block, final int[] lengths) {
+        int chars = 0;
+        for (final int length : lengths) {
+            chars += length;
+        }
+        blocks[block] = lengths;
+        blockLines[block] = lengths.length;
+        blockChars[block] = chars;
+        blockMax[block] = max(lengths, lengths.length);
+    }
+
+    private static int max(final int[] lengths, final int count) {
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, lengths[i]);
+        }
+        return max;
+    }
+
+    private void checkLine(final int line) {
+        if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException("Line: " + line);
+        }
+    }
+
+    /**
+     * Builds both Fenwick trees from the block sums in linear time.
+     */
+    private void rebuildTrees() {
+        lineTree = build(blockLines);
+        charTree = build(blockChars);
+    }
+
+    private int[] build(final int[] values) {
+        final int[] tree = new int[blocks.length + 1];
+        for (int i = 1; i <= blockCount; i++) {
+            tree[i] += values[i - 1];
+            final int parent = i + (i & -i);
+            if (parent <= blockCount) {
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Adds the given value to the given block.
+     */
+    private void update(final int[] tree, final int block, final int delta) {
+        for (int i = block + 1; i <= blockCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the sum of the first <code>blocks</code> blocks.
+     */
+    private static int sum(final int[] tree, int blocks) {
+        int sum = 0;
+        for (; blocks > 0; blocks -= blocks & -blocks) {
+            sum += tree[blocks];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the block that contains the given unit (line or character), that is the last block whose preceding
+     * blocks sum to at most <code>value</code>.
+     */
+    private int find(final int[] tree, int value) {
+        int block = 0;
+        for (int step = Integer.highestOneBit(blockCount); step > 0; step >>= 1) {
+            final int next = block + step;
+            if (next <= blockCount && tree[next] <= value) {
+                block = next;
+                value -= tree[next];
+            }
+        }
+        return block;
+    }
+
+}
@@ -0,0 +1,566 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Plain text document whose text is stored in a {@link PieceTableContent}. Lines of the document are kept in a
+ * {@link LineIndex}, which is updated with every edit, and edits are recorded in an {@link EditHistory} that undoes
+ * and redoes them.
+ * <p>
+ * Unlike a {@link PlainDocument}, the document doesn't keep an element for every line. Its root element reads the
+ * lines from the line index and creates their elements when they are asked for, so an edit costs the same in a
+ * document of ten lines and one of ten million, and document events carry no element changes. A line element holds
+ * the offsets its line had when it was created, it should not be kept after the document changes.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public class PieceDocument extends AbstractDocument {
+
+    private static final long serialVersionUID = -2874526153096012844L;
+
+    /** Tab size of a new document, the same as in a {@link PlainDocument} */
+    private static final int DEFAULT_TAB_SIZE = 8;
+
+    /** Index of the lines */
+    private LineIndex lineIndex = new LineIndex();
+    /** Root element, its children are the lines */
+    private final Element root = new LineRoot();
+    /** Undo and redo history */
+    private final EditHistory history = new EditHistory(this);
+    /**
+     * Buffers of appended text, which the history doesn't charge for since the document keeps them anyway. Buffers
+     * whose text was trimmed away are let go of.
+     */
+    private final Set<TextBuffer> loaded = Collections.newSetFromMap(new WeakHashMap<>());
+    /** Set while text is appended or trimmed, which is not recorded in the history */
+    private boolean appending;
+    /** Segment that reads the character of a single character insert */
+    private final Segment inserted = new Segment();
+
+    /**
+     * Creates a new empty document.
+     */
+    public PieceDocument() {
+        this(new PieceTableContent());
+    }
+
+    /**
+     * Creates a new document with the given content. Content may already contain text, in which case the line
+     * structure is built from it.
+     *
+     * @param content content of the document
+     */
+    public PieceDocument(final PieceTableContent content) {
+        super(content);
+        putProperty(PlainDocument.tabSizeAttribute, DEFAULT_TAB_SIZE);
+        if (content.length() > 1) {
+            writeLock();
+            try {
+                buildLineIndex();
+            } finally {
+                writeUnlock();
+            }
+        }
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(final int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /**
+     * Returns the index of the lines. It should be used on the Event Dispatch Thread or under the read lock.
+     *
+     * @return index of the lines
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * @return undo and redo history of this document
+     */
+    public EditHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current text, which can be read from any thread.
+     *
+     * @return snapshot of the text
+     */
+    public TextSnapshot snapshot() {
+        readLock();
+        try {
+            return ((PieceTableContent) getContent()).snapshot();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Checks if the text is still the same as it was when the given snapshot was taken.
+     *
+     * @param snapshot snapshot of this document
+     * @return <code>true</code> if nothing has changed since the snapshot was taken
+     */
+    public boolean isCurrent(final TextSnapshot snapshot) {
+        readLock();
+        try {
+            return ((PieceTableContent) getContent()).isCurrent(snapshot);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Appends characters <code>[start, start + length)</code> of the given buffer at the end of the document without
+     * copying them. Listeners are notified as for any other insert, but the append can't be undone, it is meant for
+     * text that is being loaded.
+     *
+     * @param buffer buffer with the appended characters
+     * @param start index of the first appended character in the buffer
+     * @param length number of appended characters
+     */
+    public void append(final TextBuffer buffer, final int start, final int length) {
+        if (length == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            loaded.add(buffer);
+            appending = true;
+            final int offset = getLength();
+            final UndoableEdit edit = ((PieceTableContent) getContent()).insert(offset, buffer, start, length);
+            final DefaultDocumentEvent event = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.INSERT);
+            if (edit != null) {
+                event.addEdit(edit);
+            }
+            insertUpdate(event, null);
+            event.end();
+            fireInsertUpdate(event);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            appending = false;
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Removes the first <code>length</code> characters of the document, like the start of a followed log that is no
+     * longer kept. Listeners are notified as for any other removal, but like an append it can't be undone, and the
+     * history is cleared since its offsets don't fit the text any more.
+     *
+     * @param length number of removed characters
+     */
+    public void trimStart(final int length) {
+        if (length == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            appending = true;
+            removeRange((PieceTableContent) getContent(), 0, length);
+            history.clear();
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            appending = false;
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Applies all replacements of the batch as a single edit, which is undone in one step. Characters from the first to
+     * the last replaced range are removed and the new text is inserted in their place, so listeners get just one
+     * removal and one insert, and nothing between the replaced ranges is copied.
+     *
+     * @param batch replacements to apply
+     * @return <code>false</code> if the document changed since the batch's snapshot was taken and nothing was replaced
+     */
+    public boolean replace(final ReplaceBatch batch) {
+        writeLock();
+        history.beginGroup();
+        try {
+            final PieceTableContent content = (PieceTableContent) getContent();
+            if (!content.isCurrent(batch.getSnapshot())) {
+                return false;
+            }
+            if (batch.size() == 0) {
+                return true;
+            }
+            final int start = batch.start();
+            final PieceNode pieces = batch.build();
+            final CompoundEdit edit = new CompoundEdit();
+
+            final int removed = batch.end() - start;
+            if (removed > 0) {
+                edit.addEdit(removeRange(content, start, removed));
+            }
+            if (pieces != null) {
+                edit.addEdit(insertPieces(content, start, pieces));
+            }
+            edit.end();
+            fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+            return true;
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            history.endGroup();
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Replaces text like {@link javax.swing.text.AbstractDocument#replace(int, int, String, AttributeSet)}, the
+     * removal and the insert are undone in one step.
+     */
+    @Override
+    public void replace(final int offset, final int length, final String text, final AttributeSet attrs)
+            throws BadLocationException {
+        history.beginGroup();
+        try {
+            super.replace(offset, length, text, attrs);
+        } finally {
+            history.endGroup();
+        }
+    }
+
+    /**
+     * Inserts the pieces, used by the history to put back removed text or redo an insert.
+     *
+     * @param offset offset of the insert
+     * @param pieces inserted pieces
+     */
+    void insert(final int offset, final PieceNode pieces) {
+        writeLock();
+        try {
+            insertPieces((PieceTableContent) getContent(), offset, pieces);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Removes characters, used by the history to undo an insert or redo a remove.
+     *
+     * @param offset offset of the first removed character
+     * @param length number of removed characters
+     * @param keep <code>true</code> if the removed pieces are returned
+     * @return removed pieces, or <code>null</code> if they are not kept
+     */
+    PieceNode remove(final int offset, final int length, final boolean keep) {
+        writeLock();
+        try {
+            final PieceTableContent content = (PieceTableContent) getContent();
+            final PieceNode removed = keep ? content.piecesOf(offset, length) : null;
+            removeRange(content, offset, length);
+            return removed;
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Removes characters and notifies the listeners, the caller holds the write lock.
+     */
+    private DefaultDocumentEvent removeRange(final PieceTableContent content, final int offset, final int length)
+            throws BadLocationException {
+        final DefaultDocumentEvent event = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.REMOVE);
+        removeUpdate(event);
+        event.addEdit(content.remove(offset, length));
+        postRemoveUpdate(event);
+        event.end();
+        fireRemoveUpdate(event);
+        return event;
+    }
+
+    /**
+     * Inserts pieces and notifies the listeners, the caller holds the write lock.
+     */
+    private DefaultDocumentEvent insertPieces(final PieceTableContent content, final int offset,
+            final PieceNode pieces) throws BadLocationException {
+        final DefaultDocumentEvent event = new DefaultDocumentEvent(offset, pieces.size,
+                DocumentEvent.EventType.INSERT);
+        event.addEdit(content.insert(offset, pieces));
+        insertUpdate(event, null);
+        event.end();
+        fireInsertUpdate(event);
+        return event;
+    }
+
+    /**
+     * @return <code>true</code> if the buffer holds appended text
+     */
+    boolean isLoaded(final TextBuffer buffer) {
+        return loaded.contains(buffer);
+    }
+
+    @Override
+    protected void insertUpdate(final DefaultDocumentEvent chng, final AttributeSet attr) {
+        // the content already contains the inserted text
+        lineIndex.inserted(chng.getOffset(), chng.getLength(), getContent());
+        chng.addEdit(new LineIndexEdit(chng.getOffset(), chng.getLength(), true));
+        super.insertUpdate(chng, attr);
+        if (!appending && history.isRecording()) {
+            history.inserted(chng.getOffset(), chng.getLength(), chng.getLength() == 1 && !isLineBreak(chng
+                    .getOffset()));
+        }
+    }
+
+    @Override
+    protected void removeUpdate(final DefaultDocumentEvent chng) {
+        // the content still contains the removed text
+        if (!appending && history.isRecording()) {
+            history.removed(chng.getOffset(), ((PieceTableContent) getContent()).piecesOf(chng.getOffset(), chng
+                    .getLength()), chng.getLength() == 1);
+        }
+        chng.addEdit(new LineIndexEdit(chng.getOffset(), chng.getLength(), false));
+        lineIndex.removed(chng.getOffset(), chng.getLength());
+        super.removeUpdate(chng);
+    }
+
+    private boolean isLineBreak(final int offset) {
+        try {
+            getContent().getChars(offset, 1, inserted);
+            return inserted.array[inserted.offset] == '\n';
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Builds the line index of the text that the content already contains.
+     */
+    private void buildLineIndex() {
+        final Segment segment = new Segment();
+        segment.setPartialReturn(true);
+
+        final int length = getContent().length();
+        int[] lengths = new int[1024];
+        int count = 0;
+        int lineStart = 0;
+        int offset = 0;
+        try {
+            while (offset < length) {
+                getContent().getChars(offset, length - offset, segment);
+                for (int i = 0; i < segment.count; i++) {
+                    if (segment.array[segment.offset + i] == '\n') {
+                        final int lineEnd = offset + i + 1;
+                        if (count == lengths.length) {
+                            lengths = Arrays.copyOf(lengths, count * 2);
+                        }
+                        lengths[count++] = lineEnd - lineStart;
+                        lineStart = lineEnd;
+                    }
+                }
+                offset += segment.count;
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        lineIndex = new LineIndex(lengths, count);
+    }
+
+    /**
+     * Keeps the line index in step with undo and redo. Undoing an event doesn't call
+     * {@link #insertUpdate(DefaultDocumentEvent, AttributeSet)} or {@link #removeUpdate(DefaultDocumentEvent)}, so the
+     * event carries this edit next to the edit of the content. Edits of an event are undone in reverse order, which
+     * makes the index see the content as it does when the edit is made.
+     */
+    @SuppressWarnings("serial")
+    private final class LineIndexEdit extends AbstractUndoableEdit {
+
+        private final int offset;
+        private final int length;
+        private final boolean insert;
+
+        LineIndexEdit(final int offset, final int length, final boolean insert) {
+            this.offset = offset;
+            this.length = length;
+            this.insert = insert;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            apply(!insert);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            apply(insert);
+        }
+
+        private void apply(final boolean inserted) {
+            if (inserted) {
+                lineIndex.inserted(offset, length, getContent());
+            } else {
+                lineIndex.removed(offset, length);
+            }
+        }
+
+        @Override
+        public boolean isSignificant() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Root element of the document. Its children are created from the line index every time they are asked for.
+     */
+    private final class LineRoot implements Element {
+
+        @Override
+        public Document getDocument() {
+            return PieceDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return getContent().length();
+        }
+
+        @Override
+        public int getElementIndex(final int offset) {
+            return lineIndex.getLineOfOffset(Math.max(0, Math.min(offset, getContent().length() - 1)));
+        }
+
+        @Override
+        public int getElementCount() {
+            return lineIndex.getLineCount();
+        }
+
+        @Override
+        public Element getElement(final int index) {
+            if (index < 0 || index >= lineIndex.getLineCount()) {
+                return null;
+            }
+            return new LineElement(lineIndex.getLineStartOffset(index), lineIndex.getLineEndOffset(index));
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+
+    }
+
+    /**
+     * A single line, a leaf of {@link LineRoot}.
+     */
+    private final class LineElement implements Element {
+
+        private final int start;
+        private final int end;
+
+        LineElement(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Document getDocument() {
+            return PieceDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return root;
+        }
+
+        @Override
+        public String getName() {
+            return ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return start;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return end;
+        }
+
+        @Override
+        public int getElementIndex(final int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(final int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+    }
+
+}
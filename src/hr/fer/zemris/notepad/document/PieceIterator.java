@@ -0,0 +1,49 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * In-order iterator over the pieces of a tree, starting from the first piece.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class PieceIterator {
+
+    /** Nodes whose piece and right subtree are not visited yet */
+    private final Deque<PieceNode> stack = new ArrayDeque<>();
+
+    /**
+     * Creates a new iterator over the given tree.
+     *
+     * @param root root of the tree
+     */
+    PieceIterator(final PieceNode root) {
+        pushLeft(root);
+    }
+
+    /**
+     * @return <code>true</code> if there are more pieces
+     */
+    boolean hasNext() {
+        return !stack.isEmpty();
+    }
+
+    /**
+     * @return the next piece, its children should be ignored
+     */
+    PieceNode next() {
+        final PieceNode node = stack.pop();
+        pushLeft(node.right);
+        return node;
+    }
+
+    private void pushLeft(PieceNode node) {
+        while (node != null) {
+            stack.push(node);
+            node = node.left;
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Node of a persistent treap of pieces. Every node describes one piece, a range <code>[start, start + length)</code>
+ * of some {@link TextBuffer}, and the pieces of its subtrees come before and after it in the document. Nodes are
+ * immutable, so a tree can be shared between the document and any number of snapshots.
+ * <p>
+ * Every node also keeps the {@link TextHash} of its subtree, so the hash of the whole text is always at the root.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class PieceNode {
+
+    /** Buffer that this piece points into */
+    final TextBuffer buffer;
+    /** Index of the first character in the buffer */
+    final int start;
+    /** Number of characters in this piece */
+    final int length;
+    /** Heap priority of this node */
+    final int priority;
+    /** Pieces before this one */
+    final PieceNode left;
+    /** Pieces after this one */
+    final PieceNode right;
+    /** Number of characters in this subtree */
+    final int size;
+    /** Hash of this piece */
+    private final long pieceHash;
+    /** Base raised to the length of this piece */
+    private final long piecePower;
+    /** Hash of this subtree */
+    final long hash;
+    /** Base raised to the size of this subtree */
+    final long power;
+
+    /**
+     * Creates a new leaf node with a random priority.
+     *
+     * @param buffer buffer that the piece points into
+     * @param start index of the first character in the buffer
+     * @param length number of characters
+     */
+    PieceNode(final TextBuffer buffer, final int start, final int length) {
+        this(buffer, start, length, ThreadLocalRandom.current().nextInt(), buffer.hash(start, length), TextHash.pow(
+                length), null, null);
+    }
+
+    private PieceNode(final TextBuffer buffer, final int start, final int length, final int priority,
+            final long pieceHash, final long piecePower, final PieceNode left, final PieceNode right) {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = length;
+        this.priority = priority;
+        this.left = left;
+        this.right = right;
+        this.size = length + size(left) + size(right);
+        this.pieceHash = pieceHash;
+        this.piecePower = piecePower;
+
+        long h = pieceHash;
+        long p = piecePower;
+        if (left != null) {
+            h = TextHash.concat(left.hash, h, p);
+            p = TextHash.mul(left.power, p);
+        }
+        if (right != null) {
+            h = TextHash.concat(h, right.hash, right.power);
+            p = TextHash.mul(p, right.power);
+        }
+        this.hash = h;
+        this.power = p;
+    }
+
+    /**
+     * Returns a node with the same piece and priority, but with the given children.
+     *
+     * @param left new left child
+     * @param right new right child
+     * @return node with the given children
+     */
+    PieceNode with(final PieceNode left, final PieceNode right) {
+        if (left == this.left && right == this.right) {
+            return this;
+        }
+        return new PieceNode(buffer, start, length, priority, pieceHash, piecePower, left, right);
+    }
+
+    /**
+     * Returns a node at the same place in the tree, but pointing to a different part of the same buffer.
+     *
+     * @param start new start of the piece
+     * @param length new length of the piece
+     * @param left new left child
+     * @param right new right child
+     * @return changed node
+     */
+    PieceNode with(final int start, final int length, final PieceNode left, final PieceNode right) {
+        return new PieceNode(buffer, start, length, priority, buffer.hash(start, length), TextHash.pow(length), left,
+                right);
+    }
+
+    /**
+     * Returns the number of characters in the given subtree.
+     *
+     * @param node root of the subtree, may be <code>null</code>
+     * @return number of characters in the subtree
+     */
+    static int size(final PieceNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+}
@@ -0,0 +1,467 @@
+package hr.fer.zemris.notepad.document;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Piece table implementation of {@link AbstractDocument.Content}. The text is described by a balanced tree of pieces
+ * that point either into the original buffer (usually the file that was opened) or into an append-only add buffer,
+ * so inserting or removing text costs <code>O(log pieces)</code> no matter where it happens, and the original text is
+ * never copied.
+ * <p>
+ * Positions are kept the same way as in {@link javax.swing.text.GapContent}: every mark stores an index into a
+ * virtual space that contains a gap at the place of the last edit, so only the marks between two consecutive edits
+ * have to be updated.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class PieceTableContent implements AbstractDocument.Content {
+
+    /** Implied newline that every content ends with */
+    private static final CharArrayBuffer NEWLINE = new CharArrayBuffer(new char[] { '\n' }, 1);
+    /** Size of the virtual gap used by marks */
+    private static final long GAP = 1L << 40;
+
+    /** Buffer for inserted text */
+    private final AddBuffer addBuffer = new AddBuffer();
+    /** Root of the piece tree */
+    private PieceNode root;
+
+    /** Marks sorted by their index */
+    private final List<MarkData> marks = new ArrayList<>();
+    /** Queue of marks whose positions are no longer used */
+    private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+    /** Number of marks that were collected but not removed yet */
+    private int unusedMarks;
+    /** Start of the virtual gap, it is also the offset of the last edit */
+    private long gapStart;
+    /** End of the virtual gap */
+    private long gapEnd = GAP;
+
+    /**
+     * Creates a new empty content.
+     */
+    public PieceTableContent() {
+        this(null);
+    }
+
+    /**
+     * Creates a new content whose text is the whole given buffer.
+     *
+     * @param original buffer with the original text, may be <code>null</code>
+     */
+    public PieceTableContent(final TextBuffer original) {
+        PieceNode initial = new PieceNode(NEWLINE, 0, 1);
+        if (original != null && original.length() > 0) {
+            initial = PieceTree.merge(new PieceNode(original, 0, original.length()), initial);
+        }
+        root = initial;
+    }
+
+    @Override
+    public Position createPosition(final int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        while (queue.poll() != null) {
+            unusedMarks++;
+        }
+        if (unusedMarks > 10 && unusedMarks > marks.size() / 4) {
+            removeUnusedMarks();
+        }
+
+        final long index = offset < gapStart ? offset : offset + (gapEnd - gapStart);
+        final int i = lowerBound(index);
+        if (i < marks.size() && marks.get(i).index == index) {
+            final StickyPosition position = marks.get(i).get();
+            if (position != null) {
+                return position;
+            }
+        }
+        final StickyPosition position = new StickyPosition();
+        final MarkData mark = new MarkData(position, index);
+        position.mark = mark;
+        marks.add(i, mark);
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return root.size;
+    }
+
+    @Override
+    public UndoableEdit insertString(final int where, final String str) throws BadLocationException {
+        if (where < 0 || where >= length()) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        if (str.isEmpty()) {
+            return null;
+        }
+        insertText(where, str);
+        return new InsertUndo(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(final int where, final int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length()) {
+            throw new BadLocationException("Invalid remove", length());
+        }
+        if (nitems == 0) {
+            return null;
+        }
+        return new RemoveUndo(where, removePieces(where, nitems));
+    }
+
+    /**
+     * Inserts characters <code>[start, start + len)</code> of the given buffer without copying them. If they
+     * continue the piece before the insert offset, that piece simply grows.
+     *
+     * @param where offset of the insert
+     * @param buffer buffer with the inserted characters
+     * @param start index of the first inserted character in the buffer
+     * @param len number of inserted characters
+     * @return edit that can undo the insert
+     * @throws BadLocationException if the offset is not valid
+     */
+    public UndoableEdit insert(final int where, final TextBuffer buffer, final int start, final int len)
+            throws BadLocationException {
+        if (where < 0 || where >= length()) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        if (len == 0) {
+            return null;
+        }
+        final PieceNode[] parts = PieceTree.split(root, where);
+        final PieceNode last = PieceTree.last(parts[0]);
+        if (last != null && last.buffer == buffer && last.start + last.length == start) {
+            root = PieceTree.merge(PieceTree.extendLast(parts[0], len), parts[1]);
+        } else {
+            root = PieceTree.merge(PieceTree.merge(parts[0], new PieceNode(buffer, start, len)), parts[1]);
+        }
+        updateMarksOnInsert(where, len);
+        return new InsertUndo(where, len);
+    }
+
+    /**
+     * Inserts the given pieces, which must not contain the implied newline.
+     *
+     * @param where offset of the insert
+     * @param pieces inserted pieces
+     * @return edit that can undo the insert
+     * @throws BadLocationException if the offset is not valid
+     */
+    UndoableEdit insert(final int where, final PieceNode pieces) throws BadLocationException {
+        if (where < 0 || where >= length()) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        if (pieces == null) {
+            return null;
+        }
+        insertPieces(where, pieces);
+        return new InsertUndo(where, pieces.size);
+    }
+
+    /**
+     * Returns an immutable snapshot of the current text.
+     *
+     * @return snapshot of the text
+     */
+    public TextSnapshot snapshot() {
+        return new TextSnapshot(root);
+    }
+
+    /**
+     * Checks if the text is still the same as it was when the given snapshot was taken. It compares only the trees,
+     * so it can return <code>false</code> for the same text that was edited and then restored.
+     *
+     * @param snapshot snapshot of this content
+     * @return <code>true</code> if nothing has changed since the snapshot was taken
+     */
+    public boolean isCurrent(final TextSnapshot snapshot) {
+        return snapshot.root == root;
+    }
+
+    @Override
+    public String getString(final int where, final int len) throws BadLocationException {
+        final Segment segment = new Segment();
+        getChars(where, len, segment);
+        return new String(segment.array, segment.offset, segment.count);
+    }
+
+    @Override
+    public void getChars(final int where, final int len, final Segment chars) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) {
+            throw new BadLocationException("Invalid location", length());
+        }
+        if (len == 0) {
+            chars.array = new char[0];
+            chars.offset = 0;
+            chars.count = 0;
+            return;
+        }
+
+        if (PieceTree.getChars(root, where, len, chars)) {
+            return;
+        }
+
+        final char[] copy = new char[len];
+        final int[] position = new int[1];
+        PieceTree.visit(root, where, where + len, (buffer, start, length) -> {
+            buffer.copyChars(start, length, copy, position[0]);
+            position[0] += length;
+            return true;
+        });
+        chars.array = copy;
+        chars.offset = 0;
+        chars.count = len;
+    }
+
+    /**
+     * Inserts the given text, the text is first appended to the add buffer.
+     *
+     * @param where offset of the insert
+     * @param str inserted text
+     */
+    private void insertText(final int where, final String str) {
+        final PieceNode[] parts = PieceTree.split(root, where);
+        final PieceNode last = PieceTree.last(parts[0]);
+        if (addBuffer.continues(last, str.length())) {
+            // typing continues the previous insert, so the previous piece just grows
+            addBuffer.extend(str);
+            root = PieceTree.merge(PieceTree.extendLast(parts[0], str.length()), parts[1]);
+        } else {
+            root = PieceTree.merge(PieceTree.merge(parts[0], addBuffer.append(str)), parts[1]);
+        }
+        updateMarksOnInsert(where, str.length());
+    }
+
+    /**
+     * Inserts the given pieces at the given offset.
+     *
+     * @param where offset of the insert
+     * @param pieces inserted pieces
+     */
+    private void insertPieces(final int where, final PieceNode pieces) {
+        final PieceNode[] parts = PieceTree.split(root, where);
+        root = PieceTree.merge(PieceTree.merge(parts[0], pieces), parts[1]);
+        updateMarksOnInsert(where, pieces.size);
+    }
+
+    /**
+     * Removes the given range and returns the pieces that were removed.
+     *
+     * @param where offset of the first removed character
+     * @param nitems number of removed characters
+     * @return removed pieces
+     */
+    private PieceNode removePieces(final int where, final int nitems) {
+        final PieceNode[] head = PieceTree.split(root, where);
+        final PieceNode[] tail = PieceTree.split(head[1], nitems);
+        root = PieceTree.merge(head[0], tail[1]);
+        updateMarksOnRemove(where, nitems);
+        return tail[0];
+    }
+
+    /**
+     * Returns the pieces that make up the given range.
+     *
+     * @param where offset of the first character
+     * @param len number of characters
+     * @return pieces of the range
+     */
+    PieceNode piecesOf(final int where, final int len) {
+        return PieceTree.split(PieceTree.split(root, where)[1], len)[0];
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // ........................................Marks...............................................
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Moves marks after an insert. Marks at the insert offset move with the inserted text, except those at offset 0.
+     */
+    private void updateMarksOnInsert(final int where, final int n) {
+        moveGap(where);
+        if (gapEnd - gapStart < n) {
+            shiftMarks(lowerBound(gapEnd), marks.size(), GAP);
+            gapEnd += GAP;
+        }
+        gapStart += n;
+        if (where == 0) {
+            for (int i = 0, limit = marks.size(); i < limit && marks.get(i).index == gapEnd; i++) {
+                marks.get(i).index = 0;
+            }
+        }
+    }
+
+    /**
+     * Moves marks after a remove. Marks inside the removed range collapse to its start.
+     */
+    private void updateMarksOnRemove(final int where, final int n) {
+        moveGap(where);
+        final int from = lowerBound(gapEnd);
+        final int to = lowerBound(gapEnd + n);
+        for (int i = from; i < to; i++) {
+            marks.get(i).index = gapEnd + n;
+        }
+        gapEnd += n;
+    }
+
+    /**
+     * Moves the virtual gap to the given offset, updating the marks that the gap passes over.
+     */
+    private void moveGap(final long offset) {
+        final long gap = gapEnd - gapStart;
+        if (offset < gapStart) {
+            shiftMarks(lowerBound(offset), lowerBound(gapStart), gap);
+        } else if (offset > gapStart) {
+            shiftMarks(lowerBound(gapEnd), lowerBound(gapEnd + offset - gapStart), -gap);
+        }
+        gapStart = offset;
+        gapEnd = offset + gap;
+    }
+
+    private void shiftMarks(final int from, final int to, final long delta) {
+        for (int i = from; i < to; i++) {
+            marks.get(i).index += delta;
+        }
+    }
+
+    /**
+     * Returns the position of the first mark whose index is not smaller than the given one.
+     */
+    private int lowerBound(final long index) {
+        int lo = 0;
+        int hi = marks.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (marks.get(mid).index < index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void removeUnusedMarks() {
+        marks.removeIf(mark -> mark.get() == null);
+        unusedMarks = 0;
+    }
+
+    /**
+     * Mark that is kept in the sorted list. It is weakly referencing its position so that marks which are not used
+     * anymore can be removed.
+     */
+    private final class MarkData extends WeakReference<StickyPosition> {
+
+        /** Index in the virtual space */
+        long index;
+
+        MarkData(final StickyPosition position, final long index) {
+            super(position, queue);
+            this.index = index;
+        }
+
+        int getOffset() {
+            return (int) (index < gapStart ? index : index - (gapEnd - gapStart));
+        }
+
+    }
+
+    /**
+     * Position handed out to the document.
+     */
+    private static final class StickyPosition implements Position {
+
+        MarkData mark;
+
+        @Override
+        public int getOffset() {
+            return mark.getOffset();
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // ........................................Undo................................................
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Undoes an insert. Inserted pieces are remembered only when the insert is undone.
+     */
+    @SuppressWarnings("serial")
+    private final class InsertUndo extends AbstractUndoableEdit {
+
+        private final int offset;
+        private final int length;
+        private PieceNode pieces;
+
+        InsertUndo(final int offset, final int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            pieces = piecesOf(offset, length);
+            removePieces(offset, length);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insertPieces(offset, pieces);
+            pieces = null;
+        }
+
+    }
+
+    /**
+     * Undoes a remove by putting the removed pieces back.
+     */
+    @SuppressWarnings("serial")
+    private final class RemoveUndo extends AbstractUndoableEdit {
+
+        private final int offset;
+        private final PieceNode pieces;
+
+        RemoveUndo(final int offset, final PieceNode pieces) {
+            this.offset = offset;
+            this.pieces = pieces;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insertPieces(offset, pieces);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            removePieces(offset, pieces.size);
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package hr.fer.zemris.notepad.document;
+
+import javax.swing.text.Segment;
+
+/**
+ * Operations over persistent treaps built from {@link PieceNode}s. None of them modify existing nodes, they copy the
+ * path from the root to the place of change, so every operation takes <code>O(log pieces)</code> expected time.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class PieceTree {
+
+    private PieceTree() {
+    }
+
+    /**
+     * Joins two trees, every piece of <code>a</code> comes before the pieces of <code>b</code>.
+     *
+     * @param a left tree, may be <code>null</code>
+     * @param b right tree, may be <code>null</code>
+     * @return joined tree
+     */
+    static PieceNode merge(final PieceNode a, final PieceNode b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return a.with(a.left, merge(a.right, b));
+        }
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    /**
+     * Splits the tree so that the first tree contains exactly <code>offset</code> characters. A piece that contains
+     * the split point is cut into two pieces.
+     *
+     * @param node root of the tree
+     * @param offset split offset
+     * @return array with the left and the right tree
+     */
+    static PieceNode[] split(final PieceNode node, final int offset) {
+        if (node == null) {
+            return new PieceNode[2];
+        }
+        final int leftSize = PieceNode.size(node.left);
+        if (offset <= leftSize) {
+            final PieceNode[] parts = split(node.left, offset);
+            parts[1] = node.with(parts[1], node.right);
+            return parts;
+        }
+        final int pieceEnd = leftSize + node.length;
+        if (offset >= pieceEnd) {
+            final PieceNode[] parts = split(node.right, offset - pieceEnd);
+            parts[0] = node.with(node.left, parts[0]);
+            return parts;
+        }
+        final int cut = offset - leftSize;
+        final PieceNode head = node.with(node.start, cut, node.left, null);
+        final PieceNode tail = new PieceNode(node.buffer, node.start + cut, node.length - cut);
+        return new PieceNode[] { head, merge(tail, node.right) };
+    }
+
+    /**
+     * Returns the last piece of the tree.
+     *
+     * @param node root of the tree
+     * @return last piece, or <code>null</code> if the tree is empty
+     */
+    static PieceNode last(PieceNode node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Makes the last piece of the tree longer by <code>n</code> characters.
+     *
+     * @param node root of the tree
+     * @param n number of characters to add
+     * @return changed tree
+     */
+    static PieceNode extendLast(final PieceNode node, final int n) {
+        if (node.right == null) {
+            return node.with(node.start, node.length + n, node.left, null);
+        }
+        return node.with(node.left, extendLast(node.right, n));
+    }
+
+    /**
+     * Fills the segment with characters <code>[where, where + len)</code> of the tree if they all come from a single
+     * piece, or with as many of them as one piece holds if the segment allows a partial return.
+     *
+     * @param node root of the tree
+     * @param where offset of the first character
+     * @param len number of characters, at least one
+     * @param chars segment to fill
+     * @return <code>false</code> if the characters span more pieces and the segment was not filled
+     */
+    static boolean getChars(PieceNode node, final int where, final int len, final Segment chars) {
+        int offset = where;
+        while (true) {
+            final int leftSize = PieceNode.size(node.left);
+            if (offset < leftSize) {
+                node = node.left;
+            } else if (offset < leftSize + node.length) {
+                offset -= leftSize;
+                break;
+            } else {
+                offset -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+
+        final int available = node.length - offset;
+        if (len <= available || chars.isPartialReturn()) {
+            node.buffer.getChars(node.start + offset, Math.min(len, available), chars);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fills the segment with characters of the piece that contains the given offset, at least the character at the
+     * offset, and as many characters before it as the buffer of the piece gives without copying.
+     *
+     * @param node root of the tree
+     * @param where offset of a character of the piece
+     * @param chars segment to fill, it must allow a partial return
+     * @return offset in the tree of the first character in the segment
+     */
+    static int getPiece(PieceNode node, final int where, final Segment chars) {
+        int offset = where;
+        while (true) {
+            final int leftSize = PieceNode.size(node.left);
+            if (offset < leftSize) {
+                node = node.left;
+            } else if (offset < leftSize + node.length) {
+                offset -= leftSize;
+                break;
+            } else {
+                offset -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+
+        node.buffer.getChars(node.start + offset, node.length - offset, chars);
+        final int before = Math.min(offset, chars.offset);
+        chars.offset -= before;
+        chars.count += before;
+        return where - before;
+    }
+
+    /**
+     * Visits pieces that contain characters <code>[from, to)</code> of the tree.
+     *
+     * @param node root of the tree
+     * @param from first visited offset
+     * @param to offset after the last visited character
+     * @param visitor visitor
+     * @return <code>false</code> if the visitor stopped the walk
+     */
+    static boolean visit(final PieceNode node, final int from, final int to, final PieceVisitor visitor) {
+        return visit(node, from, to, 0, visitor);
+    }
+
+    private static boolean visit(final PieceNode node, final int from, final int to, final int base,
+            final PieceVisitor visitor) {
+        if (node == null || from >= to) {
+            return true;
+        }
+        final int pieceStart = base + PieceNode.size(node.left);
+        final int pieceEnd = pieceStart + node.length;
+        if (from < pieceStart && !visit(node.left, from, to, base, visitor)) {
+            return false;
+        }
+        final int s = Math.max(from, pieceStart);
+        final int e = Math.min(to, pieceEnd);
+        if (s < e && !visitor.visit(node.buffer, node.start + s - pieceStart, e - s)) {
+            return false;
+        }
+        if (to > pieceEnd) {
+            return visit(node.right, from, to, pieceEnd, visitor);
+        }
+        return true;
+    }
+
+}
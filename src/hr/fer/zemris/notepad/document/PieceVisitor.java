@@ -0,0 +1,21 @@
+package hr.fer.zemris.notepad.document;
+
+/**
+ * Visitor of pieces, used to walk over a range of characters without copying them.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public interface PieceVisitor {
+
+    /**
+     * Invoked for every piece of the visited range, in order.
+     *
+     * @param buffer buffer of the piece
+     * @param start index of the first visited character in the buffer
+     * @param length number of visited characters
+     * @return <code>false</code> to stop visiting
+     */
+    boolean visit(TextBuffer buffer, int start, int length);
+
+}
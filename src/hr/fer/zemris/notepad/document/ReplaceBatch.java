@@ -0,0 +1,176 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.Arrays;
+
+/**
+ * Replacements of many ranges of a {@link TextSnapshot} that are applied to a {@link PieceDocument} at once, with
+ * {@link PieceDocument#replace(ReplaceBatch)}. A batch can be filled on any thread. Text between the replaced ranges is
+ * not copied, the new text is built from the pieces of the snapshot and a buffer that holds the replacements, and a
+ * replacement that is the same as the one before it shares its characters.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class ReplaceBatch {
+
+    /** Text the ranges refer to */
+    private final TextSnapshot snapshot;
+    /** Replaced ranges, four elements each: start, end, and start and length of the replacement in {@link #chars} */
+    private int[] ranges = new int[64];
+    /** Number of used elements of {@link #ranges} */
+    private int count;
+    /** Characters of all distinct replacements */
+    private char[] chars = new char[64];
+    /** Number of used characters */
+    private int charCount;
+    /** Start of the last replacement in {@link #chars} */
+    private int lastStart;
+    /** Length of the last replacement */
+    private int lastLength = -1;
+
+    /**
+     * Creates a new empty batch.
+     *
+     * @param snapshot text that will be changed
+     */
+    public ReplaceBatch(final TextSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return text that will be changed
+     */
+    public TextSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return number of replaced ranges
+     */
+    public int size() {
+        return count / 4;
+    }
+
+    /**
+     * Adds a replacement of characters <code>[start, end)</code> of the snapshot. Ranges must be added in increasing
+     * order and must not overlap.
+     *
+     * @param start offset of the first replaced character
+     * @param end offset after the last replaced character
+     * @param replacement new text
+     */
+    public void add(final int start, final int end, final CharSequence replacement) {
+        final int previousEnd = count == 0 ? 0 : ranges[count - 3];
+        if (start < previousEnd || start > end || end > snapshot.length()) {
+            throw new IllegalArgumentException("Range: [" + start + ", " + end + ")");
+        }
+        if (count == ranges.length) {
+            ranges = Arrays.copyOf(ranges, count * 2);
+        }
+        ranges[count++] = start;
+        ranges[count++] = end;
+        ranges[count++] = store(replacement);
+        ranges[count++] = replacement.length();
+    }
+
+    /**
+     * Adds all replacements of another batch of the same snapshot after the replacements of this batch. This joins
+     * batches that were filled in parallel, each with the replacements of a part of the text.
+     *
+     * @param other batch whose ranges all come after the ranges of this batch
+     */
+    public void addAll(final ReplaceBatch other) {
+        if (other.snapshot != snapshot) {
+            throw new IllegalArgumentException("Batches of different snapshots");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        if (count > 0 && other.ranges[0] < ranges[count - 3]) {
+            throw new IllegalArgumentException("Range: [" + other.ranges[0] + ", " + other.ranges[1] + ")");
+        }
+        if (count + other.count > ranges.length) {
+            ranges = Arrays.copyOf(ranges, Math.max(count + other.count, ranges.length * 2));
+        }
+        if (charCount + other.charCount > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(charCount + other.charCount, chars.length * 2));
+        }
+        System.arraycopy(other.chars, 0, chars, charCount, other.charCount);
+        for (int i = 0; i < other.count; i += 4) {
+            ranges[count++] = other.ranges[i];
+            ranges[count++] = other.ranges[i + 1];
+            ranges[count++] = other.ranges[i + 2] + charCount;
+            ranges[count++] = other.ranges[i + 3];
+        }
+        lastStart = other.lastStart + charCount;
+        lastLength = other.lastLength;
+        charCount += other.charCount;
+    }
+
+    /**
+     * Stores the replacement, unless it is the same as the last one.
+     *
+     * @return index of the replacement
+     */
+    private int store(final CharSequence replacement) {
+        final int length = replacement.length();
+        if (length == lastLength) {
+            int i = 0;
+            while (i < length && chars[lastStart + i] == replacement.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return lastStart;
+            }
+        }
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(charCount + length, chars.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            chars[charCount + i] = replacement.charAt(i);
+        }
+        lastStart = charCount;
+        lastLength = length;
+        charCount += length;
+        return lastStart;
+    }
+
+    /**
+     * @return offset of the first replaced character
+     */
+    int start() {
+        return ranges[0];
+    }
+
+    /**
+     * @return offset after the last replaced character
+     */
+    int end() {
+        return ranges[count - 3];
+    }
+
+    /**
+     * Builds the pieces that replace characters <code>[start(), end())</code> of the snapshot.
+     *
+     * @return new pieces, <code>null</code> if there is no text left
+     */
+    PieceNode build() {
+        final CharArrayBuffer buffer = new CharArrayBuffer(chars, charCount);
+        final int start = start();
+        PieceNode rest = PieceTree.split(PieceTree.split(snapshot.root, start)[1], end() - start)[0];
+        int restStart = start;
+        PieceNode result = null;
+        for (int i = 0; i < count; i += 4) {
+            final PieceNode[] kept = PieceTree.split(rest, ranges[i] - restStart);
+            rest = PieceTree.split(kept[1], ranges[i + 1] - ranges[i])[1];
+            restStart = ranges[i + 1];
+            result = PieceTree.merge(result, kept[0]);
+
+            if (ranges[i + 3] > 0) {
+                result = PieceTree.merge(result, new PieceNode(buffer, ranges[i + 2], ranges[i + 3]));
+            }
+        }
+        return result;
+    }
+
+}
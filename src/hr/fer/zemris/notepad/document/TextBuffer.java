@@ -0,0 +1,69 @@
+package hr.fer.zemris.notepad.document;
+
+import javax.swing.text.Segment;
+
+/**
+ * A read-only sequence of characters that pieces of a {@link PieceTableContent} point into. Characters that were once
+ * visible through a buffer never change, only new characters can be appended at its end.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public interface TextBuffer {
+
+    /**
+     * Returns the number of characters currently available in this buffer.
+     *
+     * @return length of this buffer
+     */
+    int length();
+
+    /**
+     * Returns the character at the given index.
+     *
+     * @param index index of the character
+     * @return character at the given index
+     */
+    char charAt(int index);
+
+    /**
+     * Makes the given segment point to the characters <code>[start, start + len)</code> of this buffer. If the segment
+     * allows partial returns, fewer characters may be given, but never zero. Elements of the array before the offset
+     * of the segment, if there are any, are the characters of this buffer before <code>start</code>.
+     *
+     * @param start index of the first character
+     * @param len number of characters
+     * @param segment segment that will point to the characters
+     */
+    void getChars(int start, int len, Segment segment);
+
+    /**
+     * Copies the characters <code>[start, start + len)</code> of this buffer into the given array.
+     *
+     * @param start index of the first character
+     * @param len number of characters
+     * @param dst destination array
+     * @param dstPos position in the destination array
+     */
+    void copyChars(int start, int len, char[] dst, int dstPos);
+
+    /**
+     * Returns the {@link TextHash} of the characters <code>[start, start + len)</code> of this buffer. This default
+     * implementation reads every character, buffers should answer faster from hashes of their prefixes.
+     *
+     * @param start index of the first character
+     * @param len number of characters
+     * @return hash of the characters
+     */
+    default long hash(final int start, final int len) {
+        final Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        long hash = 0;
+        for (int offset = start, end = start + len; offset < end; offset += segment.count) {
+            getChars(offset, end - offset, segment);
+            hash = TextHash.append(hash, segment.array, segment.offset, segment.count);
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,130 @@
+package hr.fer.zemris.notepad.document;
+
+/**
+ * Polynomial rolling hash of text, modulo the Mersenne prime <code>2<sup>61</sup> - 1</code>. The hash of
+ * <code>c<sub>0</sub> c<sub>1</sub> ... c<sub>n-1</sub></code> is the sum of <code>(c<sub>i</sub> + 1) *
+ * B<sup>n-1-i</sup></code>, so the hash of two joined texts is computed from their hashes and lengths alone:
+ * <code>H(ab) = H(a) * B<sup>|b|</sup> + H(b)</code>. That is what lets every node of a piece tree keep the hash of its
+ * subtree, and the whole document keep its hash up to date in <code>O(log pieces)</code> per edit.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class TextHash {
+
+    /** Modulus, <code>2<sup>61</sup> - 1</code> */
+    public static final long MOD = (1L << 61) - 1;
+    /** Base of the polynomial */
+    private static final long BASE = 0x2B5E_A1F3_9C47_D16BL % MOD;
+
+    private static final long MASK30 = (1L << 30) - 1;
+    private static final long MASK31 = (1L << 31) - 1;
+
+    /** <code>BASE<sup>2<sup>i</sup></sup></code> for every bit of an <code>int</code> */
+    private static final long[] POWERS = new long[31];
+    static {
+        POWERS[0] = BASE;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = mul(POWERS[i - 1], POWERS[i - 1]);
+        }
+    }
+
+    private TextHash() {
+    }
+
+    /**
+     * Returns the hash of the given text followed by one more character.
+     *
+     * @param hash hash of the text
+     * @param c appended character
+     * @return hash of the longer text
+     */
+    public static long append(final long hash, final char c) {
+        return add(mul(hash, BASE), c + 1);
+    }
+
+    /**
+     * Returns the hash of characters <code>[from, from + len)</code> of the given array appended to a text.
+     *
+     * @param hash hash of the text
+     * @param chars appended characters
+     * @param from index of the first appended character
+     * @param len number of appended characters
+     * @return hash of the longer text
+     */
+    public static long append(long hash, final char[] chars, final int from, final int len) {
+        for (int i = from, end = from + len; i < end; i++) {
+            hash = add(mul(hash, BASE), chars[i] + 1);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of two joined texts.
+     *
+     * @param left hash of the first text
+     * @param right hash of the second text
+     * @param rightPower {@link #pow(int)} of the length of the second text
+     * @return hash of the joined text
+     */
+    public static long concat(final long left, final long right, final long rightPower) {
+        return add(mul(left, rightPower), right);
+    }
+
+    /**
+     * Returns the hash of a text without its prefix.
+     *
+     * @param whole hash of the whole text
+     * @param prefix hash of the prefix
+     * @param restPower {@link #pow(int)} of the length of the text after the prefix
+     * @return hash of the text after the prefix
+     */
+    public static long suffix(final long whole, final long prefix, final long restPower) {
+        final long r = whole - mul(prefix, restPower);
+        return r < 0 ? r + MOD : r;
+    }
+
+    /**
+     * Returns <code>B<sup>n</sup></code>.
+     *
+     * @param n exponent, not negative
+     * @return power of the base
+     */
+    public static long pow(int n) {
+        long result = 1;
+        for (int i = 0; n != 0; i++, n >>>= 1) {
+            if ((n & 1) != 0) {
+                result = mul(result, POWERS[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies two numbers modulo {@link #MOD}, splitting them into 31 bit halves so nothing overflows.
+     */
+    static long mul(final long a, final long b) {
+        final long au = a >>> 31;
+        final long ad = a & MASK31;
+        final long bu = b >>> 31;
+        final long bd = b & MASK31;
+        final long mid = ad * bu + au * bd;
+        final long midu = mid >>> 30;
+        final long midd = mid & MASK30;
+        return mod(au * bu * 2 + midu + (midd << 31) + ad * bd);
+    }
+
+    private static long add(final long a, final long b) {
+        final long r = a + b;
+        return r >= MOD ? r - MOD : r;
+    }
+
+    /**
+     * Reduces an unsigned 64 bit number modulo {@link #MOD}.
+     */
+    private static long mod(final long x) {
+        final long r = (x >>> 61) + (x & MOD);
+        return r >= MOD ? r - MOD : r;
+    }
+
+}
@@ -0,0 +1,204 @@
+package hr.fer.zemris.notepad.document;
+
+import java.util.Arrays;
+
+import javax.swing.text.Segment;
+
+/**
+ * Immutable view of the text of a {@link PieceDocument} at some moment. Taking a snapshot costs <code>O(1)</code>
+ * because the piece tree is persistent, and a snapshot can be read from any thread while the document keeps changing.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class TextSnapshot {
+
+    /** Root of the piece tree, including the implied newline */
+    final PieceNode root;
+    /** Length of the text, without the implied newline */
+    private final int length;
+
+    /**
+     * Creates a new snapshot of the given tree.
+     *
+     * @param root root of the piece tree
+     */
+    TextSnapshot(final PieceNode root) {
+        this.root = root;
+        this.length = root.size - 1;
+    }
+
+    /**
+     * @return number of characters in the snapshot
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the {@link TextHash} of the text. Two snapshots of the same length and with the same hash contain the
+     * same text with overwhelming probability, and comparing them this way takes <code>O(1)</code>.
+     *
+     * @return hash of the text, followed by the newline that ends every document
+     */
+    public long hash() {
+        return root.hash;
+    }
+
+    /**
+     * Visits the pieces that make up characters <code>[from, to)</code> of the snapshot.
+     *
+     * @param from offset of the first character
+     * @param to offset after the last character
+     * @param visitor visitor of the pieces
+     * @return <code>false</code> if the visitor stopped the walk
+     */
+    public boolean visit(final int from, final int to, final PieceVisitor visitor) {
+        if (from < 0 || from > to || to > length) {
+            throw new IndexOutOfBoundsException("Range: [" + from + ", " + to + ")");
+        }
+        return PieceTree.visit(root, from, to, visitor);
+    }
+
+    /**
+     * Returns the length of the longest common prefix of this and the given snapshot, found by comparing their pieces
+     * and not their characters. A character is considered common if it comes from the same place of the same buffer
+     * in both snapshots, so the result may be shorter than the real common prefix, but never longer.
+     *
+     * @param other other snapshot
+     * @return length of the common prefix
+     */
+    public int commonPrefix(final TextSnapshot other) {
+        final int[] ranges = differences(other, true);
+        return ranges.length == 0 ? Math.min(length, other.length) : ranges[0];
+    }
+
+    /**
+     * Returns ranges of offsets where this and the given snapshot differ. Like in {@link #commonPrefix(TextSnapshot)},
+     * pieces are compared instead of characters, so it takes time proportional to the number of pieces. If the
+     * snapshots have different lengths, the tail of the longer one is reported as a difference.
+     *
+     * @param other other snapshot
+     * @return array of ranges <code>[start, end)</code>, two elements for each range, in increasing order
+     */
+    public int[] differences(final TextSnapshot other) {
+        return differences(other, false);
+    }
+
+    private int[] differences(final TextSnapshot other, final boolean firstOnly) {
+        int[] ranges = new int[8];
+        int count = 0;
+
+        final PieceIterator a = new PieceIterator(root);
+        final PieceIterator b = new PieceIterator(other.root);
+        PieceNode pa = null;
+        PieceNode pb = null;
+        int ia = 0; // index in pa
+        int ib = 0; // index in pb
+        int offset = 0;
+        final int common = Math.min(length, other.length);
+        while (offset < common) {
+            if (pa == null || ia == pa.length) {
+                pa = a.next();
+                ia = 0;
+            }
+            if (pb == null || ib == pb.length) {
+                pb = b.next();
+                ib = 0;
+            }
+            final int n = Math.min(Math.min(pa.length - ia, pb.length - ib), common - offset);
+            if (pa.buffer != pb.buffer || pa.start + ia != pb.start + ib) {
+                if (count > 0 && ranges[count - 1] == offset) {
+                    ranges[count - 1] += n; // continues the previous range
+                } else {
+                    if (count == ranges.length) {
+                        ranges = Arrays.copyOf(ranges, count * 2);
+                    }
+                    ranges[count++] = offset;
+                    ranges[count++] = offset + n;
+                }
+                if (firstOnly) {
+                    break;
+                }
+            }
+            ia += n;
+            ib += n;
+            offset += n;
+        }
+        if (length != other.length && !(firstOnly && count > 0)) {
+            final int end = Math.max(length, other.length);
+            if (count > 0 && ranges[count - 1] == common) {
+                ranges[count - 1] = end;
+            } else {
+                if (count == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, count + 2);
+                }
+                ranges[count++] = common;
+                ranges[count++] = end;
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Fills the segment with characters <code>[where, where + len)</code> of the snapshot, like
+     * {@link javax.swing.text.AbstractDocument.Content#getChars(int, int, Segment)}. With a partial return the segment
+     * gets the characters of a single piece without copying them.
+     *
+     * @param where offset of the first character
+     * @param len number of characters
+     * @param segment segment to fill
+     */
+    public void getChars(final int where, final int len, final Segment segment) {
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new IndexOutOfBoundsException("Range: [" + where + ", " + (where + len) + ")");
+        }
+        if (len == 0) {
+            segment.array = new char[0];
+            segment.offset = 0;
+            segment.count = 0;
+        } else if (!PieceTree.getChars(root, where, len, segment)) {
+            final char[] copy = new char[len];
+            copyChars(where, len, copy, 0);
+            segment.array = copy;
+            segment.offset = 0;
+            segment.count = len;
+        }
+    }
+
+    /**
+     * Fills the segment with characters of the piece that contains the given offset, without copying them. The segment
+     * contains the character at the offset and may contain characters of the piece before and after it, so reading
+     * near the offset in either direction needs no other lookup.
+     *
+     * @param where offset of a character
+     * @param segment segment to fill, it must allow a partial return
+     * @return offset in the snapshot of the first character in the segment
+     */
+    public int getPieceChars(final int where, final Segment segment) {
+        if (where < 0 || where >= length) {
+            throw new IndexOutOfBoundsException("Offset: " + where);
+        }
+        final int first = PieceTree.getPiece(root, where, segment);
+        segment.count = Math.min(segment.count, length - first); // without the implied newline
+        return first;
+    }
+
+    /**
+     * Copies characters <code>[from, from + len)</code> of the snapshot into the given array.
+     *
+     * @param from offset of the first character
+     * @param len number of characters
+     * @param dst destination array
+     * @param dstPos position in the destination array
+     */
+    public void copyChars(final int from, final int len, final char[] dst, final int dstPos) {
+        final int[] position = { dstPos };
+        visit(from, from + len, (buffer, start, length) -> {
+            buffer.copyChars(start, length, dst, position[0]);
+            position[0] += length;
+            return true;
+        });
+    }
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the document model used by the notepad. Text is kept in a piece table whose pieces point
+ * into immutable text buffers (the original file and an append-only add buffer), so edits never copy the document.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.document;
@@ -0,0 +1,25 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * Writes the whole snapshot into a temporary file next to the target, forces it to disk and then atomically moves it
+ * over the target, so a crash in the middle of a save never leaves a half-written file behind.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class AtomicSaveStrategy implements SaveStrategy {
+
+    @Override
+    public DiskState save(final TextSnapshot snapshot, final Path target, final Charset charset,
+            final DiskState previous) throws IOException {
+        FileSaver.writeAtomically(snapshot, target, charset);
+        return DiskState.of(target, snapshot, charset, true, previous);
+    }
+
+}
@@ -0,0 +1,162 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Byte offsets of characters in text buffers, kept by a {@link DiskState} and handed on from save to save, so that
+ * finding where a changed range starts in the file doesn't encode all the text before it again. For every buffer the
+ * offset of about every {@value #STEP}th character is remembered, so an offset is found by encoding at most that many
+ * characters. Characters of a buffer never change, so remembered offsets stay valid while the buffer grows.
+ * <p>
+ * Offsets are only right for UTF-8 and single byte charsets, where every character encodes independently of the ones
+ * around it. They are used only by the saver thread.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class ByteOffsets {
+
+    /** Approximate number of characters between two remembered offsets */
+    private static final int STEP = 1 << 16;
+
+    private final Charset charset;
+    /** Indexes of the buffers, a buffer that isn't used any more is forgotten */
+    private final Map<TextBuffer, Index> indexes = new WeakHashMap<>();
+    /** Encoded characters, a high surrogate stays in it until its pair is copied after it */
+    private final CharBuffer in = CharBuffer.allocate(8 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocate(8 * 1024);
+    /** Encoder of the charset, created when it is first needed */
+    private CharsetEncoder encoder;
+
+    /**
+     * Creates empty offsets.
+     *
+     * @param charset charset the buffers are encoded with
+     */
+    ByteOffsets(final Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * @return charset the buffers are encoded with
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the number of bytes that characters <code>[start, end)</code> of the buffer encode into. The range must
+     * not start with a low surrogate or end with a high surrogate.
+     *
+     * @param buffer buffer of the characters
+     * @param start index of the first character
+     * @param end index after the last character
+     * @return number of bytes
+     */
+    long measure(final TextBuffer buffer, final int start, final int end) {
+        Index index = indexes.get(buffer);
+        if (index == null) {
+            index = new Index();
+            indexes.put(buffer, index);
+        }
+        return offset(buffer, index, end) - offset(buffer, index, start);
+    }
+
+    /**
+     * Returns the number of bytes that the characters of the buffer before the given one encode into, remembering the
+     * offsets on the way to it.
+     */
+    private long offset(final TextBuffer buffer, final Index index, final int target) {
+        while (index.chars[index.count - 1] + STEP <= target) {
+            final int from = index.chars[index.count - 1];
+            int to = from + STEP;
+            while (to < target && splitsPair(buffer, to)) {
+                to++;
+            }
+            if (splitsPair(buffer, to)) {
+                break; // the next offset would be past the target
+            }
+            index.add(to, index.bytes[index.count - 1] + encode(buffer, from, to));
+        }
+        int i = Arrays.binarySearch(index.chars, 0, index.count, target);
+        if (i >= 0) {
+            return index.bytes[i];
+        }
+        i = -i - 2; // the last remembered offset before the target
+        return index.bytes[i] + encode(buffer, index.chars[i], target);
+    }
+
+    /**
+     * Checks if the given index is between two halves of a surrogate pair.
+     */
+    private static boolean splitsPair(final TextBuffer buffer, final int index) {
+        return index > 0 && index < buffer.length() && Character.isHighSurrogate(buffer.charAt(index - 1))
+                && Character.isLowSurrogate(buffer.charAt(index));
+    }
+
+    /**
+     * Encodes characters <code>[from, to)</code> of the buffer and returns how many bytes they take.
+     */
+    private long encode(final TextBuffer buffer, final int from, final int to) {
+        if (encoder == null) {
+            encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                    CodingErrorAction.REPLACE);
+        }
+        encoder.reset();
+        in.clear();
+        long bytes = 0;
+        int offset = from;
+        while (offset < to) {
+            final int n = Math.min(in.remaining(), to - offset);
+            buffer.copyChars(offset, n, in.array(), in.position());
+            in.position(in.position() + n);
+            offset += n;
+            in.flip();
+            while (encoder.encode(in, out, offset == to).isOverflow()) {
+                bytes += out.position();
+                out.clear();
+            }
+            in.compact();
+        }
+        while (encoder.flush(out).isOverflow()) {
+            bytes += out.position();
+            out.clear();
+        }
+        bytes += out.position();
+        out.clear();
+        return bytes;
+    }
+
+    /**
+     * Remembered offsets of a single buffer.
+     */
+    private static final class Index {
+
+        /** Indexes of the characters whose offsets are remembered, in increasing order */
+        private int[] chars = new int[4];
+        /** Byte offsets of those characters */
+        private long[] bytes = new long[4];
+        /** Number of remembered offsets, the first one is always the start of the buffer */
+        private int count = 1;
+
+        private void add(final int character, final long offset) {
+            if (count == chars.length) {
+                chars = Arrays.copyOf(chars, count * 2);
+                bytes = Arrays.copyOf(bytes, count * 2);
+            }
+            chars[count] = character;
+            bytes[count++] = offset;
+        }
+
+    }
+
+}
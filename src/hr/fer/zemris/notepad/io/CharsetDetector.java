@@ -0,0 +1,344 @@
+package hr.fer.zemris.notepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Guesses the charset of a file from its first {@value #PREFIX_SIZE} bytes, so the time it takes does not depend on the
+ * size of the file. The checks go from the most to the least certain one:
+ * <ol>
+ * <li>a byte order mark decides between UTF-8, UTF-16 and UTF-32,</li>
+ * <li>zero bytes in every other position mean UTF-16 without a byte order mark,</li>
+ * <li>text that is all ASCII or valid UTF-8 is UTF-8,</li>
+ * <li>anything else is decoded with every {@link #SINGLE_BYTE_CANDIDATES single byte candidate}, and the one in which
+ * the bytes above 127 look most like letters inside words wins.</li>
+ * </ol>
+ * UTF-8 and UTF-16 are chosen with an explicit byte order, whose decoders keep the byte order mark as the first
+ * character of the text, and UTF-32 with a charset that drops the mark when decoding and writes it when encoding, so a
+ * file is always written back with the same mark it was read with.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class CharsetDetector {
+
+    /** Number of bytes at the start of a file that are examined */
+    public static final int PREFIX_SIZE = 64 * 1024;
+    /** Names of single byte charsets that are tried, in order of preference when they are equally likely */
+    private static final String[] SINGLE_BYTE_CANDIDATES = { "windows-1250", "ISO-8859-2", "windows-1252" };
+    /** Mask of the highest bit of every byte in a long */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    /** Marks a byte that a single byte charset doesn't map */
+    private static final char UNMAPPED = '\uFFFF';
+
+    /** Supported single byte candidates */
+    private static final List<Charset> CANDIDATES = new ArrayList<>();
+    /** Characters of bytes 128 - 255 in every candidate */
+    private static final List<char[]> TABLES = new ArrayList<>();
+
+    static {
+        for (final String name : SINGLE_BYTE_CANDIDATES) {
+            if (Charset.isSupported(name)) {
+                final Charset charset = Charset.forName(name);
+                CANDIDATES.add(charset);
+                TABLES.add(highHalf(charset));
+            }
+        }
+    }
+
+    private CharsetDetector() {
+    }
+
+    /**
+     * Guesses the charset of the given file.
+     *
+     * @param path examined file
+     * @return charset of the file, UTF-8 for an empty file
+     * @throws IOException if the file can't be read
+     */
+    public static Charset detect(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return detect(channel);
+        }
+    }
+
+    /**
+     * Guesses the charset of the file that the channel reads, without moving the channel's position.
+     *
+     * @param channel channel of the examined file
+     * @return charset of the file
+     * @throws IOException if the channel can't be read
+     */
+    static Charset detect(final FileChannel channel) throws IOException {
+        final ByteBuffer prefix = prefix(channel);
+        return detect(prefix, prefix.limit() == channel.size());
+    }
+
+    /**
+     * Guesses if the given file holds binary data rather than text.
+     *
+     * @param path examined file
+     * @return <code>true</code> if the file looks binary
+     * @throws IOException if the file can't be read
+     * @see #isBinary(ByteBuffer)
+     */
+    public static boolean isBinary(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return isBinary(prefix(channel));
+        }
+    }
+
+    /**
+     * Reads the prefix of a file, without moving the channel's position.
+     *
+     * @return flipped buffer with the prefix
+     */
+    private static ByteBuffer prefix(final FileChannel channel) throws IOException {
+        final ByteBuffer prefix = ByteBuffer.allocate((int) Math.min(PREFIX_SIZE, channel.size()));
+        while (prefix.hasRemaining() && channel.read(prefix, prefix.position()) != -1) {
+            // read the whole prefix
+        }
+        prefix.flip();
+        return prefix;
+    }
+
+    /**
+     * Guesses the charset of the bytes between the buffer's position and limit.
+     *
+     * @param bytes examined bytes
+     * @param whole <code>true</code> if these are all the bytes of the text, <code>false</code> if they are its prefix,
+     *            which can end inside a character
+     * @return charset of the bytes
+     */
+    public static Charset detect(final ByteBuffer bytes, final boolean whole) {
+        final Charset bom = fromByteOrderMark(bytes);
+        if (bom != null) {
+            return bom;
+        }
+        final Charset utf16 = fromZeroBytes(bytes);
+        if (utf16 != null) {
+            return utf16;
+        }
+        if (isUtf8(bytes, whole) || CANDIDATES.isEmpty()) {
+            return StandardCharsets.UTF_8;
+        }
+        return mostLikelySingleByte(bytes);
+    }
+
+    /**
+     * Checks if the bytes between the buffer's position and limit are all ASCII.
+     *
+     * @param bytes examined bytes
+     * @return <code>true</code> if no byte has its highest bit set
+     */
+    public static boolean isAscii(final ByteBuffer bytes) {
+        return skipAscii(bytes, bytes.position()) == bytes.limit();
+    }
+
+    /**
+     * Checks if the bytes between the buffer's position and limit look like binary data: they have a zero byte, which
+     * text has only in UTF-16 and UTF-32, and neither a byte order mark nor the zero bytes give one of those.
+     *
+     * @param bytes examined bytes
+     * @return <code>true</code> if the bytes look binary
+     */
+    public static boolean isBinary(final ByteBuffer bytes) {
+        if (fromByteOrderMark(bytes) != null || fromZeroBytes(bytes) != null) {
+            return false;
+        }
+        for (int i = bytes.position(), end = bytes.limit(); i < end; i++) {
+            if (bytes.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first byte from the given index on that isn't ASCII. Bytes are tested eight at a time, by masking
+     * whole longs, in a loop that the JIT unrolls and vectorizes.
+     *
+     * @return index of the first byte that isn't ASCII, or the limit
+     */
+    private static int skipAscii(final ByteBuffer bytes, int index) {
+        final int limit = bytes.limit();
+        while (index + Long.BYTES <= limit && (bytes.getLong(index) & HIGH_BITS) == 0) {
+            index += Long.BYTES;
+        }
+        while (index < limit && bytes.get(index) >= 0) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return charset given by a byte order mark at the start of the bytes, <code>null</code> if there is none
+     */
+    private static Charset fromByteOrderMark(final ByteBuffer bytes) {
+        final int start = bytes.position();
+        final int length = bytes.remaining();
+        final int b0 = length > 0 ? bytes.get(start) & 0xFF : -1;
+        final int b1 = length > 1 ? bytes.get(start + 1) & 0xFF : -1;
+        final int b2 = length > 2 ? bytes.get(start + 2) & 0xFF : -1;
+        final int b3 = length > 3 ? bytes.get(start + 3) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return StandardCharsets.UTF_8;
+        } else if (b0 == 0xFF && b1 == 0xFE && b2 == 0 && b3 == 0 && Charset.isSupported("X-UTF-32LE-BOM")) {
+            return Charset.forName("X-UTF-32LE-BOM");
+        } else if (b0 == 0 && b1 == 0 && b2 == 0xFE && b3 == 0xFF && Charset.isSupported("X-UTF-32BE-BOM")) {
+            return Charset.forName("X-UTF-32BE-BOM");
+        } else if (b0 == 0xFF && b1 == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        } else if (b0 == 0xFE && b1 == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        return null;
+    }
+
+    /**
+     * Recognizes UTF-16 without a byte order mark by the zero high bytes of ASCII characters, which are in every other
+     * position. Most text in any language has enough spaces, digits and punctuation for this.
+     *
+     * @return UTF-16 of the matching byte order, <code>null</code> if the zero bytes don't look like it
+     */
+    private static Charset fromZeroBytes(final ByteBuffer bytes) {
+        final int pairs = bytes.remaining() / 2;
+        if (pairs < 2) {
+            return null;
+        }
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = bytes.position(), end = i + 2 * pairs; i < end; i += 2) {
+            if (bytes.get(i) == 0) {
+                evenZeros++;
+            }
+            if (bytes.get(i + 1) == 0) {
+                oddZeros++;
+            }
+        }
+        if (oddZeros * 10 > pairs * 3 && evenZeros * 20 < pairs) {
+            return StandardCharsets.UTF_16LE;
+        } else if (evenZeros * 10 > pairs * 3 && oddZeros * 20 < pairs) {
+            return StandardCharsets.UTF_16BE;
+        }
+        return null;
+    }
+
+    /**
+     * Validates UTF-8, rejecting overlong forms, surrogates and code points above U+10FFFF like the decoder does. Runs
+     * of ASCII are skipped with {@link #skipAscii(ByteBuffer, int)}.
+     *
+     * @param whole <code>false</code> if a sequence cut off at the end is allowed
+     * @return <code>true</code> if the bytes are valid UTF-8
+     */
+    private static boolean isUtf8(final ByteBuffer bytes, final boolean whole) {
+        final int limit = bytes.limit();
+        int i = bytes.position();
+        while ((i = skipAscii(bytes, i)) < limit) {
+            final int lead = bytes.get(i) & 0xFF;
+            final int length;
+            int min = 0x80;
+            int max = 0xBF;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                length = 2;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                length = 3;
+                min = lead == 0xE0 ? 0xA0 : 0x80; // overlong
+                max = lead == 0xED ? 0x9F : 0xBF; // surrogates
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                length = 4;
+                min = lead == 0xF0 ? 0x90 : 0x80; // overlong
+                max = lead == 0xF4 ? 0x8F : 0xBF; // above U+10FFFF
+            } else {
+                return false;
+            }
+            for (int j = 1; j < length; j++) {
+                if (i + j == limit) {
+                    return !whole;
+                }
+                final int next = bytes.get(i + j) & 0xFF;
+                if (next < (j == 1 ? min : 0x80) || next > (j == 1 ? max : 0xBF)) {
+                    return false;
+                }
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * Scores every single byte candidate by what the bytes above 127 decode into. Letters score, more so next to other
+     * letters, while symbols inside words and control or unmapped characters count against the charset.
+     *
+     * @return candidate with the best score, the earliest one of equal candidates
+     */
+    private static Charset mostLikelySingleByte(final ByteBuffer bytes) {
+        final int start = bytes.position();
+        final int limit = bytes.limit();
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int c = 0; c < CANDIDATES.size(); c++) {
+            final char[] table = TABLES.get(c);
+            long score = 0;
+            for (int i = skipAscii(bytes, start); i < limit; i = skipAscii(bytes, i + 1)) {
+                final char ch = table[(bytes.get(i) & 0xFF) - 0x80];
+                if (ch == UNMAPPED || Character.isISOControl(ch)) {
+                    score -= 4;
+                    continue;
+                }
+                final boolean inWord = i > start && isLetter(bytes.get(i - 1), table)
+                        || i + 1 < limit && isLetter(bytes.get(i + 1), table);
+                if (Character.isLetter(ch)) {
+                    score += inWord ? 2 : 1;
+                } else if (inWord) {
+                    score -= 2;
+                }
+            }
+            if (score > bestScore) {
+                best = c;
+                bestScore = score;
+            }
+        }
+        return CANDIDATES.get(best);
+    }
+
+    private static boolean isLetter(final byte b, final char[] table) {
+        if (b >= 0) {
+            return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z';
+        }
+        return Character.isLetter(table[(b & 0xFF) - 0x80]);
+    }
+
+    /**
+     * Decodes bytes 128 - 255 of a single byte charset one by one.
+     */
+    private static char[] highHalf(final Charset charset) {
+        final CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        final char[] table = new char[128];
+        final ByteBuffer in = ByteBuffer.allocate(1);
+        for (int b = 0x80; b <= 0xFF; b++) {
+            in.clear();
+            in.put(0, (byte) b);
+            try {
+                final CharBuffer out = decoder.reset().decode(in);
+                table[b - 0x80] = out.length() == 1 ? out.get(0) : UNMAPPED;
+            } catch (CharacterCodingException e) {
+                table[b - 0x80] = UNMAPPED;
+            }
+        }
+        return table;
+    }
+
+}
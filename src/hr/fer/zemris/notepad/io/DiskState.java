@@ -0,0 +1,139 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * What a file on disk contains: the text it was last loaded from or saved with, and the attributes it had at that
+ * moment. The attributes are used to notice that the file was changed by someone else since.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class DiskState {
+
+    private final Path path;
+    private final TextSnapshot snapshot;
+    private final Charset charset;
+    /** <code>true</code> if the file contains exactly the encoded snapshot */
+    private final boolean exact;
+    private final long size;
+    private final FileTime modified;
+    private final Object fileKey;
+    /** Byte offsets of the characters of the snapshot's buffers, found while saving */
+    private final ByteOffsets offsets;
+
+    private DiskState(final Path path, final TextSnapshot snapshot, final Charset charset, final boolean exact,
+            final BasicFileAttributes attributes, final ByteOffsets offsets) {
+        this.path = path;
+        this.snapshot = snapshot;
+        this.charset = charset;
+        this.exact = exact;
+        this.offsets = offsets;
+        size = attributes.size();
+        modified = attributes.lastModifiedTime();
+        fileKey = attributes.fileKey();
+    }
+
+    /**
+     * Creates the state of the given file, reading its current attributes.
+     *
+     * @param path file
+     * @param snapshot text in the file
+     * @param charset charset of the file
+     * @param exact <code>true</code> if the file contains exactly the encoded snapshot, <code>false</code> if the
+     *            snapshot was decoded from malformed input
+     * @return state of the file
+     * @throws IOException if the attributes can't be read
+     */
+    public static DiskState of(final Path path, final TextSnapshot snapshot, final Charset charset,
+            final boolean exact) throws IOException {
+        return of(path, snapshot, charset, exact, null);
+    }
+
+    /**
+     * Creates the state of a file that was just saved, keeping the byte offsets found by the previous saves.
+     *
+     * @param path file
+     * @param snapshot text in the file
+     * @param charset charset of the file
+     * @param exact <code>true</code> if the file contains exactly the encoded snapshot
+     * @param previous state of the file before the save, <code>null</code> if unknown
+     * @return state of the file
+     * @throws IOException if the attributes can't be read
+     */
+    static DiskState of(final Path path, final TextSnapshot snapshot, final Charset charset, final boolean exact,
+            final DiskState previous) throws IOException {
+        final Path absolute = path.toAbsolutePath();
+        final ByteOffsets offsets = previous != null && previous.offsets.getCharset().equals(charset)
+                ? previous.offsets : new ByteOffsets(charset);
+        return new DiskState(absolute, snapshot, charset, exact, Files.readAttributes(absolute,
+                BasicFileAttributes.class), offsets);
+    }
+
+    /**
+     * @return text in the file
+     */
+    public TextSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return size of the file in bytes when the state was taken
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return byte offsets of the characters of the snapshot's buffers, used only by the saver thread
+     */
+    ByteOffsets getByteOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return <code>true</code> if the file contains exactly the encoded snapshot
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return key of the file when the state was taken, may be <code>null</code>
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * Checks if the given file, saved in the given charset, still contains exactly the encoded snapshot of this state.
+     *
+     * @param file file to check
+     * @param charset charset the file will be saved in
+     * @return <code>true</code> if the file wasn't changed since the state was taken
+     * @throws IOException if the attributes of the file can't be read
+     */
+    public boolean matches(final Path file, final Charset charset) throws IOException {
+        if (!exact || !this.charset.equals(charset) || !path.equals(file.toAbsolutePath())) {
+            return false;
+        }
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return attributes.size() == size && attributes.lastModifiedTime().equals(modified) && Objects.equals(
+                attributes.fileKey(), fileKey);
+    }
+
+}
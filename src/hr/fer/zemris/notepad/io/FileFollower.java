@@ -0,0 +1,252 @@
+package hr.fer.zemris.notepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Follows a file that grows, like a log. The file is checked every {@value #INTERVAL_MILLIS} milliseconds on a
+ * background thread, and only the bytes appended since the last check are read, with positional reads from where the
+ * last read stopped. Bytes are decoded as they arrive, a character split between two reads is decoded when its last
+ * byte arrives.
+ * <p>
+ * Text that was read is handed to the listener on the EDT. Reads that happen while the EDT is busy are gathered and
+ * handed over together, so a file that grows faster than the text can be shown never queues more than one delivery.
+ * If the file gets shorter, or another file takes its place, it is read again from its start.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class FileFollower {
+
+    /** Milliseconds between two checks of the file */
+    private static final long INTERVAL_MILLIS = 200;
+    /** Bytes read at once */
+    private static final int READ_SIZE = 1 << 16;
+
+    /** Thread that checks all followed files */
+    private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+        final Thread thread = new Thread(r, "file-follower");
+        thread.setDaemon(true);
+        return thread;
+    });
+    static {
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Receives the text of a followed file, on the EDT.
+     *
+     * @author Filip Hrenić
+     * @version 1.0
+     */
+    public interface Listener {
+
+        /**
+         * The file got shorter or was replaced, the text that follows is read from its start.
+         */
+        void restarted();
+
+        /**
+         * Text was appended to the file.
+         *
+         * @param text array with the text, which the listener may keep
+         * @param length number of characters of the text
+         */
+        void appended(char[] text, int length);
+
+    }
+
+    private final Path path;
+    private final Listener listener;
+    /** Characters that are kept at most while they wait for the EDT, 0 for no limit */
+    private final int limit;
+    private final TextDecoder decoder;
+    /** Read bytes, the bytes of a split character stay at its start until the rest is read */
+    private final ByteBuffer bytes = ByteBuffer.allocate(READ_SIZE);
+    private final CharBuffer chars;
+    /** Open file, <code>null</code> until it is opened */
+    private FileChannel channel;
+    /** Key of the open file */
+    private Object fileKey;
+    /** Position in the file where the next read starts */
+    private long position;
+    /** Text that waits for the EDT, guarded by this follower */
+    private StringBuilder pending = new StringBuilder();
+    /** <code>true</code> if the file was read from its start again, guarded by this follower */
+    private boolean restarted;
+    /** <code>true</code> while a delivery is queued on the EDT */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /** Periodic check of the file */
+    private final ScheduledFuture<?> task;
+    private volatile boolean stopped;
+
+    private FileFollower(final Path path, final Charset charset, final long position, final int limit,
+            final Listener listener) {
+        this.path = path;
+        this.position = position;
+        this.limit = limit;
+        this.listener = listener;
+        decoder = new TextDecoder(charset);
+        chars = CharBuffer.allocate((int) Math.ceil(READ_SIZE * (double) decoder.maxCharsPerByte()));
+        task = EXECUTOR.scheduleWithFixedDelay(this::check, 0, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts following a file.
+     *
+     * @param path followed file
+     * @param charset charset of the file
+     * @param position position of the first byte that is read, where a character starts
+     * @param limit characters that are kept at most while they wait for the EDT, the first ones are dropped when
+     *            there are more, 0 for no limit
+     * @param listener receives the text on the EDT
+     * @return the follower
+     */
+    public static FileFollower start(final Path path, final Charset charset, final long position, final int limit,
+            final Listener listener) {
+        return new FileFollower(path, charset, position, limit, listener);
+    }
+
+    /**
+     * Stops following the file, the listener isn't informed any more.
+     */
+    public void stop() {
+        stopped = true;
+        task.cancel(false);
+        EXECUTOR.execute(this::close);
+    }
+
+    /**
+     * Reads what was appended to the file since the last check. A file that can't be read is tried again at the
+     * next check, it may be in the middle of being rotated.
+     */
+    private void check() {
+        if (stopped) {
+            return;
+        }
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (channel == null || !Objects.equals(attributes.fileKey(), fileKey)) {
+                close();
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                if (fileKey != null && !Objects.equals(attributes.fileKey(), fileKey)) {
+                    restart(); // another file took its place, the same file is read on from where it stopped
+                }
+                fileKey = attributes.fileKey();
+            }
+            final long size = channel.size();
+            if (size < position) {
+                restart();
+            }
+            while (position < size && !stopped) {
+                final int read = channel.read(bytes, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, false);
+                    chars.flip();
+                    publish(chars);
+                    chars.clear();
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Starts reading the file from its start again.
+     */
+    private void restart() {
+        position = 0;
+        bytes.clear();
+        decoder.reset(false);
+        synchronized (this) {
+            pending = new StringBuilder();
+            restarted = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Adds decoded text to the text that waits for the EDT.
+     */
+    private void publish(final CharBuffer text) {
+        if (!text.hasRemaining()) {
+            return;
+        }
+        synchronized (this) {
+            pending.append(text);
+            if (limit > 0 && pending.length() > limit) {
+                pending.delete(0, pending.length() - limit);
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Queues a delivery on the EDT, unless one is queued.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::deliver);
+        }
+    }
+
+    /**
+     * Hands all text that waits to the listener, on the EDT.
+     */
+    private void deliver() {
+        scheduled.set(false);
+        final boolean restart;
+        final char[] text;
+        synchronized (this) {
+            restart = restarted;
+            restarted = false;
+            text = new char[pending.length()];
+            pending.getChars(0, text.length, text, 0);
+            pending = new StringBuilder();
+        }
+        if (stopped) {
+            return;
+        }
+        if (restart) {
+            listener.restarted();
+        }
+        if (text.length > 0) {
+            listener.appended(text, text.length);
+        }
+    }
+
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing was written
+            }
+            channel = null;
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.CharArrayBuffer;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.TextBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import javax.swing.SwingWorker;
+
+/**
+ * Loads a file into a {@link PieceDocument} on a background thread. The file is decoded chunk by chunk and every
+ * decoded chunk is appended to the document on the Event Dispatch Thread, so the document fills up while the file is
+ * still being read. Progress (0 - 100) is reported through the <code>progress</code> property.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class FileLoader extends SwingWorker<TextBuffer, Integer> {
+
+    /** Size of the buffers used while decoding a file onto the heap */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /** Number of characters decoded between two appends to the document */
+    private static final int BATCH_SIZE = 1024 * 1024;
+
+    private final Path path;
+    /** Charset of the file, detected when loading starts if it wasn't given */
+    private volatile Charset charset;
+    private final PieceDocument document;
+    private final Consumer<Throwable> completion;
+
+    /** Buffer that is being filled, set before anything is published */
+    private volatile TextBuffer buffer;
+    /** Number of characters already appended to the document, used only on the EDT */
+    private int appended;
+    /** <code>false</code> if the file contained malformed input */
+    private volatile boolean exact = true;
+
+    /**
+     * Creates a new loader. It has to be started with {@link #execute()}.
+     *
+     * @param path file to load
+     * @param charset charset of the file, <code>null</code> if it should be detected with {@link CharsetDetector}
+     * @param document empty document that will receive the text
+     * @param completion invoked on the EDT when loading ends, with <code>null</code> if the file was loaded,
+     *            {@link CancellationException} if loading was cancelled or the exception that stopped it
+     */
+    public FileLoader(final Path path, final Charset charset, final PieceDocument document,
+            final Consumer<Throwable> completion) {
+        this.path = path;
+        this.charset = charset;
+        this.document = document;
+        this.completion = completion;
+    }
+
+    @Override
+    protected TextBuffer doInBackground() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (charset == null) {
+                charset = CharsetDetector.detect(channel);
+            }
+            if (channel.size() > TextFiles.LARGE_FILE_THRESHOLD && TextFiles.isMappable(charset)) {
+                return map();
+            }
+            return decode(channel);
+        }
+    }
+
+    /**
+     * Maps the file and indexes it block by block, publishing indexed characters as it goes.
+     */
+    private TextBuffer map() throws IOException {
+        final MappedTextBuffer mapped = new MappedTextBuffer(path, charset);
+        buffer = mapped;
+        int published = 0;
+        boolean more = true;
+        while (more && !isCancelled()) {
+            more = mapped.indexNextBlock();
+            exact = mapped.isExact();
+            if (mapped.length() - published >= BATCH_SIZE || !more) {
+                published = mapped.length();
+                publish(published);
+                setProgress(percent(mapped.indexedBytes(), mapped.byteLength()));
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Decodes the file onto the heap through small reused buffers, publishing decoded characters as it goes.
+     */
+    private TextBuffer decode(final FileChannel channel) throws IOException {
+        final TextDecoder decoder = new TextDecoder(charset);
+        final long size = channel.size();
+        final long capacity = (long) Math.ceil(size * (double) decoder.maxCharsPerByte()) + 1;
+        if (capacity >= Integer.MAX_VALUE - 8) {
+            throw new IOException("File is too large: " + path);
+        }
+        final CharArrayBuffer chars = new CharArrayBuffer((int) capacity);
+        buffer = chars;
+
+        final ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+        final CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+        long read = 0;
+        int published = 0;
+        boolean eof = false;
+        while (!eof && !isCancelled()) {
+            final int n = channel.read(in);
+            eof = n == -1;
+            read += Math.max(n, 0);
+            in.flip();
+            while (decoder.decode(in, out, eof).isOverflow()) {
+                drain(out, chars);
+            }
+            while (eof && decoder.flush(out).isOverflow()) {
+                drain(out, chars);
+            }
+            in.compact();
+            drain(out, chars);
+            exact = decoder.isExact();
+
+            if (chars.length() - published >= BATCH_SIZE || eof) {
+                published = chars.length();
+                publish(published);
+                setProgress(percent(read, size));
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Moves decoded characters from the scratch buffer to the original buffer.
+     */
+    private void drain(final CharBuffer out, final CharArrayBuffer chars) throws IOException {
+        if (out.position() > chars.remaining()) {
+            throw new IOException("File changed while reading: " + path);
+        }
+        chars.append(out.array(), 0, out.position());
+        out.clear();
+    }
+
+    /**
+     * Checks if the loaded text encodes back into exactly the bytes of the file. Text with malformed input replaced
+     * doesn't, so such a file can't be patched in place when it is saved.
+     *
+     * @return <code>true</code> if no input was replaced while decoding
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return charset the file is decoded with, <code>null</code> if it wasn't detected yet
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    protected void process(final List<Integer> chunks) {
+        if (isCancelled()) {
+            return;
+        }
+        appendUpTo(chunks.get(chunks.size() - 1));
+    }
+
+    @Override
+    protected void done() {
+        Throwable error = null;
+        try {
+            appendUpTo(get().length());
+        } catch (CancellationException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            error = new CancellationException();
+        } catch (ExecutionException e) {
+            error = e.getCause();
+        }
+        completion.accept(error);
+    }
+
+    /**
+     * Appends published characters that are not in the document yet. Chunks can arrive after {@link #done()}, so
+     * they are ignored if they are already appended.
+     */
+    private void appendUpTo(final int length) {
+        if (length > appended) {
+            document.append(buffer, appended, length - appended);
+            appended = length;
+        }
+    }
+
+    private static int percent(final long done, final long total) {
+        return total == 0 ? 100 : (int) (done * 100 / total);
+    }
+
+}
@@ -0,0 +1,155 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Saves documents on a background thread. How a snapshot is written is decided by a {@link SaveStrategy}, by default
+ * it is encoded chunk by chunk into a temporary file next to the target, the temporary file is forced to disk and then
+ * atomically moved over the target, so a crash in the middle of a save never leaves a half-written file behind. Saves
+ * are done one at a time, in the order they were requested.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class FileSaver {
+
+    /** Thread that does all saves, it stops when there is nothing to save */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "file-saver"));
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** Encoder reused by all saves, used only on the saver thread */
+    static final SnapshotEncoder ENCODER = new SnapshotEncoder();
+
+    private FileSaver() {
+    }
+
+    /**
+     * Saves the given snapshot into the given file on the background thread, writing the whole file atomically.
+     *
+     * @param snapshot text to save
+     * @param target file to save into
+     * @param charset charset of the file
+     * @param completion invoked on the EDT when saving ends, with <code>null</code> if the text was saved or with the
+     *            exception that stopped it
+     */
+    public static void save(final TextSnapshot snapshot, final Path target, final Charset charset,
+            final Consumer<IOException> completion) {
+        save(snapshot, target, charset, SaveStrategy.ATOMIC, new AtomicReference<>(), completion);
+    }
+
+    /**
+     * Saves the given snapshot into the given file on the background thread, using the given strategy. The state of
+     * the file is read and updated on the saver thread, so every save sees what the saves before it wrote.
+     *
+     * @param snapshot text to save
+     * @param target file to save into
+     * @param charset charset of the file
+     * @param strategy how the file is written
+     * @param state what the file contains, set to <code>null</code> if saving fails
+     * @param completion invoked on the EDT when saving ends, with <code>null</code> if the text was saved or with the
+     *            exception that stopped it
+     */
+    public static void save(final TextSnapshot snapshot, final Path target, final Charset charset,
+            final SaveStrategy strategy, final AtomicReference<DiskState> state,
+            final Consumer<IOException> completion) {
+        EXECUTOR.execute(() -> {
+            IOException error = null;
+            try {
+                state.set(strategy.save(snapshot, target, charset, state.get()));
+            } catch (IOException e) {
+                state.set(null); // the file may be partly written
+                error = e;
+            }
+            final IOException result = error;
+            SwingUtilities.invokeLater(() -> completion.accept(result));
+        });
+    }
+
+    /**
+     * Writes the snapshot into a temporary file and moves it over the target.
+     */
+    static void writeAtomically(final TextSnapshot snapshot, final Path target, final Charset charset)
+            throws IOException {
+        final Path temp = createTempFile(target);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ENCODER.write(snapshot, 0, snapshot.length(), charset, channel, 0);
+                channel.force(true);
+            }
+            moveOver(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to the target, with the permissions of the target if it exists.
+     *
+     * @param target file that the temporary file will replace
+     * @return the temporary file
+     * @throws IOException if the file can't be created
+     */
+    public static Path createTempFile(final Path target) throws IOException {
+        final Path absolute = target.toAbsolutePath();
+        final Path temp = Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(), ".tmp");
+        try {
+            copyPermissions(absolute, temp);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    /**
+     * Moves a written temporary file over the target, atomically if the file system can.
+     *
+     * @param temp temporary file created by {@link #createTempFile(Path)}
+     * @param target replaced file
+     * @throws IOException if the file can't be moved
+     */
+    public static void moveOver(final Path temp, final Path target) throws IOException {
+        final Path absolute = target.toAbsolutePath();
+        try {
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Temporary files are created readable only by the owner, so they get the permissions of the file they replace.
+     */
+    private static void copyPermissions(final Path from, final Path to) throws IOException {
+        if (!Files.exists(from)) {
+            return;
+        }
+        final PosixFileAttributeView source = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+        final PosixFileAttributeView target = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        if (source != null && target != null) {
+            target.setPermissions(source.readAttributes().permissions());
+        }
+    }
+
+}
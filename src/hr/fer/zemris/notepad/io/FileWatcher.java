@@ -0,0 +1,211 @@
+package hr.fer.zemris.notepad.io;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Notices when watched files are changed by someone else. All files are watched by a single {@link WatchService} on
+ * one background thread, which registers the directory of every watched file once, however many of its files are
+ * watched. Editors usually write a file in several steps, so a file is reported only when it wasn't touched for
+ * {@value #QUIET_MILLIS} milliseconds.
+ * <p>
+ * Changes are reported on the EDT. Saves of this program are reported too, whoever is informed has to check whether
+ * the file differs from what it knows about.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class FileWatcher {
+
+    /** Milliseconds without events after which a changed file is reported */
+    private static final long QUIET_MILLIS = 300;
+
+    /** Watched directories, by their paths */
+    private static final Map<Path, Directory> DIRECTORIES = new HashMap<>();
+    /** Watch service of all directories, <code>null</code> until the first file is watched */
+    private static WatchService service;
+
+    private FileWatcher() {
+    }
+
+    /**
+     * Starts watching a file.
+     *
+     * @param file watched file
+     * @param onChange invoked on the EDT when the file was changed or created
+     * @return registration that stops watching when cancelled
+     */
+    public static Registration watch(final Path file, final Runnable onChange) {
+        final Path absolute = file.toAbsolutePath().normalize();
+        final Registration registration = new Registration(absolute, onChange);
+        final Path parent = absolute.getParent();
+        if (parent == null) {
+            return registration;
+        }
+        synchronized (DIRECTORIES) {
+            Directory directory = DIRECTORIES.get(parent);
+            if (directory == null) {
+                try {
+                    directory = new Directory(parent.register(service(), StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY));
+                } catch (IOException e) {
+                    return registration; // not every file system can be watched
+                }
+                DIRECTORIES.put(parent, directory);
+            }
+            directory.registrations.add(registration);
+        }
+        return registration;
+    }
+
+    /**
+     * Returns the watch service, creating it and starting its thread the first time.
+     */
+    private static WatchService service() throws IOException {
+        if (service == null) {
+            service = FileSystems.getDefault().newWatchService();
+            final Thread thread = new Thread(FileWatcher::run, "file-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return service;
+    }
+
+    /**
+     * Takes events from the watch service and reports files that were quiet long enough.
+     */
+    private static void run() {
+        final Map<Registration, Long> deadlines = new HashMap<>();
+        try {
+            while (true) {
+                final long now = System.nanoTime();
+                long wait = Long.MAX_VALUE;
+                for (final Iterator<Map.Entry<Registration, Long>> it = deadlines.entrySet().iterator(); it
+                        .hasNext();) {
+                    final Map.Entry<Registration, Long> entry = it.next();
+                    if (entry.getValue() - now <= 0) {
+                        it.remove();
+                        entry.getKey().fire();
+                    } else {
+                        wait = Math.min(wait, entry.getValue() - now);
+                    }
+                }
+                final WatchKey key = wait == Long.MAX_VALUE ? service.take() : service.poll(wait,
+                        TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    collect(key, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS), deadlines);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the program is exiting
+        }
+    }
+
+    /**
+     * Sets the deadline of every file of the key's directory that an event of the key touched. If events were lost,
+     * all files of the directory are touched.
+     */
+    private static void collect(final WatchKey key, final long deadline, final Map<Registration, Long> deadlines) {
+        final Path parent = (Path) key.watchable();
+        final List<WatchEvent<?>> events = key.pollEvents();
+        key.reset();
+        synchronized (DIRECTORIES) {
+            final Directory directory = DIRECTORIES.get(parent);
+            if (directory == null) {
+                return;
+            }
+            for (final WatchEvent<?> event : events) {
+                final boolean overflow = event.kind() == StandardWatchEventKinds.OVERFLOW;
+                final Path file = overflow ? null : parent.resolve((Path) event.context());
+                for (final Registration registration : directory.registrations) {
+                    if (overflow || registration.file.equals(file)) {
+                        deadlines.put(registration, deadline);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A directory whose files are watched.
+     */
+    private static final class Directory {
+
+        /** Key of the directory in the watch service */
+        private final WatchKey key;
+        /** Watched files of the directory */
+        private final List<Registration> registrations = new ArrayList<>();
+
+        private Directory(final WatchKey key) {
+            this.key = key;
+        }
+
+    }
+
+    /**
+     * A watched file.
+     *
+     * @author Filip Hrenić
+     * @version 1.0
+     */
+    public static final class Registration {
+
+        /** Absolute path of the file */
+        private final Path file;
+        /** Invoked on the EDT when the file changes */
+        private final Runnable onChange;
+        /** <code>true</code> once the file isn't watched anymore */
+        private volatile boolean cancelled;
+
+        private Registration(final Path file, final Runnable onChange) {
+            this.file = file;
+            this.onChange = onChange;
+        }
+
+        /**
+         * Stops watching the file. Its directory isn't watched anymore once none of its files are.
+         */
+        public void cancel() {
+            cancelled = true;
+            final Path parent = file.getParent();
+            if (parent == null) {
+                return;
+            }
+            synchronized (DIRECTORIES) {
+                final Directory directory = DIRECTORIES.get(parent);
+                if (directory != null && directory.registrations.remove(this) && directory.registrations
+                        .isEmpty()) {
+                    directory.key.cancel();
+                    DIRECTORIES.remove(parent);
+                }
+            }
+        }
+
+        /**
+         * Reports a change on the EDT, unless the file isn't watched anymore.
+         */
+        private void fire() {
+            SwingUtilities.invokeLater(() -> {
+                if (!cancelled) {
+                    onChange.run();
+                }
+            });
+        }
+
+    }
+
+}
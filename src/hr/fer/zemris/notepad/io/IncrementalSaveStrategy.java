@@ -0,0 +1,148 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rewrites only the part of the file that changed since it was last loaded or saved. Changed ranges are found by
+ * comparing the pieces of the snapshot with the pieces of the text on disk, so finding them doesn't depend on the
+ * size of the file. The byte offsets of the ranges are measured with the {@link ByteOffsets} of the previous state, so
+ * the text before a range is encoded again only near the range.
+ * <p>
+ * If every changed range encodes into as many bytes as it replaces, the ranges are patched in place with positional
+ * writes. Otherwise the file is rewritten from the first changed byte onward and truncated. The file is saved with
+ * {@link SaveStrategy#ATOMIC} instead when:
+ * <ul>
+ * <li>the file isn't known to contain exactly the text it was loaded from, because it was changed by someone else or
+ * it contained malformed input,</li>
+ * <li>the charset is not UTF-8 or a single byte charset, whose ranges encode independently of each other,</li>
+ * <li>the tail would have to be rewritten while the file is mapped, because the mapped text would change under the
+ * document that reads it.</li>
+ * </ul>
+ * Writing in place is not atomic, a crash in the middle of a save can leave the file partly written.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class IncrementalSaveStrategy implements SaveStrategy {
+
+    @Override
+    public DiskState save(final TextSnapshot snapshot, final Path target, final Charset charset,
+            final DiskState previous) throws IOException {
+        if (previous == null || !TextFiles.isMappable(charset) || !previous.matches(target, charset)) {
+            return ATOMIC.save(snapshot, target, charset, previous);
+        }
+
+        final TextSnapshot baseline = previous.getSnapshot();
+        final int[] ranges = widen(snapshot.differences(baseline), snapshot, baseline);
+        if (ranges.length > 0) {
+            final List<MappedTextBuffer> mapped = MappedTextBuffer.mapping(target, previous.getFileKey());
+            final ByteOffsets offsets = previous.getByteOffsets();
+            if (snapshot.length() != baseline.length() || !patch(snapshot, baseline, ranges, target, charset,
+                    mapped, offsets)) {
+                if (!mapped.isEmpty()) {
+                    return ATOMIC.save(snapshot, target, charset, previous);
+                }
+                rewriteTail(snapshot, baseline, ranges[0], target, charset, offsets);
+            }
+        }
+        return DiskState.of(target, snapshot, charset, true, previous);
+    }
+
+    /**
+     * Overwrites the changed ranges in place if each of them encodes into as many bytes as before.
+     *
+     * @return <code>false</code> if some range changed its encoded length, nothing is written then
+     */
+    private static boolean patch(final TextSnapshot snapshot, final TextSnapshot baseline, final int[] ranges,
+            final Path target, final Charset charset, final List<MappedTextBuffer> mapped, final ByteOffsets offsets)
+            throws IOException {
+        final SnapshotEncoder encoder = FileSaver.ENCODER;
+        final long[] positions = new long[ranges.length / 2];
+        final long[] lengths = new long[ranges.length / 2];
+        long position = 0;
+        int end = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            position += encoder.measure(baseline, end, ranges[i], charset, offsets);
+            final long bytes = encoder.measure(baseline, ranges[i], ranges[i + 1], charset, offsets);
+            if (bytes != encoder.measure(snapshot, ranges[i], ranges[i + 1], charset, offsets)) {
+                return false;
+            }
+            positions[i / 2] = position;
+            lengths[i / 2] = bytes;
+            position += bytes;
+            end = ranges[i + 1];
+        }
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                final long start = positions[i / 2];
+                for (final MappedTextBuffer buffer : mapped) {
+                    buffer.preserve(start, start + lengths[i / 2]);
+                }
+                encoder.write(snapshot, ranges[i], ranges[i + 1], charset, channel, start);
+            }
+            channel.force(true);
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the file from the given character onward and cuts off whatever is left of the old text.
+     */
+    private static void rewriteTail(final TextSnapshot snapshot, final TextSnapshot baseline, final int from,
+            final Path target, final Charset charset, final ByteOffsets offsets) throws IOException {
+        final SnapshotEncoder encoder = FileSaver.ENCODER;
+        final long start = encoder.measure(baseline, 0, from, charset, offsets);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            final long end = start + encoder.write(snapshot, from, snapshot.length(), charset, channel, start);
+            channel.truncate(end);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Moves bounds of the ranges so that none of them splits a surrogate pair in either text, a half of a pair would
+     * be encoded on its own otherwise. Ranges that end up touching are joined.
+     */
+    private static int[] widen(final int[] ranges, final TextSnapshot a, final TextSnapshot b) {
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int start = ranges[i];
+            int end = ranges[i + 1];
+            if (splitsPair(a, start) || splitsPair(b, start)) {
+                start--;
+            }
+            if (splitsPair(a, end) || splitsPair(b, end)) {
+                end++;
+            }
+            if (count > 0 && ranges[count - 1] >= start) {
+                ranges[count - 1] = end;
+            } else {
+                ranges[count++] = start;
+                ranges[count++] = end;
+            }
+        }
+        return count == ranges.length ? ranges : Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Checks if the given offset is between two halves of a surrogate pair.
+     */
+    private static boolean splitsPair(final TextSnapshot text, final int offset) {
+        if (offset <= 0 || offset >= text.length()) {
+            return false;
+        }
+        final char[] chars = new char[2];
+        text.copyChars(offset - 1, 2, chars, 0);
+        return Character.isHighSurrogate(chars[0]) && Character.isLowSurrogate(chars[1]);
+    }
+
+}
@@ -0,0 +1,125 @@
+package hr.fer.zemris.notepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bytes of a memory-mapped file, read only. The file is mapped in parts of {@value #MAP_STEP} bytes, which is instant
+ * whatever the size of the file, and its bytes are read from the mappings only when they are asked for, so they don't
+ * take up any heap. The operating system pages the file in as it is read.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class MappedBytes {
+
+    /** Bytes in one mapping */
+    private static final long MAP_STEP = 1L << 30;
+    /** Bytes scanned at once by a search */
+    private static final int PAGE_SIZE = 1 << 20;
+
+    private final long size;
+    private final MappedByteBuffer[] maps;
+
+    private MappedBytes(final long size, final MappedByteBuffer[] maps) {
+        this.size = size;
+        this.maps = maps;
+    }
+
+    /**
+     * Maps a file.
+     *
+     * @param path mapped file
+     * @return bytes of the file
+     * @throws IOException if the file can't be mapped
+     */
+    public static MappedBytes map(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final MappedByteBuffer[] maps = new MappedByteBuffer[(int) ((size + MAP_STEP - 1) / MAP_STEP)];
+            for (int i = 0; i < maps.length; i++) {
+                final long position = i * MAP_STEP;
+                maps[i] = channel.map(MapMode.READ_ONLY, position, Math.min(size - position, MAP_STEP));
+            }
+            return new MappedBytes(size, maps);
+        }
+    }
+
+    /**
+     * @return number of bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Copies bytes into an array.
+     *
+     * @param position position of the first copied byte
+     * @param dst array the bytes are copied into
+     * @param offset index in the array of the first copied byte
+     * @param length number of bytes to copy
+     * @return number of copied bytes, less than <code>length</code> at the end of the file
+     */
+    public int get(final long position, final byte[] dst, final int offset, final int length) {
+        final int count = (int) Math.max(0, Math.min(length, size - position));
+        int copied = 0;
+        while (copied < count) {
+            final long at = position + copied;
+            final ByteBuffer map = maps[(int) (at / MAP_STEP)].duplicate();
+            map.position((int) (at % MAP_STEP));
+            final int n = Math.min(count - copied, map.remaining());
+            map.get(dst, offset + copied, n);
+            copied += n;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the first occurrence of a byte pattern that starts in <code>[from, to)</code>. The bytes are scanned a page
+     * at a time, with the Boyer-Moore-Horspool algorithm, so a search takes the same heap for any file.
+     *
+     * @param pattern searched bytes, not empty
+     * @param from first position where the pattern may start
+     * @param to position after the last position where the pattern may start
+     * @param cancelled checked after every page, the search stops if it returns <code>true</code>
+     * @return position of the pattern, -1 if it wasn't found
+     * @throws CancellationException if the search was cancelled
+     */
+    public long indexOf(final byte[] pattern, final long from, final long to, final BooleanSupplier cancelled) {
+        final int m = pattern.length;
+        final int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int k = 0; k < m - 1; k++) {
+            shift[pattern[k] & 0xFF] = m - 1 - k;
+        }
+        final byte[] page = new byte[PAGE_SIZE + m - 1];
+        final long end = Math.min(to, size - m + 1);
+        for (long start = Math.max(0, from); start < end; start += PAGE_SIZE) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            final int n = get(start, page, 0, (int) Math.min(page.length, end - start + m - 1));
+            for (int i = 0; i + m <= n;) {
+                int j = m - 1;
+                while (j >= 0 && page[i + j] == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return start + i;
+                }
+                i += shift[page[i + m - 1] & 0xFF];
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,476 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextBuffer;
+import hr.fer.zemris.notepad.document.TextHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.swing.text.Segment;
+
+/**
+ * {@link TextBuffer} over a memory-mapped file. The file is split into blocks of about {@value #BLOCK_SIZE} bytes and
+ * only the blocks that are currently read are decoded and kept in a small cache, so the heap used by this buffer does
+ * not depend on the size of the file.
+ * <p>
+ * For every block the buffer remembers its byte offset, the offset of its first character, the number of lines before
+ * it and the hash of all characters before it. This sparse index is built by {@link #indexNextBlock()}, one block at a
+ * time, and it is enough to find any character or line by decoding a single block.
+ * <p>
+ * A mapping shows every change made to the file, so before a part of the mapped file is overwritten in place, the
+ * blocks it touches have to be copied with {@link #preserve(long, long)}.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class MappedTextBuffer implements TextBuffer {
+
+    /** Approximate number of bytes in a block */
+    static final int BLOCK_SIZE = 64 * 1024;
+    /** Number of bytes between starts of two mappings */
+    private static final long MAP_STEP = 1L << 30;
+    /** Mappings overlap by this much so that every block fits into a single mapping */
+    private static final long MAP_OVERLAP = 2 * BLOCK_SIZE;
+    /** Maximum number of decoded blocks kept in memory */
+    private static final int CACHED_BLOCKS = 64;
+
+    /** Buffers that are still reachable, used to find the buffers that map a file that is about to be changed */
+    private static final Set<MappedTextBuffer> LIVE = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private final Path path;
+    private final Charset charset;
+    private final long byteLength;
+    /** Key of the mapped file, may be <code>null</code> */
+    private final Object fileKey;
+    private final MappedByteBuffer[] maps;
+
+    /** Byte offset of every indexed block, plus the end of the last one */
+    private long[] blockBytes = new long[16];
+    /** Offset of the first character of every indexed block, plus the end of the last one */
+    private int[] blockChars = new int[16];
+    /** Number of line breaks before every indexed block, plus the total */
+    private int[] blockLines = new int[16];
+    /** Hash of the characters before every indexed block, plus the hash of all of them */
+    private long[] blockHashes = new long[16];
+    /** Number of indexed blocks */
+    private volatile int blockCount;
+
+    /** Decoder used while indexing */
+    private final TextDecoder indexDecoder;
+    /** Scratch buffer used while indexing */
+    private final CharBuffer indexChars;
+    /** <code>false</code> if some indexed bytes were malformed */
+    private volatile boolean exact = true;
+
+    /** Decoder used to decode blocks that are read */
+    private final TextDecoder decoder;
+    /** Original bytes of blocks that were overwritten in the file, guarded by the cache */
+    private final Map<Integer, byte[]> preserved = new HashMap<>();
+    /** Recently decoded blocks */
+    private final Map<Integer, char[]> cache = new LinkedHashMap<Integer, char[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, char[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    /**
+     * Maps the given file. Nothing is decoded yet, {@link #indexNextBlock()} has to be called until it returns
+     * <code>false</code> to make the whole file available.
+     *
+     * @param path file to map
+     * @param charset charset of the file, must be UTF-8 or a single byte charset
+     * @throws IOException if the file can't be mapped
+     */
+    public MappedTextBuffer(final Path path, final Charset charset) throws IOException {
+        this.path = path;
+        this.charset = charset;
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byteLength = channel.size();
+            final int count = (int) Math.max(1, (byteLength + MAP_STEP - 1) / MAP_STEP);
+            maps = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long position = i * MAP_STEP;
+                maps[i] = channel.map(MapMode.READ_ONLY, position, Math.min(byteLength - position, MAP_STEP
+                        + MAP_OVERLAP));
+            }
+        }
+        indexDecoder = new TextDecoder(charset);
+        decoder = new TextDecoder(charset);
+        indexChars = CharBuffer.allocate((int) Math.ceil(BLOCK_SIZE * (double) indexDecoder.maxCharsPerByte()));
+        synchronized (LIVE) {
+            LIVE.add(this);
+        }
+    }
+
+    /**
+     * Returns buffers that map the same file as the given path.
+     *
+     * @param file path of a file
+     * @param key key of that file, see {@link BasicFileAttributes#fileKey()}, may be <code>null</code>
+     * @return buffers mapping that file
+     */
+    static List<MappedTextBuffer> mapping(final Path file, final Object key) {
+        final List<MappedTextBuffer> result = new ArrayList<>();
+        synchronized (LIVE) {
+            for (final MappedTextBuffer buffer : LIVE) {
+                if (key != null && key.equals(buffer.fileKey) || buffer.path.toAbsolutePath().equals(file
+                        .toAbsolutePath())) {
+                    result.add(buffer);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the mapped file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return charset that the file is decoded with
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return size of the mapped file in bytes
+     */
+    public long byteLength() {
+        return byteLength;
+    }
+
+    /**
+     * @return <code>true</code> if the indexed bytes decoded without replacing malformed input, so the decoded text
+     *         encodes back into the same bytes
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return number of bytes that are already indexed
+     */
+    public long indexedBytes() {
+        return blockBytes[blockCount];
+    }
+
+    /**
+     * Decodes the next block of the file to find out how many characters and lines it contains. The decoded
+     * characters are not kept.
+     *
+     * @return <code>true</code> if there are more blocks to index
+     * @throws IOException if the file contains more characters than a document can hold
+     */
+    public boolean indexNextBlock() throws IOException {
+        final int block = blockCount;
+        final long start = blockBytes[block];
+        if (start >= byteLength) {
+            return false;
+        }
+        final long end = blockEnd(start);
+
+        indexChars.clear();
+        decode(indexDecoder, block, start, end, indexChars);
+        if (!indexDecoder.isExact()) {
+            exact = false;
+        }
+        int lines = 0;
+        long hash = blockHashes[block];
+        final char[] chars = indexChars.array();
+        for (int i = 0, limit = indexChars.position(); i < limit; i++) {
+            if (chars[i] == '\n') {
+                lines++;
+            }
+            hash = TextHash.append(hash, chars[i]);
+        }
+
+        final long charEnd = (long) blockChars[block] + indexChars.position();
+        if (charEnd >= Integer.MAX_VALUE - 1) {
+            throw new IOException("File is too large: " + path);
+        }
+        if (block + 1 == blockBytes.length) {
+            final int capacity = blockBytes.length * 2;
+            blockBytes = Arrays.copyOf(blockBytes, capacity);
+            blockChars = Arrays.copyOf(blockChars, capacity);
+            blockLines = Arrays.copyOf(blockLines, capacity);
+            blockHashes = Arrays.copyOf(blockHashes, capacity);
+        }
+        blockBytes[block + 1] = end;
+        blockChars[block + 1] = (int) charEnd;
+        blockLines[block + 1] = blockLines[block] + lines;
+        blockHashes[block + 1] = hash;
+        blockCount = block + 1; // publishes the new block
+        return end < byteLength;
+    }
+
+    @Override
+    public int length() {
+        return blockChars[blockCount];
+    }
+
+    /**
+     * @return number of line breaks in the indexed part of the file
+     */
+    public int lineBreaks() {
+        return blockLines[blockCount];
+    }
+
+    /**
+     * Returns the offset of the first character of the given line, using the sparse index to decode only the block
+     * that contains the line.
+     *
+     * @param line index of the line, starting from 0
+     * @return offset of the first character of the line
+     */
+    public int lineStart(final int line) {
+        if (line <= 0) {
+            return 0;
+        }
+        final int count = blockCount;
+        if (line > blockLines[count]) {
+            throw new IndexOutOfBoundsException("Line: " + line);
+        }
+        // the block that contains the (line)th line break
+        final int block = upperBound(blockLines, count, line - 1) - 1;
+        final char[] chars = block(block);
+        int remaining = line - blockLines[block];
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == '\n' && --remaining == 0) {
+                return blockChars[block] + i + 1;
+            }
+        }
+        throw new IllegalStateException("Line index is corrupted.");
+    }
+
+    /**
+     * Returns the byte offset in the file of the character at the given offset.
+     *
+     * @param offset offset of a character
+     * @return byte offset of that character
+     */
+    public long byteOffset(final int offset) {
+        final int count = blockCount;
+        if (offset == blockChars[count]) {
+            return blockBytes[count];
+        }
+        final int block = blockOf(offset);
+        final char[] chars = block(block);
+        final int n = offset - blockChars[block];
+        return blockBytes[block] + charset.encode(CharBuffer.wrap(chars, 0, n)).remaining();
+    }
+
+    /**
+     * Copies the blocks that contain bytes <code>[start, end)</code> of the file, so that they can still be read after
+     * those bytes are overwritten. Blocks that were already copied keep their first copy.
+     *
+     * @param start first byte that will be overwritten
+     * @param end byte after the last one that will be overwritten
+     */
+    void preserve(final long start, final long end) {
+        final int count = blockCount;
+        final long last = Math.min(end, blockBytes[count]);
+        if (start >= last) {
+            return;
+        }
+        synchronized (cache) {
+            for (int block = upperBound(blockBytes, count, start) - 1; block < count && blockBytes[block] < last;
+                    block++) {
+                if (!preserved.containsKey(block)) {
+                    final ByteBuffer bytes = bytes(blockBytes[block], blockBytes[block + 1]);
+                    final byte[] copy = new byte[bytes.remaining()];
+                    bytes.get(copy);
+                    preserved.put(block, copy);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long hash(final int start, final int len) {
+        return TextHash.suffix(prefixHash(start + len), prefixHash(start), TextHash.pow(len));
+    }
+
+    /**
+     * Returns the hash of the first <code>n</code> characters, decoding at most one block.
+     */
+    private long prefixHash(final int n) {
+        final int count = blockCount;
+        if (n == blockChars[count]) {
+            return blockHashes[count];
+        }
+        final int block = blockOf(n);
+        if (n == blockChars[block]) {
+            return blockHashes[block];
+        }
+        return TextHash.append(blockHashes[block], block(block), 0, n - blockChars[block]);
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int block = blockOf(index);
+        return block(block)[index - blockChars[block]];
+    }
+
+    @Override
+    public void getChars(final int start, final int len, final Segment segment) {
+        final int block = blockOf(start);
+        final int offset = start - blockChars[block];
+        final int available = blockChars[block + 1] - start;
+        if (len <= available || segment.isPartialReturn()) {
+            segment.array = block(block);
+            segment.offset = offset;
+            segment.count = Math.min(len, available);
+            return;
+        }
+        final char[] copy = new char[len];
+        copyChars(start, len, copy, 0);
+        segment.array = copy;
+        segment.offset = 0;
+        segment.count = len;
+    }
+
+    @Override
+    public void copyChars(final int start, final int len, final char[] dst, final int dstPos) {
+        int position = start;
+        int copied = 0;
+        while (copied < len) {
+            final int block = blockOf(position);
+            final int offset = position - blockChars[block];
+            final int n = Math.min(len - copied, blockChars[block + 1] - position);
+            System.arraycopy(block(block), offset, dst, dstPos + copied, n);
+            copied += n;
+            position += n;
+        }
+    }
+
+    /**
+     * Returns the decoded characters of the given block, decoding it if it is not in the cache.
+     */
+    private char[] block(final int block) {
+        synchronized (cache) {
+            char[] chars = cache.get(block);
+            if (chars == null) {
+                final CharBuffer out = CharBuffer.allocate(blockChars[block + 1] - blockChars[block]);
+                decode(decoder, block, blockBytes[block], blockBytes[block + 1], out);
+                chars = out.array();
+                cache.put(block, chars);
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * Decodes bytes <code>[start, end)</code> of the file, which make up the given block, into the given buffer.
+     */
+    private void decode(final TextDecoder decoder, final int block, final long start, final long end,
+            final CharBuffer out) {
+        final byte[] copy;
+        synchronized (cache) {
+            copy = preserved.get(block);
+        }
+        final ByteBuffer in = copy != null ? ByteBuffer.wrap(copy) : bytes(start, end);
+        decoder.reset(true);
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+    }
+
+    /**
+     * Returns a view of bytes <code>[start, end)</code> of the file.
+     */
+    private ByteBuffer bytes(final long start, final long end) {
+        final int map = (int) (start / MAP_STEP);
+        final ByteBuffer bytes = maps[map].duplicate();
+        final int position = (int) (start - map * MAP_STEP);
+        bytes.limit(position + (int) (end - start));
+        bytes.position(position);
+        return bytes;
+    }
+
+    /**
+     * Finds where the block starting at the given byte should end, so that no character is split between two blocks.
+     */
+    private long blockEnd(final long start) {
+        long end = Math.min(byteLength, start + BLOCK_SIZE);
+        if (end == byteLength) {
+            return end;
+        }
+        final ByteBuffer tail = bytes(end - 3, end + 1);
+        // move back to the first byte of a UTF-8 sequence, other supported charsets are single byte
+        for (int i = 3; i > 0 && (tail.get(tail.position() + i) & 0xC0) == 0x80; i--) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the block that contains the character at the given offset.
+     */
+    private int blockOf(final int offset) {
+        final int count = blockCount;
+        if (offset < 0 || offset >= blockChars[count]) {
+            throw new IndexOutOfBoundsException("Offset: " + offset);
+        }
+        return upperBound(blockChars, count, offset) - 1;
+    }
+
+    /**
+     * Returns the first index in <code>[0, count]</code> whose value is greater than the given one.
+     */
+    private static int upperBound(final long[] values, final int count, final long value) {
+        int lo = 0;
+        int hi = count + 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the first index in <code>[0, count]</code> whose value is greater than the given one.
+     */
+    private static int upperBound(final int[] values, final int count, final int value) {
+        int lo = 0;
+        int hi = count + 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+}
@@ -0,0 +1,34 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * Way of writing a snapshot into a file. Strategies are run by the {@link FileSaver}, on its background thread.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public interface SaveStrategy {
+
+    /** Always writes the whole file into a temporary file and moves it over the target */
+    SaveStrategy ATOMIC = new AtomicSaveStrategy();
+    /** Rewrites only the changed part of the file when it can, falls back to {@link #ATOMIC} when it can't */
+    SaveStrategy INCREMENTAL = new IncrementalSaveStrategy();
+
+    /**
+     * Writes the snapshot into the target file.
+     *
+     * @param snapshot text to save
+     * @param target file to save into
+     * @param charset charset of the file
+     * @param previous what the target contained when it was last loaded or saved, <code>null</code> if unknown
+     * @return what the target contains now
+     * @throws IOException if writing fails
+     */
+    DiskState save(TextSnapshot snapshot, Path target, Charset charset, DiskState previous) throws IOException;
+
+}
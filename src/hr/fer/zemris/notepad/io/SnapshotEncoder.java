@@ -0,0 +1,197 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.PieceVisitor;
+import hr.fer.zemris.notepad.document.TextBuffer;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import javax.swing.text.Segment;
+
+/**
+ * Encodes ranges of a {@link TextSnapshot} straight into a {@link FileChannel}. Pieces of the snapshot are encoded one
+ * by one through a single direct buffer, so the memory used does not depend on the size of the text. The same walk,
+ * without writing, measures how many bytes a range encodes into. An encoder is meant to be reused, but not by more than
+ * one thread at a time.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class SnapshotEncoder implements PieceVisitor {
+
+    /** Size of the direct buffer */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Segment segment = new Segment();
+    private final CharBuffer pair = CharBuffer.allocate(2);
+    private CharsetEncoder encoder;
+
+    /** Channel that is being written, <code>null</code> while measuring */
+    private FileChannel channel;
+    /** Offsets that pieces are measured from while measuring, <code>null</code> if every piece is encoded */
+    private ByteOffsets offsets;
+    /** Position in the channel where the next byte goes */
+    private long position;
+    /** High surrogate left over from the previous piece, or 0 */
+    private char carry;
+    /** Exception thrown while visiting */
+    private IOException error;
+
+    SnapshotEncoder() {
+        segment.setPartialReturn(true);
+    }
+
+    /**
+     * Encodes characters <code>[from, to)</code> of the snapshot and writes them into the channel, starting at the
+     * given position.
+     *
+     * @param snapshot encoded text
+     * @param from offset of the first character
+     * @param to offset after the last character
+     * @param charset charset to encode with
+     * @param channel channel to write to
+     * @param position position in the channel of the first written byte
+     * @return number of written bytes
+     * @throws IOException if writing fails
+     */
+    long write(final TextSnapshot snapshot, final int from, final int to, final Charset charset,
+            final FileChannel channel, final long position) throws IOException {
+        return encodeRange(snapshot, from, to, charset, channel, position);
+    }
+
+    /**
+     * Returns the number of bytes that characters <code>[from, to)</code> of the snapshot encode into. Pieces of a
+     * {@link MappedTextBuffer} that decoded exactly from the same charset are measured from its index, and other
+     * pieces from the given offsets, so only the characters near the ends of a piece are encoded.
+     *
+     * @param snapshot measured text
+     * @param from offset of the first character
+     * @param to offset after the last character
+     * @param charset charset to encode with
+     * @param offsets remembered offsets in the same charset, <code>null</code> to encode every piece
+     * @return number of bytes
+     */
+    long measure(final TextSnapshot snapshot, final int from, final int to, final Charset charset,
+            final ByteOffsets offsets) {
+        this.offsets = offsets;
+        try {
+            return encodeRange(snapshot, from, to, charset, null, 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // nothing is written while measuring
+        } finally {
+            this.offsets = null;
+        }
+    }
+
+    private long encodeRange(final TextSnapshot snapshot, final int from, final int to, final Charset charset,
+            final FileChannel channel, final long position) throws IOException {
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                    CodingErrorAction.REPLACE);
+        }
+        encoder.reset();
+        out.clear();
+        this.channel = channel;
+        this.position = position;
+        carry = 0;
+        error = null;
+        try {
+            snapshot.visit(from, to, this);
+            if (error != null) {
+                throw error;
+            }
+            pair.clear();
+            if (carry != 0) {
+                pair.put(carry);
+            }
+            pair.flip();
+            encode(pair, true);
+            while (encoder.flush(out).isOverflow()) {
+                drain();
+            }
+            drain();
+            return this.position - position;
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    @Override
+    public boolean visit(final TextBuffer buffer, final int start, final int length) {
+        if (channel == null && carry == 0 && buffer instanceof MappedTextBuffer && isIndexed((MappedTextBuffer) buffer,
+                start, start + length)) {
+            final MappedTextBuffer mapped = (MappedTextBuffer) buffer;
+            position += mapped.byteOffset(start + length) - mapped.byteOffset(start);
+            return true;
+        }
+        if (channel == null && carry == 0 && offsets != null && !Character.isLowSurrogate(buffer.charAt(start))
+                && !Character.isHighSurrogate(buffer.charAt(start + length - 1))) {
+            position += offsets.measure(buffer, start, start + length);
+            return true;
+        }
+        try {
+            int offset = start;
+            final int end = start + length;
+            while (offset < end) {
+                buffer.getChars(offset, end - offset, segment);
+                final CharBuffer in = CharBuffer.wrap(segment.array, segment.offset, segment.count);
+                offset += segment.count;
+                while (carry != 0 && in.hasRemaining()) {
+                    // finish the surrogate pair that was split between two pieces
+                    pair.clear();
+                    pair.put(carry).put(in.get()).flip();
+                    carry = 0;
+                    encode(pair, false);
+                    if (pair.hasRemaining()) {
+                        carry = pair.get();
+                    }
+                }
+                encode(in, false);
+                if (in.hasRemaining()) {
+                    carry = in.get();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            error = e;
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the encoded length of the given range of a mapped buffer can be read from its index, which is true
+     * when the buffer decoded exactly and the range doesn't split a surrogate pair.
+     */
+    private boolean isIndexed(final MappedTextBuffer buffer, final int start, final int end) {
+        return buffer.isExact() && buffer.getCharset().equals(encoder.charset()) && !Character.isLowSurrogate(buffer
+                .charAt(start)) && !Character.isHighSurrogate(buffer.charAt(end - 1));
+    }
+
+    private void encode(final CharBuffer in, final boolean endOfInput) throws IOException {
+        while (encoder.encode(in, out, endOfInput).isOverflow()) {
+            drain();
+        }
+    }
+
+    /**
+     * Writes everything from the direct buffer into the channel, or just counts it while measuring.
+     */
+    private void drain() throws IOException {
+        out.flip();
+        if (channel == null) {
+            position += out.remaining();
+        }
+        while (channel != null && out.hasRemaining()) {
+            position += channel.write(out, position);
+        }
+        out.clear();
+    }
+
+}
@@ -0,0 +1,95 @@
+package hr.fer.zemris.notepad.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decoder that replaces malformed and unmappable input like a decoder with {@link CodingErrorAction#REPLACE} does, but
+ * also remembers that it had to. Text decoded without replacements encodes back into exactly the bytes it was decoded
+ * from, which is what lets a file be patched in place.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class TextDecoder {
+
+    private final CharsetDecoder decoder;
+    private final String replacement;
+    /** <code>false</code> if anything was replaced since the last reset */
+    private boolean exact = true;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param charset charset to decode
+     */
+    TextDecoder(final Charset charset) {
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(
+                CodingErrorAction.REPORT);
+        replacement = decoder.replacement();
+    }
+
+    /**
+     * @return maximum number of characters produced from a single byte
+     */
+    float maxCharsPerByte() {
+        return decoder.maxCharsPerByte();
+    }
+
+    /**
+     * @return <code>true</code> if nothing was replaced since the decoder was created or reset
+     */
+    boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Resets the decoder.
+     *
+     * @param clearExact if the exactness flag should be reset as well
+     */
+    void reset(final boolean clearExact) {
+        decoder.reset();
+        if (clearExact) {
+            exact = true;
+        }
+    }
+
+    /**
+     * Decodes like {@link CharsetDecoder#decode(ByteBuffer, CharBuffer, boolean)}, but never returns an error.
+     *
+     * @param in input bytes
+     * @param out output characters
+     * @param endOfInput <code>true</code> if there is no more input
+     * @return underflow or overflow
+     */
+    CoderResult decode(final ByteBuffer in, final CharBuffer out, final boolean endOfInput) {
+        while (true) {
+            final CoderResult result = decoder.decode(in, out, endOfInput);
+            if (!result.isError()) {
+                return result;
+            }
+            if (out.remaining() < replacement.length()) {
+                return CoderResult.OVERFLOW;
+            }
+            exact = false;
+            out.put(replacement);
+            in.position(in.position() + result.length());
+        }
+    }
+
+    /**
+     * Flushes the decoder, see {@link CharsetDecoder#flush(CharBuffer)}.
+     *
+     * @param out output characters
+     * @return underflow or overflow
+     */
+    CoderResult flush(final CharBuffer out) {
+        return decoder.flush(out);
+    }
+
+}
@@ -0,0 +1,90 @@
+package hr.fer.zemris.notepad.io;
+
+import hr.fer.zemris.notepad.document.CharArrayBuffer;
+import hr.fer.zemris.notepad.document.TextBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads text files into {@link TextBuffer}s. Small files are decoded onto the heap, files larger than
+ * {@value #LARGE_FILE_THRESHOLD} bytes are memory-mapped and decoded lazily.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class TextFiles {
+
+    /** Files larger than this are opened in the large-file mode */
+    public static final long LARGE_FILE_THRESHOLD = 32L * 1024 * 1024;
+    /** Size of the buffer used while decoding a file onto the heap */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private TextFiles() {
+    }
+
+    /**
+     * Reads the given file.
+     *
+     * @param path file to read
+     * @param charset charset of the file
+     * @return buffer with the text of the file
+     * @throws IOException if the file can't be read
+     */
+    public static TextBuffer read(final Path path, final Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > LARGE_FILE_THRESHOLD && isMappable(charset)) {
+                final MappedTextBuffer buffer = new MappedTextBuffer(path, charset);
+                while (buffer.indexNextBlock()) {
+                    // index the whole file
+                }
+                return buffer;
+            }
+            return decode(channel, charset);
+        }
+    }
+
+    /**
+     * Checks if files in the given charset can be opened in the large-file mode.
+     *
+     * @param charset tested charset
+     * @return <code>true</code> if the charset is UTF-8 or a single byte charset
+     */
+    public static boolean isMappable(final Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.newEncoder().maxBytesPerChar() == 1;
+    }
+
+    /**
+     * Decodes the whole channel into a single array, reading it through a small reused buffer.
+     */
+    private static TextBuffer decode(final FileChannel channel, final Charset charset) throws IOException {
+        final CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final long capacity = (long) Math.ceil(channel.size() * (double) decoder.maxCharsPerByte()) + 1;
+        if (capacity >= Integer.MAX_VALUE - 8) {
+            throw new IOException("File is too large.");
+        }
+        final CharBuffer chars = CharBuffer.allocate((int) capacity);
+        final ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (channel.read(bytes) != -1) {
+            bytes.flip();
+            if (decoder.decode(bytes, chars, false).isOverflow()) {
+                throw new IOException("File changed while reading.");
+            }
+            bytes.compact();
+        }
+        bytes.flip();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        return new CharArrayBuffer(chars.array(), chars.position());
+    }
+
+}
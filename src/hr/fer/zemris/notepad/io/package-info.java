@@ -0,0 +1,8 @@
+/**
+ * This package contains classes that move documents between files and memory: loading (including memory-mapped
+ * loading of very large files) and saving.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.io;
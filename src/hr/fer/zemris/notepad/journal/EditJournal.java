@@ -0,0 +1,557 @@
+package hr.fer.zemris.notepad.journal;
+
+import hr.fer.zemris.notepad.document.PieceVisitor;
+import hr.fer.zemris.notepad.document.TextBuffer;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-ahead log of the edits of a single document. The document reports every edit on the Event Dispatch Thread,
+ * which only queues it, and the {@link JournalWriter} appends compact binary records to the journal file in the
+ * background. Nothing is written until the first edit, and the journal is deleted when the document is saved or
+ * closed, so only documents with unsaved edits have a journal.
+ * <p>
+ * A journal describes the document relative to the text of its file: a checkpoint rebuilds the document by copying
+ * ranges of that text and inserting characters that are not in it. Checkpoints are written when the document is
+ * saved and after every {@value #CHECKPOINT_BYTES} bytes of records, so a journal never grows much bigger than the
+ * unsaved edits it holds. See {@link JournalFormat} for the layout of the file.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class EditJournal {
+
+    /** Bytes of edit records after which a checkpoint is written */
+    private static final long CHECKPOINT_BYTES = 8L * 1024 * 1024;
+    /** Bytes of an insert record without its characters */
+    private static final int INSERT_BYTES = 9;
+    /** Bytes of a remove record */
+    private static final int REMOVE_BYTES = 9;
+    /** Bytes of a copy record */
+    private static final int COPY_BYTES = 13;
+
+    /** Journal files of this notepad, which recovery leaves alone even before they are locked */
+    private static final Set<Path> OWN = ConcurrentHashMap.newKeySet();
+
+    /** Journal file */
+    private final Path journalPath;
+
+    // state used on the Event Dispatch Thread
+
+    /** File of the document, may be <code>null</code> */
+    private Path file;
+    /** Charset of the file */
+    private final Charset charset;
+    /** Text of the file, <code>null</code> if unknown */
+    private TextSnapshot base;
+    /** Text of the document after the last reported edit */
+    private TextSnapshot last;
+    /** <code>true</code> if the journal file exists, or its creation is queued */
+    private boolean started;
+    /** <code>true</code> after the journal was discarded */
+    private boolean closed;
+
+    // state used on the writer thread
+
+    private FileChannel channel;
+    private FileLock lock;
+    /** Position in the channel where the next frame goes */
+    private long position;
+    /** Frame that is being filled */
+    private ByteBuffer frame;
+    /** Scratch buffer for characters of insert records */
+    private char[] chars;
+    /** Bytes of records written since the last checkpoint */
+    private long sinceCheckpoint;
+    /** File named by the header of the journal */
+    private Path headerFile;
+    /** Text named by the header of the journal */
+    private TextSnapshot headerBase;
+    /** Text of the document after the last written record */
+    private TextSnapshot current;
+    /** <code>true</code> if writing failed, nothing is written after that */
+    private boolean failed;
+
+    private EditJournal(final Path journalPath, final Path file, final Charset charset, final TextSnapshot base,
+            final TextSnapshot last) {
+        this.journalPath = journalPath;
+        this.file = file;
+        this.charset = charset;
+        this.base = base;
+        this.last = last;
+    }
+
+    /**
+     * Creates a journal of a recovered document, that continues the journal file it was recovered from.
+     *
+     * @param journalPath journal file
+     * @param channel open channel of the journal file
+     * @param lock lock of the journal file
+     * @param position end of the last valid frame
+     * @param file file of the document, may be <code>null</code>
+     * @param charset charset of the file
+     * @param base text of the file, <code>null</code> if unknown
+     * @param current recovered text
+     */
+    EditJournal(final Path journalPath, final FileChannel channel, final FileLock lock, final long position,
+            final Path file, final Charset charset, final TextSnapshot base, final TextSnapshot current) {
+        this(journalPath, file, charset, base, current);
+        started = true;
+        OWN.add(journalPath);
+        this.channel = channel;
+        this.lock = lock;
+        this.position = position;
+        prepare();
+        headerFile = file;
+        headerBase = base;
+        this.current = current;
+    }
+
+    /**
+     * @param journal journal file
+     * @return <code>true</code> if the journal belongs to a document of this notepad
+     */
+    static boolean isOwn(final Path journal) {
+        return OWN.contains(journal);
+    }
+
+    /**
+     * Starts journaling a document. The journal file is created on the first edit.
+     *
+     * @param file file of the document, <code>null</code> if it doesn't have one
+     * @param charset charset of the file
+     * @param base text of the file, <code>null</code> if unknown
+     * @param current text of the document
+     * @return journal of the document
+     */
+    public static EditJournal start(final Path file, final Charset charset, final TextSnapshot base,
+            final TextSnapshot current) {
+        return new EditJournal(JournalFormat.directory().resolve(UUID.randomUUID() + JournalFormat.SUFFIX), file,
+                charset, base, current);
+    }
+
+    /**
+     * Records an insert into the document. Characters are read from the snapshot on the writer thread, so this costs
+     * the same no matter how many characters were inserted.
+     *
+     * @param offset offset of the insert
+     * @param length number of inserted characters
+     * @param after text of the document after the insert
+     */
+    public void inserted(final int offset, final int length, final TextSnapshot after) {
+        if (begin()) {
+            JournalWriter.submit(this, () -> writeInsert(offset, length, after));
+        }
+        last = after;
+    }
+
+    /**
+     * Records a removal from the document.
+     *
+     * @param offset offset of the first removed character
+     * @param length number of removed characters
+     * @param after text of the document after the removal
+     */
+    public void removed(final int offset, final int length, final TextSnapshot after) {
+        if (begin()) {
+            JournalWriter.submit(this, () -> writeRemove(offset, length, after));
+        }
+        last = after;
+    }
+
+    /**
+     * Tells the journal that the file now contains different text, because the document was saved. The journal is
+     * deleted if the document is the same as the file, otherwise it is replaced by a checkpoint against the new text.
+     *
+     * @param file file of the document
+     * @param base text of the file, <code>null</code> if unknown
+     * @param current text of the document
+     */
+    public void rebase(final Path file, final TextSnapshot base, final TextSnapshot current) {
+        if (closed) {
+            return;
+        }
+        this.file = file;
+        this.base = base;
+        last = current;
+        if (base != null && base.length() == current.length() && base.hash() == current.hash()) {
+            if (started) {
+                started = false;
+                JournalWriter.submit(this, this::delete);
+            }
+        } else {
+            started = true;
+            JournalWriter.submit(this, () -> checkpoint(file, base, current));
+        }
+    }
+
+    /**
+     * Lets go of the texts that the journal holds, so that a hibernated document can be dropped from memory. The
+     * journal file already describes the whole text and stays as it is. The text of the file is forgotten, so the
+     * next checkpoint writes all characters of the document, until the document is saved.
+     * <p>
+     * Nothing may be edited until the journal is resumed.
+     */
+    public void suspend() {
+        base = null;
+        last = null;
+        JournalWriter.submit(this, () -> {
+            headerBase = null;
+            current = null;
+        });
+    }
+
+    /**
+     * Continues journaling a document after {@link #suspend()}.
+     *
+     * @param current the same text that the document had when the journal was suspended
+     */
+    public void resume(final TextSnapshot current) {
+        last = current;
+        JournalWriter.submit(this, () -> this.current = current);
+    }
+
+    /**
+     * Deletes the journal, edits reported after this are ignored. Called when the document is closed.
+     */
+    public void discard() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (started) {
+            JournalWriter.submit(this, this::delete);
+        }
+    }
+
+    /**
+     * Queues the first checkpoint if the journal file doesn't exist yet.
+     *
+     * @return <code>false</code> if the journal was discarded
+     */
+    private boolean begin() {
+        if (closed) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            OWN.add(journalPath);
+            final Path file = this.file;
+            final TextSnapshot base = this.base;
+            final TextSnapshot before = last;
+            JournalWriter.submit(this, () -> checkpoint(file, base, before));
+        }
+        return true;
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // ....................................Writer thread.......................................
+    // ----------------------------------------------------------------------------------------
+
+    /**
+     * Writes the frame that is being filled and forces the journal to disk.
+     */
+    void commit() throws IOException {
+        if (channel != null && !failed) {
+            flushFrame();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Stops writing the journal after an error.
+     */
+    void fail() {
+        failed = true;
+        closeChannel();
+    }
+
+    /**
+     * Writes a new journal that rebuilds the given text from the text of the file, and replaces the old journal with
+     * it once it is safely on disk.
+     */
+    private void checkpoint(final Path file, final TextSnapshot base, final TextSnapshot text) throws IOException {
+        if (failed) {
+            return;
+        }
+        final boolean first = channel == null;
+        if (!first) {
+            flushFrame();
+        }
+        Files.createDirectories(journalPath.getParent());
+        final Path target = first ? journalPath : temp();
+        final FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        final FileChannel oldChannel = channel;
+        final FileLock oldLock = lock;
+        channel = out;
+        lock = out.tryLock();
+        position = 0;
+        prepare();
+
+        writeHeader(file, base);
+        writeDelta(base, text);
+        flushFrame();
+        channel.force(false);
+        if (!first) {
+            try {
+                Files.move(target, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(target, journalPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (oldLock != null) {
+                oldLock.release();
+            }
+            oldChannel.close();
+        }
+        headerFile = file;
+        headerBase = base;
+        current = text;
+        sinceCheckpoint = 0;
+    }
+
+    private void writeInsert(final int offset, final int length, final TextSnapshot after) throws IOException {
+        if (failed || channel == null) {
+            return;
+        }
+        if (2L * length > CHECKPOINT_BYTES) {
+            // a checkpoint copies pieces of the base instead of their characters, like those of a replace all
+            checkpoint(headerFile, headerBase, after);
+            return;
+        }
+        int done = 0;
+        while (done < length) {
+            final int n = Math.min(length - done, (frame.remaining() - INSERT_BYTES) / 2);
+            if (n <= 0) {
+                flushFrame();
+                continue;
+            }
+            after.copyChars(offset + done, n, chars, 0);
+            putInsert(offset + done, n);
+            done += n;
+        }
+        sinceCheckpoint += INSERT_BYTES + 2L * length;
+        written(after);
+    }
+
+    private void writeRemove(final int offset, final int length, final TextSnapshot after) throws IOException {
+        if (failed || channel == null) {
+            return;
+        }
+        ensure(REMOVE_BYTES);
+        frame.put(JournalFormat.REMOVE).putInt(offset).putInt(length);
+        sinceCheckpoint += REMOVE_BYTES;
+        written(after);
+    }
+
+    /**
+     * Remembers the text after a written record and writes a checkpoint if the journal has grown too much.
+     */
+    private void written(final TextSnapshot after) throws IOException {
+        current = after;
+        if (sinceCheckpoint > CHECKPOINT_BYTES) {
+            checkpoint(headerFile, headerBase, current);
+        }
+    }
+
+    private void writeHeader(final Path file, final TextSnapshot base) throws IOException {
+        final String path = file == null ? null : file.toAbsolutePath().toString();
+        final String charsetName = charset.name();
+        ensure(1 + 4 + 4 + 2 * (path == null ? 0 : path.length()) + 4 + 2 * charsetName.length() + 4 + 8);
+        frame.put(JournalFormat.HEADER).putInt(JournalFormat.MAGIC);
+        putString(path);
+        putString(charsetName);
+        frame.putInt(base == null ? -1 : base.length()).putLong(base == null ? 0 : base.hash());
+    }
+
+    /**
+     * Writes records that build the text from nothing, copying every range that comes from the same place of the
+     * same buffer as some range of the base.
+     */
+    private void writeDelta(final TextSnapshot base, final TextSnapshot text) throws IOException {
+        final Map<TextBuffer, TreeMap<Integer, int[]>> pieces = new IdentityHashMap<>();
+        if (base != null) {
+            final int[] offset = { 0 };
+            base.visit(0, base.length(), (buffer, start, length) -> {
+                pieces.computeIfAbsent(buffer, b -> new TreeMap<>()).put(start, new int[] { length, offset[0] });
+                offset[0] += length;
+                return true;
+            });
+        }
+        final DeltaWriter writer = new DeltaWriter(pieces);
+        text.visit(0, text.length(), writer);
+        if (writer.error != null) {
+            throw writer.error;
+        }
+        writer.flushCopy();
+    }
+
+    /**
+     * Closes and deletes the journal.
+     */
+    private void delete() throws IOException {
+        closeChannel();
+        try {
+            Files.deleteIfExists(journalPath);
+            Files.deleteIfExists(temp());
+        } finally {
+            OWN.remove(journalPath);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close(); // releases the lock
+            } catch (IOException e) {
+                // nothing more can be done with it
+            }
+        }
+        channel = null;
+        lock = null;
+        if (frame != null) {
+            frame.clear();
+            frame.position(JournalFormat.FRAME_HEADER);
+        }
+    }
+
+    /**
+     * Allocates the buffers used for writing, if they aren't allocated yet.
+     */
+    private void prepare() {
+        if (frame == null) {
+            frame = ByteBuffer.allocate(JournalFormat.FRAME_SIZE);
+            frame.position(JournalFormat.FRAME_HEADER);
+            chars = new char[JournalFormat.FRAME_SIZE / 2];
+        }
+    }
+
+    private Path temp() {
+        return journalPath.resolveSibling(journalPath.getFileName() + JournalFormat.TEMP_SUFFIX);
+    }
+
+    private void ensure(final int bytes) throws IOException {
+        if (frame.remaining() < bytes) {
+            flushFrame();
+        }
+    }
+
+    private void flushFrame() throws IOException {
+        position = JournalFormat.writeFrame(frame, channel, position);
+    }
+
+    private void putInsert(final int offset, final int n) {
+        frame.put(JournalFormat.INSERT).putInt(offset).putInt(n);
+        frame.asCharBuffer().put(chars, 0, n);
+        frame.position(frame.position() + 2 * n);
+    }
+
+    private void putString(final String s) {
+        if (s == null) {
+            frame.putInt(-1);
+            return;
+        }
+        frame.putInt(s.length());
+        frame.asCharBuffer().put(s);
+        frame.position(frame.position() + 2 * s.length());
+    }
+
+    /**
+     * Writes the pieces of a text as copy and insert records.
+     */
+    private final class DeltaWriter implements PieceVisitor {
+
+        /** Pieces of the base by their buffer and start, mapped to their length and offset in the base */
+        private final Map<TextBuffer, TreeMap<Integer, int[]>> pieces;
+        /** Offset in the text of the next visited character */
+        private int offset;
+        /** Copy that may still be extended by the next piece */
+        private int copyOffset;
+        private int copyBase;
+        private int copyLength;
+        private IOException error;
+
+        private DeltaWriter(final Map<TextBuffer, TreeMap<Integer, int[]>> pieces) {
+            this.pieces = pieces;
+        }
+
+        @Override
+        public boolean visit(final TextBuffer buffer, final int start, final int length) {
+            final TreeMap<Integer, int[]> ranges = pieces.get(buffer);
+            try {
+                int s = start;
+                final int end = start + length;
+                while (s < end) {
+                    final Map.Entry<Integer, int[]> range = ranges == null ? null : ranges.floorEntry(s);
+                    if (range != null && s < range.getKey() + range.getValue()[0]) {
+                        final int n = Math.min(end, range.getKey() + range.getValue()[0]) - s;
+                        copy(range.getValue()[1] + s - range.getKey(), n);
+                        s += n;
+                    } else {
+                        final Integer next = ranges == null ? null : ranges.higherKey(s);
+                        final int n = (next == null ? end : Math.min(end, next)) - s;
+                        insert(buffer, s, n);
+                        s += n;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                error = e;
+                return false;
+            }
+        }
+
+        private void copy(final int baseOffset, final int n) throws IOException {
+            if (copyLength > 0 && copyBase + copyLength == baseOffset) {
+                copyLength += n;
+            } else {
+                flushCopy();
+                copyOffset = offset;
+                copyBase = baseOffset;
+                copyLength = n;
+            }
+            offset += n;
+        }
+
+        private void insert(final TextBuffer buffer, final int start, final int length) throws IOException {
+            flushCopy();
+            int done = 0;
+            while (done < length) {
+                final int n = Math.min(length - done, (frame.remaining() - INSERT_BYTES) / 2);
+                if (n <= 0) {
+                    flushFrame();
+                    continue;
+                }
+                buffer.copyChars(start + done, n, chars, 0);
+                putInsert(offset + done, n);
+                done += n;
+            }
+            offset += length;
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyLength > 0) {
+                ensure(COPY_BYTES);
+                frame.put(JournalFormat.COPY).putInt(copyOffset).putInt(copyBase).putInt(copyLength);
+                copyLength = 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package hr.fer.zemris.notepad.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of journal files. A journal is a sequence of frames, each frame is its payload length and the CRC32 of the
+ * payload followed by the payload itself. A frame that is cut off or whose checksum doesn't match ends the journal,
+ * that is how a write torn by a crash is recognized.
+ * <p>
+ * The first frame starts with the header record, which names the file the journal belongs to and the text that file
+ * contained (its length and {@link hr.fer.zemris.notepad.document.TextHash}). Records after it rebuild the document
+ * from nothing, copying ranges of that text or inserting new characters, and then repeat the edits made since.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class JournalFormat {
+
+    /** First value of every journal */
+    static final int MAGIC = 0x4A4E4A31;
+
+    /** Header record */
+    static final byte HEADER = 0;
+    /** Insert record: offset, number of characters, characters */
+    static final byte INSERT = 1;
+    /** Remove record: offset, number of characters */
+    static final byte REMOVE = 2;
+    /** Copy record: offset, offset in the text of the file, number of characters */
+    static final byte COPY = 3;
+
+    /** Bytes in front of every frame payload, its length and checksum */
+    static final int FRAME_HEADER = 8;
+    /** Maximum size of a frame, including its header */
+    static final int FRAME_SIZE = 64 * 1024;
+
+    /** Suffix of journal files */
+    static final String SUFFIX = ".journal";
+    /** Suffix of a journal that is being checkpointed */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private JournalFormat() {
+    }
+
+    /**
+     * Returns the directory that keeps journals. It can be changed with the <code>jnotepad.journal</code> system
+     * property.
+     *
+     * @return journal directory
+     */
+    static Path directory() {
+        final String dir = System.getProperty("jnotepad.journal");
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        return Paths.get(System.getProperty("user.home"), ".jnotepad", "journal");
+    }
+
+    /**
+     * Finishes the frame in the given buffer, whose payload starts after {@link #FRAME_HEADER} bytes, and writes it
+     * at the given position. The buffer is cleared for the next frame.
+     *
+     * @param frame buffer with the frame
+     * @param channel channel to write to
+     * @param position position of the frame in the channel
+     * @return position after the frame
+     * @throws IOException if writing fails
+     */
+    static long writeFrame(final ByteBuffer frame, final FileChannel channel, long position) throws IOException {
+        final int length = frame.position() - FRAME_HEADER;
+        if (length > 0) {
+            final CRC32 crc = new CRC32();
+            crc.update(frame.array(), FRAME_HEADER, length);
+            frame.putInt(0, length);
+            frame.putInt(4, (int) crc.getValue());
+            frame.flip();
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+        }
+        frame.clear();
+        frame.position(FRAME_HEADER);
+        return position;
+    }
+
+    /**
+     * Reads the frame at the given position into the buffer, which is left holding just the payload.
+     *
+     * @param channel channel to read from
+     * @param position position of the frame
+     * @param frame buffer of {@link #FRAME_SIZE} bytes
+     * @return <code>false</code> if there is no complete and valid frame at that position
+     * @throws IOException if reading fails
+     */
+    static boolean readFrame(final FileChannel channel, final long position, final ByteBuffer frame)
+            throws IOException {
+        frame.clear();
+        frame.limit(FRAME_HEADER);
+        if (!readFully(channel, position, frame)) {
+            return false;
+        }
+        final int length = frame.getInt(0);
+        final int checksum = frame.getInt(4);
+        if (length <= 0 || length > FRAME_SIZE - FRAME_HEADER) {
+            return false;
+        }
+        frame.clear();
+        frame.limit(length);
+        if (!readFully(channel, position + FRAME_HEADER, frame)) {
+            return false;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, length);
+        frame.flip();
+        return (int) crc.getValue() == checksum;
+    }
+
+    private static boolean readFully(final FileChannel channel, long position, final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                return false;
+            }
+            position += n;
+        }
+        return true;
+    }
+
+}
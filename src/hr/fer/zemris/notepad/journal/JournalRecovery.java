@@ -0,0 +1,196 @@
+package hr.fer.zemris.notepad.journal;
+
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.PieceTableContent;
+import hr.fer.zemris.notepad.document.TextBuffer;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+import hr.fer.zemris.notepad.io.TextFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.BadLocationException;
+
+/**
+ * Finds journals left behind by sessions that didn't end normally and rebuilds their documents. Records are applied
+ * straight to a {@link PieceTableContent}, without any events or undo, and ranges copied from the original file point
+ * into it without copying, so replaying a journal takes about as long as reading it.
+ * <p>
+ * Journals that are locked belong to another running notepad and are skipped. Journals that can't be replayed, because
+ * the file they copy from has changed, are left where they are.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class JournalRecovery {
+
+    private JournalRecovery() {
+    }
+
+    /**
+     * Recovers every journal that is left in the journal directory.
+     *
+     * @return recovered documents
+     */
+    public static List<RecoveredDocument> recoverAll() {
+        final List<RecoveredDocument> recovered = new ArrayList<>();
+        final Path directory = JournalFormat.directory();
+        if (!Files.isDirectory(directory)) {
+            return recovered;
+        }
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*" + JournalFormat.SUFFIX)) {
+            for (final Path journal : journals) {
+                if (EditJournal.isOwn(journal)) {
+                    continue; // recovery runs while this notepad already journals its documents
+                }
+                try {
+                    final RecoveredDocument document = recover(journal);
+                    if (document != null) {
+                        recovered.add(document);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // leave the journal for another try, a corrupted record may have an unknown charset or be cut off
+                }
+            }
+        } catch (IOException e) {
+            // nothing can be recovered
+        }
+        return recovered;
+    }
+
+    /**
+     * Replays a single journal.
+     *
+     * @return the recovered document, <code>null</code> if the journal is in use or empty
+     */
+    private static RecoveredDocument recover(final Path journal) throws IOException {
+        final FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean adopted = false;
+        try {
+            final FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                return null;
+            }
+            if (lock == null) {
+                return null;
+            }
+
+            final ByteBuffer frame = ByteBuffer.allocate(JournalFormat.FRAME_SIZE);
+            if (!JournalFormat.readFrame(channel, 0, frame) || frame.get() != JournalFormat.HEADER || frame
+                    .getInt() != JournalFormat.MAGIC) {
+                channel.close();
+                Files.delete(journal); // the session died before anything was journaled
+                return null;
+            }
+            final String path = getString(frame);
+            final Charset charset = Charset.forName(getString(frame));
+            final int baseLength = frame.getInt();
+            final long baseHash = frame.getLong();
+
+            final Path file = path == null ? null : Paths.get(path);
+            final TextBuffer baseBuffer = readBase(file, charset, baseLength, baseHash);
+            final PieceTableContent content = new PieceTableContent();
+            long position = 0;
+            do {
+                position += JournalFormat.FRAME_HEADER + frame.limit();
+                replay(frame, content, baseBuffer);
+            } while (JournalFormat.readFrame(channel, position, frame));
+
+            channel.truncate(position); // a frame torn by the crash
+            final TextSnapshot base = baseBuffer == null ? null : new PieceTableContent(baseBuffer).snapshot();
+            final PieceDocument document = new PieceDocument(content);
+            final EditJournal continued = new EditJournal(journal, channel, lock, position, file, charset, base,
+                    document.snapshot());
+            Files.deleteIfExists(journal.resolveSibling(journal.getFileName() + JournalFormat.TEMP_SUFFIX));
+            adopted = true;
+            return new RecoveredDocument(file, charset, document, base, continued);
+        } finally {
+            if (!adopted) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the text of the file that the journal copies from, if the file still contains it.
+     *
+     * @return text of the file, <code>null</code> if there is no such file or it has changed
+     */
+    private static TextBuffer readBase(final Path file, final Charset charset, final int length, final long hash) {
+        if (file == null || length < 0 || !Files.isReadable(file)) {
+            return null;
+        }
+        try {
+            final TextBuffer buffer = TextFiles.read(file, charset);
+            final TextSnapshot text = new PieceTableContent(buffer).snapshot();
+            return text.length() == length && text.hash() == hash ? buffer : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies the records in the payload of a frame.
+     */
+    private static void replay(final ByteBuffer frame, final PieceTableContent content, final TextBuffer base)
+            throws IOException {
+        try {
+            while (frame.hasRemaining()) {
+                final byte type = frame.get();
+                switch (type) {
+                    case JournalFormat.INSERT: {
+                        final int offset = frame.getInt();
+                        final int n = frame.getInt();
+                        final char[] chars = new char[n];
+                        frame.asCharBuffer().get(chars);
+                        frame.position(frame.position() + 2 * n);
+                        content.insertString(offset, new String(chars));
+                        break;
+                    }
+                    case JournalFormat.REMOVE:
+                        content.remove(frame.getInt(), frame.getInt());
+                        break;
+                    case JournalFormat.COPY: {
+                        final int offset = frame.getInt();
+                        final int baseOffset = frame.getInt();
+                        final int n = frame.getInt();
+                        if (base == null || baseOffset + n > base.length()) {
+                            throw new IOException("The file of the journal has changed.");
+                        }
+                        content.insert(offset, base, baseOffset, n);
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown record: " + type);
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IOException("Journal is corrupted.", e);
+        }
+    }
+
+    private static String getString(final ByteBuffer frame) {
+        final int length = frame.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        frame.asCharBuffer().get(chars);
+        frame.position(frame.position() + 2 * length);
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,110 @@
+package hr.fer.zemris.notepad.journal;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background thread that writes journals. Edits are only queued on the Event Dispatch Thread, the writer wakes up
+ * {@value #COMMIT_INTERVAL} ms after the first queued edit and writes everything queued by then, forcing every
+ * touched journal to disk once. This group commit bounds the number of disk syncs no matter how fast the user types.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class JournalWriter {
+
+    /** Milliseconds that edits are collected for before they are committed */
+    static final long COMMIT_INTERVAL = 100;
+
+    /** Thread that writes all journals, it stops when there is nothing to write */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(r, "journal-writer"));
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** Operations that are not written yet */
+    private static final Queue<Operation> QUEUE = new ConcurrentLinkedQueue<>();
+    /** <code>true</code> if a commit is scheduled and hasn't started taking operations yet */
+    private static final AtomicBoolean SCHEDULED = new AtomicBoolean();
+
+    private JournalWriter() {
+    }
+
+    /**
+     * Operation over a single journal, run on the writer thread.
+     */
+    interface Task {
+        /**
+         * Runs the operation.
+         *
+         * @throws IOException if writing fails
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Queues an operation over the given journal.
+     *
+     * @param journal journal that the operation writes
+     * @param task the operation
+     */
+    static void submit(final EditJournal journal, final Task task) {
+        QUEUE.add(new Operation(journal, task));
+        if (SCHEDULED.compareAndSet(false, true)) {
+            EXECUTOR.execute(JournalWriter::commit);
+        }
+    }
+
+    /**
+     * Runs every queued operation and then forces the touched journals.
+     */
+    private static void commit() {
+        try {
+            Thread.sleep(COMMIT_INTERVAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SCHEDULED.set(false);
+
+        final Set<EditJournal> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        Operation operation;
+        while ((operation = QUEUE.poll()) != null) {
+            try {
+                operation.task.run();
+                touched.add(operation.journal);
+            } catch (IOException e) {
+                operation.journal.fail();
+            }
+        }
+        for (final EditJournal journal : touched) {
+            try {
+                journal.commit();
+            } catch (IOException e) {
+                journal.fail();
+            }
+        }
+    }
+
+    /**
+     * Queued operation.
+     */
+    private static final class Operation {
+        private final EditJournal journal;
+        private final Task task;
+
+        private Operation(final EditJournal journal, final Task task) {
+            this.journal = journal;
+            this.task = task;
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package hr.fer.zemris.notepad.journal;
+
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * Document rebuilt from a journal that was left behind by a session that didn't end normally.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class RecoveredDocument {
+
+    private final Path filePath;
+    private final Charset charset;
+    private final PieceDocument document;
+    private final TextSnapshot base;
+    private final EditJournal journal;
+
+    RecoveredDocument(final Path filePath, final Charset charset, final PieceDocument document,
+            final TextSnapshot base, final EditJournal journal) {
+        this.filePath = filePath;
+        this.charset = charset;
+        this.document = document;
+        this.base = base;
+        this.journal = journal;
+    }
+
+    /**
+     * @return file of the document, <code>null</code> if it didn't have one
+     */
+    public Path getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return charset of the file
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the recovered document
+     */
+    public PieceDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * @return text of the file, <code>null</code> if the document didn't have a file or the file has changed
+     */
+    public TextSnapshot getBase() {
+        return base;
+    }
+
+    /**
+     * @return journal that continues the recovered journal, further edits of the document should go into it
+     */
+    public EditJournal getJournal() {
+        return journal;
+    }
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the edit journal, a write-ahead log of unsaved edits that is kept for every open document so
+ * that the edits can be recovered after a crash.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.journal;
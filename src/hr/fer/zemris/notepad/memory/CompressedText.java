@@ -0,0 +1,288 @@
+package hr.fer.zemris.notepad.memory;
+
+import hr.fer.zemris.notepad.document.CharArrayBuffer;
+import hr.fer.zemris.notepad.document.TextBuffer;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Text of a hibernated document, deflated outside of the heap. The UTF-16 code units of the text are compressed into
+ * direct buffers while all compressed texts together take up at most {@link #OFF_HEAP_LIMIT} bytes, and into a
+ * temporary spill file after that. Text is compressed on a background thread with the fastest compression level, so
+ * that inflating it back takes about as long as copying it.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class CompressedText {
+
+    /** Maximal number of bytes that all compressed texts keep in direct buffers */
+    public static final long OFF_HEAP_LIMIT = Long.getLong("jnotepad.tabs.offHeapLimit", 256L << 20);
+    /** Number of characters compressed or inflated at a time */
+    private static final int CHUNK = 32 * 1024;
+    /** Size of a direct buffer */
+    private static final int BLOCK = 1024 * 1024;
+
+    /** Capacity of the direct buffers of all compressed texts */
+    private static final AtomicLong OFF_HEAP = new AtomicLong();
+    /** Spill files that weren't deleted yet, the ones left are deleted when the program exits */
+    private static final Set<Path> SPILLS = ConcurrentHashMap.newKeySet();
+
+    /** Thread that compresses texts, it stops when there is nothing to compress */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                final Thread thread = new Thread(r, "text-compressor");
+                thread.setDaemon(true);
+                return thread;
+            });
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (final Path file : SPILLS) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // nothing more can be done
+                }
+            }
+        }, "spill-cleanup"));
+    }
+
+    /** Number of characters */
+    private final int length;
+    /** Compressed bytes, <code>null</code> if they are in the spill file */
+    private List<ByteBuffer> blocks;
+    /** File with the compressed bytes, <code>null</code> if they are in direct buffers */
+    private Path spill;
+    /** Number of compressed bytes */
+    private long size;
+    /** Capacity of the direct buffers, which is what counts against {@link #OFF_HEAP_LIMIT} */
+    private long capacity;
+
+    private CompressedText(final int length) {
+        this.length = length;
+    }
+
+    /**
+     * Compresses the first characters of a snapshot on a background thread.
+     *
+     * @param snapshot snapshot of the text
+     * @param length number of compressed characters
+     * @param completion invoked on the EDT with the compressed text, or <code>null</code> if the spill file couldn't
+     *            be written
+     */
+    public static void compress(final TextSnapshot snapshot, final int length,
+            final Consumer<CompressedText> completion) {
+        EXECUTOR.execute(() -> {
+            CompressedText text = new CompressedText(length);
+            try {
+                text.deflate(snapshot);
+                if (OFF_HEAP.addAndGet(text.capacity) > OFF_HEAP_LIMIT) {
+                    OFF_HEAP.addAndGet(-text.capacity);
+                    text.spill();
+                }
+            } catch (IOException e) {
+                text.free();
+                text = null;
+            }
+            final CompressedText compressed = text;
+            SwingUtilities.invokeLater(() -> completion.accept(compressed));
+        });
+    }
+
+    /**
+     * @return number of compressed bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Inflates the text into a new buffer.
+     *
+     * @return buffer with the text
+     * @throws IOException if the spill file can't be read
+     */
+    public TextBuffer decompress() throws IOException {
+        final char[] chars = new char[length];
+        final Inflater inflater = new Inflater();
+        final byte[] in = new byte[BLOCK];
+        final byte[] out = new byte[2 * CHUNK];
+        final ByteBuffer outBuffer = ByteBuffer.wrap(out);
+        int inflated = 0;
+        int pending = 0;
+        try (FileChannel channel = spill == null ? null : FileChannel.open(spill, StandardOpenOption.READ)) {
+            int block = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    final int n = read(channel, block++, in);
+                    if (n <= 0) {
+                        throw new IOException("Compressed text is cut short");
+                    }
+                    inflater.setInput(in, 0, n);
+                }
+                pending += inflater.inflate(out, pending, out.length - pending);
+                final int whole = Math.min(pending / 2, length - inflated);
+                outBuffer.clear();
+                outBuffer.asCharBuffer().get(chars, inflated, whole);
+                inflated += whole;
+                if (pending % 2 == 1) {
+                    out[0] = out[pending - 1];
+                }
+                pending %= 2;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        if (inflated != length) {
+            throw new IOException("Compressed text is cut short");
+        }
+        return new CharArrayBuffer(chars, length);
+    }
+
+    /**
+     * Frees the direct buffers or deletes the spill file.
+     */
+    public void free() {
+        if (blocks != null) {
+            OFF_HEAP.addAndGet(-capacity);
+            blocks = null;
+            capacity = 0;
+        }
+        if (spill != null) {
+            try {
+                Files.deleteIfExists(spill);
+                SPILLS.remove(spill);
+            } catch (IOException e) {
+                // deleted on exit
+            }
+            spill = null;
+        }
+    }
+
+    /**
+     * Deflates the text into direct buffers. The last buffer is cut to the bytes it holds, so a short text doesn't
+     * hold a whole block.
+     */
+    private void deflate(final TextSnapshot snapshot) {
+        blocks = new ArrayList<>();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final char[] chars = new char[CHUNK];
+        final ByteBuffer in = ByteBuffer.allocate(2 * CHUNK);
+        final byte[] out = new byte[2 * CHUNK];
+        try {
+            for (int from = 0; from < length; from += CHUNK) {
+                final int n = Math.min(CHUNK, length - from);
+                snapshot.copyChars(from, n, chars, 0);
+                in.clear();
+                in.asCharBuffer().put(chars, 0, n);
+                deflater.setInput(in.array(), 0, 2 * n);
+                while (!deflater.needsInput()) {
+                    store(out, deflater.deflate(out));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                store(out, deflater.deflate(out));
+            }
+        } finally {
+            deflater.end();
+        }
+        final ByteBuffer last = blocks.get(blocks.size() - 1);
+        if (last.hasRemaining()) {
+            last.flip();
+            final ByteBuffer cut = ByteBuffer.allocateDirect(last.remaining());
+            cut.put(last);
+            blocks.set(blocks.size() - 1, cut);
+            capacity += cut.capacity() - BLOCK;
+        }
+    }
+
+    /**
+     * Appends compressed bytes to the direct buffers.
+     */
+    private void store(final byte[] bytes, final int count) {
+        int done = 0;
+        while (done < count) {
+            ByteBuffer last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (last == null || !last.hasRemaining()) {
+                last = ByteBuffer.allocateDirect(BLOCK);
+                blocks.add(last);
+                capacity += BLOCK;
+            }
+            final int n = Math.min(count - done, last.remaining());
+            last.put(bytes, done, n);
+            done += n;
+        }
+        size += count;
+    }
+
+    /**
+     * Moves the compressed bytes from the direct buffers to a spill file.
+     */
+    private void spill() throws IOException {
+        final List<ByteBuffer> compressed = blocks;
+        blocks = null;
+        capacity = 0;
+        final Path file = Files.createTempFile("jnotepad-", ".tab");
+        SPILLS.add(file);
+        spill = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (final ByteBuffer block : compressed) {
+                block.flip();
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the compressed bytes of a block into the array.
+     *
+     * @return number of read bytes, <code>0</code> after the last block
+     */
+    private int read(final FileChannel channel, final int block, final byte[] in) throws IOException {
+        final long position = (long) block * BLOCK;
+        if (position >= size) {
+            return 0;
+        }
+        final int n = (int) Math.min(BLOCK, size - position);
+        if (channel == null) {
+            final ByteBuffer source = blocks.get(block).duplicate();
+            source.clear();
+            source.get(in, 0, n);
+            return n;
+        }
+        final ByteBuffer target = ByteBuffer.wrap(in, 0, n);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) == -1) {
+                throw new IOException("Spill file is cut short");
+            }
+        }
+        return n;
+    }
+
+}
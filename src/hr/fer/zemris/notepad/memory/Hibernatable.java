@@ -0,0 +1,34 @@
+package hr.fer.zemris.notepad.memory;
+
+/**
+ * Something that takes up memory and can give most of it back while it isn't used, like an open document whose tab
+ * isn't selected.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public interface Hibernatable {
+
+    /**
+     * @return estimated number of heap bytes that hibernating would free, <code>0</code> while hibernated
+     */
+    long getFootprint();
+
+    /**
+     * @return <code>true</code> if this is hibernated
+     */
+    boolean isHibernated();
+
+    /**
+     * Starts hibernating. Hibernation may finish later, and is cancelled by {@link #restore()}.
+     *
+     * @return <code>false</code> if this can't hibernate now
+     */
+    boolean hibernate();
+
+    /**
+     * Brings this back to how it was before it hibernated, or cancels hibernation that didn't finish yet.
+     */
+    void restore();
+
+}
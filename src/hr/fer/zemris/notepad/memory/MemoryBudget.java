@@ -0,0 +1,108 @@
+package hr.fer.zemris.notepad.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.Timer;
+
+/**
+ * Keeps the memory of open documents under a budget. Documents are kept in the order they were last used in, and
+ * when their footprints add up to more than the budget, the least recently used ones are hibernated until they fit.
+ * The most recently used document is never hibernated, and a hibernated one is restored when it is used again.
+ * <p>
+ * Documents grow while they are loaded and edited, so the budget is also checked every {@value #CHECK_INTERVAL} ms.
+ * It is used on the Event Dispatch Thread.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class MemoryBudget {
+
+    /** Default budget in bytes, a quarter of the heap */
+    public static final long DEFAULT_BUDGET = Long.getLong("jnotepad.tabs.budget", Runtime.getRuntime().maxMemory()
+            / 4);
+    /** Milliseconds between two checks of the budget */
+    private static final int CHECK_INTERVAL = 5000;
+
+    /** Number of bytes that documents can take up */
+    private final long budget;
+    /** Documents, the least recently used one first */
+    private final List<Hibernatable> documents = new ArrayList<>();
+    /** Checks the budget periodically */
+    private final Timer timer = new Timer(CHECK_INTERVAL, e -> enforce());
+
+    /**
+     * Creates a new budget and starts checking it.
+     *
+     * @param budget number of bytes that documents can take up
+     */
+    public MemoryBudget(final long budget) {
+        this.budget = budget;
+        timer.start();
+    }
+
+    /**
+     * Marks a document as the most recently used one, restoring it if it is hibernated, and hibernates others if
+     * needed. A document that isn't in the budget yet is added to it.
+     *
+     * @param document used document
+     */
+    public void use(final Hibernatable document) {
+        final int index = indexOf(document);
+        if (index != -1) {
+            documents.remove(index);
+        }
+        documents.add(document);
+        document.restore(); // or cancels its hibernation
+        enforce();
+    }
+
+    /**
+     * Removes a closed document from the budget.
+     *
+     * @param document closed document
+     */
+    public void remove(final Hibernatable document) {
+        final int index = indexOf(document);
+        if (index != -1) {
+            documents.remove(index);
+        }
+    }
+
+    /**
+     * Stops checking the budget periodically.
+     */
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Hibernates the least recently used documents until the rest of them fit into the budget.
+     */
+    public void enforce() {
+        long total = 0;
+        for (final Hibernatable document : documents) {
+            total += document.getFootprint();
+        }
+        for (int i = 0, last = documents.size() - 1; i < last && total > budget; i++) {
+            final Hibernatable document = documents.get(i);
+            final long footprint = document.getFootprint();
+            if (footprint > 0 && document.hibernate()) {
+                total -= footprint;
+            }
+        }
+    }
+
+    /**
+     * Documents are compared by identity, two untitled documents are equal but not the same.
+     */
+    private int indexOf(final Hibernatable document) {
+        for (int i = 0; i < documents.size(); i++) {
+            if (documents.get(i) == document) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
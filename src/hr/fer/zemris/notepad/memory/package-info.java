@@ -0,0 +1,8 @@
+/**
+ * This package contains the memory budget of open documents, which hibernates the least recently used ones by
+ * dropping them or keeping their text compressed outside of the heap.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.memory;
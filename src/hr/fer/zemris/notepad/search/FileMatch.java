@@ -0,0 +1,58 @@
+package hr.fer.zemris.notepad.search;
+
+import java.nio.file.Path;
+
+/**
+ * Line of a file that contains a match of a {@link FileSearch}.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class FileMatch {
+
+    private final Path file;
+    /** Index of the line, starting from 0 */
+    private final int line;
+    /** Text of the line, possibly shortened */
+    private final String text;
+
+    /**
+     * Creates a new match.
+     *
+     * @param file file that contains the match
+     * @param line index of the line, starting from 0
+     * @param text text of the line
+     */
+    public FileMatch(final Path file, final int line, final String text) {
+        this.file = file;
+        this.line = line;
+        this.text = text;
+    }
+
+    /**
+     * @return file that contains the match
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return index of the line, starting from 0
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return text of the line, possibly shortened
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return file + ":" + (line + 1) + ": " + text;
+    }
+
+}
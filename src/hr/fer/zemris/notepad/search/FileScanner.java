@@ -0,0 +1,425 @@
+package hr.fer.zemris.notepad.search;
+
+import hr.fer.zemris.notepad.io.CharsetDetector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Finds the lines of a file that match a {@link SearchQuery}. Small files are read into a reused buffer and larger
+ * ones are memory-mapped, one region of at most {@value #REGION} bytes at a time. The charset of every file is guessed
+ * by the {@link CharsetDetector} from its first bytes, the same way the editor guesses it when the file is opened.
+ * <p>
+ * A literal query in UTF-8, ASCII or ISO-8859-1 is found by Boyer-Moore-Horspool directly in the bytes, without
+ * decoding the file. Case is ignored only for ASCII letters there, so that path is taken only if the query has no
+ * other letters or case matters, and in UTF-8 it doesn't match the few other letters that fold onto an ASCII one, like
+ * the Kelvin sign or the long s. Any other query decodes the file into windows of {@value #WINDOW} characters that end
+ * at line breaks and searches the characters. A line longer than a window is cut, and the characters a literal match
+ * needs to cross the cut are searched again with the next window, so the window never grows. The length of a regular
+ * expression match isn't known, so {@value #REGEX_OVERLAP} characters are searched again for it, and only a match of
+ * a longer line that is longer than that can be missed. Every matching line is reported once, and files that the
+ * detector finds binary are skipped.
+ * <p>
+ * A scanner reuses its buffers, so it must be used by one thread at a time.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class FileScanner {
+
+    /** Files smaller than this are read instead of mapped */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+    /** Maximum number of bytes mapped at once */
+    private static final int REGION = 1 << 30;
+    /** Number of characters decoded and searched at once */
+    private static final int WINDOW = 1 << 20;
+    /** Characters at the end of a window cut inside a line that are searched again for a regular expression */
+    private static final int REGEX_OVERLAP = WINDOW / 4;
+    /** Maximum number of bytes or characters of a line that are reported */
+    private static final int MAX_LINE = 512;
+
+    private final SearchQuery query;
+    /** If ASCII letters are compared case folded */
+    private final boolean foldAscii;
+    /** Charset of the scanned file, the pattern and the decoder are prepared for it */
+    private Charset charset;
+    /** Encoded literal, case folded if case doesn't matter, <code>null</code> if characters are searched */
+    private byte[] pattern;
+    /** Skip table of {@link #pattern} */
+    private final int[] skip = new int[256];
+    private CharsetDecoder decoder;
+    /** Buffer for small files */
+    private final ByteBuffer small = ByteBuffer.allocate(MAP_THRESHOLD);
+    /** Decoded window and the characters carried into the next one, allocated when it is first needed */
+    private CharBuffer chars;
+    /** Characters at the end of a window that is cut inside a line which are searched again with the next window */
+    private final int overlap;
+
+    /** File that is being scanned */
+    private Path file;
+    /** Receives matching lines */
+    private Consumer<FileMatch> matches;
+    /** Index of the line at {@link #counted} */
+    private int line;
+    /** Offset in the current buffer up to which line breaks were counted */
+    private int counted;
+    /** Offset in the current buffer where the line at {@link #counted} starts */
+    private int lineStart;
+    /** Start of the line at {@link #counted} if it started in an earlier window, <code>null</code> otherwise */
+    private String lineHead;
+    /** Index of the line that was reported last */
+    private int reported;
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param query what is searched for
+     */
+    FileScanner(final SearchQuery query) {
+        this.query = query;
+        overlap = query.isLiteral() ? Math.max(0, query.getText().length() - 1) : REGEX_OVERLAP;
+        foldAscii = !query.isMatchCase();
+    }
+
+    /**
+     * Prepares the decoder and the encoded literal for the charset of a file, unless the previous file had the same
+     * charset.
+     */
+    private void prepare(final Charset charset) {
+        if (charset.equals(this.charset)) {
+            return;
+        }
+        this.charset = charset;
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                CodingErrorAction.REPLACE);
+        final String text = query.getText();
+        if (query.isLiteral() && isByteSearchable(charset) && (query.isMatchCase() || isAsciiCaseless(text))) {
+            pattern = text.getBytes(charset);
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = fold(pattern[i]);
+            }
+            Arrays.fill(skip, pattern.length);
+            for (int i = 0, last = pattern.length - 1; i < last; i++) {
+                skip[pattern[i] & 0xFF] = last - i;
+            }
+        } else {
+            pattern = null;
+        }
+    }
+
+    /**
+     * Checks if literals in the charset can be found in bytes: every character has a single encoding, and no match of
+     * the encoded literal can start inside the encoding of another character.
+     */
+    private static boolean isByteSearchable(final Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII) || charset.equals(
+                StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Checks if the text has no letters besides ASCII ones, such as the dotted and dotless i, the Kelvin sign or the
+     * long s, which fold onto ASCII letters and can't be matched by folding bytes.
+     */
+    private static boolean isAsciiCaseless(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x80 && Character.isLetter(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte fold(final byte b) {
+        return foldAscii && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Reports every line of the file that contains a match.
+     *
+     * @param path scanned file
+     * @param listener receives matching lines
+     * @param cancelled tells if the search was cancelled
+     * @throws IOException if the file can't be read
+     */
+    void scan(final Path path, final Consumer<FileMatch> listener, final BooleanSupplier cancelled)
+            throws IOException {
+        file = path;
+        matches = listener;
+        line = 0;
+        reported = -1;
+        lineHead = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                small.clear();
+                while (small.hasRemaining() && channel.read(small) != -1) {
+                    // read until the buffer is full or the file ends
+                }
+                small.flip();
+                if (start(small, true)) {
+                    scanRegion(small, true, cancelled);
+                }
+                return;
+            }
+
+            long position = 0;
+            while (position < size && !cancelled.getAsBoolean()) {
+                final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION,
+                        size - position));
+                if (position == 0 && !start(region, false)) {
+                    return;
+                }
+                final boolean last = position + region.limit() == size;
+                if (pattern != null && !last) {
+                    region.limit(lastLineEnd(region, 0, region.limit()));
+                }
+                scanRegion(region, last, cancelled);
+                // characters that the end of the region cut are decoded with the next region
+                position += pattern != null ? region.limit() : region.position();
+            }
+        } finally {
+            file = null;
+            matches = null;
+        }
+    }
+
+    /**
+     * Guesses the charset of the file from its first bytes and prepares for it.
+     *
+     * @param bytes first bytes of the file
+     * @param whole <code>true</code> if these are all the bytes of the file
+     * @return <code>false</code> if the file is binary
+     */
+    private boolean start(final ByteBuffer bytes, final boolean whole) {
+        final ByteBuffer prefix = bytes.duplicate();
+        prefix.limit(Math.min(prefix.limit(), CharsetDetector.PREFIX_SIZE));
+        if (CharsetDetector.isBinary(prefix)) {
+            return false;
+        }
+        prepare(CharsetDetector.detect(prefix, whole && prefix.limit() == bytes.limit()));
+        if (pattern == null) {
+            startChars();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset after the last line break in <code>[from, to)</code>, or <code>to</code> if there is none.
+     */
+    private static int lastLineEnd(final ByteBuffer bytes, final int from, final int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (bytes.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Scans a region of the file. Characters are decoded continuing from the previous region.
+     *
+     * @param last <code>true</code> if the region ends the file
+     */
+    private void scanRegion(final ByteBuffer bytes, final boolean last, final BooleanSupplier cancelled) {
+        counted = 0;
+        lineStart = 0;
+        if (pattern != null) {
+            scanBytes(bytes);
+        } else {
+            scanChars(bytes, last, cancelled);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // ........................................Bytes...............................................
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Finds the encoded literal in the bytes with Boyer-Moore-Horspool.
+     */
+    private void scanBytes(final ByteBuffer bytes) {
+        final int limit = bytes.limit();
+        final int last = pattern.length - 1;
+        int position = 0;
+        while (position + pattern.length <= limit) {
+            int i = last;
+            while (i >= 0 && fold(bytes.get(position + i)) == pattern[i]) {
+                i--;
+            }
+            if (i >= 0) {
+                position += skip[fold(bytes.get(position + last)) & 0xFF];
+                continue;
+            }
+            countBytes(bytes, position);
+            final int end = lineEnd(bytes, position + pattern.length, limit);
+            final ByteBuffer text = bytes.duplicate();
+            text.limit(Math.min(end, lineStart + MAX_LINE)).position(lineStart);
+            report(charset.decode(text));
+            position = nextLine(end, limit);
+        }
+        countBytes(bytes, limit);
+    }
+
+    /**
+     * Counts line breaks up to the given offset.
+     */
+    private void countBytes(final ByteBuffer bytes, final int to) {
+        for (int i = counted; i < to; i++) {
+            if (bytes.get(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        counted = to;
+    }
+
+    private static int lineEnd(final ByteBuffer bytes, int from, final int limit) {
+        while (from < limit && bytes.get(from) != '\n') {
+            from++;
+        }
+        return from;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // ......................................Characters............................................
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Prepares decoding a new file.
+     */
+    private void startChars() {
+        if (chars == null) {
+            chars = CharBuffer.allocate(WINDOW);
+        }
+        chars.clear();
+        decoder.reset();
+    }
+
+    /**
+     * Decodes the bytes into the window and searches it every time it is full, and once more at the end of the file.
+     */
+    private void scanChars(final ByteBuffer bytes, final boolean last, final BooleanSupplier cancelled) {
+        while (!cancelled.getAsBoolean()) {
+            if (decoder.decode(bytes, chars, last).isOverflow()) {
+                searchWindow(false);
+            } else if (last) {
+                while (decoder.flush(chars).isOverflow()) {
+                    searchWindow(false);
+                }
+                searchWindow(true);
+                return;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Searches the window. Unless the file ends, the window is cut after its last line break and the rest of it is
+     * carried into the next window. A window without a line break is cut {@link #overlap} characters before its end,
+     * those are carried, and only matches that start before the cut are taken, the others are found again.
+     *
+     * @param end <code>true</code> if the window ends the file
+     */
+    private void searchWindow(final boolean end) {
+        chars.flip();
+        final int length = chars.limit();
+        if (end) {
+            scanWindow(length, length);
+            chars.clear();
+            return;
+        }
+        int cut = length;
+        while (cut > 0 && chars.get(cut - 1) != '\n') {
+            cut--;
+        }
+        if (cut > 0) {
+            scanWindow(cut, cut);
+        } else {
+            cut = length - Math.min(overlap, length - 1); // the window is inside a line that is longer
+            scanWindow(length, cut);
+            if (lineHead == null) {
+                lineHead = chars.subSequence(lineStart, Math.min(length, lineStart + MAX_LINE)).toString();
+            }
+        }
+        chars.position(cut);
+        chars.compact();
+    }
+
+    /**
+     * Reports the lines of the first characters of the window that contain a match.
+     *
+     * @param limit offset after the last character that a match may span
+     * @param before matches are taken only if they start before this offset
+     */
+    private void scanWindow(final int limit, final int before) {
+        counted = 0;
+        lineStart = 0;
+        final Finder finder = query.finder(chars, 0, limit);
+        while (finder.find()) {
+            final int start = finder.start();
+            if (start >= before) {
+                break;
+            }
+            countChars(start);
+            if (line == reported) {
+                continue;
+            }
+            int end = start;
+            while (end < limit && chars.get(end) != '\n') {
+                end++;
+            }
+            report(lineHead != null ? lineHead : chars.subSequence(lineStart, Math.min(end, lineStart + MAX_LINE)));
+            reported = line;
+        }
+        countChars(before);
+    }
+
+    /**
+     * Counts line breaks up to the given offset.
+     */
+    private void countChars(final int to) {
+        for (int i = counted; i < to; i++) {
+            if (chars.get(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+                lineHead = null;
+            }
+        }
+        counted = to;
+    }
+
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Reports the line at {@link #counted}.
+     */
+    private void report(final CharSequence text) {
+        int length = text.length();
+        while (length > 0 && (text.charAt(length - 1) == '\r' || text.charAt(length - 1) == '\n')) {
+            length--;
+        }
+        final int start = line == 0 && length > 0 && text.charAt(0) == '\uFEFF' ? 1 : 0; // byte order mark
+        matches.accept(new FileMatch(file, line, text.subSequence(start, Math.max(start, length)).toString()));
+    }
+
+    /**
+     * Returns the offset after the line break at <code>end</code>.
+     */
+    private static int nextLine(final int end, final int limit) {
+        return Math.min(end + 1, limit);
+    }
+
+}
@@ -0,0 +1,187 @@
+package hr.fer.zemris.notepad.search;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Searches all files in a directory tree. One thread walks the tree and hands the files to a bounded pool of
+ * threads, which scan them with a {@link FileScanner} each. The walk waits while {@value #MAX_QUEUED} files are
+ * waiting to be scanned, and at most {@value #MAX_OPEN_FILES} files are open at once, so a search of a huge tree takes
+ * a bounded amount of memory and file handles.
+ * <p>
+ * Matching lines are delivered to the listener from the pool threads as soon as they are found. The charset of every
+ * file is guessed on its own. Files that can't be read are skipped.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class FileSearch {
+
+    /** Maximum number of files that are open at once */
+    public static final int MAX_OPEN_FILES = 16;
+    /** Maximum number of files that wait to be scanned */
+    private static final int MAX_QUEUED = 1024;
+    /** Number of threads that scan files, scanning mostly waits for the disk */
+    private static final int THREADS = Math.min(MAX_OPEN_FILES, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final Path root;
+    private final SearchQuery query;
+    /** Receives matching lines, on the pool threads */
+    private final Consumer<FileMatch> listener;
+    /** Invoked on a pool thread, or the walking thread, when the search ends */
+    private final Runnable finished;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                final Thread thread = new Thread(r, "find-in-files");
+                thread.setDaemon(true);
+                return thread;
+            });
+    /** Scanner of every pool thread */
+    private final ThreadLocal<FileScanner> scanners;
+    /** Limits the number of files that wait to be scanned */
+    private final Semaphore queued = new Semaphore(MAX_QUEUED);
+    /** Limits the number of open files */
+    private final Semaphore openFiles = new Semaphore(MAX_OPEN_FILES);
+    /** Files that are not scanned yet, plus one while the tree is walked */
+    private final AtomicInteger pending = new AtomicInteger(1);
+    /** Number of scanned files */
+    private final AtomicInteger scanned = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new search, which is started by {@link #start()}.
+     *
+     * @param root directory whose files are searched
+     * @param query what is searched for
+     * @param listener receives matching lines, on the threads that scan the files
+     * @param finished invoked when the search ends, also on one of the search threads
+     */
+    public FileSearch(final Path root, final SearchQuery query, final Consumer<FileMatch> listener,
+            final Runnable finished) {
+        this.root = root;
+        this.query = query;
+        this.listener = listener;
+        this.finished = finished;
+        scanners = ThreadLocal.withInitial(() -> new FileScanner(query));
+    }
+
+    /**
+     * Starts walking the directory tree on a new thread.
+     */
+    public void start() {
+        final Thread walker = new Thread(this::walk, "find-in-files-walker");
+        walker.setDaemon(true);
+        walker.start();
+    }
+
+    /**
+     * Stops the search. Files that are being scanned stop soon, but some matches may still be delivered.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return <code>true</code> if the search was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return number of files scanned so far
+     */
+    public int getScannedFiles() {
+        return scanned.get();
+    }
+
+    /**
+     * @return searched directory
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return what is searched for
+     */
+    public SearchQuery getQuery() {
+        return query;
+    }
+
+    private void walk() {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    if (cancelled) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (attrs.isRegularFile()) {
+                        submit(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // files that were found are still searched
+        } finally {
+            done();
+        }
+    }
+
+    private void submit(final Path file) {
+        queued.acquireUninterruptibly();
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                scan(file);
+            } finally {
+                queued.release();
+                done();
+            }
+        });
+    }
+
+    private void scan(final Path file) {
+        if (cancelled) {
+            return;
+        }
+        openFiles.acquireUninterruptibly();
+        try {
+            scanners.get().scan(file, listener, this::isCancelled);
+        } catch (IOException | RuntimeException e) {
+            // unreadable files are skipped, a file that changes while mapped may also fail to read
+        } finally {
+            openFiles.release();
+            scanned.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks that a file was scanned or that the walk is over, and ends the search after the last one.
+     */
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            executor.shutdown();
+            finished.run();
+        }
+    }
+
+}
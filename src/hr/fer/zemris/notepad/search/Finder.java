@@ -0,0 +1,38 @@
+package hr.fer.zemris.notepad.search;
+
+/**
+ * Finds matches of a {@link SearchQuery} one after another in a range of a {@link CharSequence}. Matches don't
+ * overlap, the search for the next match continues after the end of the previous one.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+abstract class Finder {
+
+    /**
+     * Finds the next match.
+     *
+     * @return <code>true</code> if a match was found
+     */
+    abstract boolean find();
+
+    /**
+     * @return offset of the first character of the last match
+     */
+    abstract int start();
+
+    /**
+     * @return offset after the last character of the last match
+     */
+    abstract int end();
+
+    /**
+     * Appends the text that replaces the last match.
+     *
+     * @param template replacement as the user wrote it
+     * @param out where the replacement is appended
+     * @throws IllegalArgumentException if the template is not valid
+     */
+    abstract void appendReplacement(String template, StringBuilder out);
+
+}
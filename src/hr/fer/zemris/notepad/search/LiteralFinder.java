@@ -0,0 +1,122 @@
+package hr.fer.zemris.notepad.search;
+
+import java.util.Arrays;
+
+/**
+ * Finds a literal string with the Boyer-Moore-Horspool algorithm. The skip table has 256 entries and is indexed by the
+ * low byte of a character, characters that share an entry share the smallest of their skips, so the table stays small
+ * for any alphabet. Without matching case both the pattern and the text are compared case folded.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class LiteralFinder extends Finder {
+
+    private final CharSequence text;
+    /** Searched string, case folded if case doesn't matter */
+    private final char[] pattern;
+    /** How far the pattern can move when the text under its last character is the given character */
+    private final int[] skip;
+    private final boolean matchCase;
+    /** Offset after the last character that may be matched */
+    private final int to;
+
+    /** Offset where the pattern is tried next */
+    private int position;
+    private int start = -1;
+
+    /**
+     * Creates a new finder.
+     *
+     * @param text searched text
+     * @param from offset where the search starts
+     * @param to offset where the search ends
+     * @param pattern prepared pattern
+     * @param skip skip table of the pattern
+     * @param matchCase if case matters
+     */
+    LiteralFinder(final CharSequence text, final int from, final int to, final char[] pattern, final int[] skip,
+            final boolean matchCase) {
+        this.text = text;
+        this.position = from;
+        this.to = to;
+        this.pattern = pattern;
+        this.skip = skip;
+        this.matchCase = matchCase;
+    }
+
+    /**
+     * Prepares the pattern for the search.
+     *
+     * @param string searched string
+     * @param matchCase if case matters
+     * @return pattern the finder compares with the text
+     */
+    static char[] pattern(final String string, final boolean matchCase) {
+        final char[] pattern = string.toCharArray();
+        if (!matchCase) {
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = fold(pattern[i]);
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * Builds the skip table of the pattern.
+     *
+     * @param pattern prepared pattern
+     * @return skip table
+     */
+    static int[] skip(final char[] pattern) {
+        final int[] skip = new int[256];
+        Arrays.fill(skip, pattern.length);
+        for (int i = 0, last = pattern.length - 1; i < last; i++) {
+            skip[pattern[i] & 0xFF] = last - i; // later characters have smaller skips
+        }
+        return skip;
+    }
+
+    private static char fold(final char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    @Override
+    boolean find() {
+        final int last = pattern.length - 1;
+        while (position + pattern.length <= to) {
+            int i = last;
+            while (i >= 0 && charAt(position + i) == pattern[i]) {
+                i--;
+            }
+            if (i < 0) {
+                start = position;
+                position += pattern.length;
+                return true;
+            }
+            position += skip[charAt(position + last) & 0xFF];
+        }
+        return false;
+    }
+
+    private char charAt(final int index) {
+        final char c = text.charAt(index);
+        return matchCase ? c : fold(c);
+    }
+
+    @Override
+    int start() {
+        return start;
+    }
+
+    @Override
+    int end() {
+        return start + pattern.length;
+    }
+
+    @Override
+    void appendReplacement(final String template, final StringBuilder out) {
+        out.append(template);
+    }
+
+}
@@ -0,0 +1,21 @@
+package hr.fer.zemris.notepad.search;
+
+/**
+ * Receives matches as they are found.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface MatchListener {
+
+    /**
+     * Invoked for every match, in increasing order of offsets.
+     *
+     * @param start offset of the first matched character
+     * @param end offset after the last matched character
+     * @return <code>false</code> to stop the search
+     */
+    boolean matched(int start, int end);
+
+}
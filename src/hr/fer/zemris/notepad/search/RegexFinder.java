@@ -0,0 +1,92 @@
+package hr.fer.zemris.notepad.search;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds matches of a regular expression with {@link Matcher}. Replacement templates are expanded like in
+ * {@link Matcher#appendReplacement(StringBuffer, String)}, <code>$n</code> and <code>${name}</code> are replaced with
+ * groups and a backslash escapes the next character, but only the replacement is built, not the text before it.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class RegexFinder extends Finder {
+
+    private final Matcher matcher;
+
+    /**
+     * Creates a new finder.
+     *
+     * @param text searched text
+     * @param from offset where the search starts
+     * @param to offset where the search ends
+     * @param pattern searched pattern
+     */
+    RegexFinder(final CharSequence text, final int from, final int to, final Pattern pattern) {
+        matcher = pattern.matcher(text).region(from, to).useTransparentBounds(true).useAnchoringBounds(false);
+    }
+
+    @Override
+    boolean find() {
+        return matcher.find();
+    }
+
+    @Override
+    int start() {
+        return matcher.start();
+    }
+
+    @Override
+    int end() {
+        return matcher.end();
+    }
+
+    @Override
+    void appendReplacement(final String template, final StringBuilder out) {
+        final int length = template.length();
+        int i = 0;
+        while (i < length) {
+            final char c = template.charAt(i++);
+            if (c == '\\') {
+                if (i == length) {
+                    throw new IllegalArgumentException("Character to be escaped is missing");
+                }
+                out.append(template.charAt(i++));
+            } else if (c != '$') {
+                out.append(c);
+            } else if (i < length && template.charAt(i) == '{') {
+                final int close = template.indexOf('}', i);
+                if (close == -1) {
+                    throw new IllegalArgumentException("Named group is missing the closing '}'");
+                }
+                append(matcher.group(template.substring(i + 1, close)), out);
+                i = close + 1;
+            } else {
+                if (i == length || !Character.isDigit(template.charAt(i))) {
+                    throw new IllegalArgumentException("Illegal group reference");
+                }
+                int group = template.charAt(i++) - '0';
+                while (i < length && Character.isDigit(template.charAt(i))) {
+                    final int next = group * 10 + template.charAt(i) - '0';
+                    if (next > matcher.groupCount()) {
+                        break; // like Matcher, takes as many digits as make a valid group
+                    }
+                    group = next;
+                    i++;
+                }
+                if (group > matcher.groupCount()) {
+                    throw new IllegalArgumentException("No group " + group);
+                }
+                append(matcher.group(group), out);
+            }
+        }
+    }
+
+    private static void append(final CharSequence group, final StringBuilder out) {
+        if (group != null) {
+            out.append(group);
+        }
+    }
+
+}
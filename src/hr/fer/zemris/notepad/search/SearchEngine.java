@@ -0,0 +1,92 @@
+package hr.fer.zemris.notepad.search;
+
+import hr.fer.zemris.notepad.document.ReplaceBatch;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+/**
+ * Finds and replaces text in a {@link TextSnapshot}. The snapshot is read through a {@link TextCharSequence}, so the
+ * document is never copied, and because snapshots don't change, a search can run on any thread while the document is
+ * being edited. Matches are delivered to a {@link MatchListener} as soon as they are found, and replacing builds a
+ * {@link ReplaceBatch} that changes the document in a single edit.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class SearchEngine {
+
+    private SearchEngine() {
+    }
+
+    /**
+     * Finds matches of the query in characters <code>[from, to)</code> of the snapshot.
+     *
+     * @param snapshot searched text
+     * @param query what is searched for
+     * @param from offset where the search starts
+     * @param to offset where the search ends
+     * @param listener receives the matches
+     * @return <code>false</code> if the listener stopped the search
+     */
+    public static boolean find(final TextSnapshot snapshot, final SearchQuery query, final int from, final int to,
+            final MatchListener listener) {
+        final Finder finder = query.finder(new TextCharSequence(snapshot), from, to);
+        while (finder.find()) {
+            if (!listener.matched(finder.start(), finder.end())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds all matches of the query in the snapshot and collects their replacements. For a regular expression the
+     * replacement may refer to groups, as in {@link java.util.regex.Matcher#appendReplacement(StringBuffer, String)},
+     * for a literal query it is used as it is.
+     *
+     * @param snapshot searched text
+     * @param query what is searched for
+     * @param replacement replacement of every match
+     * @param listener receives the matches as they are found
+     * @return replacements that can be applied to the document, <code>null</code> if the listener stopped the search
+     * @throws IllegalArgumentException if the replacement is not valid
+     */
+    public static ReplaceBatch replaceAll(final TextSnapshot snapshot, final SearchQuery query,
+            final String replacement, final MatchListener listener) {
+        final ReplaceBatch batch = new ReplaceBatch(snapshot);
+        final Finder finder = query.finder(new TextCharSequence(snapshot), 0, snapshot.length());
+        final StringBuilder text = new StringBuilder();
+        while (finder.find()) {
+            if (!listener.matched(finder.start(), finder.end())) {
+                return null;
+            }
+            text.setLength(0);
+            finder.appendReplacement(replacement, text);
+            batch.add(finder.start(), finder.end(), text);
+        }
+        return batch;
+    }
+
+    /**
+     * Returns the replacement of characters <code>[start, end)</code> of the snapshot, if they are exactly a match of
+     * the query. Surrounding text is visible to the query, so anchors and lookarounds work as they do in a search.
+     *
+     * @param snapshot searched text
+     * @param query what is searched for
+     * @param start offset of the first character
+     * @param end offset after the last character
+     * @param replacement replacement of a match
+     * @return expanded replacement, or <code>null</code> if the range is not a match
+     * @throws IllegalArgumentException if the replacement is not valid
+     */
+    public static String replacement(final TextSnapshot snapshot, final SearchQuery query, final int start,
+            final int end, final String replacement) {
+        final Finder finder = query.finder(new TextCharSequence(snapshot), start, end);
+        if (!finder.find() || finder.start() != start || finder.end() != end) {
+            return null;
+        }
+        final StringBuilder text = new StringBuilder();
+        finder.appendReplacement(replacement, text);
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,83 @@
+package hr.fer.zemris.notepad.search;
+
+import java.util.regex.Pattern;
+
+/**
+ * What is searched for: either a literal string, which is found with Boyer-Moore-Horspool, or a regular expression,
+ * which is found with {@link java.util.regex}. A query is prepared once and can then be used by any number of
+ * searches on any thread. In a regular expression <code>^</code> and <code>$</code> match at line breaks.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class SearchQuery {
+
+    /** Searched text or regular expression */
+    private final String text;
+    /** Compiled regular expression, <code>null</code> for a literal string */
+    private final Pattern regex;
+    /** Literal pattern, <code>null</code> for a regular expression */
+    private final char[] literal;
+    /** Skip table of the literal pattern */
+    private final int[] skip;
+    private final boolean matchCase;
+
+    /**
+     * Creates a new query.
+     *
+     * @param text searched text or regular expression, not empty
+     * @param regex if the text is a regular expression
+     * @param matchCase if case matters
+     * @throws IllegalArgumentException if the text is empty or not a valid regular expression
+     */
+    public SearchQuery(final String text, final boolean regex, final boolean matchCase) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to search for");
+        }
+        this.text = text;
+        this.matchCase = matchCase;
+        if (regex) {
+            final int flags = matchCase ? Pattern.MULTILINE : Pattern.MULTILINE | Pattern.CASE_INSENSITIVE
+                    | Pattern.UNICODE_CASE;
+            this.regex = Pattern.compile(text, flags);
+            this.literal = null;
+            this.skip = null;
+        } else {
+            this.regex = null;
+            this.literal = LiteralFinder.pattern(text, matchCase);
+            this.skip = LiteralFinder.skip(literal);
+        }
+    }
+
+    /**
+     * @return searched text or regular expression
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return <code>true</code> if the text is searched for literally
+     */
+    boolean isLiteral() {
+        return regex == null;
+    }
+
+    /**
+     * @return <code>true</code> if case matters
+     */
+    boolean isMatchCase() {
+        return matchCase;
+    }
+
+    /**
+     * Creates a finder of this query in characters <code>[from, to)</code> of the given text.
+     */
+    Finder finder(final CharSequence text, final int from, final int to) {
+        if (regex != null) {
+            return new RegexFinder(text, from, to, regex);
+        }
+        return new LiteralFinder(text, from, to, literal, skip, matchCase);
+    }
+
+}
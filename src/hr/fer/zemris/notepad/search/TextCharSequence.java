@@ -0,0 +1,95 @@
+package hr.fer.zemris.notepad.search;
+
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import javax.swing.text.Segment;
+
+/**
+ * {@link CharSequence} view of a range of a {@link TextSnapshot} that doesn't copy the text. It remembers the segment
+ * of the piece it read last, with the characters of the piece on both sides of the one that was read, so reading
+ * characters forward or backward costs an array access, and only moving into another piece looks the piece up in the
+ * tree. A view keeps this state, so it must not be shared between threads, but any number of
+ * views can read the same snapshot.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class TextCharSequence implements CharSequence {
+
+    private final TextSnapshot snapshot;
+    /** Offset of the first character of the view in the snapshot */
+    private final int start;
+    /** Offset after the last character of the view in the snapshot */
+    private final int end;
+
+    /** Characters of the piece that was read last */
+    private final Segment segment = new Segment();
+    /** Offset in the snapshot of the first character of {@link #segment} that is in the view */
+    private int segmentStart;
+    /** Offset in the snapshot after the last character of {@link #segment} that is in the view */
+    private int segmentEnd;
+    /** Index in the array of {@link #segment} minus the offset in the snapshot of the same character */
+    private int shift;
+
+    /**
+     * Creates a view of the whole snapshot.
+     *
+     * @param snapshot viewed text
+     */
+    public TextCharSequence(final TextSnapshot snapshot) {
+        this(snapshot, 0, snapshot.length());
+    }
+
+    /**
+     * Creates a view of characters <code>[start, end)</code> of the snapshot.
+     *
+     * @param snapshot viewed text
+     * @param start offset of the first character
+     * @param end offset after the last character
+     */
+    public TextCharSequence(final TextSnapshot snapshot, final int start, final int end) {
+        if (start < 0 || start > end || end > snapshot.length()) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + ")");
+        }
+        this.snapshot = snapshot;
+        this.start = start;
+        this.end = end;
+        segment.setPartialReturn(true);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int offset = start + index;
+        if (offset < segmentStart || offset >= segmentEnd) {
+            if (index < 0 || offset >= end) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            final int first = snapshot.getPieceChars(offset, segment);
+            segmentStart = Math.max(first, start);
+            segmentEnd = Math.min(first + segment.count, end);
+            shift = segment.offset - first;
+        }
+        return segment.array[offset + shift];
+    }
+
+    @Override
+    public CharSequence subSequence(final int from, final int to) {
+        if (from < 0 || from > to || to > length()) {
+            throw new IndexOutOfBoundsException("Range: [" + from + ", " + to + ")");
+        }
+        return new TextCharSequence(snapshot, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = new char[length()];
+        snapshot.copyChars(start, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the search engine, which finds and replaces text in snapshots of documents without copying
+ * them.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.search;
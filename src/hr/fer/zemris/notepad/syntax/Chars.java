@@ -0,0 +1,110 @@
+package hr.fer.zemris.notepad.syntax;
+
+/**
+ * Scanning helpers shared by the lexers. All of them look at characters <code>[from, end)</code> of an array.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class Chars {
+
+    private Chars() {
+    }
+
+    /**
+     * @return <code>true</code> if the text at the given index starts with the given string
+     */
+    static boolean startsWith(final char[] text, final int from, final int end, final String s) {
+        if (end - from < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (text[from + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return index of the first occurrence of the string, <code>-1</code> if there is none
+     */
+    static int indexOf(final char[] text, final int from, final int end, final String s) {
+        final char first = s.charAt(0);
+        for (int i = from; i <= end - s.length(); i++) {
+            if (text[i] == first && startsWith(text, i, end, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the closing quote of a quoted string.
+     *
+     * @param from index after the opening quote
+     * @param quote the quote character
+     * @param escapes <code>true</code> if a backslash escapes the character after it
+     * @return index after the closing quote, <code>-1</code> if the string isn't closed
+     */
+    static int quotedEnd(final char[] text, final int from, final int end, final char quote, final boolean escapes) {
+        for (int i = from; i < end; i++) {
+            if (text[i] == quote) {
+                return i + 1;
+            } else if (text[i] == '\\' && escapes) {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return index after the Java identifier that starts at the given index
+     */
+    static int identifierEnd(final char[] text, final int from, final int end) {
+        int i = from;
+        while (i < end && Character.isJavaIdentifierPart(text[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the end of a number literal, which can have a fraction, an exponent, a radix prefix, a type suffix and
+     * underscores between digits.
+     *
+     * @return index after the number that starts at the given index
+     */
+    static int numberEnd(final char[] text, final int from, final int end) {
+        final boolean hex = text[from] == '0' && from + 1 < end && (text[from + 1] | 0x20) == 'x';
+        final char exponent = hex ? 'p' : 'e';
+        int i = from;
+        while (i < end) {
+            final char c = text[i];
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '.') {
+                i++;
+            } else if ((c == '+' || c == '-') && i > from && (text[i - 1] | 0x20) == exponent) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return index of the first character that isn't a space or a tab
+     */
+    static int skipBlanks(final char[] text, final int from, final int end) {
+        int i = from;
+        while (i < end && (text[i] == ' ' || text[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
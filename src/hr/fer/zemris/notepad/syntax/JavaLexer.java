@@ -0,0 +1,113 @@
+package hr.fer.zemris.notepad.syntax;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lexer of Java source. Block comments and text blocks can span lines, and each of them is a state of its own.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class JavaLexer implements Lexer {
+
+    /** State outside of comments and text blocks */
+    private static final int CODE = 0;
+    /** State inside a block comment */
+    private static final int BLOCK_COMMENT = 1;
+    /** State inside a text block */
+    private static final int TEXT_BLOCK = 2;
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("abstract", "assert", "boolean", "break",
+            "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum",
+            "extends", "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+            "interface", "long", "native", "new", "package", "private", "protected", "public", "record", "return",
+            "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient",
+            "try", "var", "void", "volatile", "while", "yield"));
+    private static final Set<String> LITERALS = new HashSet<>(Arrays.asList("true", "false", "null"));
+
+    @Override
+    public int lex(final char[] text, final int start, final int end, final int state, final TokenSink tokens) {
+        int i = start;
+        if (state == BLOCK_COMMENT || state == TEXT_BLOCK) {
+            final int close = state == BLOCK_COMMENT ? commentEnd(text, i, end) : textBlockEnd(text, i, end);
+            if (close == -1) {
+                tokens.token(i, end, state == BLOCK_COMMENT ? TokenType.COMMENT : TokenType.STRING);
+                return state;
+            }
+            tokens.token(i, close, state == BLOCK_COMMENT ? TokenType.COMMENT : TokenType.STRING);
+            i = close;
+        }
+
+        while (i < end) {
+            final char c = text[i];
+            final char next = i + 1 < end ? text[i + 1] : 0;
+            if (c == '/' && next == '/') {
+                tokens.token(i, end, TokenType.COMMENT);
+                return CODE;
+            } else if (c == '/' && next == '*') {
+                final int close = commentEnd(text, i + 2, end);
+                tokens.token(i, close == -1 ? end : close, TokenType.COMMENT);
+                if (close == -1) {
+                    return BLOCK_COMMENT;
+                }
+                i = close;
+            } else if (Chars.startsWith(text, i, end, "\"\"\"")) {
+                final int close = textBlockEnd(text, i + 3, end);
+                tokens.token(i, close == -1 ? end : close, TokenType.STRING);
+                if (close == -1) {
+                    return TEXT_BLOCK;
+                }
+                i = close;
+            } else if (c == '"' || c == '\'') {
+                final int close = Chars.quotedEnd(text, i + 1, end, c, true);
+                tokens.token(i, close == -1 ? end : close, TokenType.STRING);
+                i = close == -1 ? end : close;
+            } else if (c == '@' && Character.isJavaIdentifierStart(next)) {
+                final int wordEnd = Chars.identifierEnd(text, i + 1, end);
+                tokens.token(i, wordEnd, TokenType.ANNOTATION);
+                i = wordEnd;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                final int wordEnd = Chars.identifierEnd(text, i, end);
+                final String word = new String(text, i, wordEnd - i);
+                if (KEYWORDS.contains(word)) {
+                    tokens.token(i, wordEnd, TokenType.KEYWORD);
+                } else if (LITERALS.contains(word)) {
+                    tokens.token(i, wordEnd, TokenType.LITERAL);
+                }
+                i = wordEnd;
+            } else if (Chars.isDigit(c) || c == '.' && Chars.isDigit(next)) {
+                final int numberEnd = Chars.numberEnd(text, i, end);
+                tokens.token(i, numberEnd, TokenType.NUMBER);
+                i = numberEnd;
+            } else {
+                i++;
+            }
+        }
+        return CODE;
+    }
+
+    /**
+     * @return index after the end of a block comment, <code>-1</code> if it doesn't end in the line
+     */
+    private static int commentEnd(final char[] text, final int from, final int end) {
+        final int close = Chars.indexOf(text, from, end, "*/");
+        return close == -1 ? -1 : close + 2;
+    }
+
+    /**
+     * @return index after the end of a text block, <code>-1</code> if it doesn't end in the line
+     */
+    private static int textBlockEnd(final char[] text, final int from, final int end) {
+        for (int i = from; i < end; i++) {
+            if (text[i] == '\\') {
+                i++;
+            } else if (Chars.startsWith(text, i, end, "\"\"\"")) {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+}
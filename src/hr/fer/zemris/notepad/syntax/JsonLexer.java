@@ -0,0 +1,46 @@
+package hr.fer.zemris.notepad.syntax;
+
+/**
+ * Lexer of JSON. Strings followed by a colon are keys. Nothing in JSON spans lines, so the state is always
+ * <code>0</code>.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class JsonLexer implements Lexer {
+
+    @Override
+    public int lex(final char[] text, final int start, final int end, final int state, final TokenSink tokens) {
+        int i = start;
+        while (i < end) {
+            final char c = text[i];
+            if (c == '"') {
+                final int close = Chars.quotedEnd(text, i + 1, end, '"', true);
+                final int stringEnd = close == -1 ? end : close;
+                final int after = Chars.skipBlanks(text, stringEnd, end);
+                tokens.token(i, stringEnd, after < end && text[after] == ':' ? TokenType.KEY : TokenType.STRING);
+                i = stringEnd;
+            } else if (Chars.isDigit(c) || c == '-') {
+                final int numberEnd = Chars.numberEnd(text, i + 1, end);
+                tokens.token(i, numberEnd, TokenType.NUMBER);
+                i = numberEnd;
+            } else if (Character.isLetter(c)) {
+                final int wordEnd = Chars.identifierEnd(text, i, end);
+                if (isLiteral(text, i, wordEnd)) {
+                    tokens.token(i, wordEnd, TokenType.LITERAL);
+                }
+                i = wordEnd;
+            } else {
+                i++;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isLiteral(final char[] text, final int from, final int to) {
+        final int length = to - from;
+        return length == 4 && (Chars.startsWith(text, from, to, "true") || Chars.startsWith(text, from, to, "null"))
+                || length == 5 && Chars.startsWith(text, from, to, "false");
+    }
+
+}
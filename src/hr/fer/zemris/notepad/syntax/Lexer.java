@@ -0,0 +1,43 @@
+package hr.fer.zemris.notepad.syntax;
+
+/**
+ * Splits text into tokens one line at a time. Everything a lexer needs to know about the lines before a line is its
+ * state at the start of the line, a single <code>int</code>, so that the highlighter can remember the state at the
+ * start of every line and lex any line on its own. Lexing a document starts in state <code>0</code>.
+ * <p>
+ * A lexer must not keep anything between calls, one instance lexes all documents of its kind on several threads.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public interface Lexer {
+
+    /**
+     * Lexes a single line and reports its tokens in order. Text that isn't reported is plain.
+     *
+     * @param text array that contains the line
+     * @param start index of the line's first character
+     * @param end index after the line's last character, the line break is not a part of the line
+     * @param state state at the start of the line
+     * @param tokens receives the tokens of the line
+     * @return state at the start of the next line
+     */
+    int lex(char[] text, int start, int end, int state, TokenSink tokens);
+
+    /**
+     * Receives tokens from a {@link Lexer}.
+     */
+    interface TokenSink {
+
+        /**
+         * Reports a token.
+         *
+         * @param start index of the token's first character
+         * @param end index after the token's last character
+         * @param type type of the token
+         */
+        void token(int start, int end, TokenType type);
+
+    }
+
+}
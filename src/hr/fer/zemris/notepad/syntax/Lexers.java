@@ -0,0 +1,59 @@
+package hr.fer.zemris.notepad.syntax;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of lexers by file name extension. Lexers of Java, JSON, XML, properties and log files are registered from
+ * the start, and others can be plugged in with {@link #register(Lexer, String...)}.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class Lexers {
+
+    /** Lexers by lower case extensions */
+    private static final Map<String, Lexer> BY_EXTENSION = new ConcurrentHashMap<>();
+
+    static {
+        register(new JavaLexer(), "java");
+        register(new JsonLexer(), "json");
+        register(new XmlLexer(), "xml", "xsd", "xsl", "xslt", "svg", "pom", "fxml", "html", "htm", "xhtml");
+        register(new PropertiesLexer(), "properties");
+        register(new LogLexer(), "log");
+    }
+
+    private Lexers() {
+    }
+
+    /**
+     * Registers a lexer for files with the given extensions, replacing lexers registered for them before.
+     *
+     * @param lexer lexer of the files
+     * @param extensions extensions of the files, without the dot
+     */
+    public static void register(final Lexer lexer, final String... extensions) {
+        for (final String extension : extensions) {
+            BY_EXTENSION.put(extension.toLowerCase(Locale.ROOT), lexer);
+        }
+    }
+
+    /**
+     * Finds the lexer of a file by its extension.
+     *
+     * @param path path of the file
+     * @return lexer of the file, <code>null</code> if none is registered for its extension
+     */
+    public static Lexer forFile(final Path path) {
+        final Path name = path.getFileName();
+        if (name == null) {
+            return null;
+        }
+        final String fileName = name.toString();
+        final int dot = fileName.lastIndexOf('.');
+        return dot == -1 ? null : BY_EXTENSION.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+}
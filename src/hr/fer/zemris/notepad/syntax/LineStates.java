@@ -0,0 +1,93 @@
+package hr.fer.zemris.notepad.syntax;
+
+import java.util.Arrays;
+
+/**
+ * Lexer states at the starts of the first lines of a document, in a gap buffer. Lines are inserted and removed where
+ * the document is edited, so the gap stays there and typing line breaks costs no more than typing anything else.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class LineStates {
+
+    private int[] states = new int[1024];
+    /** Index of the first element of the gap */
+    private int gapStart;
+    /** Index after the last element of the gap */
+    private int gapEnd = states.length;
+
+    /**
+     * @return number of lines with a known state
+     */
+    int size() {
+        return states.length - (gapEnd - gapStart);
+    }
+
+    int get(final int line) {
+        return states[index(line)];
+    }
+
+    void set(final int line, final int state) {
+        states[index(line)] = state;
+    }
+
+    /**
+     * Adds the state of the line after the last one.
+     */
+    void add(final int state) {
+        insert(size(), 1, state);
+    }
+
+    /**
+     * Inserts states of new lines before the given line.
+     *
+     * @param line index of the first new line
+     * @param count number of new lines
+     * @param state state of every new line
+     */
+    void insert(final int line, final int count, final int state) {
+        moveGap(line);
+        if (gapEnd - gapStart < count) {
+            final int size = size();
+            final int[] grown = new int[Math.max(states.length * 2, size + count)];
+            final int after = states.length - gapEnd;
+            System.arraycopy(states, 0, grown, 0, gapStart);
+            System.arraycopy(states, gapEnd, grown, grown.length - after, after);
+            states = grown;
+            gapEnd = grown.length - after;
+        }
+        Arrays.fill(states, gapStart, gapStart + count, state);
+        gapStart += count;
+    }
+
+    /**
+     * Removes states of lines.
+     *
+     * @param line index of the first removed line
+     * @param count number of removed lines
+     */
+    void remove(final int line, final int count) {
+        moveGap(line);
+        gapEnd += count;
+    }
+
+    private int index(final int line) {
+        return line < gapStart ? line : line + gapEnd - gapStart;
+    }
+
+    private void moveGap(final int line) {
+        if (line < gapStart) {
+            final int moved = gapStart - line;
+            System.arraycopy(states, line, states, gapEnd - moved, moved);
+            gapStart = line;
+            gapEnd -= moved;
+        } else if (line > gapStart) {
+            final int moved = line - gapStart;
+            System.arraycopy(states, gapEnd, states, gapStart, moved);
+            gapStart = line;
+            gapEnd += moved;
+        }
+    }
+
+}
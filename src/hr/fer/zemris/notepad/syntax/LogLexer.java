@@ -0,0 +1,93 @@
+package hr.fer.zemris.notepad.syntax;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lexer of log files. It recognizes a time stamp at the start of a line and log levels written in capitals, and like
+ * log entries it treats every line on its own.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class LogLexer implements Lexer {
+
+    /** Minimal length of a time stamp */
+    private static final int MIN_TIMESTAMP = 8;
+
+    private static final Map<String, TokenType> LEVELS = new HashMap<>();
+
+    static {
+        for (final String level : new String[] { "FATAL", "SEVERE", "CRITICAL", "ERROR" }) {
+            LEVELS.put(level, TokenType.ERROR);
+        }
+        for (final String level : new String[] { "WARN", "WARNING" }) {
+            LEVELS.put(level, TokenType.WARNING);
+        }
+        for (final String level : new String[] { "INFO", "NOTICE", "CONFIG" }) {
+            LEVELS.put(level, TokenType.INFO);
+        }
+        for (final String level : new String[] { "DEBUG", "TRACE", "FINE", "FINER", "FINEST" }) {
+            LEVELS.put(level, TokenType.DEBUG);
+        }
+    }
+
+    @Override
+    public int lex(final char[] text, final int start, final int end, final int state, final TokenSink tokens) {
+        int i = timestampEnd(text, start, end);
+        if (i != start) {
+            tokens.token(start, i, TokenType.TIMESTAMP);
+        }
+        while (i < end) {
+            if (text[i] >= 'A' && text[i] <= 'Z' && (i == start || !Character.isLetterOrDigit(text[i - 1]))) {
+                final int wordEnd = Chars.identifierEnd(text, i, end);
+                final TokenType level = LEVELS.get(new String(text, i, wordEnd - i));
+                if (level != null) {
+                    tokens.token(i, wordEnd, level);
+                }
+                i = wordEnd;
+            } else {
+                i++;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the end of a time stamp made of digits and separators, in brackets or not, like
+     * <code>2024-01-31 12:00:00,123</code> or <code>[31/Jan/2024:12:00:00 +0100]</code>.
+     *
+     * @return index after the time stamp, the start of the line if there is none
+     */
+    private static int timestampEnd(final char[] text, final int start, final int end) {
+        int i = start < end && text[start] == '[' ? start + 1 : start;
+        boolean separated = false;
+        boolean month = false;
+        while (i < end) {
+            final char c = text[i];
+            if (Character.isLetter(c)) {
+                month = month || i > start && text[i - 1] == '/';
+                if (!month && c != 'T' && c != 'Z') {
+                    break;
+                }
+            } else {
+                month = false;
+                if (c == '-' || c == ':' || c == '/') {
+                    separated = true;
+                } else if (c == ' ') {
+                    if (i + 1 == end || !Chars.isDigit(text[i + 1]) && text[i + 1] != '+') {
+                        break;
+                    }
+                } else if (!Chars.isDigit(c) && c != '.' && c != ',' && c != '+') {
+                    break;
+                }
+            }
+            i++;
+        }
+        if (i < end && text[start] == '[' && text[i] == ']') {
+            i++;
+        }
+        return separated && i - start >= MIN_TIMESTAMP ? i : start;
+    }
+
+}
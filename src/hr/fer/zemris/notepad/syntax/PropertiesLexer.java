@@ -0,0 +1,66 @@
+package hr.fer.zemris.notepad.syntax;
+
+/**
+ * Lexer of Java properties files. A value goes on in the next line if its line ends with an odd number of
+ * backslashes, which is the only state that spans lines.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class PropertiesLexer implements Lexer {
+
+    /** State at the start of a key, comment or empty line */
+    private static final int ENTRY = 0;
+    /** State in a line that continues the value of the line before it */
+    private static final int CONTINUATION = 1;
+
+    @Override
+    public int lex(final char[] text, final int start, final int end, final int state, final TokenSink tokens) {
+        int i = skipWhitespace(text, start, end);
+        if (i == end) {
+            return ENTRY;
+        }
+        if (state == ENTRY) {
+            if (text[i] == '#' || text[i] == '!') {
+                tokens.token(i, end, TokenType.COMMENT);
+                return ENTRY;
+            }
+            final int keyStart = i;
+            while (i < end && text[i] != '=' && text[i] != ':' && !isWhitespace(text[i])) {
+                i += text[i] == '\\' ? 2 : 1;
+            }
+            i = Math.min(i, end);
+            tokens.token(keyStart, i, TokenType.KEY);
+            i = skipWhitespace(text, i, end);
+            if (i < end && (text[i] == '=' || text[i] == ':')) {
+                i = skipWhitespace(text, i + 1, end);
+            }
+        }
+        tokens.token(i, end, TokenType.STRING);
+        return continues(text, start, end) ? CONTINUATION : ENTRY;
+    }
+
+    /**
+     * @return <code>true</code> if the line ends with an odd number of backslashes
+     */
+    private static boolean continues(final char[] text, final int start, final int end) {
+        int i = end;
+        while (i > start && text[i - 1] == '\\') {
+            i--;
+        }
+        return (end - i) % 2 == 1;
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static int skipWhitespace(final char[] text, final int from, final int end) {
+        int i = from;
+        while (i < end && isWhitespace(text[i])) {
+            i++;
+        }
+        return i;
+    }
+
+}
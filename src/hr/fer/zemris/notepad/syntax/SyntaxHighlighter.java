@@ -0,0 +1,597 @@
+package hr.fer.zemris.notepad.syntax;
+
+import hr.fer.zemris.notepad.document.LineIndex;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Highlights the syntax of a {@link PieceDocument} shown in a text component. The highlighter remembers the state of
+ * its {@link Lexer} at the start of every line and lexes snapshots of the document on a background thread, in slices
+ * of at most {@value #SLICE_LINES} lines, so edits and paints never wait for it. Before every slice it picks the most
+ * urgent work:
+ * <ol>
+ * <li>lines after an edit, from the edited line until the state at the start of a line after the edit is the same as
+ * it was before, which is usually the very next line,</li>
+ * <li>visible lines whose tokens are missing,</li>
+ * <li>lines after the last one with a known state, until the end of the document.</li>
+ * </ol>
+ * Only the tokens of lines near the visible ones are kept. They are handed to the Event Dispatch Thread in a batch per
+ * slice, and a batch keeps just the lines that nothing was edited in or above while the slice was being lexed.
+ * <p>
+ * The view finds the highlighter of its document with {@link #of(Document)}. Tokens of a line are triples of their
+ * start and end, relative to the start of the line, and the ordinal of their {@link TokenType}.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class SyntaxHighlighter {
+
+    /** Maximal number of lines lexed in a slice */
+    private static final int SLICE_LINES = 4096;
+    /** Number of characters after which a slice stops at the end of a line */
+    private static final int SLICE_CHARS = 1 << 20;
+    /** Number of lines above and below the visible ones whose tokens are kept */
+    private static final int MARGIN = 100;
+    /** Maximal number of tokens kept for a single line, the rest of a longer line is plain */
+    private static final int MAX_LINE_TOKENS = 1 << 16;
+    /** Number of edits remembered to tell which lines a slice lexed before them are still valid, a power of two */
+    private static final int EDIT_HISTORY = 64;
+    /** Tokens of a line that is all plain text */
+    private static final int[] NO_TOKENS = new int[0];
+
+    /** Thread that lexes all documents, it stops when there is nothing to lex */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                final Thread thread = new Thread(r, "syntax-highlighter");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final PieceDocument document;
+    private final JTextComponent component;
+    private final Lexer lexer;
+    private final DocumentListener listener = new DocumentListener() {
+        @Override
+        public void insertUpdate(final DocumentEvent e) {
+            edited(e, e.getLength());
+        }
+
+        @Override
+        public void removeUpdate(final DocumentEvent e) {
+            edited(e, -e.getLength());
+        }
+
+        @Override
+        public void changedUpdate(final DocumentEvent e) {
+            // plain text has no attributes
+        }
+    };
+
+    // state shared with the lexing thread, guarded by this
+
+    /** States at the start of the first lines, the state of every other line is unknown */
+    private final LineStates states = new LineStates();
+    private int lineCount;
+    /** Number of edits so far */
+    private int generation;
+    /** Line of each of the last edits, by their generations */
+    private final int[] editLines = new int[EDIT_HISTORY];
+    /** Line from which states have to be checked after an edit, <code>-1</code> if there is none */
+    private int dirtyFrom = -1;
+    /** Last line that an edit touched, the check can't stop before the line after it */
+    private int dirtyTo;
+    private int visibleFirst;
+    private int visibleLast = -1;
+    /** First visible line without tokens, <code>-1</code> if there is none */
+    private int requestFrom = -1;
+    /** Last visible line without tokens */
+    private int requestTo;
+    /** <code>true</code> while a slice is queued or running */
+    private boolean scheduled;
+    private boolean disposed;
+
+    /** Tokens of lines, used on the Event Dispatch Thread */
+    private final Map<Integer, int[]> tokens = new HashMap<>();
+
+    private SyntaxHighlighter(final JTextComponent component, final Lexer lexer) {
+        this.component = component;
+        this.lexer = lexer;
+        document = (PieceDocument) component.getDocument();
+        lineCount = document.getLineIndex().getLineCount();
+        states.add(0);
+    }
+
+    /**
+     * Starts highlighting the document of a text component, which must be a {@link PieceDocument}, until
+     * {@link #uninstall()} is called or the component gets another document.
+     *
+     * @param component text component
+     * @param lexer lexer of the document
+     * @return highlighter of the document
+     */
+    public static SyntaxHighlighter install(final JTextComponent component, final Lexer lexer) {
+        final SyntaxHighlighter highlighter = new SyntaxHighlighter(component, lexer);
+        highlighter.document.addDocumentListener(highlighter.listener);
+        highlighter.document.putProperty(SyntaxHighlighter.class, highlighter);
+        synchronized (highlighter) {
+            highlighter.schedule();
+        }
+        component.repaint();
+        return highlighter;
+    }
+
+    /**
+     * Stops highlighting, the document is painted as plain text again.
+     */
+    public void uninstall() {
+        document.removeDocumentListener(listener);
+        if (document.getProperty(SyntaxHighlighter.class) == this) {
+            document.putProperty(SyntaxHighlighter.class, null);
+        }
+        synchronized (this) {
+            disposed = true;
+        }
+        tokens.clear();
+        component.repaint();
+    }
+
+    /**
+     * Returns the highlighter of a document.
+     *
+     * @param document a document
+     * @return highlighter installed on the document, <code>null</code> if there is none
+     */
+    public static SyntaxHighlighter of(final Document document) {
+        final Object highlighter = document.getProperty(SyntaxHighlighter.class);
+        return highlighter instanceof SyntaxHighlighter ? (SyntaxHighlighter) highlighter : null;
+    }
+
+    /**
+     * Tells the highlighter which lines are visible, so it lexes the ones without tokens first and keeps tokens of
+     * the lines around them. It is called on the Event Dispatch Thread before the lines are painted.
+     *
+     * @param first first visible line
+     * @param last last visible line
+     */
+    public void setVisibleLines(final int first, final int last) {
+        int missingFrom = -1;
+        int missingTo = -1;
+        for (int line = first; line <= last; line++) {
+            if (!tokens.containsKey(line)) {
+                missingFrom = missingFrom == -1 ? line : missingFrom;
+                missingTo = line;
+            }
+        }
+        synchronized (this) {
+            visibleFirst = first;
+            visibleLast = last;
+            if (missingFrom != -1) {
+                requestFrom = missingFrom;
+                requestTo = missingTo;
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens of a line, see {@link SyntaxHighlighter}. It is called on the Event Dispatch Thread.
+     *
+     * @param line a visible line
+     * @return tokens of the line, <code>null</code> if the line wasn't lexed yet
+     */
+    public int[] getTokens(final int line) {
+        return tokens.get(line);
+    }
+
+    /**
+     * Queues a slice, unless one is queued already. Must be called holding the lock.
+     */
+    private void schedule() {
+        if (!scheduled && !disposed) {
+            scheduled = true;
+            EXECUTOR.execute(this::work);
+        }
+    }
+
+    /**
+     * Moves the states and tokens of the lines after an edit and marks the states after the edited line for checking.
+     * Tokens of the edited line are moved with the text around the edit, so the line keeps its colors until it is
+     * lexed again.
+     *
+     * @param length number of inserted characters, or the negated number of removed ones
+     */
+    private void edited(final DocumentEvent e, final int length) {
+        final LineIndex index = document.getLineIndex();
+        final int line = index.getLineOfOffset(e.getOffset());
+        final int delta;
+        synchronized (this) {
+            delta = index.getLineCount() - lineCount;
+            lineCount += delta;
+            generation++;
+            editLines[generation & (EDIT_HISTORY - 1)] = line;
+            final int known = states.size();
+            if (line + 1 < known && delta > 0) {
+                states.insert(line + 1, delta, states.get(line));
+            } else if (line + 1 < known && delta < 0) {
+                states.remove(line + 1, Math.min(-delta, known - line - 1));
+            }
+            if (line < known) {
+                if (dirtyFrom == -1) {
+                    dirtyFrom = line;
+                    dirtyTo = line;
+                } else if (dirtyTo > line) {
+                    dirtyTo = Math.max(line, dirtyTo + delta);
+                }
+                dirtyFrom = Math.min(dirtyFrom, line);
+                dirtyTo = Math.max(dirtyTo, line + Math.max(delta, 0));
+            }
+            requestFrom = -1;
+            schedule();
+        }
+
+        final int[] edited = tokens.get(line);
+        if (delta != 0) {
+            final Map<Integer, int[]> moved = new HashMap<>();
+            for (final Map.Entry<Integer, int[]> entry : tokens.entrySet()) {
+                final int key = entry.getKey();
+                if (key < line) {
+                    moved.put(key, entry.getValue());
+                } else if (key > line - Math.min(delta, 0)) {
+                    moved.put(key + delta, entry.getValue());
+                }
+            }
+            tokens.clear();
+            tokens.putAll(moved);
+        }
+        if (edited != null) {
+            final int column = e.getOffset() - index.getLineStartOffset(line);
+            tokens.put(line, delta == 0 ? shift(edited, column, length) : shift(edited, column, Integer.MIN_VALUE));
+        }
+    }
+
+    /**
+     * Moves tokens of a line after an edit in it.
+     *
+     * @param column column of the edit
+     * @param length number of inserted characters, or the negated number of removed ones, {@link Integer#MIN_VALUE}
+     *            if everything after the column is gone
+     * @return moved tokens
+     */
+    private static int[] shift(final int[] line, final int column, final int length) {
+        final int[] shifted = new int[line.length];
+        int size = 0;
+        for (int i = 0; i < line.length; i += 3) {
+            final int start = moved(line[i], column, length, true);
+            final int end = moved(line[i + 1], column, length, false);
+            if (start < end) {
+                shifted[size++] = start;
+                shifted[size++] = end;
+                shifted[size++] = line[i + 2];
+            }
+        }
+        return size == line.length ? shifted : Arrays.copyOf(shifted, size);
+    }
+
+    private static int moved(final int position, final int column, final int length, final boolean start) {
+        if (length == Integer.MIN_VALUE) {
+            return Math.min(position, column);
+        } else if (length < 0) {
+            return position <= column ? position : Math.max(column, position + length);
+        }
+        return position > column || start && position == column ? position + length : position;
+    }
+
+    /**
+     * Lexes a single slice on the background thread and queues the next one.
+     */
+    private void work() {
+        final Pass pass = new Pass();
+        document.render(() -> plan(pass));
+        if (pass.snapshot == null) {
+            return;
+        }
+        lex(pass);
+        commit(pass);
+        SwingUtilities.invokeLater(() -> publish(pass));
+        EXECUTOR.execute(this::work);
+    }
+
+    /**
+     * Picks the most urgent work, see {@link SyntaxHighlighter}. It runs under the document's read lock, so the line
+     * index and the snapshot match the states.
+     */
+    private void plan(final Pass pass) {
+        synchronized (this) {
+            final int known = states.size();
+            if (disposed) {
+                scheduled = false;
+                return;
+            } else if (dirtyFrom != -1) {
+                pass.mode = Mode.CHECK;
+                pass.first = dirtyFrom;
+                pass.last = lineCount - 1;
+            } else if (requestFrom != -1 && requestFrom < known) {
+                pass.mode = Mode.REQUEST;
+                pass.first = requestFrom;
+                pass.last = Math.min(requestTo, known - 1);
+                requestFrom = -1;
+            } else if (known < lineCount) {
+                pass.mode = Mode.EXTEND;
+                pass.first = known - 1;
+                pass.last = lineCount - 1;
+            } else {
+                scheduled = false;
+                return;
+            }
+            pass.generation = generation;
+            pass.state = states.get(pass.first);
+            pass.dirtyTo = dirtyTo;
+            pass.expected = new int[Math.max(0, Math.min(known - pass.first - 1, SLICE_LINES))];
+            for (int i = 0; i < pass.expected.length; i++) {
+                pass.expected[i] = states.get(pass.first + 1 + i);
+            }
+            pass.publishFrom = visibleFirst - MARGIN;
+            pass.publishTo = visibleLast + MARGIN;
+        }
+        pass.offset = document.getLineIndex().getLineStartOffset(pass.first);
+        pass.snapshot = document.snapshot();
+    }
+
+    /**
+     * Lexes the lines of a slice, outside of any lock. A check stops as soon as the state at the start of a line
+     * after the edit is the same as before.
+     */
+    private void lex(final Pass pass) {
+        final LineReader reader = new LineReader(pass.snapshot, pass.offset);
+        final TokenList list = new TokenList();
+        final int lines = Math.min(SLICE_LINES, pass.last - pass.first + 1);
+        pass.states = new int[lines];
+        pass.tokens = new int[lines][];
+        int state = pass.state;
+        int chars = 0;
+        while (pass.count < lines && chars < SLICE_CHARS && reader.next()) {
+            final int k = pass.count++;
+            final int line = pass.first + k;
+            final boolean publish = line >= pass.publishFrom && line <= pass.publishTo;
+            list.reset(publish);
+            state = lexer.lex(reader.line, 0, reader.length, state, list);
+            pass.states[k] = state;
+            pass.tokens[k] = publish ? list.toArray() : null;
+            chars += reader.length + 1;
+            if (pass.mode == Mode.CHECK && line + 1 > pass.dirtyTo && k < pass.expected.length
+                    && pass.expected[k] == state) {
+                pass.converged = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stores the states that a slice found for lines that weren't edited since it was planned.
+     */
+    private synchronized void commit(final Pass pass) {
+        if (disposed) {
+            return;
+        }
+        final int valid = lowestEditSince(pass.generation);
+        int checked = pass.first;
+        if (pass.mode != Mode.REQUEST) {
+            for (int k = 0; k < pass.count; k++) {
+                final int line = pass.first + k + 1;
+                if (line > valid || line >= lineCount || line > states.size()) {
+                    break;
+                } else if (line == states.size()) {
+                    states.add(pass.states[k]);
+                } else {
+                    states.set(line, pass.states[k]);
+                }
+                checked = line;
+            }
+        }
+        if (pass.mode == Mode.CHECK && dirtyFrom == pass.first) {
+            dirtyFrom = pass.converged && valid == Integer.MAX_VALUE ? -1 : checked;
+        }
+        if (dirtyFrom >= states.size() - 1) {
+            dirtyFrom = -1; // the rest is lexed for the first time
+        }
+    }
+
+    /**
+     * Stores the tokens that a slice found for lines that weren't edited since it was planned, on the Event Dispatch
+     * Thread, and repaints the component if any of them is visible.
+     */
+    private void publish(final Pass pass) {
+        final int valid;
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            valid = lowestEditSince(pass.generation);
+        }
+        boolean visible = false;
+        for (int k = 0; k < pass.count && pass.first + k < valid; k++) {
+            final int line = pass.first + k;
+            if (pass.tokens[k] == null) {
+                tokens.remove(line);
+            } else {
+                tokens.put(line, pass.tokens[k]);
+                visible |= line >= visibleFirst && line <= visibleLast;
+            }
+        }
+        if (tokens.size() > visibleLast - visibleFirst + 1 + 4 * MARGIN) {
+            tokens.keySet().removeIf(line -> line < visibleFirst - MARGIN || line > visibleLast + MARGIN);
+        }
+        if (visible) {
+            component.repaint();
+        }
+    }
+
+    /**
+     * Finds the first line that was edited since the given generation. Must be called holding the lock.
+     *
+     * @return first edited line, {@link Integer#MAX_VALUE} if nothing was edited and <code>0</code> if there were
+     *         too many edits to tell
+     */
+    private int lowestEditSince(final int since) {
+        final int edits = generation - since;
+        if (edits > EDIT_HISTORY) {
+            return 0;
+        }
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 1; i <= edits; i++) {
+            lowest = Math.min(lowest, editLines[(since + i) & (EDIT_HISTORY - 1)]);
+        }
+        return lowest;
+    }
+
+    /**
+     * Kind of work done by a slice.
+     */
+    private enum Mode {
+        /** Checks states after an edit */
+        CHECK,
+        /** Lexes visible lines without tokens */
+        REQUEST,
+        /** Lexes lines after the last one with a known state */
+        EXTEND
+    }
+
+    /**
+     * Plan and results of a slice.
+     */
+    private static final class Pass {
+        Mode mode;
+        int first;
+        int last;
+        /** State at the start of the first line */
+        int state;
+        /** Offset of the first line in the snapshot */
+        int offset;
+        TextSnapshot snapshot;
+        int generation;
+        int dirtyTo;
+        /** Known states at the start of the lines after the first one */
+        int[] expected;
+        int publishFrom;
+        int publishTo;
+
+        /** Number of lexed lines */
+        int count;
+        /** State at the end of every lexed line */
+        int[] states;
+        /** Tokens of lexed lines, <code>null</code> for lines far from the visible ones */
+        int[][] tokens;
+        /** <code>true</code> if a check found the same state as before */
+        boolean converged;
+    }
+
+    /**
+     * Collects tokens of a line.
+     */
+    private static final class TokenList implements Lexer.TokenSink {
+        private int[] data = new int[48];
+        private int size;
+        private boolean collecting;
+
+        void reset(final boolean collecting) {
+            this.collecting = collecting;
+            size = 0;
+        }
+
+        @Override
+        public void token(final int start, final int end, final TokenType type) {
+            if (!collecting || start >= end || size > 0 && start < data[size - 2] || size == 3 * MAX_LINE_TOKENS) {
+                return;
+            }
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = start;
+            data[size++] = end;
+            data[size++] = type.ordinal();
+        }
+
+        int[] toArray() {
+            return size == 0 ? NO_TOKENS : Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Reads the lines of a snapshot one by one, without their line breaks and carriage returns before them.
+     */
+    private static final class LineReader {
+        private static final int BLOCK = 16 * 1024;
+
+        private final TextSnapshot snapshot;
+        /** Offset of the next block */
+        private int position;
+        private final char[] block = new char[BLOCK];
+        private int blockIndex;
+        private int blockLength;
+
+        /** Characters of the current line */
+        char[] line = new char[256];
+        /** Length of the current line */
+        int length;
+
+        LineReader(final TextSnapshot snapshot, final int offset) {
+            this.snapshot = snapshot;
+            position = offset;
+        }
+
+        /**
+         * Reads the next line.
+         *
+         * @return <code>false</code> if there are no more lines
+         */
+        boolean next() {
+            length = 0;
+            while (true) {
+                if (blockIndex == blockLength) {
+                    blockLength = Math.min(BLOCK, snapshot.length() - position);
+                    if (blockLength == 0) {
+                        return length > 0;
+                    }
+                    snapshot.copyChars(position, blockLength, block, 0);
+                    position += blockLength;
+                    blockIndex = 0;
+                }
+                int end = blockIndex;
+                while (end < blockLength && block[end] != '\n') {
+                    end++;
+                }
+                if (length + end - blockIndex > line.length) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + end - blockIndex));
+                }
+                System.arraycopy(block, blockIndex, line, length, end - blockIndex);
+                length += end - blockIndex;
+                if (end < blockLength) {
+                    blockIndex = end + 1;
+                    if (length > 0 && line[length - 1] == '\r') {
+                        length--;
+                    }
+                    return true;
+                }
+                blockIndex = end;
+            }
+        }
+    }
+
+}
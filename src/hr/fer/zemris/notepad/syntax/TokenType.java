@@ -0,0 +1,69 @@
+package hr.fer.zemris.notepad.syntax;
+
+import java.awt.Color;
+
+/**
+ * Kinds of tokens that lexers report, each with the color it is painted in. Text that isn't a part of any token is
+ * painted in the foreground color of the text area.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public enum TokenType {
+
+    /** Reserved word of a language */
+    KEYWORD(new Color(0x7F0055)),
+    /** Literal value that is a word, like <code>true</code> or <code>null</code> */
+    LITERAL(new Color(0x0000C0)),
+    /** String or character literal */
+    STRING(new Color(0x2A00FF)),
+    /** Number literal */
+    NUMBER(new Color(0x116644)),
+    /** Comment */
+    COMMENT(new Color(0x3F7F5F)),
+    /** Annotation */
+    ANNOTATION(new Color(0x646464)),
+    /** Tag of a markup language, with its brackets */
+    TAG(new Color(0x3F7F7F)),
+    /** Attribute name of a markup language */
+    ATTRIBUTE(new Color(0x7F007F)),
+    /** Key of a key-value pair */
+    KEY(new Color(0x881280)),
+    /** Time stamp of a log entry */
+    TIMESTAMP(new Color(0x808080)),
+    /** Error log level */
+    ERROR(new Color(0xCC0000)),
+    /** Warning log level */
+    WARNING(new Color(0xC07000)),
+    /** Information log level */
+    INFO(new Color(0x0066CC)),
+    /** Debugging log level */
+    DEBUG(new Color(0x808080));
+
+    /** All types, by their ordinals */
+    private static final TokenType[] VALUES = values();
+
+    private final Color color;
+
+    private TokenType(final Color color) {
+        this.color = color;
+    }
+
+    /**
+     * @return color that tokens of this type are painted in
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the type with the given ordinal, without copying the array of all types.
+     *
+     * @param ordinal ordinal of the type
+     * @return type with the given ordinal
+     */
+    public static TokenType of(final int ordinal) {
+        return VALUES[ordinal];
+    }
+
+}
@@ -0,0 +1,130 @@
+package hr.fer.zemris.notepad.syntax;
+
+/**
+ * Lexer of XML and HTML. Tags, attribute values, comments and CDATA sections can span lines, so each of them is a
+ * state of its own.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+final class XmlLexer implements Lexer {
+
+    /** State in character data */
+    private static final int TEXT = 0;
+    /** State inside a tag, after its name */
+    private static final int TAG = 1;
+    /** State inside a comment */
+    private static final int COMMENT = 2;
+    /** State inside a CDATA section */
+    private static final int CDATA = 3;
+    /** State inside a double quoted attribute value */
+    private static final int DOUBLE_QUOTED = 4;
+    /** State inside a single quoted attribute value */
+    private static final int SINGLE_QUOTED = 5;
+
+    @Override
+    public int lex(final char[] text, final int start, final int end, int state, final TokenSink tokens) {
+        int i = start;
+        while (i < end) {
+            switch (state) {
+            case COMMENT:
+            case CDATA:
+                final String close = state == COMMENT ? "-->" : "]]>";
+                final int found = Chars.indexOf(text, i, end, close);
+                if (state == COMMENT) {
+                    tokens.token(i, found == -1 ? end : found + 3, TokenType.COMMENT);
+                } else if (found != -1) {
+                    tokens.token(found, found + 3, TokenType.TAG);
+                }
+                if (found == -1) {
+                    return state;
+                }
+                i = found + 3;
+                state = TEXT;
+                break;
+            case DOUBLE_QUOTED:
+            case SINGLE_QUOTED:
+                final int quoted = Chars.quotedEnd(text, i, end, state == DOUBLE_QUOTED ? '"' : '\'', false);
+                tokens.token(i, quoted == -1 ? end : quoted, TokenType.STRING);
+                if (quoted == -1) {
+                    return state;
+                }
+                i = quoted;
+                state = TAG;
+                break;
+            case TAG:
+                final char c = text[i];
+                if (c == '>' || (c == '/' || c == '?') && i + 1 < end && text[i + 1] == '>') {
+                    final int tagEnd = c == '>' ? i + 1 : i + 2;
+                    tokens.token(i, tagEnd, TokenType.TAG);
+                    i = tagEnd;
+                    state = TEXT;
+                } else if (c == '"' || c == '\'') {
+                    final int valueEnd = Chars.quotedEnd(text, i + 1, end, c, false);
+                    tokens.token(i, valueEnd == -1 ? end : valueEnd, TokenType.STRING);
+                    if (valueEnd == -1) {
+                        return c == '"' ? DOUBLE_QUOTED : SINGLE_QUOTED;
+                    }
+                    i = valueEnd;
+                } else if (isNameChar(c)) {
+                    final int nameEnd = nameEnd(text, i, end);
+                    tokens.token(i, nameEnd, TokenType.ATTRIBUTE);
+                    i = nameEnd;
+                } else {
+                    i++;
+                }
+                break;
+            default:
+                if (Chars.startsWith(text, i, end, "<!--")) {
+                    state = COMMENT;
+                } else if (Chars.startsWith(text, i, end, "<![CDATA[")) {
+                    tokens.token(i, i + 9, TokenType.TAG);
+                    i += 9;
+                    state = CDATA;
+                } else if (text[i] == '<') {
+                    int nameStart = i + 1;
+                    if (nameStart < end && (text[nameStart] == '/' || text[nameStart] == '?'
+                            || text[nameStart] == '!')) {
+                        nameStart++;
+                    }
+                    final int nameEnd = nameEnd(text, nameStart, end);
+                    tokens.token(i, nameEnd, TokenType.TAG);
+                    i = nameEnd;
+                    state = TAG;
+                } else if (text[i] == '&') {
+                    final int entityEnd = entityEnd(text, i + 1, end);
+                    if (entityEnd != -1) {
+                        tokens.token(i, entityEnd, TokenType.LITERAL);
+                        i = entityEnd;
+                    } else {
+                        i++;
+                    }
+                } else {
+                    i++;
+                }
+            }
+        }
+        return state;
+    }
+
+    private static boolean isNameChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == ':' || c == '.';
+    }
+
+    private static int nameEnd(final char[] text, final int from, final int end) {
+        int i = from;
+        while (i < end && isNameChar(text[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return index after the semicolon of an entity reference, <code>-1</code> if this isn't one
+     */
+    private static int entityEnd(final char[] text, final int from, final int end) {
+        final int nameEnd = nameEnd(text, from < end && text[from] == '#' ? from + 1 : from, end);
+        return nameEnd > from && nameEnd < end && text[nameEnd] == ';' ? nameEnd + 1 : -1;
+    }
+
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the syntax highlighting of documents: lexers of several languages and file formats, and the
+ * highlighter that lexes a document on a background thread and hands the tokens of its visible lines to the view.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.syntax;
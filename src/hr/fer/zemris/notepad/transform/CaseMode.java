@@ -0,0 +1,83 @@
+package hr.fer.zemris.notepad.transform;
+
+/**
+ * Ways of changing the case of text. Every mode maps one code point to one code point, with the simple case mappings
+ * of {@link Character}, so supplementary characters are changed like all others and a text can be changed in parts.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public enum CaseMode {
+
+    /** All letters become upper case */
+    UPPER {
+        @Override
+        int convert(final int codePoint, final boolean wordStart) {
+            return Character.toUpperCase(codePoint);
+        }
+    },
+
+    /** All letters become lower case */
+    LOWER {
+        @Override
+        int convert(final int codePoint, final boolean wordStart) {
+            return Character.toLowerCase(codePoint);
+        }
+    },
+
+    /** The first letter of every word becomes title case and all other letters lower case */
+    TITLE {
+        @Override
+        int convert(final int codePoint, final boolean wordStart) {
+            return wordStart ? Character.toTitleCase(codePoint) : Character.toLowerCase(codePoint);
+        }
+    },
+
+    /** Lower case letters become upper case and upper and title case letters become lower case */
+    TOGGLE {
+        @Override
+        int convert(final int codePoint, final boolean wordStart) {
+            if (Character.isLowerCase(codePoint)) {
+                return Character.toUpperCase(codePoint);
+            } else if (Character.isUpperCase(codePoint) || Character.isTitleCase(codePoint)) {
+                return Character.toLowerCase(codePoint);
+            }
+            return codePoint;
+        }
+    };
+
+    /**
+     * Changes the case of a code point.
+     *
+     * @param codePoint code point
+     * @param wordStart <code>true</code> if the code point is the first one of a word
+     * @return changed code point
+     */
+    abstract int convert(int codePoint, boolean wordStart);
+
+    /**
+     * Checks if a code point is a part of a word: a letter, a digit or a mark that is combined with them.
+     *
+     * @param codePoint code point
+     * @return <code>true</code> if it is a part of a word
+     */
+    static boolean isWordPart(final int codePoint) {
+        if (Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        final int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+
+    /**
+     * Checks if a code point is an apostrophe, which doesn't end a word like in <i>don't</i>.
+     *
+     * @param codePoint code point
+     * @return <code>true</code> if it is an apostrophe
+     */
+    static boolean isApostrophe(final int codePoint) {
+        return codePoint == '\'' || codePoint == '\u2019';
+    }
+
+}
@@ -0,0 +1,198 @@
+package hr.fer.zemris.notepad.transform;
+
+import hr.fer.zemris.notepad.document.ReplaceBatch;
+import hr.fer.zemris.notepad.document.TextSnapshot;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Changes the case of a part of a {@link TextSnapshot}. The text is read in segments of {@value #SEGMENT} characters
+ * into a reused array, and only runs of changed characters become replacements in a {@link ReplaceBatch}, so the text
+ * is never copied as a whole and text whose case doesn't change keeps its pieces. Applying the batch with
+ * {@link hr.fer.zemris.notepad.document.PieceDocument#replace(ReplaceBatch)} changes the document in a single edit.
+ * <p>
+ * Ranges longer than {@value #PARALLEL_THRESHOLD} characters are split into parts that are changed in parallel in the
+ * common fork-join pool, and the batches of the parts are joined in order.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public final class CaseTransform {
+
+    /** Number of characters read at once */
+    private static final int SEGMENT = 16 * 1024;
+    /** Ranges at least this long are changed in parallel */
+    private static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+    /** Ranges are split in parallel until they are shorter than this */
+    private static final int PART = 1024 * 1024;
+    /** Unchanged characters between two changes that are replaced with them, instead of ending the replacement */
+    private static final int MAX_GAP = 32;
+    /** Maximum length of a single replacement */
+    private static final int MAX_RUN = 16 * 1024;
+
+    private final TextSnapshot snapshot;
+    private final CaseMode mode;
+    private final ReplaceBatch batch;
+    /** Characters of the snapshot that are being changed */
+    private final char[] segment = new char[SEGMENT];
+    /** Characters of the replacement that is being built */
+    private final char[] run = new char[MAX_RUN + 2];
+    /** Number of characters in {@link #run} */
+    private int runLength;
+    /** Offset where the replacement that is being built starts, -1 if there is none */
+    private int runStart = -1;
+    /** Offset after the last changed character of the replacement */
+    private int changedEnd;
+    /** Length of the replacement up to the last changed character */
+    private int changedLength;
+
+    private CaseTransform(final TextSnapshot snapshot, final CaseMode mode) {
+        this.snapshot = snapshot;
+        this.mode = mode;
+        batch = new ReplaceBatch(snapshot);
+    }
+
+    /**
+     * Finds the replacements that change the case of characters <code>[start, end)</code> of the snapshot.
+     *
+     * @param snapshot text whose case is changed
+     * @param start offset of the first character
+     * @param end offset after the last character
+     * @param mode how the case is changed
+     * @return replacements of the changed characters
+     * @throws IndexOutOfBoundsException if the range is not in the snapshot
+     */
+    public static ReplaceBatch transform(final TextSnapshot snapshot, final int start, final int end,
+            final CaseMode mode) {
+        if (start < 0 || start > end || end > snapshot.length()) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + ")");
+        }
+        if (end - start < PARALLEL_THRESHOLD) {
+            return new CaseTransform(snapshot, mode).change(start, end);
+        }
+        return ForkJoinPool.commonPool().invoke(new PartTask(snapshot, mode, start, end));
+    }
+
+    /**
+     * Changes characters <code>[from, to)</code>, which don't start or end inside a surrogate pair.
+     *
+     * @return replacements of the changed characters
+     */
+    private ReplaceBatch change(final int from, final int to) {
+        boolean inWord = mode == CaseMode.TITLE && isInWord(from);
+        int position = from;
+        while (position < to) {
+            int length = Math.min(SEGMENT, to - position);
+            snapshot.copyChars(position, length, segment, 0);
+            if (position + length < to && Character.isHighSurrogate(segment[length - 1])) {
+                length--; // the pair is read with the next segment
+            }
+            for (int i = 0; i < length;) {
+                final int codePoint = Character.codePointAt(segment, i, length);
+                final int changed = mode.convert(codePoint, !inWord);
+                inWord = CaseMode.isWordPart(codePoint) || inWord && CaseMode.isApostrophe(codePoint);
+                final int offset = position + i;
+                i += Character.charCount(codePoint);
+                if (changed != codePoint) {
+                    if (runStart == -1) {
+                        runStart = offset;
+                    }
+                    appendToRun(changed);
+                    changedEnd = position + i;
+                    changedLength = runLength;
+                } else if (runStart != -1) {
+                    appendToRun(codePoint);
+                    if (position + i - changedEnd > MAX_GAP) {
+                        endRun();
+                    }
+                }
+                if (runLength >= MAX_RUN) {
+                    endRun();
+                }
+            }
+            position += length;
+        }
+        endRun();
+        return batch;
+    }
+
+    private void appendToRun(final int codePoint) {
+        runLength += Character.toChars(codePoint, run, runLength);
+    }
+
+    /**
+     * Adds the replacement that is being built to the batch, without the unchanged characters at its end.
+     */
+    private void endRun() {
+        if (runStart != -1) {
+            batch.add(runStart, changedEnd, CharBuffer.wrap(run, 0, changedLength));
+        }
+        runStart = -1;
+        runLength = 0;
+    }
+
+    /**
+     * Checks if the character before the offset is a part of a word, which decides the case of the first letter at
+     * the offset in title case.
+     */
+    private boolean isInWord(int offset) {
+        final char[] chars = new char[2];
+        while (offset > 0) {
+            final int length = Math.min(2, offset);
+            snapshot.copyChars(offset - length, length, chars, 0);
+            final int codePoint = Character.codePointBefore(chars, length);
+            if (!CaseMode.isApostrophe(codePoint)) {
+                return CaseMode.isWordPart(codePoint);
+            }
+            offset -= Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    /**
+     * Changes a range by splitting it into two halves that are changed in parallel.
+     */
+    private static final class PartTask extends RecursiveTask<ReplaceBatch> {
+
+        private static final long serialVersionUID = 5581928360218945173L;
+
+        private final TextSnapshot snapshot;
+        private final CaseMode mode;
+        private final int from;
+        private final int to;
+
+        PartTask(final TextSnapshot snapshot, final CaseMode mode, final int from, final int to) {
+            this.snapshot = snapshot;
+            this.mode = mode;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReplaceBatch compute() {
+            if (to - from <= PART) {
+                return new CaseTransform(snapshot, mode).change(from, to);
+            }
+            final int middle = split(from + (to - from) / 2);
+            final PartTask first = new PartTask(snapshot, mode, from, middle);
+            first.fork();
+            final ReplaceBatch second = new PartTask(snapshot, mode, middle, to).compute();
+            final ReplaceBatch batch = first.join();
+            batch.addAll(second);
+            return batch;
+        }
+
+        /**
+         * Moves the offset after a surrogate pair that it splits.
+         */
+        private int split(final int offset) {
+            final char[] pair = new char[2];
+            snapshot.copyChars(offset - 1, 2, pair, 0);
+            return Character.isSurrogatePair(pair[0], pair[1]) ? offset + 1 : offset;
+        }
+
+    }
+
+}
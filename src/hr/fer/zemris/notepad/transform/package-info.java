@@ -0,0 +1,8 @@
+/**
+ * This package contains transformations of text in documents, like changing its case, which read snapshots of the
+ * documents and change only the characters that are different.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.transform;
@@ -0,0 +1,29 @@
+package hr.fer.zemris.notepad.view;
+
+import hr.fer.zemris.notepad.document.PieceDocument;
+
+import javax.swing.JTextArea;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+
+/**
+ * Text area UI that shows a {@link PieceDocument} with a {@link LineView}. A text area has no editor kit of its own,
+ * the views of its document are made by its UI, so this is where the view is plugged in. Wrapped lines and other
+ * documents get the views of {@link BasicTextAreaUI}.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public class LineTextAreaUI extends BasicTextAreaUI {
+
+    @Override
+    public View create(final Element elem) {
+        final JTextArea area = (JTextArea) getComponent();
+        if (!area.getLineWrap() && elem.getDocument() instanceof PieceDocument) {
+            return new LineView(elem);
+        }
+        return super.create(elem);
+    }
+
+}
@@ -0,0 +1,572 @@
+package hr.fer.zemris.notepad.view;
+
+import hr.fer.zemris.notepad.document.LineIndex;
+import hr.fer.zemris.notepad.document.PieceDocument;
+import hr.fer.zemris.notepad.syntax.SyntaxHighlighter;
+import hr.fer.zemris.notepad.syntax.TokenType;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Caret;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * View of a whole {@link PieceDocument} that lays out and paints only what is inside the clip. Lines are not wrapped
+ * and are all as high as the font, so the height of the view, the line at some y and the y of a line all come from the
+ * document's {@link LineIndex} in logarithmic time. The width is estimated from the longest line of the index and
+ * grows when a line is measured to be wider, so nothing ever walks all the lines.
+ * <p>
+ * Positions in a line are measured from its start, in chunks of {@value #STEP} characters. The view remembers the x at
+ * the start of every chunk of the last {@value #CACHED_LINES} long lines it measured, so painting or finding any part
+ * of a line of several megabytes measures a single chunk once the line was measured up to there. Edits drop only the
+ * checkpoints after them.
+ * <p>
+ * If the document has a {@link SyntaxHighlighter}, unselected text is painted in the colors of the tokens it has for
+ * the painted lines.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+public class LineView extends View implements TabExpander {
+
+    /** Number of characters in a chunk */
+    private static final int STEP = 1024;
+    /** Number of long lines whose checkpoints are kept */
+    private static final int CACHED_LINES = 32;
+
+    /** Chunk that is being measured or painted */
+    private final Segment segment = new Segment();
+    /** Part of {@link #segment} that is painted in a single color */
+    private final Segment part = new Segment();
+    /** Checkpoints of recently measured long lines, the most recently used one last */
+    private final List<Checkpoints> cache = new ArrayList<>();
+    /** Checkpoints of a line that fits into a single chunk, they are never cached */
+    private final Checkpoints shortLine = new Checkpoints(0);
+    /** Tokens of the line that is being painted, <code>null</code> if it is painted in a single color */
+    private int[] tokens;
+    /** Offset of the start of the line that is being painted */
+    private int lineStart;
+
+    private Font font;
+    private FontMetrics metrics;
+    private int lineHeight;
+    /** Width of a character, used to estimate the width of the longest line */
+    private int charWidth;
+    /** Distance between two tab stops */
+    private int tabWidth;
+    /** Number of lines when the document was last checked */
+    private int lineCount;
+    /** Width of the longest line estimated from its length */
+    private int estimatedWidth;
+    /** Width of the widest line that was measured wider than the estimate */
+    private int measuredWidth;
+
+    /**
+     * Creates a new view of the root element of a {@link PieceDocument}.
+     *
+     * @param elem root element
+     */
+    public LineView(final Element elem) {
+        super(elem);
+        lineCount = lines().getLineCount();
+    }
+
+    private LineIndex lines() {
+        return ((PieceDocument) getDocument()).getLineIndex();
+    }
+
+    /**
+     * Reads the metrics of the container's font when it changes. Checkpoints measured with the old font are dropped.
+     */
+    private void updateMetrics() {
+        final Component host = getContainer();
+        final Font current = host.getFont();
+        if (font != current) {
+            font = current;
+            metrics = host.getFontMetrics(current);
+            lineHeight = metrics.getHeight();
+            charWidth = metrics.charWidth('m');
+            final Object tabSize = getDocument().getProperty(PlainDocument.tabSizeAttribute);
+            tabWidth = charWidth * (tabSize instanceof Integer ? (Integer) tabSize : 8);
+            cache.clear();
+            measuredWidth = 0;
+            estimatedWidth = estimateWidth();
+        }
+    }
+
+    /**
+     * Estimates the width of the longest line from its length, but keeps it far enough from the largest
+     * <code>int</code> for coordinates of the view to fit.
+     */
+    private int estimateWidth() {
+        return (int) Math.min(Integer.MAX_VALUE / 2, (long) (lines().getMaxLineLength() - 1) * charWidth);
+    }
+
+    @Override
+    public float getPreferredSpan(final int axis) {
+        updateMetrics();
+        if (axis == X_AXIS) {
+            return Math.max(estimatedWidth, measuredWidth);
+        }
+        return (float) lines().getLineCount() * lineHeight;
+    }
+
+    @Override
+    public void paint(final Graphics g, final Shape a) {
+        updateMetrics();
+        final Rectangle alloc = a.getBounds();
+        final Rectangle clip = g.getClipBounds() == null ? alloc : g.getClipBounds();
+        final LineIndex lines = lines();
+        final int first = Math.max(0, (clip.y - alloc.y) / lineHeight);
+        final int last = Math.min(lines.getLineCount() - 1, (clip.y + clip.height - 1 - alloc.y) / lineHeight);
+        if (first > last) {
+            return;
+        }
+
+        final JTextComponent host = (JTextComponent) getContainer();
+        final Highlighter highlighter = host.getHighlighter();
+        final LayeredHighlighter layered = highlighter instanceof LayeredHighlighter
+                ? (LayeredHighlighter) highlighter : null;
+        final Color unselected = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+        final Color selected = host.getSelectedTextColor();
+        final Caret caret = host.getCaret();
+        final boolean showSelection = caret != null && caret.isSelectionVisible() && selected != null;
+        final int selectionStart = showSelection ? host.getSelectionStart() : -1;
+        final int selectionEnd = showSelection ? host.getSelectionEnd() : -1;
+        final SyntaxHighlighter syntax = host.isEnabled() ? SyntaxHighlighter.of(getDocument()) : null;
+        if (syntax != null) {
+            syntax.setVisibleLines(first, last);
+        }
+        g.setFont(font);
+
+        int start = lines.getLineStartOffset(first);
+        for (int line = first; line <= last; line++) {
+            final int length = lines.getLineLength(line) - 1;
+            final Checkpoints points = checkpoints(start, length);
+            extend(points, length, Integer.MAX_VALUE, clip.x - alloc.x);
+            int k = points.lastAtX(clip.x - alloc.x);
+            int offset = points.offsets[k];
+            int x = points.xs[k];
+            final int y = alloc.y + line * lineHeight + metrics.getAscent();
+            tokens = syntax == null ? null : syntax.getTokens(line);
+            lineStart = start;
+            while (offset < length && x <= clip.x + clip.width - alloc.x) {
+                loadChunk(start, offset, length);
+                final int count = segment.count;
+                if (layered != null) {
+                    layered.paintLayeredHighlights(g, start + offset, start + offset + count, a, host, this);
+                    loadChunk(start, offset, length); // the highlighter measured text with the same segment
+                }
+                g.translate(alloc.x, 0);
+                x = drawChunk(g, x, y, start + offset, selectionStart, selectionEnd, unselected, selected);
+                g.translate(-alloc.x, 0);
+                offset += count;
+                if (k == points.count - 1 && offset < length) {
+                    points.add(offset, x);
+                }
+                k++;
+            }
+            grow(x);
+            start += length + 1;
+        }
+        tokens = null;
+    }
+
+    /**
+     * Draws the chunk in {@link #segment}, the selected part of it in the selected text color.
+     *
+     * @return x after the chunk
+     */
+    private int drawChunk(final Graphics g, final int x, final int y, final int offset, final int selectionStart,
+            final int selectionEnd, final Color unselected, final Color selected) {
+        final int count = segment.count;
+        final int from = Math.max(0, Math.min(selectionStart - offset, count));
+        final int to = Math.max(from, Math.min(selectionEnd - offset, count));
+        int next = drawTokens(g, x, y, offset, 0, from, unselected);
+        next = drawPart(g, next, y, offset, from, to, selected);
+        return drawTokens(g, next, y, offset, to, count, unselected);
+    }
+
+    /**
+     * Draws characters <code>[from, to)</code> of the chunk that starts at the given offset in the colors of their
+     * {@link #tokens}, and the characters between tokens in the given color.
+     *
+     * @return x after the characters
+     */
+    private int drawTokens(final Graphics g, final int x, final int y, final int offset, final int from, final int to,
+            final Color color) {
+        if (tokens == null || from == to) {
+            return drawPart(g, x, y, offset, from, to, color);
+        }
+        final int base = offset - lineStart;
+        int next = x;
+        int position = from;
+        for (int t = firstToken(base + from); t < tokens.length && tokens[t] < base + to; t += 3) {
+            final int tokenFrom = Math.max(position, tokens[t] - base);
+            final int tokenTo = Math.min(to, tokens[t + 1] - base);
+            next = drawPart(g, next, y, offset, position, tokenFrom, color);
+            next = drawPart(g, next, y, offset, tokenFrom, tokenTo, TokenType.of(tokens[t + 2]).getColor());
+            position = tokenTo;
+        }
+        return drawPart(g, next, y, offset, position, to, color);
+    }
+
+    /**
+     * Returns the index of the first of the {@link #tokens} that ends after the given column.
+     */
+    private int firstToken(final int column) {
+        int low = 0;
+        int high = tokens.length / 3;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (tokens[3 * middle + 1] <= column) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return 3 * low;
+    }
+
+    /**
+     * Draws characters <code>[from, to)</code> of the chunk that starts at the given offset.
+     *
+     * @return x after the characters
+     */
+    private int drawPart(final Graphics g, final int x, final int y, final int offset, final int from, final int to,
+            final Color color) {
+        if (from == to) {
+            return x;
+        }
+        part.array = segment.array;
+        part.offset = segment.offset + from;
+        part.count = to - from;
+        g.setColor(color);
+        return Utilities.drawTabbedText(part, x, y, g, this, offset + from);
+    }
+
+    @Override
+    public Shape modelToView(final int pos, final Shape a, final Position.Bias b) throws BadLocationException {
+        if (pos < 0 || pos > getDocument().getLength()) {
+            throw new BadLocationException("Invalid offset", pos);
+        }
+        updateMetrics();
+        final Rectangle alloc = a.getBounds();
+        final LineIndex lines = lines();
+        final int line = lines.getLineOfOffset(pos);
+        final int start = lines.getLineStartOffset(line);
+        final int x = xOf(start, lines.getLineLength(line) - 1, pos);
+        grow(x);
+        return new Rectangle(alloc.x + x, alloc.y + line * lineHeight, 1, lineHeight);
+    }
+
+    @Override
+    public int viewToModel(final float fx, final float fy, final Shape a, final Position.Bias[] bias) {
+        bias[0] = Position.Bias.Forward;
+        updateMetrics();
+        final Rectangle alloc = a.getBounds();
+        final LineIndex lines = lines();
+        final int y = (int) fy - alloc.y;
+        if (y < 0) {
+            return getStartOffset();
+        }
+        final int line = y / lineHeight;
+        if (line >= lines.getLineCount()) {
+            return getEndOffset() - 1;
+        }
+        final int start = lines.getLineStartOffset(line);
+        final int x = (int) fx - alloc.x;
+        if (x <= 0) {
+            return start;
+        }
+        return offsetAt(start, lines.getLineLength(line) - 1, x);
+    }
+
+    @Override
+    public float nextTabStop(final float x, final int tabOffset) {
+        if (tabWidth == 0) {
+            return x;
+        }
+        return ((int) x / tabWidth + 1) * tabWidth;
+    }
+
+    @Override
+    public void insertUpdate(final DocumentEvent e, final Shape a, final ViewFactory f) {
+        update(e, a, true);
+    }
+
+    @Override
+    public void removeUpdate(final DocumentEvent e, final Shape a, final ViewFactory f) {
+        update(e, a, false);
+    }
+
+    @Override
+    public void changedUpdate(final DocumentEvent e, final Shape a, final ViewFactory f) {
+        // plain text has no attributes
+    }
+
+    /**
+     * Moves or drops the checkpoints that an edit changed, repaints the lines it touched and tells the parent if the
+     * size of the view changed.
+     */
+    private void update(final DocumentEvent e, final Shape a, final boolean insert) {
+        final int offset = e.getOffset();
+        final int length = e.getLength();
+        for (final Iterator<Checkpoints> i = cache.iterator(); i.hasNext();) {
+            final Checkpoints points = i.next();
+            if (offset >= points.start) {
+                points.truncate(offset - points.start);
+            } else if (insert) {
+                points.start += length;
+            } else if (offset + length <= points.start) {
+                points.start -= length;
+            } else {
+                i.remove();
+            }
+        }
+
+        updateMetrics();
+        final LineIndex lines = lines();
+        final int count = lines.getLineCount();
+        final int width = estimateWidth();
+        final boolean linesChanged = count != lineCount;
+        final boolean widthChanged = width != estimatedWidth;
+        if (width < estimatedWidth) {
+            measuredWidth = 0; // the widest line may be gone
+        }
+        lineCount = count;
+        estimatedWidth = width;
+
+        if (a != null) {
+            final Rectangle alloc = a.getBounds();
+            final int y = alloc.y + lines.getLineOfOffset(Math.min(offset, getDocument().getLength())) * lineHeight;
+            getContainer().repaint(alloc.x, y, alloc.width, linesChanged ? alloc.y + alloc.height - y : lineHeight);
+        }
+        if (linesChanged || widthChanged) {
+            preferenceChanged(null, widthChanged, linesChanged);
+        }
+    }
+
+    /**
+     * Widens the view if a line was measured wider than it.
+     */
+    private void grow(final int width) {
+        if (width > Math.max(estimatedWidth, measuredWidth)) {
+            measuredWidth = width;
+            preferenceChanged(null, true, false);
+        }
+    }
+
+    /**
+     * Returns the x of an offset in a line, relative to the start of the line.
+     */
+    private int xOf(final int start, final int length, final int offset) {
+        final Checkpoints points = checkpoints(start, length);
+        final int position = offset - start;
+        extend(points, length, position, Integer.MAX_VALUE);
+        final int k = points.lastAtOffset(position);
+        final int from = points.offsets[k];
+        if (from == position) {
+            return points.xs[k];
+        }
+        getText(start + from, position - from);
+        return points.xs[k] + Utilities.getTabbedTextWidth(segment, metrics, points.xs[k], this, start + from);
+    }
+
+    /**
+     * Returns the offset in a line closest to the given x, relative to the start of the line. The offset is searched
+     * for by measuring prefixes of a single chunk, since {@link Utilities#getTabbedTextOffset} rounds to the wrong
+     * side after a tab.
+     */
+    private int offsetAt(final int start, final int length, final int x) {
+        final Checkpoints points = checkpoints(start, length);
+        extend(points, length, Integer.MAX_VALUE, x);
+        final int k = points.lastAtX(x);
+        final int from = points.offsets[k];
+        final int x0 = points.xs[k];
+        loadChunk(start, from, length);
+        int low = 0;
+        int high = segment.count;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (x0 + prefixWidth(middle, x0, start + from) <= x) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int index = low;
+        if (index < segment.count) {
+            final int after = index + 1;
+            if (x - x0 - prefixWidth(index, x0, start + from) >= x0 + prefixWidth(after, x0, start + from) - x) {
+                index = after;
+            }
+        }
+        if (index > 0 && index < segment.count && Character.isSurrogatePair(segment.array[segment.offset + index - 1],
+                segment.array[segment.offset + index])) {
+            index--;
+        }
+        return start + from + index;
+    }
+
+    /**
+     * Measures the first characters of the chunk in {@link #segment}.
+     */
+    private int prefixWidth(final int count, final int x0, final int offset) {
+        part.array = segment.array;
+        part.offset = segment.offset;
+        part.count = count;
+        return Utilities.getTabbedTextWidth(part, metrics, x0, this, offset);
+    }
+
+    /**
+     * Returns the checkpoints of a line, remembered ones if the line is longer than a chunk.
+     */
+    private Checkpoints checkpoints(final int start, final int length) {
+        if (length <= STEP) {
+            shortLine.start = start;
+            shortLine.count = 1;
+            return shortLine;
+        }
+        for (int i = cache.size() - 1; i >= 0; i--) {
+            final Checkpoints points = cache.get(i);
+            if (points.start == start) {
+                cache.remove(i);
+                cache.add(points);
+                return points;
+            }
+        }
+        final Checkpoints points = new Checkpoints(start);
+        if (cache.size() == CACHED_LINES) {
+            cache.remove(0);
+        }
+        cache.add(points);
+        return points;
+    }
+
+    /**
+     * Measures chunks of a line and adds their checkpoints until the next checkpoint would be after the offset, the
+     * last one is after the x or the line ends.
+     */
+    private void extend(final Checkpoints points, final int length, final int offset, final int x) {
+        while (true) {
+            final int last = points.count - 1;
+            if (points.xs[last] > x) {
+                return;
+            }
+            loadChunk(points.start, points.offsets[last], length);
+            final int next = points.offsets[last] + segment.count;
+            if (next >= length || next > offset) {
+                return;
+            }
+            points.add(next, points.xs[last] + Utilities.getTabbedTextWidth(segment, metrics, points.xs[last], this,
+                    points.start + points.offsets[last]));
+        }
+    }
+
+    /**
+     * Reads the chunk of a line that starts at the given offset into {@link #segment}. A chunk has {@value #STEP}
+     * characters, one more if it would end inside a surrogate pair, and the last chunk of a line ends with the line.
+     */
+    private void loadChunk(final int start, final int offset, final int length) {
+        final int count = Math.min(length - offset, STEP + 1);
+        getText(start + offset, count);
+        if (count > STEP && !Character.isSurrogatePair(segment.array[segment.offset + STEP - 1],
+                segment.array[segment.offset + STEP])) {
+            segment.count = STEP;
+        }
+    }
+
+    private void getText(final int offset, final int length) {
+        try {
+            getDocument().getText(offset, length, segment);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Offsets of the chunks of a line, relative to the line's start, and the x where each of them starts.
+     */
+    private static final class Checkpoints {
+
+        /** Offset of the line's start */
+        int start;
+        int[] offsets = new int[8];
+        int[] xs = new int[8];
+        /** Number of checkpoints, the first one is always the start of the line */
+        int count = 1;
+
+        Checkpoints(final int start) {
+            this.start = start;
+        }
+
+        void add(final int offset, final int x) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                xs = Arrays.copyOf(xs, count * 2);
+            }
+            offsets[count] = offset;
+            xs[count] = x;
+            count++;
+        }
+
+        /**
+         * Drops the checkpoints that an edit at the given offset in the line could have moved.
+         */
+        void truncate(final int offset) {
+            while (count > 1 && offsets[count - 1] >= offset) {
+                count--;
+            }
+        }
+
+        int lastAtOffset(final int offset) {
+            return last(offsets, offset);
+        }
+
+        int lastAtX(final int x) {
+            return last(xs, x);
+        }
+
+        /**
+         * Returns the last checkpoint whose value is at most the given one, or the first one.
+         */
+        private int last(final int[] values, final int value) {
+            int low = 1;
+            int high = count - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                if (values[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low - 1;
+        }
+
+    }
+
+}
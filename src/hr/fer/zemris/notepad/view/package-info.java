@@ -0,0 +1,8 @@
+/**
+ * This package contains the views that show a {@link hr.fer.zemris.notepad.document.PieceDocument} in a text area,
+ * laying out and painting only the part of the text that is visible.
+ *
+ * @author Filip Hrenić
+ * @version 1.0
+ */
+package hr.fer.zemris.notepad.view;